@@ -6,6 +6,7 @@ with real-time progress monitoring and error handling.
 """
 
 import os
+import socket
 import subprocess
 import re
 import time
@@ -14,6 +15,23 @@ from typing import Optional, Tuple, Dict, List
 from dataclasses import dataclass, field
 
 
+# Java helper library (comsolphysics.*) imported by generated model classes
+JAVA_LIB_DIR = Path(__file__).resolve().parent / "java"
+JAVA_LIB_CLASSES = JAVA_LIB_DIR / "build" / "classes"
+# Offline checks of the library; not part of it
+JAVA_LIB_TESTS = JAVA_LIB_DIR / "test"
+
+# Long-lived Java process that runs compiled model classes (comsolphysics.server.ModelServer)
+MODEL_SERVER_CLASS = "comsolphysics.server.ModelServer"
+# In-process javac with a bytecode cache keyed by source and classpath
+MODEL_COMPILER_CLASS = "comsolphysics.server.ModelCompiler"
+CLASS_CACHE_DIR = JAVA_LIB_DIR / "build" / "class_cache"
+MODEL_SERVER_READY = "ModelServer listening on port "
+# Written next to the model classes so later runs reuse the same server
+MODEL_SERVER_PORT_FILE = ".model_server"
+COMSOL_SERVER_PORT = 2036
+
+
 @dataclass
 class ExecutionStats:
     """Statistics from COMSOL execution."""
@@ -29,15 +47,192 @@ class ExecutionStats:
     progress_log: List[str] = field(default_factory=list)
 
 
+def _java_tool(name: str) -> str:
+    """Path to a JDK tool, preferring JAVA_HOME."""
+    java_home = os.getenv("JAVA_HOME")
+    if java_home and os.path.exists(os.path.join(java_home, "bin", name)):
+        return os.path.join(java_home, "bin", name)
+    return name
+
+
+class ModelServerClient:
+    """
+    Runs compiled model classes on a warm comsolphysics.server.ModelServer.
+
+    The server and the `comsol mphserver` it connects to are started once,
+    detached, in the directory holding the model classes, and their ports
+    are kept in MODEL_SERVER_PORT_FILE there. Later runs (retries, other
+    rooms, later invocations) reuse them and skip JVM start-up, COMSOL
+    kernel start-up and loading of the API classes.
+    """
+
+    def __init__(self, comsol_bin: str, comsol_root: str, work_dir: Path,
+                 runtime: str = "comsol", workers: int = 1, start_timeout: float = 180.0):
+        self.comsol_bin = comsol_bin
+        self.comsol_root = comsol_root
+        self.work_dir = Path(work_dir).resolve()
+        self.runtime = runtime
+        self.workers = workers
+        self.start_timeout = start_timeout
+        self.port: Optional[int] = None
+
+    def ensure_running(self) -> int:
+        """Return the port of a live server in work_dir, starting one if needed."""
+        if self.port and self._ping(self.port):
+            return self.port
+        port_file = self.work_dir / MODEL_SERVER_PORT_FILE
+        if port_file.exists():
+            try:
+                port = int(port_file.read_text().split()[0])
+                if self._ping(port):
+                    self.port = port
+                    return port
+            except (ValueError, IndexError):
+                pass
+
+        comsol_port = COMSOL_SERVER_PORT
+        if self.runtime == "comsol":
+            comsol_port = self._start_comsol_server()
+
+        classpath = os.pathsep.join([
+            os.path.join(self.comsol_root, "Multiphysics", "plugins", "*"),
+            str(JAVA_LIB_CLASSES),
+        ])
+        cmd = [_java_tool("java"), "-cp", classpath, MODEL_SERVER_CLASS,
+               "--port", "0", "--workers", str(self.workers),
+               "--runtime", self.runtime, "--comsol-port", str(comsol_port)]
+        line = self._start_detached(cmd, MODEL_SERVER_READY, "model_server.log")
+        self.port = int(line.split(MODEL_SERVER_READY, 1)[1].split()[0])
+        port_file.write_text(f"{self.port} {comsol_port}\n")
+        print(f"  Model server started on port {self.port}")
+        return self.port
+
+    def _start_comsol_server(self) -> int:
+        """Start `comsol mphserver` unless one is already listening."""
+        try:
+            with socket.create_connection(("127.0.0.1", COMSOL_SERVER_PORT), timeout=1):
+                return COMSOL_SERVER_PORT
+        except OSError:
+            pass
+        cmd = [self.comsol_bin, "mphserver", "-port", str(COMSOL_SERVER_PORT),
+               "-multi", "on", "-login", "auto"]
+        self._start_detached(cmd, "listening on port", "comsol_server.log")
+        return COMSOL_SERVER_PORT
+
+    def _start_detached(self, cmd: List[str], ready: str, log_name: str) -> str:
+        """Start a process that outlives this one and wait for its ready line in its log."""
+        log_path = self.work_dir / log_name
+        with open(log_path, "w") as log:
+            process = subprocess.Popen(
+                cmd,
+                cwd=self.work_dir,
+                stdout=log,
+                stderr=subprocess.STDOUT,
+                stdin=subprocess.DEVNULL,
+                start_new_session=True
+            )
+        deadline = time.time() + self.start_timeout
+        while time.time() < deadline and process.poll() is None:
+            for line in log_path.read_text(errors="replace").splitlines():
+                if ready in line:
+                    return line.strip()
+            time.sleep(0.1)
+        process.kill()
+        raise RuntimeError(f"{Path(cmd[0]).name} did not start (see {log_path}): {' '.join(cmd)}")
+
+    @staticmethod
+    def _ping(port: int) -> bool:
+        try:
+            with socket.create_connection(("127.0.0.1", port), timeout=2) as sock:
+                sock.sendall(b"ping\n")
+                return sock.makefile("r", encoding="utf-8").readline().strip() == "pong"
+        except OSError:
+            return False
+
+    def run(self, class_file: Path, args: Optional[List[str]] = None, mode: str = "main"):
+        """
+        Run a compiled class on the server.
+
+        Yields (kind, text) pairs as they arrive: kind is "out", "err" or
+        "stage" while the job runs, then "done" (seconds) or "failed"
+        (message).
+        """
+        class_file = Path(class_file).resolve()
+        yield from self._request(["run", mode, str(class_file.parent), class_file.stem] + list(args or []))
+
+    def compile(self, java_files: List[Path], classpath: str = ""):
+        """
+        Compile sources in the server's JVM in one batch, writing each one's
+        class files beside it. Yields ("compiled", "<file> cached|compiled")
+        or ("compile-error", the file and its errors) per file, then "done"
+        or "failed".
+        """
+        yield from self._request(["compile", classpath] + [str(Path(f).resolve()) for f in java_files])
+
+    def _request(self, fields: List[str]):
+        port = self.ensure_running()
+        with socket.create_connection(("127.0.0.1", port)) as sock:
+            stream = sock.makefile("rw", encoding="utf-8", newline="\n")
+            stream.write("\t".join(_escape(f) for f in fields) + "\n")
+            stream.flush()
+            for line in stream:
+                parts = [_unescape(f) for f in line.rstrip("\n").split("\t")]
+                kind = parts[0]
+                if kind in ("out", "err"):
+                    yield kind, parts[2] if len(parts) > 2 else ""
+                elif kind == "stage":
+                    yield kind, f"{parts[2]} ({parts[3]}s)"
+                elif kind in ("compiled", "compile-error"):
+                    yield kind, "\n".join(parts[2:]) if kind == "compile-error" else " ".join(parts[2:])
+                elif kind in ("done", "failed"):
+                    yield kind, parts[2] if len(parts) > 2 else ""
+                    return
+
+    def shutdown(self):
+        """Stop the model server (the COMSOL server keeps running)."""
+        port_file = self.work_dir / MODEL_SERVER_PORT_FILE
+        if not self.port and port_file.exists():
+            self.port = int(port_file.read_text().split()[0])
+        if self.port:
+            try:
+                with socket.create_connection(("127.0.0.1", self.port), timeout=2) as sock:
+                    sock.sendall(b"shutdown\n")
+                    sock.makefile("r", encoding="utf-8").readline()
+            except OSError:
+                pass
+        port_file.unlink(missing_ok=True)
+        self.port = None
+
+
+def _escape(field: str) -> str:
+    return (field.replace("\\", "\\\\").replace("\t", "\\t")
+            .replace("\n", "\\n").replace("\r", "\\r"))
+
+
+def _unescape(field: str) -> str:
+    out = []
+    i = 0
+    while i < len(field):
+        c = field[i]
+        if c == "\\" and i + 1 < len(field):
+            i += 1
+            c = {"t": "\t", "n": "\n", "r": "\r"}.get(field[i], field[i])
+        out.append(c)
+        i += 1
+    return "".join(out)
+
+
 class COMSOLExecutor:
     """Executor for COMSOL Java code."""
 
-    def __init__(self, comsol_root: Optional[str] = None):
+    def __init__(self, comsol_root: Optional[str] = None, use_server: bool = False):
         """
         Initialize COMSOL executor.
 
         Args:
             comsol_root: Path to COMSOL installation (auto-detected if None)
+            use_server: Run models on a warm ModelServer instead of a new
+                `comsol batch` process per run
         """
         self.comsol_root = self._find_comsol(comsol_root)
         self.comsol_bin = os.path.join(self.comsol_root, "Multiphysics", "bin", "comsol")
@@ -45,6 +240,10 @@ class COMSOLExecutor:
         if not os.path.exists(self.comsol_bin):
             raise FileNotFoundError(f"COMSOL executable not found at {self.comsol_bin}")
 
+        self._java_lib_built = False
+        self.use_server = use_server
+        self._servers: Dict[Path, ModelServerClient] = {}
+
     def _find_comsol(self, comsol_root: Optional[str] = None) -> str:
         """Find COMSOL installation directory."""
         if comsol_root and os.path.exists(comsol_root):
@@ -75,6 +274,42 @@ class COMSOLExecutor:
             "or set COMSOL_ROOT environment variable."
         )
 
+    def build_java_library(self) -> Tuple[bool, Optional[str]]:
+        """
+        Compile the comsolphysics helper library once per executor.
+
+        Generated models use it to read the STL themselves, so it has to be
+        on the classpath for both `comsol compile` and `comsol batch`.
+
+        Returns:
+            (success, error_message)
+        """
+        if self._java_lib_built:
+            return True, None
+
+        sources = [str(p) for p in sorted(JAVA_LIB_DIR.rglob("*.java"))
+                   if JAVA_LIB_CLASSES not in p.parents and JAVA_LIB_TESTS not in p.parents]
+        if not sources:
+            return False, f"No Java sources found under {JAVA_LIB_DIR}"
+
+        javac = _java_tool("javac")
+
+        plugins = os.path.join(self.comsol_root, "Multiphysics", "plugins", "*")
+        JAVA_LIB_CLASSES.mkdir(parents=True, exist_ok=True)
+        cmd = [javac, "-encoding", "UTF-8", "--release", "11",
+               "-cp", plugins, "-d", str(JAVA_LIB_CLASSES)] + sources
+
+        try:
+            result = subprocess.run(cmd, capture_output=True, text=True, timeout=300)
+        except (OSError, subprocess.TimeoutExpired) as e:
+            return False, f"Failed to build Java helper library: {e}"
+
+        if result.returncode != 0:
+            return False, result.stderr or result.stdout
+
+        self._java_lib_built = True
+        return True, None
+
     def compile(self, java_file: Path, output_dir: Optional[Path] = None) -> Tuple[bool, Optional[str]]:
         """
         Compile COMSOL Java file.
@@ -90,13 +325,22 @@ class COMSOLExecutor:
 
         start_time = time.time()
 
+        lib_ok, lib_error = self.build_java_library()
+        if not lib_ok:
+            print("  ✗ Java helper library failed to build")
+            return False, lib_error
+
+        if self.use_server:
+            return self._compile_on_server(java_file, start_time)
+
         # Change to directory containing the Java file
         original_dir = os.getcwd()
         work_dir = output_dir if output_dir else java_file.parent
         os.chdir(work_dir)
 
         try:
-            cmd = [self.comsol_bin, "compile", str(java_file)]
+            cmd = [self.comsol_bin, "compile",
+                   "-classpathadd", str(JAVA_LIB_CLASSES), str(java_file)]
 
             result = subprocess.run(
                 cmd,
@@ -122,6 +366,124 @@ class COMSOLExecutor:
         finally:
             os.chdir(original_dir)
 
+    def _compile_on_server(self, java_file: Path, start_time: float) -> Tuple[bool, Optional[str]]:
+        """Compile in the model server's JVM (javac stays warm, bytecode is cached)."""
+        try:
+            errors = []
+            cached = False
+            for kind, text in self._server_for(java_file.parent).compile([java_file]):
+                if kind == "compile-error":
+                    errors.append(text)
+                elif kind == "compiled":
+                    cached = text.endswith("cached")
+                elif kind == "failed" and not errors:
+                    errors.append(text)
+        except (OSError, RuntimeError) as e:
+            return False, f"Model server error: {e}"
+
+        if errors:
+            print(f"  ✗ Compilation failed")
+            return False, "\n".join(errors)
+        source = "from cache" if cached else "on model server"
+        print(f"  ✓ Compilation successful {source} ({time.time() - start_time:.1f}s)")
+        return True, None
+
+    def compile_batch(self, java_files: List[Path]) -> Dict[Path, Optional[str]]:
+        """
+        Compile many model sources in one javac run (one JVM), reusing cached
+        bytecode for sources compiled before with the same classpath.
+
+        Class files are written beside each source, as `comsol compile` does.
+
+        Returns:
+            {java_file: None on success, else the compiler errors}
+        """
+        lib_ok, lib_error = self.build_java_library()
+        if not lib_ok:
+            return {Path(f): lib_error for f in java_files}
+
+        classpath = os.pathsep.join([
+            os.path.join(self.comsol_root, "Multiphysics", "plugins", "*"),
+            str(JAVA_LIB_CLASSES),
+        ])
+        cmd = [_java_tool("java"), "-cp", classpath, MODEL_COMPILER_CLASS,
+               "--cache", str(CLASS_CACHE_DIR), "--classpath", classpath] + [str(f) for f in java_files]
+        try:
+            result = subprocess.run(cmd, capture_output=True, text=True, timeout=1800)
+        except (OSError, subprocess.TimeoutExpired) as e:
+            return {Path(f): f"Batch compile failed: {e}" for f in java_files}
+
+        # Lines are "compiled <file>", "cached <file>" or "FAILED <file>" followed by its errors
+        results: Dict[Path, Optional[str]] = {}
+        current = None
+        for line in result.stdout.splitlines():
+            status, _, name = line.partition(" ")
+            if status in ("compiled", "cached", "FAILED") and name.strip():
+                current = Path(name.strip())
+                results[current] = "" if status == "FAILED" else None
+            elif current is not None and results.get(current) is not None and " sources, " not in line:
+                results[current] += line + "\n"
+        for f in java_files:
+            if Path(f) not in results:
+                results[Path(f)] = result.stderr or "Not compiled"
+            elif results[Path(f)] is not None:
+                results[Path(f)] = results[Path(f)].strip()
+        print(result.stdout.splitlines()[-1] if result.stdout else result.stderr)
+        return results
+
+    # Lines of COMSOL output worth showing while a model runs
+    _PROGRESS = re.compile(r'Current Progress:\s+(\d+)\s+%\s+-\s+(.*)')
+    _MESH = re.compile(r'Number of elements:\s+(\d+)')
+    _SOLUTION_TIME = re.compile(r'Solution time:\s+([\d.]+)\s+s')
+    _MEMORY = re.compile(r'Physical memory:\s+([\d.]+)\s+([GM]B)')
+
+    def _monitor_line(self, line: str, stats: ExecutionStats):
+        """Log one line of model output and pick out progress and statistics."""
+        # Store in log
+        stats.progress_log.append(line)
+
+        # Display progress
+        if "Current Progress:" in line:
+            match = self._PROGRESS.search(line)
+            if match:
+                percent = match.group(1)
+                task = match.group(2)
+                print(f"  [{percent}%] {task}")
+
+        elif "Number of elements:" in line:
+            match = self._MESH.search(line)
+            if match:
+                stats.mesh_elements = int(match.group(1))
+                print(f"  Mesh: {stats.mesh_elements:,} elements")
+
+        elif "Solution time:" in line:
+            match = self._SOLUTION_TIME.search(line)
+            if match:
+                stats.solution_time = float(match.group(1))
+                print(f"  Solution time: {stats.solution_time:.1f}s")
+
+        elif "Physical memory:" in line:
+            match = self._MEMORY.search(line)
+            if match:
+                value = float(match.group(1))
+                unit = match.group(2)
+                if unit == "GB":
+                    stats.memory_used_mb = value * 1024
+                else:
+                    stats.memory_used_mb = value
+                print(f"  Memory: {stats.memory_used_mb:.0f} MB")
+
+        elif "Mesh statistics:" in line or "Solving..." in line or "Results generated" in line:
+            print(f"  {line.strip()}")
+
+        elif "ERROR" in line or "Error" in line:
+            print(f"  ✗ {line.strip()}")
+            if not stats.error_message:
+                stats.error_message = line.strip()
+
+        elif "Done" in line or "complete" in line.lower():
+            print(f"  ✓ {line.strip()}")
+
     def execute(self, java_file: Path, class_file: Optional[Path] = None) -> ExecutionStats:
         """
         Execute compiled COMSOL Java class with real-time progress monitoring.
@@ -145,6 +507,9 @@ class COMSOLExecutor:
         print(f"\nExecuting {class_file.name}...")
         print("="*70)
 
+        if self.use_server:
+            return self._execute_on_server(class_file, stats)
+
         start_time = time.time()
 
         # Change to directory containing the class file
@@ -152,7 +517,9 @@ class COMSOLExecutor:
         os.chdir(class_file.parent)
 
         try:
-            cmd = [self.comsol_bin, "batch", "-inputfile", str(class_file)]
+            cmd = [self.comsol_bin, "batch",
+                   "-classpathadd", str(JAVA_LIB_CLASSES),
+                   "-inputfile", str(class_file)]
 
             process = subprocess.Popen(
                 cmd,
@@ -162,59 +529,8 @@ class COMSOLExecutor:
                 bufsize=1
             )
 
-            # Monitor output in real-time
-            progress_pattern = re.compile(r'Current Progress:\s+(\d+)\s+%\s+-\s+(.*)')
-            mesh_pattern = re.compile(r'Number of elements:\s+(\d+)')
-            solution_time_pattern = re.compile(r'Solution time:\s+([\d.]+)\s+s')
-            memory_pattern = re.compile(r'Physical memory:\s+([\d.]+)\s+([GM]B)')
-
             for line in process.stdout:
-                line = line.rstrip()
-
-                # Store in log
-                stats.progress_log.append(line)
-
-                # Display progress
-                if "Current Progress:" in line:
-                    match = progress_pattern.search(line)
-                    if match:
-                        percent = match.group(1)
-                        task = match.group(2)
-                        print(f"  [{percent}%] {task}")
-
-                elif "Number of elements:" in line:
-                    match = mesh_pattern.search(line)
-                    if match:
-                        stats.mesh_elements = int(match.group(1))
-                        print(f"  Mesh: {stats.mesh_elements:,} elements")
-
-                elif "Solution time:" in line:
-                    match = solution_time_pattern.search(line)
-                    if match:
-                        stats.solution_time = float(match.group(1))
-                        print(f"  Solution time: {stats.solution_time:.1f}s")
-
-                elif "Physical memory:" in line:
-                    match = memory_pattern.search(line)
-                    if match:
-                        value = float(match.group(1))
-                        unit = match.group(2)
-                        if unit == "GB":
-                            stats.memory_used_mb = value * 1024
-                        else:
-                            stats.memory_used_mb = value
-                        print(f"  Memory: {stats.memory_used_mb:.0f} MB")
-
-                elif "Mesh statistics:" in line or "Solving..." in line or "Results generated" in line:
-                    print(f"  {line.strip()}")
-
-                elif "ERROR" in line or "Error" in line:
-                    print(f"  ✗ {line.strip()}")
-                    if not stats.error_message:
-                        stats.error_message = line.strip()
-
-                elif "Done" in line or "complete" in line.lower():
-                    print(f"  ✓ {line.strip()}")
+                self._monitor_line(line.rstrip(), stats)
 
             process.wait()
 
@@ -241,6 +557,49 @@ class COMSOLExecutor:
 
         return stats
 
+    def _execute_on_server(self, class_file: Path, stats: ExecutionStats) -> ExecutionStats:
+        """Run the class's main() on the warm model server for its directory."""
+        start_time = time.time()
+        try:
+            lib_ok, lib_error = self.build_java_library()
+            if not lib_ok:
+                raise RuntimeError(lib_error)
+            for kind, text in self._server_for(class_file.parent).run(class_file):
+                if kind in ("out", "err"):
+                    self._monitor_line(text, stats)
+                elif kind == "done":
+                    stats.success = True
+                elif kind == "failed":
+                    stats.success = False
+                    if not stats.error_message:
+                        stats.error_message = text
+        except (OSError, RuntimeError) as e:
+            stats.success = False
+            stats.error_message = f"Model server error: {e}"
+
+        stats.execution_time = time.time() - start_time
+        print("\n" + "="*70)
+        if stats.success:
+            print(f"✓ Execution completed successfully on model server ({stats.execution_time:.1f}s)")
+        else:
+            print(f"✗ Execution failed")
+        return stats
+
+    def _server_for(self, work_dir: Path) -> ModelServerClient:
+        """The model server for a directory of model classes."""
+        work_dir = Path(work_dir).resolve()
+        server = self._servers.get(work_dir)
+        if server is None:
+            server = ModelServerClient(self.comsol_bin, self.comsol_root, work_dir)
+            self._servers[work_dir] = server
+        return server
+
+    def shutdown_servers(self):
+        """Stop the model servers this executor started or reused."""
+        for server in self._servers.values():
+            server.shutdown()
+        self._servers.clear()
+
     def compile_and_execute(self, java_file: Path,
                           retry_on_error: bool = True,
                           max_retries: int = 3,
@@ -38,13 +38,11 @@ class COMSOLJavaGenerator:
         Args:
             stl_analysis: STL geometry analysis results
             material_assignments: Final material assignments
-            mesh_size: Mesh sizing ('coarse', 'normal', 'fine', 'finer')
+            mesh_size: Mesh sizing ('coarse', 'normal', 'fine', 'finer', 'finest')
 
         Returns:
             Complete Java code as string
         """
-        bbox = stl_analysis['bounding_box']
-
         code = f"""/*
  * {self.class_name}.java
  * Generated COMSOL model for heat transfer and radiation analysis
@@ -53,12 +51,54 @@ class COMSOLJavaGenerator:
 
 import com.comsol.model.*;
 import com.comsol.model.util.*;
+import comsolphysics.heat.ComsolConduction;
+import comsolphysics.heat.ConductionSolution;
+import comsolphysics.heat.ConductionSolver;
+import comsolphysics.mesh.IndexedMesh;
+import comsolphysics.mesh.MeshCache;
+import comsolphysics.mesh.MeshQuality;
+import comsolphysics.mesh.Segmentation;
+import comsolphysics.mesh.StlMesh;
+import comsolphysics.mesh.SurfaceSegmenter;
+import comsolphysics.mesh.VertexWelder;
+import comsolphysics.pipeline.ModelTags;
+import comsolphysics.pipeline.StageEvents;
+import comsolphysics.pipeline.StagePipeline;
+import comsolphysics.study.MeshContinuation;
+import comsolphysics.study.ParametricSweep;
+import comsolphysics.study.SweepTable;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class {self.class_name} {{
 
+  // Source scan; overridable with the first command-line argument
+  private static String stlFile = "{self._java_path(self.stl_path)}";
+
+  // Import tolerance; also used to weld the scan before import
+  private static final double IMPORT_TOL = 1.0E-6;
+
+  // Dataset the plots show; the finest level solved when --converge is given
+  private static String resultData = "dset1";
+
+  private static IndexedMesh scan;
+  private static Path weldedStl;
+
+  /** Read and weld the scan once, writing the shared-vertex STL that run() imports. */
+  static IndexedMesh loadScan() throws IOException {{
+    if (scan == null) {{
+      scan = VertexWelder.weld(StlMesh.read(Paths.get(stlFile)), IMPORT_TOL);
+      weldedStl = Paths.get("{self.class_name}_welded.stl").toAbsolutePath();
+      scan.writeStl(weldedStl);
+    }}
+    return scan;
+  }}
+
   public static Model run() throws IOException {{
-    Model model = ModelUtil.create("Model");
+    loadScan();
+
+    Model model = ModelUtil.create(ModelTags.unique("Model"));
 
     model.modelPath("{self.output_dir}");
     model.label("{self.class_name}.mph");
@@ -67,14 +107,14 @@ public class {self.class_name} {{
     model.component().create("comp1", true);
     model.component("comp1").geom().create("geom1", 3);
 
-    // Import STL geometry
+    // Import the welded STL; shared vertices let import and repair finish in one build
     model.component("comp1").geom("geom1").create("imp1", "Import");
     model.component("comp1").geom("geom1").feature("imp1")
          .set("type", "mesh");
     model.component("comp1").geom("geom1").feature("imp1")
-         .set("filename", "{str(self.stl_path)}");
+         .set("filename", weldedStl.toString());
     model.component("comp1").geom("geom1").feature("imp1")
-         .set("importtol", 1.0E-6);
+         .set("importtol", IMPORT_TOL);
 
     // Build geometry
     model.component("comp1").geom("geom1").run();
@@ -100,6 +140,23 @@ public class {self.class_name} {{
     return model;
   }}
 
+  /**
+   * Steady conduction with the model's conductivities and temperature
+   * boundaries, solved locally on mesh1 before paying for the COMSOL solve.
+   */
+  static void prescreen(Model model) {{
+    long start = System.nanoTime();
+    try {{
+      ConductionSolver solver = ComsolConduction.solver(model, "comp1", "ht", "mesh1");
+      ConductionSolution t = solver.solve(ComsolConduction.initialTemperature(model, "comp1", "ht"));
+      System.out.println(String.format("Conduction pre-screen (local solver, %.0f ms, %d iterations):",
+          (System.nanoTime() - start) / 1e6, solver.lastResult().iterations()));
+      t.printSummary(System.out);
+    }} catch (IllegalStateException e) {{
+      System.out.println("Conduction pre-screen skipped: " + e.getMessage());
+    }}
+  }}
+
   public static Model run5(Model model) {{
 {self._generate_solver_code()}
 
@@ -115,28 +172,99 @@ public class {self.class_name} {{
     return model;
   }}
 
+  /**
+   * Refine past mesh1 until the mean temperature changes by less than 1e-4
+   * (about 0.03 K) between levels, each level starting from the solution
+   * on the one before, and write the levels to {self.class_name}_converge.csv.
+   */
+  public static SweepTable converge(Model model) throws IOException {{
+    System.out.println("\\nRefining the mesh until the mean temperature settles...");
+    MeshContinuation continuation = new MeshContinuation("aveop1(T)")
+{self._generate_continuation_levels(mesh_size)}
+        .tolerance(1e-4);
+    SweepTable levels = continuation.run(model, "comp1", "geom1", "mesh1", "std1", "dset1");
+    levels.print(System.out);
+    levels.writeCsv(Paths.get("{self.class_name}_converge.csv"));
+    System.out.println("Continuation levels: {self.class_name}_converge.csv");
+    resultData = continuation.dataset();
+    return levels;
+  }}
+
+  /**
+   * Solve every row of {{@code points}} (columns named after model parameters,
+   * e.g. T_heat1, eps_rad) on the geometry and mesh already built, and write
+   * one result row per point to {self.class_name}_sweep.csv.
+   */
+  public static SweepTable sweep(Model model, SweepTable points) throws IOException {{
+    System.out.println("\\nSweeping " + points.rowCount() + " parameter sets...");
+    long start = System.nanoTime();
+    SweepTable results = new ParametricSweep(points)
+        .metric("T_mean", "aveop1(T)")
+        .metric("T_max", "maxop1(T)")
+        .run(model, "sol1", "dset1");
+    System.out.println(String.format("Sweep time: %.1f seconds", (System.nanoTime() - start) / 1e9));
+    results.print(System.out);
+    results.writeCsv(Paths.get("{self.class_name}_sweep.csv"));
+    System.out.println("Sweep results: {self.class_name}_sweep.csv");
+    return results;
+  }}
+
   public static void main(String[] args) throws IOException {{
+    boolean resume = StagePipeline.resumeRequested(args);
+    boolean converge = MeshContinuation.requested(args);
+    args = StagePipeline.positional(args);
+    if (args.length > 0) {{
+      stlFile = args[0];
+    }}
+    // Optional second argument: CSV of parameter sets to sweep after the base solve
+    SweepTable sweepPoints = args.length > 1 ? SweepTable.readCsv(Paths.get(args[1])) : null;
     System.out.println("Starting COMSOL heat transfer simulation...");
-    System.out.println("STL file: {self.stl_path.name}");
-    System.out.println("Room dimensions: {bbox['width']:.2f}m x {bbox['depth']:.2f}m x {bbox['height']:.2f}m");
+    System.out.println("STL file: " + stlFile);
     System.out.println();
 
-    Model model = run();
-    System.out.println("Geometry imported successfully");
-
-    model = run2(model);
-    System.out.println("Materials assigned");
-
-    model = run3(model);
-    System.out.println("Physics configured");
-
-    model = run4(model);
-    System.out.println("Mesh generated");
-
-    model = run5(model);
-    System.out.println("Solution computed");
+    // Per-stage timing and memory go to {self.class_name}_events.jsonl
+    StageEvents events = StageEvents.open("{self.class_name}");
+    StageEvents.Span scanSpan = events.start("scan");
+    IndexedMesh stl = loadScan();
+    float[] bbox = stl.bounds();
+    System.out.println("Geometry analysis (from STL):");
+    System.out.println(String.format("  Room dimensions: %.2fm x %.2fm x %.2fm",
+        bbox[3] - bbox[0], bbox[4] - bbox[1], bbox[5] - bbox[2]));
+    System.out.println(String.format("  Triangles: %d, welded vertices: %d, surface area: %.2f m^2",
+        stl.triangleCount(), stl.vertexCount(), stl.surfaceArea()));
+    Segmentation groups = SurfaceSegmenter.segment(stl);
+    groups.printSummary(System.out);
+    System.out.println();
 
+    scanSpan.put("triangles", stl.triangleCount()).put("patches", groups.patchCount()).end(null);
+
+    // Checkpointed after every stage; --resume skips the stages already saved
+    Model model = new StagePipeline("{self.class_name}", stlFile, resume)
+        .model({self.class_name}.class)
+        .stage("Geometry imported successfully", m -> run())
+        .stage("Materials assigned", {self.class_name}::run2)
+        .stage("Physics configured", {self.class_name}::run3)
+        .stage("Mesh generated", {self.class_name}::run4)
+        .stage("Solution computed", {self.class_name}::run5)
+        .events(events)
+        .run();
+
+    if (converge) {{
+      StageEvents.Span convergeSpan = events.start("converge");
+      SweepTable levels = converge(model);
+      convergeSpan.put("levels", levels.rowCount()).end(model);
+    }}
+
+    if (sweepPoints != null) {{
+      StageEvents.Span sweepSpan = events.start("sweep");
+      sweep(model, sweepPoints);
+      sweepSpan.put("points", sweepPoints.rowCount()).end(model);
+    }}
+
+    StageEvents.Span resultsSpan = events.start("results");
     run6(model);
+    resultsSpan.end(model);
+    events.close();
     System.out.println("Results saved");
 
     System.out.println("\\nSimulation complete!");
@@ -145,6 +273,11 @@ public class {self.class_name} {{
 """
         return code
 
+    @staticmethod
+    def _java_path(path: Path) -> str:
+        """Escape a filesystem path for use inside a Java string literal."""
+        return str(path).replace('\\', '\\\\').replace('"', '\\"')
+
     def _generate_materials_code(self, material_assignments: Dict[str, Any]) -> str:
         """Generate material assignment code."""
         code_lines = []
@@ -199,7 +332,15 @@ public class {self.class_name} {{
 
     def _generate_physics_code(self, material_assignments: Dict[str, Any]) -> str:
         """Generate physics setup code."""
+        # Sweepable parameters: heat source temperatures and the emissivity
+        heat_sources = material_assignments.get('heat_sources', [])
         code_lines = []
+        code_lines.append("    // Sweepable parameters (see sweep())")
+        for i, hs in enumerate(heat_sources, 1):
+            temp = hs.get('temperature', 323.15)
+            code_lines.append(f"    model.param().set(\"T_heat{i}\", \"{temp}\");")
+        code_lines.append(f"    model.param().set(\"eps_rad\", \"{self._default_emissivity(material_assignments)}\");")
+        code_lines.append("")
         code_lines.append("    // Heat transfer physics")
         code_lines.append("    model.component(\"comp1\").physics().create(\"ht\", \"HeatTransfer\", \"geom1\");")
 
@@ -208,14 +349,12 @@ public class {self.class_name} {{
         code_lines.append("         .set(\"Tinit\", \"293.15\");  // 20°C")
 
         # Add heat source if specified
-        heat_sources = material_assignments.get('heat_sources', [])
         if heat_sources:
             for i, hs in enumerate(heat_sources, 1):
-                temp = hs.get('temperature', 323.15)
                 code_lines.append(f"\n    // Heat source {i}")
                 code_lines.append(f"    model.component(\"comp1\").physics(\"ht\").create(\"temp{i}\", \"TemperatureBoundary\", 2);")
                 code_lines.append(f"    model.component(\"comp1\").physics(\"ht\").feature(\"temp{i}\")")
-                code_lines.append(f"         .set(\"T0\", \"{temp}\");")
+                code_lines.append(f"         .set(\"T0\", \"T_heat{i}\");")
                 # Note: Selection would require specific boundary identification
 
         # Surface-to-surface radiation
@@ -224,35 +363,46 @@ public class {self.class_name} {{
         code_lines.append("    model.component(\"comp1\").physics(\"rad\").create(\"dsurf1\", \"DiffuseSurface\", 2);")
         code_lines.append("    model.component(\"comp1\").physics(\"rad\").feature(\"dsurf1\").selection().all();")
 
-        # Set emissivity (use first material's emissivity as default)
-        default_emissivity = 0.9
-        for assignment in material_assignments.values():
-            if isinstance(assignment, dict) and 'material' in assignment:
-                material = assignment['material']
-                if material:
-                    default_emissivity = material.emissivity
-                    break
-
         code_lines.append(f"    model.component(\"comp1\").physics(\"rad\").feature(\"dsurf1\")")
-        code_lines.append(f"         .set(\"epsilon_rad\", \"{default_emissivity}\");")
+        code_lines.append(f"         .set(\"epsilon_rad\", \"eps_rad\");")
 
         # Multiphysics coupling
         code_lines.append("\n    // Multiphysics coupling")
         code_lines.append("    model.component(\"comp1\").multiphysics().create(\"rhtcpl1\", \"RadiativeHeating\", -1);")
         code_lines.append("    model.component(\"comp1\").multiphysics(\"rhtcpl1\").selection().all();")
 
+        # Operators for sweep metrics
+        code_lines.append("\n    // Operators for sweep metrics")
+        code_lines.append("    model.component(\"comp1\").cpl().create(\"aveop1\", \"Average\");")
+        code_lines.append("    model.component(\"comp1\").cpl(\"aveop1\").selection().all();")
+        code_lines.append("    model.component(\"comp1\").cpl().create(\"maxop1\", \"Maximum\");")
+        code_lines.append("    model.component(\"comp1\").cpl(\"maxop1\").selection().all();")
+
         return "\n".join(code_lines)
 
+    @staticmethod
+    def _default_emissivity(material_assignments: Dict[str, Any]) -> float:
+        """Emissivity of the first assigned material, or 0.9."""
+        for assignment in material_assignments.values():
+            if isinstance(assignment, dict) and 'material' in assignment:
+                material = assignment['material']
+                if material:
+                    return material.emissivity
+        return 0.9
+
+    # Mesh sizes from coarsest to finest; continuation refines through the
+    # ones finer than the chosen size
+    MESH_PARAMS = {
+        "coarse": {"hmax": 0.5, "hmin": 0.2},
+        "normal": {"hmax": 0.3, "hmin": 0.1},
+        "fine": {"hmax": 0.2, "hmin": 0.05},
+        "finer": {"hmax": 0.15, "hmin": 0.03},
+        "finest": {"hmax": 0.1, "hmin": 0.02}
+    }
+
     def _generate_mesh_code(self, mesh_size: str = "normal") -> str:
         """Generate mesh configuration code."""
-        mesh_params = {
-            "coarse": {"hmax": 0.5, "hmin": 0.2},
-            "normal": {"hmax": 0.3, "hmin": 0.1},
-            "fine": {"hmax": 0.2, "hmin": 0.05},
-            "finer": {"hmax": 0.15, "hmin": 0.03}
-        }
-
-        params = mesh_params.get(mesh_size, mesh_params["normal"])
+        params = self.MESH_PARAMS.get(mesh_size, self.MESH_PARAMS["normal"])
 
         code_lines = []
         code_lines.append("    // Create mesh")
@@ -261,12 +411,25 @@ public class {self.class_name} {{
         code_lines.append("    model.component(\"comp1\").mesh(\"mesh1\").feature(\"size\").set(\"custom\", \"on\");")
         code_lines.append(f"    model.component(\"comp1\").mesh(\"mesh1\").feature(\"size\").set(\"hmax\", {params['hmax']});")
         code_lines.append(f"    model.component(\"comp1\").mesh(\"mesh1\").feature(\"size\").set(\"hmin\", {params['hmin']});")
-        code_lines.append("    model.component(\"comp1\").mesh(\"mesh1\").run();")
+        code_lines.append("    // Reuses the stored mesh when the scan and these settings are unchanged")
+        code_lines.append("    MeshCache.openDefault().run(model, \"comp1\", \"geom1\", \"mesh1\");")
         code_lines.append("\n    System.out.println(\"Mesh statistics:\");")
         code_lines.append("    System.out.println(\"  Elements: \" + model.component(\"comp1\").mesh(\"mesh1\").getNumElem());")
+        code_lines.append("\n    MeshQuality quality = MeshQuality.of(model, \"comp1\", \"mesh1\");")
+        code_lines.append("    quality.printSummary(System.out);")
+        code_lines.append("    quality.check(MeshQuality.Limits.DEFAULT);")
+        code_lines.append("\n    prescreen(model);")
 
         return "\n".join(code_lines)
 
+    def _generate_continuation_levels(self, mesh_size: str = "normal") -> str:
+        """Generate the MeshContinuation levels finer than the base mesh."""
+        names = list(self.MESH_PARAMS)
+        base = names.index(mesh_size) if mesh_size in self.MESH_PARAMS else names.index("normal")
+        finer = names[base + 1:] or names[-1:]
+        return "\n".join(
+            f"        .level({self.MESH_PARAMS[n]['hmax']}, {self.MESH_PARAMS[n]['hmin']})" for n in finer)
+
     def _generate_solver_code(self) -> str:
         """Generate solver configuration code."""
         code_lines = []
@@ -293,12 +456,14 @@ public class {self.class_name} {{
         code_lines.append("    // Create result plots")
         code_lines.append("    model.result().create(\"pg1\", \"PlotGroup3D\");")
         code_lines.append("    model.result(\"pg1\").label(\"Temperature Distribution\");")
+        code_lines.append("    model.result(\"pg1\").set(\"data\", resultData);")
         code_lines.append("    model.result(\"pg1\").create(\"surf1\", \"Surface\");")
         code_lines.append("    model.result(\"pg1\").feature(\"surf1\").set(\"expr\", \"T\");")
         code_lines.append("    model.result(\"pg1\").run();")
 
         code_lines.append("\n    model.result().create(\"pg2\", \"PlotGroup3D\");")
         code_lines.append("    model.result(\"pg2\").label(\"Heat Flux\");")
+        code_lines.append("    model.result(\"pg2\").set(\"data\", resultData);")
         code_lines.append("    model.result(\"pg2\").create(\"surf1\", \"Surface\");")
         code_lines.append("    model.result(\"pg2\").feature(\"surf1\").set(\"expr\", \"ht.ntflux\");")
         code_lines.append("    model.result(\"pg2\").run();")
@@ -0,0 +1,114 @@
+/*
+ * ComsolConduction.java
+ * ConductionSolver inputs read from a COMSOL model.
+ */
+
+package comsolphysics.heat;
+
+import com.comsol.model.Model;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads a built tetrahedral mesh, per-domain conductivities (from the
+ * materials) and the {@code TemperatureBoundary} features of a
+ * {@code HeatTransfer} interface, so a {@link ConductionSolver} solves the
+ * same conduction problem as the model without a solver license.
+ */
+public final class ComsolConduction {
+
+  private ComsolConduction() {
+  }
+
+  /** Tetrahedra and boundary triangles of mesh {@code mesh}, which must be built. */
+  public static TetMesh mesh(Model model, String comp, String mesh) {
+    double[][] vtx = model.component(comp).mesh(mesh).getVertex();
+    int[][] tet = model.component(comp).mesh(mesh).getElem("tet");
+    int[] domain = model.component(comp).mesh(mesh).getElemEntity("tet");
+    int[][] tri = model.component(comp).mesh(mesh).getElem("tri");
+    int[] boundary = model.component(comp).mesh(mesh).getElemEntity("tri");
+
+    // COMSOL returns coordinates as [sdim][vertex] and elements as [corner][element]
+    int nv = vtx[0].length;
+    double[] xyz = new double[nv * 3];
+    for (int v = 0; v < nv; v++) {
+      xyz[v * 3] = vtx[0][v];
+      xyz[v * 3 + 1] = vtx[1][v];
+      xyz[v * 3 + 2] = vtx[2][v];
+    }
+    int[] tets = new int[domain.length * 4];
+    for (int e = 0; e < domain.length; e++) {
+      for (int c = 0; c < 4; c++) {
+        tets[e * 4 + c] = tet[c][e];
+      }
+    }
+    int[] faces = new int[boundary.length * 3];
+    for (int f = 0; f < boundary.length; f++) {
+      for (int c = 0; c < 3; c++) {
+        faces[f * 3 + c] = tri[c][f];
+      }
+    }
+    return new TetMesh(xyz, tets, domain, faces, boundary);
+  }
+
+  /**
+   * A solver for physics {@code physics} on mesh {@code mesh}: materials
+   * applied in model order (a later one overrides an earlier one on shared
+   * domains, as in COMSOL), and each {@code TemperatureBoundary} fixes its
+   * selected boundaries. A domain without a material fails the solve.
+   * Without any fixed boundary there is no steady state to find, so this
+   * fails before the mesh is read or the matrix pattern built.
+   */
+  public static ConductionSolver solver(Model model, String comp, String physics, String mesh) {
+    Map<Integer, Double> fixed = new LinkedHashMap<>();
+    for (String tag : model.component(comp).physics(physics).feature().tags()) {
+      if (!"TemperatureBoundary".equals(model.component(comp).physics(physics).feature(tag).getType())) {
+        continue;
+      }
+      double t = value(model, model.component(comp).physics(physics).feature(tag).getString("T0"));
+      for (int b : model.component(comp).physics(physics).feature(tag).selection().entities(2)) {
+        // A later feature overrides an earlier one on the same boundary
+        fixed.remove(b);
+        fixed.put(b, t);
+      }
+    }
+    if (fixed.isEmpty()) {
+      throw new IllegalStateException("No temperature boundary in " + physics
+          + ": an insulated body has no unique steady state");
+    }
+    ConductionSolver solver = new ConductionSolver(mesh(model, comp, mesh));
+    for (String tag : model.component(comp).material().tags()) {
+      String value = model.component(comp).material(tag).propertyGroup("def").getString("thermalconductivity");
+      if (value == null || value.trim().isEmpty()) {
+        continue;
+      }
+      double k = value(model, value);
+      for (int d : model.component(comp).material(tag).selection().entities(3)) {
+        solver.conductivity(d, k);
+      }
+    }
+    for (Map.Entry<Integer, Double> bc : fixed.entrySet()) {
+      solver.temperature(bc.getKey(), bc.getValue());
+    }
+    return solver;
+  }
+
+  /** {@code Tinit} of the interface's initial values, K. */
+  public static double initialTemperature(Model model, String comp, String physics) {
+    return value(model, model.component(comp).physics(physics).feature("init1").getString("Tinit"));
+  }
+
+  /** A plain number, or else an expression evaluated by the model's parameters (in SI units). */
+  static double value(Model model, String expression) {
+    String s = expression.replace("'", "").trim();
+    // Isotropic conductivities can come as a 3x3 tensor {k, 0, 0, 0, k, ...}
+    if (s.startsWith("{")) {
+      s = s.substring(1, s.indexOf(',') > 0 ? s.indexOf(',') : s.length() - 1).trim();
+    }
+    try {
+      return Double.parseDouble(s);
+    } catch (NumberFormatException e) {
+      return model.param().evaluate(s);
+    }
+  }
+}
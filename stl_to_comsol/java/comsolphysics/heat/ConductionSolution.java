@@ -0,0 +1,132 @@
+/*
+ * ConductionSolution.java
+ * Temperature and heat flux from a ConductionSolver run.
+ */
+
+package comsolphysics.heat;
+
+import java.io.PrintStream;
+import java.util.stream.IntStream;
+
+/**
+ * Nodal temperature {@code T} and the conductive flux {@code -k grad T}
+ * (constant per element for linear elements), plus the outward normal flux
+ * on boundary faces, the counterpart of {@code ht.ntflux}. Integrals match
+ * the {@code aveop1(T)}/{@code maxop1(T)} operators the generated models
+ * define.
+ */
+public final class ConductionSolution {
+
+  private final TetMesh mesh;
+  private final double[] temperature;
+  private final double[] conductivity;
+  private final double[] gradients;
+
+  ConductionSolution(TetMesh mesh, double[] temperature, double[] conductivity, double[] gradients) {
+    this.mesh = mesh;
+    this.temperature = temperature;
+    this.conductivity = conductivity;
+    this.gradients = gradients;
+  }
+
+  public TetMesh mesh() {
+    return mesh;
+  }
+
+  /** Temperature per node, K. */
+  public double[] temperature() {
+    return temperature;
+  }
+
+  public double temperature(int node) {
+    return temperature[node];
+  }
+
+  /** Heat flux {@code -k grad T} in element {@code e}, W/m^2, as {x, y, z}. */
+  public double[] flux(int e) {
+    int[] tets = mesh.tets();
+    double k = conductivity[mesh.domains()[e]];
+    double[] q = new double[3];
+    for (int c = 0; c < 4; c++) {
+      double t = temperature[tets[e * 4 + c]];
+      for (int d = 0; d < 3; d++) {
+        q[d] -= k * t * gradients[e * 12 + c * 3 + d];
+      }
+    }
+    return q;
+  }
+
+  /** Normal heat flux out of the mesh through face {@code f} ({@code ht.ntflux}), W/m^2. */
+  public double normalFlux(int f) {
+    int e = mesh.elementOf(f);
+    if (e < 0) {
+      return 0;
+    }
+    double[] xyz = mesh.xyz();
+    int[] faces = mesh.faces();
+    int[] tets = mesh.tets();
+    int a = faces[f * 3] * 3, b = faces[f * 3 + 1] * 3, c = faces[f * 3 + 2] * 3;
+    double ux = xyz[b] - xyz[a], uy = xyz[b + 1] - xyz[a + 1], uz = xyz[b + 2] - xyz[a + 2];
+    double vx = xyz[c] - xyz[a], vy = xyz[c + 1] - xyz[a + 1], vz = xyz[c + 2] - xyz[a + 2];
+    double nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+    double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+    // Point the normal away from the element's fourth corner
+    int opposite = -1;
+    for (int k = 0; k < 4; k++) {
+      int v = tets[e * 4 + k];
+      if (v != faces[f * 3] && v != faces[f * 3 + 1] && v != faces[f * 3 + 2]) {
+        opposite = v * 3;
+      }
+    }
+    double side = (xyz[opposite] - xyz[a]) * nx + (xyz[opposite + 1] - xyz[a + 1]) * ny
+        + (xyz[opposite + 2] - xyz[a + 2]) * nz;
+    double sign = side > 0 ? -1.0 : 1.0;
+    double[] q = flux(e);
+    return sign * (q[0] * nx + q[1] * ny + q[2] * nz) / len;
+  }
+
+  /** Heat leaving through geometry boundary {@code boundary}, W (negative where heat enters). */
+  public double boundaryPower(int boundary) {
+    int[] faceBoundary = mesh.faceBoundaries();
+    return IntStream.range(0, faceBoundary.length).parallel()
+        .filter(f -> faceBoundary[f] == boundary)
+        .mapToDouble(f -> normalFlux(f) * mesh.faceArea(f))
+        .sum();
+  }
+
+  /** Volume average of T, K. */
+  public double meanTemperature() {
+    int[] tets = mesh.tets();
+    double[] sums = IntStream.range(0, mesh.elementCount()).parallel()
+        .mapToObj(e -> {
+          double v = mesh.volume(e);
+          double t = (temperature[tets[e * 4]] + temperature[tets[e * 4 + 1]]
+              + temperature[tets[e * 4 + 2]] + temperature[tets[e * 4 + 3]]) / 4;
+          return new double[] {v * t, v};
+        })
+        .reduce(new double[2], (x, y) -> new double[] {x[0] + y[0], x[1] + y[1]});
+    return sums[0] / sums[1];
+  }
+
+  public double maxTemperature() {
+    double max = Double.NEGATIVE_INFINITY;
+    for (double t : temperature) {
+      max = Math.max(max, t);
+    }
+    return max;
+  }
+
+  public double minTemperature() {
+    double min = Double.POSITIVE_INFINITY;
+    for (double t : temperature) {
+      min = Math.min(min, t);
+    }
+    return min;
+  }
+
+  public void printSummary(PrintStream out) {
+    out.printf("  Mesh:             %d nodes, %d tetrahedra%n", mesh.nodeCount(), mesh.elementCount());
+    out.printf("  Temperature:      %.2f .. %.2f K, mean %.2f K%n",
+        minTemperature(), maxTemperature(), meanTemperature());
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * ConductionSolver.java
+ * Steady-state heat conduction on a linear tetrahedral mesh.
+ */
+
+package comsolphysics.heat;
+
+import comsolphysics.solve.CsrMatrix;
+import comsolphysics.solve.IterativeSolver;
+import comsolphysics.solve.MappedCsrMatrix;
+import comsolphysics.solve.SparseMatrix;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Solves {@code -div(k grad T) = 0} with linear (P1) elements, the
+ * stationary problem the COMSOL {@code HeatTransfer} interface sets up for
+ * solids without sources: a conductivity per domain, {@code
+ * TemperatureBoundary} features as fixed temperatures and thermal
+ * insulation everywhere else.
+ *
+ * <pre>
+ *   ConductionSolution s = new ConductionSolver(mesh)
+ *       .conductivity(1, 1.4)
+ *       .temperature(5, 323.15)
+ *       .solve(293.15);
+ * </pre>
+ *
+ * <p>The matrix pattern is built once per mesh. Each solve assembles in
+ * parallel without locks: element gradients are computed element by
+ * element, then every row gathers from the elements around its node. The
+ * system is solved with Jacobi-preconditioned conjugate gradients starting
+ * from the initial temperature ({@code Tinit}), or from the previous
+ * solution when called again.
+ *
+ * <p>Given a file, the matrix is kept there as a {@link MappedCsrMatrix}
+ * instead of on the heap: assembly writes each row into the mapping and
+ * every CG product streams it in tiles.
+ */
+public final class ConductionSolver {
+
+  private static final double TOLERANCE = 1e-10;
+
+  private final TetMesh mesh;
+  private final SparseMatrix matrix;
+  private double[] conductivity;
+  private final Map<Integer, Double> fixed = new LinkedHashMap<>();
+  private double[] temperature;
+  private IterativeSolver.Result lastResult;
+
+  public ConductionSolver(TetMesh mesh) {
+    this.mesh = mesh;
+    this.matrix = pattern(mesh);
+    this.conductivity = new double[mesh.domainCount() + 1];
+  }
+
+  /** Keep the matrix in {@code matrixFile}, which is overwritten. */
+  public ConductionSolver(TetMesh mesh, Path matrixFile) throws IOException {
+    this.mesh = mesh;
+    int n = mesh.nodeCount();
+    int[] start = mesh.elementStart();
+    double[] zeros = new double[0];
+    try (MappedCsrMatrix.Writer out = MappedCsrMatrix.writer(matrixFile, n, 8, 0L)) {
+      for (int i = 0; i < n; i++) {
+        int[] row = new int[Math.max(1, (start[i + 1] - start[i]) * 4)];
+        int m = neighbours(mesh, i, row);
+        if (zeros.length < m) {
+          zeros = new double[m];
+        }
+        out.row(row, zeros, m);
+      }
+      this.matrix = out.finish(true);
+    }
+    this.conductivity = new double[mesh.domainCount() + 1];
+  }
+
+  /** Node-to-node pattern: each row lists the nodes sharing an element with it, ascending. */
+  private static CsrMatrix pattern(TetMesh mesh) {
+    int n = mesh.nodeCount();
+    int[] start = mesh.elementStart();
+    int[][] rows = new int[n][];
+    IntStream.range(0, n).parallel().forEach(i -> {
+      int[] row = new int[Math.max(1, (start[i + 1] - start[i]) * 4)];
+      rows[i] = Arrays.copyOf(row, neighbours(mesh, i, row));
+    });
+    int[] rowStart = new int[n + 1];
+    for (int i = 0; i < n; i++) {
+      rowStart[i + 1] = rowStart[i] + rows[i].length;
+    }
+    int[] columns = new int[rowStart[n]];
+    for (int i = 0; i < n; i++) {
+      System.arraycopy(rows[i], 0, columns, rowStart[i], rows[i].length);
+    }
+    return new CsrMatrix(n, rowStart, columns, new double[rowStart[n]]);
+  }
+
+  /**
+   * Nodes sharing an element with node {@code i}, ascending, into
+   * {@code row} (4 per element around {@code i}, at least 1); returns how many.
+   */
+  private static int neighbours(TetMesh mesh, int i, int[] row) {
+    int[] tets = mesh.tets();
+    int[] start = mesh.elementStart();
+    int[] elements = mesh.nodeElements();
+    int m = 0;
+    for (int k = start[i]; k < start[i + 1]; k++) {
+      for (int c = 0; c < 4; c++) {
+        row[m++] = tets[elements[k] * 4 + c];
+      }
+    }
+    Arrays.sort(row, 0, m);
+    int u = 0;
+    for (int r = 0; r < m; r++) {
+      if (u == 0 || row[r] != row[u - 1]) {
+        row[u++] = row[r];
+      }
+    }
+    // A node in no element still gets its diagonal
+    if (u == 0) {
+      row[u++] = i;
+    }
+    return u;
+  }
+
+  public TetMesh mesh() {
+    return mesh;
+  }
+
+  /** Thermal conductivity of geometry domain {@code domain}, W/(m K). */
+  public ConductionSolver conductivity(int domain, double k) {
+    if (domain >= conductivity.length) {
+      conductivity = Arrays.copyOf(conductivity, domain + 1);
+    }
+    conductivity[domain] = k;
+    return this;
+  }
+
+  /** The same conductivity in every domain. */
+  public ConductionSolver conductivity(double k) {
+    Arrays.fill(conductivity, k);
+    return this;
+  }
+
+  /**
+   * Fix geometry boundary {@code boundary} at {@code kelvin}. A node on
+   * two fixed boundaries takes the one set last, as a later
+   * {@code TemperatureBoundary} overrides an earlier one in COMSOL.
+   */
+  public ConductionSolver temperature(int boundary, double kelvin) {
+    fixed.remove(boundary);
+    fixed.put(boundary, kelvin);
+    return this;
+  }
+
+  /** Solve; {@code initial} is the start temperature of the first solve (COMSOL's {@code Tinit}), K. */
+  public ConductionSolution solve(double initial) {
+    if (fixed.isEmpty()) {
+      throw new IllegalStateException("No temperature boundary: an insulated body has no unique steady state");
+    }
+    int n = mesh.nodeCount();
+    int[] tets = mesh.tets();
+    int[] domains = mesh.domains();
+    for (int e = 0; e < domains.length; e++) {
+      if (domains[e] >= conductivity.length || !(conductivity[domains[e]] > 0)) {
+        throw new IllegalStateException("No conductivity for domain " + domains[e]);
+      }
+    }
+
+    // Fixed values per node, NaN where free
+    double[] known = new double[n];
+    Arrays.fill(known, Double.NaN);
+    int[] faces = mesh.faces();
+    int[] faceBoundary = mesh.faceBoundaries();
+    for (Map.Entry<Integer, Double> bc : fixed.entrySet()) {
+      for (int f = 0; f < faceBoundary.length; f++) {
+        if (faceBoundary[f] == bc.getKey()) {
+          for (int c = 0; c < 3; c++) {
+            known[faces[f * 3 + c]] = bc.getValue();
+          }
+        }
+      }
+    }
+    if (IntStream.range(0, n).allMatch(i -> Double.isNaN(known[i]))) {
+      throw new IllegalStateException("The temperature boundaries " + fixed.keySet() + " have no mesh faces");
+    }
+
+    double[] gradients = new double[domains.length * 12];
+    double[] weight = new double[domains.length];
+    IntStream.range(0, domains.length).parallel().forEach(e -> {
+      weight[e] = conductivity[domains[e]] * gradients(mesh, e, gradients);
+    });
+
+    // Rows gather from their elements, so no two threads write the same entry
+    double[] b = new double[n];
+    int[] start = mesh.elementStart();
+    int[] elements = mesh.nodeElements();
+    IntStream.range(0, n).parallel().forEach(i -> {
+      int[] columns = new int[Math.max(1, (start[i + 1] - start[i]) * 4)];
+      int m = neighbours(mesh, i, columns);
+      double[] row = new double[m];
+      if (!Double.isNaN(known[i])) {
+        row[Arrays.binarySearch(columns, 0, m, i)] = 1.0;
+        matrix.setRow(i, row);
+        b[i] = known[i];
+        return;
+      }
+      double rhs = 0;
+      for (int k = start[i]; k < start[i + 1]; k++) {
+        int e = elements[k];
+        int a = 0;
+        while (tets[e * 4 + a] != i) {
+          a++;
+        }
+        for (int c = 0; c < 4; c++) {
+          int j = tets[e * 4 + c];
+          double kab = weight[e] * (gradients[e * 12 + a * 3] * gradients[e * 12 + c * 3]
+              + gradients[e * 12 + a * 3 + 1] * gradients[e * 12 + c * 3 + 1]
+              + gradients[e * 12 + a * 3 + 2] * gradients[e * 12 + c * 3 + 2]);
+          if (Double.isNaN(known[j])) {
+            row[Arrays.binarySearch(columns, 0, m, j)] += kab;
+          } else {
+            // Known neighbour moves to the right-hand side; the matrix stays symmetric
+            rhs -= kab * known[j];
+          }
+        }
+      }
+      matrix.setRow(i, row);
+      b[i] = rhs;
+    });
+
+    if (temperature == null) {
+      temperature = new double[n];
+      Arrays.fill(temperature, initial);
+    }
+    for (int i = 0; i < n; i++) {
+      if (!Double.isNaN(known[i])) {
+        temperature[i] = known[i];
+      }
+    }
+    lastResult = IterativeSolver.pcg(matrix, b, temperature, TOLERANCE, Math.max(1000, n));
+    if (!lastResult.converged()) {
+      throw new IllegalStateException("Conduction solve " + lastResult);
+    }
+    return new ConductionSolution(mesh, temperature.clone(), conductivity.clone(), gradients);
+  }
+
+  /**
+   * Gradients of the four barycentric coordinates of element {@code e},
+   * written to {@code out[12 e ..]}; returns the element volume.
+   */
+  static double gradients(TetMesh mesh, int e, double[] out) {
+    double[] xyz = mesh.xyz();
+    int[] tets = mesh.tets();
+    int p0 = tets[e * 4] * 3;
+    double[] m = new double[9];
+    for (int r = 0; r < 3; r++) {
+      int p = tets[e * 4 + r + 1] * 3;
+      m[r * 3] = xyz[p] - xyz[p0];
+      m[r * 3 + 1] = xyz[p + 1] - xyz[p0 + 1];
+      m[r * 3 + 2] = xyz[p + 2] - xyz[p0 + 2];
+    }
+    // Rows of m are the edges from corner 0; grad(lambda_r) are the columns of m^-1
+    double c00 = m[4] * m[8] - m[5] * m[7];
+    double c01 = m[5] * m[6] - m[3] * m[8];
+    double c02 = m[3] * m[7] - m[4] * m[6];
+    double det = m[0] * c00 + m[1] * c01 + m[2] * c02;
+    double[] inv = {
+        c00, m[2] * m[7] - m[1] * m[8], m[1] * m[5] - m[2] * m[4],
+        c01, m[0] * m[8] - m[2] * m[6], m[2] * m[3] - m[0] * m[5],
+        c02, m[1] * m[6] - m[0] * m[7], m[0] * m[4] - m[1] * m[3]};
+    int o = e * 12;
+    for (int r = 0; r < 3; r++) {
+      for (int d = 0; d < 3; d++) {
+        out[o + (r + 1) * 3 + d] = inv[d * 3 + r] / det;
+      }
+    }
+    for (int d = 0; d < 3; d++) {
+      out[o + d] = -(out[o + 3 + d] + out[o + 6 + d] + out[o + 9 + d]);
+    }
+    return Math.abs(det) / 6.0;
+  }
+
+  /** Iteration count and residual of the last solve. */
+  public IterativeSolver.Result lastResult() {
+    return lastResult;
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * TetMesh.java
+ * Linear tetrahedral mesh with domain and boundary numbers, on flat arrays.
+ */
+
+package comsolphysics.heat;
+
+import comsolphysics.mesh.TetMeshBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A volume mesh as COMSOL hands it out, flattened: {@code xyz[3 * node]},
+ * {@code tets[4 * element]} with the geometry domain of each element, and
+ * the boundary triangles {@code faces[3 * face]} with the geometry boundary
+ * each lies on. Node and element numbers are 0-based; domain and boundary
+ * numbers are COMSOL's (1-based).
+ */
+public final class TetMesh {
+
+  private final double[] xyz;
+  private final int[] tets;
+  private final int[] domains;
+  private final int[] faces;
+  private final int[] faceBoundary;
+  private int[] elementStart;
+  private int[] nodeElements;
+
+  public TetMesh(double[] xyz, int[] tets, int[] domains, int[] faces, int[] faceBoundary) {
+    if (tets.length != domains.length * 4 || faces.length != faceBoundary.length * 3) {
+      throw new IllegalArgumentException("Need one domain per tetrahedron and one boundary per face");
+    }
+    this.xyz = xyz;
+    this.tets = tets;
+    this.domains = domains;
+    this.faces = faces;
+    this.faceBoundary = faceBoundary;
+  }
+
+  /** Copy of a mesh from {@link comsolphysics.mesh.DelaunayMesher} or the mesh cache, in bulk. */
+  public static TetMesh from(TetMeshBuffer buffer) {
+    double[] xyz = new double[buffer.nodeCount() * 3];
+    int[] tets = new int[buffer.elementCount() * 4];
+    int[] domains = new int[buffer.elementCount()];
+    int[] faces = new int[buffer.faceCount() * 3];
+    int[] faceBoundary = new int[buffer.faceCount()];
+    buffer.xyz().get(xyz);
+    buffer.tets().get(tets);
+    buffer.domains().get(domains);
+    buffer.faces().get(faces);
+    buffer.faceBoundaries().get(faceBoundary);
+    return new TetMesh(xyz, tets, domains, faces, faceBoundary);
+  }
+
+  /**
+   * Structured mesh of the box {@code [0, lx] x [0, ly] x [0, lz]}, each of
+   * its {@code nx * ny * nz} cells cut into six tetrahedra, all in domain 1.
+   * Boundaries are numbered 1 (x = 0), 2 (x = lx), 3 (y = 0), 4 (y = ly),
+   * 5 (z = 0, the floor) and 6 (z = lz), which is enough to check a solver
+   * or size a room from its scan's bounding box without COMSOL.
+   */
+  public static TetMesh box(double lx, double ly, double lz, int nx, int ny, int nz) {
+    int px = nx + 1, py = ny + 1, pz = nz + 1;
+    double[] xyz = new double[px * py * pz * 3];
+    for (int k = 0; k < pz; k++) {
+      for (int j = 0; j < py; j++) {
+        for (int i = 0; i < px; i++) {
+          int v = (k * py + j) * px + i;
+          xyz[v * 3] = lx * i / nx;
+          xyz[v * 3 + 1] = ly * j / ny;
+          xyz[v * 3 + 2] = lz * k / nz;
+        }
+      }
+    }
+    // Kuhn split along the main diagonal; neighbouring cells share face diagonals
+    int[][] paths = {{1, 3, 7}, {1, 5, 7}, {2, 3, 7}, {2, 6, 7}, {4, 5, 7}, {4, 6, 7}};
+    int[] tets = new int[nx * ny * nz * 24];
+    int t = 0;
+    for (int k = 0; k < nz; k++) {
+      for (int j = 0; j < ny; j++) {
+        for (int i = 0; i < nx; i++) {
+          int[] corner = new int[8];
+          for (int c = 0; c < 8; c++) {
+            corner[c] = ((k + (c >> 2 & 1)) * py + j + (c >> 1 & 1)) * px + i + (c & 1);
+          }
+          for (int[] path : paths) {
+            tets[t++] = corner[0];
+            tets[t++] = corner[path[0]];
+            tets[t++] = corner[path[1]];
+            tets[t++] = corner[path[2]];
+          }
+        }
+      }
+    }
+    int[] domains = new int[nx * ny * nz * 6];
+    Arrays.fill(domains, 1);
+
+    int faceCount = 4 * (ny * nz + nx * nz + nx * ny);
+    int[] faces = new int[faceCount * 3];
+    int[] boundary = new int[faceCount];
+    int f = 0;
+    int[] n = {nx, ny, nz};
+    int[] p = {px, py, pz};
+    for (int axis = 0; axis < 3; axis++) {
+      int a = (axis + 1) % 3, b = (axis + 2) % 3;
+      for (int side = 0; side < 2; side++) {
+        int fixed = side * n[axis];
+        for (int u = 0; u < n[a]; u++) {
+          for (int w = 0; w < n[b]; w++) {
+            int[] q = new int[4];
+            for (int c = 0; c < 4; c++) {
+              int[] g = new int[3];
+              g[axis] = fixed;
+              g[a] = u + (c & 1);
+              g[b] = w + (c >> 1 & 1);
+              q[c] = (g[2] * p[1] + g[1]) * p[0] + g[0];
+            }
+            // Split on the diagonal the Kuhn tetrahedra use (through the lower corner)
+            int[][] halves = {{q[0], q[1], q[3]}, {q[0], q[2], q[3]}};
+            for (int[] tri : halves) {
+              faces[f * 3] = tri[0];
+              faces[f * 3 + 1] = tri[1];
+              faces[f * 3 + 2] = tri[2];
+              boundary[f++] = 2 * axis + side + 1;
+            }
+          }
+        }
+      }
+    }
+    return new TetMesh(xyz, tets, domains, faces, boundary);
+  }
+
+  public int nodeCount() {
+    return xyz.length / 3;
+  }
+
+  public int elementCount() {
+    return domains.length;
+  }
+
+  public int faceCount() {
+    return faceBoundary.length;
+  }
+
+  public double[] xyz() {
+    return xyz;
+  }
+
+  public int[] tets() {
+    return tets;
+  }
+
+  /** Geometry domain of each element. */
+  public int[] domains() {
+    return domains;
+  }
+
+  public int[] faces() {
+    return faces;
+  }
+
+  /** Geometry boundary of each face. */
+  public int[] faceBoundaries() {
+    return faceBoundary;
+  }
+
+  /** Highest domain number used. */
+  public int domainCount() {
+    return IntStream.of(domains).max().orElse(0);
+  }
+
+  /** Unsigned volume of element {@code e}. */
+  public double volume(int e) {
+    int a = tets[e * 4] * 3, b = tets[e * 4 + 1] * 3, c = tets[e * 4 + 2] * 3, d = tets[e * 4 + 3] * 3;
+    double ux = xyz[b] - xyz[a], uy = xyz[b + 1] - xyz[a + 1], uz = xyz[b + 2] - xyz[a + 2];
+    double vx = xyz[c] - xyz[a], vy = xyz[c + 1] - xyz[a + 1], vz = xyz[c + 2] - xyz[a + 2];
+    double wx = xyz[d] - xyz[a], wy = xyz[d + 1] - xyz[a + 1], wz = xyz[d + 2] - xyz[a + 2];
+    return Math.abs(ux * (vy * wz - vz * wy) - uy * (vx * wz - vz * wx) + uz * (vx * wy - vy * wx)) / 6.0;
+  }
+
+  public double totalVolume() {
+    return IntStream.range(0, elementCount()).parallel().mapToDouble(this::volume).sum();
+  }
+
+  public double faceArea(int f) {
+    int a = faces[f * 3] * 3, b = faces[f * 3 + 1] * 3, c = faces[f * 3 + 2] * 3;
+    double ux = xyz[b] - xyz[a], uy = xyz[b + 1] - xyz[a + 1], uz = xyz[b + 2] - xyz[a + 2];
+    double vx = xyz[c] - xyz[a], vy = xyz[c + 1] - xyz[a + 1], vz = xyz[c + 2] - xyz[a + 2];
+    double nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+    return 0.5 * Math.sqrt(nx * nx + ny * ny + nz * nz);
+  }
+
+  /** Start of each node's elements in {@link #nodeElements()}; {@code nodeCount() + 1} entries. */
+  public synchronized int[] elementStart() {
+    if (elementStart == null) {
+      incidence();
+    }
+    return elementStart;
+  }
+
+  /** Elements around each node, node by node, ascending. */
+  public synchronized int[] nodeElements() {
+    if (nodeElements == null) {
+      incidence();
+    }
+    return nodeElements;
+  }
+
+  private void incidence() {
+    int n = nodeCount();
+    int[] start = new int[n + 1];
+    for (int v : tets) {
+      start[v + 1]++;
+    }
+    for (int i = 0; i < n; i++) {
+      start[i + 1] += start[i];
+    }
+    int[] fill = Arrays.copyOf(start, n);
+    int[] elements = new int[tets.length];
+    for (int e = 0; e < elementCount(); e++) {
+      for (int c = 0; c < 4; c++) {
+        elements[fill[tets[e * 4 + c]]++] = e;
+      }
+    }
+    elementStart = start;
+    nodeElements = elements;
+  }
+
+  /** The element face {@code f} belongs to (the first found on an interior boundary), or -1. */
+  public int elementOf(int f) {
+    int a = faces[f * 3], b = faces[f * 3 + 1], c = faces[f * 3 + 2];
+    int[] start = elementStart();
+    int[] elements = nodeElements();
+    for (int k = start[a]; k < start[a + 1]; k++) {
+      int e = elements[k];
+      if (contains(e, b) && contains(e, c)) {
+        return e;
+      }
+    }
+    return -1;
+  }
+
+  private boolean contains(int e, int node) {
+    return tets[e * 4] == node || tets[e * 4 + 1] == node || tets[e * 4 + 2] == node || tets[e * 4 + 3] == node;
+  }
+
+  @Override
+  public String toString() {
+    return "TetMesh[" + nodeCount() + " nodes, " + elementCount() + " tetrahedra, " + faceCount() + " boundary faces]";
+  }
+}
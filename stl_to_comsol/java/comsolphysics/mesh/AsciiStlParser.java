@@ -0,0 +1,189 @@
+/*
+ * AsciiStlParser.java
+ * Streaming tokenizer for ASCII STL.
+ */
+
+package comsolphysics.mesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Byte-level ASCII STL reader. Only the {@code normal} and {@code vertex}
+ * keywords carry data; everything else ({@code solid}, {@code outer loop},
+ * {@code endfacet}, ...) is skipped token by token. Numbers are parsed in place
+ * from the read buffer, so no per-line or per-token strings are created.
+ */
+final class AsciiStlParser {
+
+  private static final int BUFFER_BYTES = 1 << 20;
+  private static final double[] POW10 = new double[23];
+
+  static {
+    POW10[0] = 1.0;
+    for (int i = 1; i < POW10.length; i++) {
+      POW10[i] = POW10[i - 1] * 10.0;
+    }
+  }
+
+  private final ReadableByteChannel channel;
+  private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_BYTES);
+  private boolean eof;
+
+  private float[] vertices = new float[9 * 1024];
+  private float[] normals = new float[3 * 1024];
+  private int vertexFloats;
+  private int normalFloats;
+
+  private AsciiStlParser(ReadableByteChannel channel) {
+    this.channel = channel;
+    buf.limit(0);
+  }
+
+  static StlMesh parse(ReadableByteChannel channel) throws IOException {
+    return new AsciiStlParser(channel).run();
+  }
+
+  private StlMesh run() throws IOException {
+    while (skipWhitespace()) {
+      if (matchKeyword("vertex")) {
+        if (vertexFloats + 3 > vertices.length) {
+          vertices = StlMesh.grow(vertices, vertexFloats + 3);
+        }
+        for (int k = 0; k < 3; k++) {
+          vertices[vertexFloats++] = (float) readNumber();
+        }
+      } else if (matchKeyword("normal")) {
+        if (normalFloats + 3 > normals.length) {
+          normals = StlMesh.grow(normals, normalFloats + 3);
+        }
+        for (int k = 0; k < 3; k++) {
+          normals[normalFloats++] = (float) readNumber();
+        }
+      } else {
+        skipToken();
+      }
+    }
+    int triangles = vertexFloats / 9;
+    if (normalFloats < triangles * 3) {
+      normals = StlMesh.grow(normals, triangles * 3);
+    }
+    return new StlMesh(vertices, normals, triangles);
+  }
+
+  /** Make at least {@code n} bytes available; returns false at end of input. */
+  private boolean ensure(int n) throws IOException {
+    while (buf.remaining() < n && !eof) {
+      buf.compact();
+      int read = channel.read(buf);
+      if (read < 0) {
+        eof = true;
+      }
+      buf.flip();
+    }
+    return buf.remaining() >= n;
+  }
+
+  private boolean skipWhitespace() throws IOException {
+    while (ensure(1)) {
+      byte b = buf.get(buf.position());
+      if (b > ' ') {
+        return true;
+      }
+      buf.position(buf.position() + 1);
+    }
+    return false;
+  }
+
+  private void skipToken() throws IOException {
+    while (ensure(1) && buf.get(buf.position()) > ' ') {
+      buf.position(buf.position() + 1);
+    }
+  }
+
+  private boolean matchKeyword(String keyword) throws IOException {
+    int len = keyword.length();
+    if (!ensure(len + 1) && !ensure(len)) {
+      return false;
+    }
+    int p = buf.position();
+    for (int i = 0; i < len; i++) {
+      if (buf.get(p + i) != keyword.charAt(i)) {
+        return false;
+      }
+    }
+    if (buf.remaining() > len && buf.get(p + len) > ' ') {
+      return false;
+    }
+    buf.position(p + len);
+    return true;
+  }
+
+  /** Parse a decimal floating point token such as {@code -1.25e-03}. */
+  private double readNumber() throws IOException {
+    if (!skipWhitespace()) {
+      throw new IOException("Unexpected end of ASCII STL while reading a number");
+    }
+    // Tokens are short; refill once so the whole number sits in the buffer.
+    ensure(64);
+    boolean negative = false;
+    byte b = buf.get();
+    if (b == '-' || b == '+') {
+      negative = b == '-';
+      b = next();
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    while (b >= '0' && b <= '9') {
+      if (digits < 18) {
+        mantissa = mantissa * 10 + (b - '0');
+        digits++;
+      } else {
+        exponent++;
+      }
+      b = next();
+    }
+    if (b == '.') {
+      b = next();
+      while (b >= '0' && b <= '9') {
+        if (digits < 18) {
+          mantissa = mantissa * 10 + (b - '0');
+          digits++;
+          exponent--;
+        }
+        b = next();
+      }
+    }
+    if (b == 'e' || b == 'E') {
+      b = next();
+      boolean expNegative = false;
+      if (b == '-' || b == '+') {
+        expNegative = b == '-';
+        b = next();
+      }
+      int e = 0;
+      while (b >= '0' && b <= '9') {
+        e = e * 10 + (b - '0');
+        b = next();
+      }
+      exponent += expNegative ? -e : e;
+    }
+    if (b > ' ') {
+      throw new IOException("Malformed number in ASCII STL near byte '" + (char) b + "'");
+    }
+    double value = mantissa;
+    if (exponent < 0) {
+      value = -exponent < POW10.length ? value / POW10[-exponent] : value * Math.pow(10, exponent);
+    } else if (exponent > 0) {
+      value = exponent < POW10.length ? value * POW10[exponent] : value * Math.pow(10, exponent);
+    }
+    return negative ? -value : value;
+  }
+
+  /** Consume and return the next byte, or a space at end of input. */
+  private byte next() {
+    return buf.hasRemaining() ? buf.get() : (byte) ' ';
+  }
+}
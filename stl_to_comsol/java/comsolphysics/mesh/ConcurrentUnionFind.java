@@ -0,0 +1,61 @@
+/*
+ * ConcurrentUnionFind.java
+ * Lock-free disjoint sets over dense int ids.
+ */
+
+package comsolphysics.mesh;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Wait-free find / lock-free union over {@code 0..n-1}.
+ *
+ * <p>Union always links the larger root under the smaller one with a CAS on
+ * the root's parent slot, so roots only ever decrease and concurrent unions
+ * cannot form cycles. Find uses path halving, also via CAS; a lost race just
+ * skips that shortcut.
+ */
+final class ConcurrentUnionFind {
+
+  private final AtomicIntegerArray parent;
+
+  ConcurrentUnionFind(int n) {
+    parent = new AtomicIntegerArray(n);
+    for (int i = 0; i < n; i++) {
+      parent.set(i, i);
+    }
+  }
+
+  int find(int x) {
+    while (true) {
+      int p = parent.get(x);
+      if (p == x) {
+        return x;
+      }
+      int gp = parent.get(p);
+      if (gp != p) {
+        parent.compareAndSet(x, p, gp);
+      }
+      x = gp;
+    }
+  }
+
+  void union(int a, int b) {
+    while (true) {
+      a = find(a);
+      b = find(b);
+      if (a == b) {
+        return;
+      }
+      if (a < b) {
+        int t = a;
+        a = b;
+        b = t;
+      }
+      // a is the larger root; hang it under b if it is still a root
+      if (parent.compareAndSet(a, a, b)) {
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,386 @@
+/*
+ * Delaunay3.java
+ * Incremental Bowyer-Watson Delaunay tetrahedralization on flat arrays.
+ */
+
+package comsolphysics.mesh;
+
+import java.util.Arrays;
+
+/**
+ * Delaunay tetrahedralization of a point set by Bowyer-Watson insertion:
+ * each point is located by walking from the last tetrahedron created, the
+ * tetrahedra whose circumsphere contains it are removed, and the cavity is
+ * re-filled with a fan from the point. Points should be inserted in a
+ * spatially coherent order (see {@link DelaunayMesher}) so the walks stay
+ * short.
+ *
+ * <p>Tetrahedra are positively oriented; face {@code k} is the one opposite
+ * corner {@code k}, and {@code neighbor[4 t + k]} the tetrahedron across
+ * it (or -1). Circumspheres are kept per tetrahedron so an in-sphere test
+ * is one distance. Predicates are in plain double precision; callers jitter
+ * lattice points so that exact co-spherical sets do not occur. A cavity
+ * that is not star-shaped from the new point (round-off on near-degenerate
+ * spheres) is grown until it is, which keeps the mesh valid at the price of
+ * an occasional non-Delaunay face.
+ *
+ * <p>Four vertices of an enclosing tetrahedron follow the input points;
+ * {@link #isReal} tells whether a tetrahedron avoids them.
+ */
+final class Delaunay3 {
+
+  /** Corners of face k, ordered so that corner k lies on the positive side. */
+  static final int[][] FACES = {{1, 3, 2}, {0, 2, 3}, {0, 3, 1}, {0, 1, 2}};
+
+  private final double[] xyz;
+  private final int pointCount;
+  private int[] vertex;
+  private int[] neighbor;
+  private double[] sphere;
+  private int[] mark;
+  private int stamp;
+  private int tetCount;
+  private int[] free = new int[64];
+  private int freeCount;
+  private int last;
+  private long seed = 0x9E3779B97F4A7C15L;
+
+  // Reused per insertion
+  private int[] cavity = new int[64];
+  private int cavitySize;
+  private int[] stack = new int[64];
+  private int[] boundaryTet = new int[64];
+  private int[] boundaryFace = new int[64];
+  private int boundarySize;
+  private long[] edgeKeys = new long[256];
+  private int[] edgeValues = new int[256];
+
+  /**
+   * @param xyz coordinates of {@code pointCount} points followed by room for
+   *     four more, which this constructor fills with an enclosing tetrahedron
+   */
+  Delaunay3(double[] xyz, int pointCount) {
+    if (xyz.length < (pointCount + 4) * 3) {
+      throw new IllegalArgumentException("xyz needs room for 4 enclosing vertices");
+    }
+    this.xyz = xyz;
+    this.pointCount = pointCount;
+    int capacity = Math.max(64, pointCount * 7);
+    vertex = new int[capacity * 4];
+    neighbor = new int[capacity * 4];
+    sphere = new double[capacity * 4];
+    mark = new int[capacity];
+    enclose();
+  }
+
+  private void enclose() {
+    double[] lo = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+    double[] hi = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+    for (int i = 0; i < pointCount; i++) {
+      for (int a = 0; a < 3; a++) {
+        lo[a] = Math.min(lo[a], xyz[i * 3 + a]);
+        hi[a] = Math.max(hi[a], xyz[i * 3 + a]);
+      }
+    }
+    if (pointCount == 0) {
+      Arrays.fill(lo, 0);
+      Arrays.fill(hi, 1);
+    }
+    double size = Math.max(hi[0] - lo[0], Math.max(hi[1] - lo[1], hi[2] - lo[2]));
+    double r = Math.max(size, 1e-9) * 20;
+    double cx = (lo[0] + hi[0]) / 2, cy = (lo[1] + hi[1]) / 2, cz = (lo[2] + hi[2]) / 2;
+    double[][] corners = {{r, r, r}, {r, -r, -r}, {-r, r, -r}, {-r, -r, r}};
+    int s = pointCount;
+    for (int k = 0; k < 4; k++) {
+      xyz[(s + k) * 3] = cx + corners[k][0];
+      xyz[(s + k) * 3 + 1] = cy + corners[k][1];
+      xyz[(s + k) * 3 + 2] = cz + corners[k][2];
+    }
+    int t = allocate();
+    if (orient(s, s + 1, s + 2, s + 3) > 0) {
+      setVertices(t, s, s + 1, s + 2, s + 3);
+    } else {
+      setVertices(t, s, s + 2, s + 1, s + 3);
+    }
+    Arrays.fill(neighbor, 0, 4, -1);
+    last = t;
+  }
+
+  /** Insert point {@code p}; returns false if it coincides with a vertex already there. */
+  boolean insert(int p) {
+    int t = locate(p);
+    for (int k = 0; k < 4; k++) {
+      int v = vertex[t * 4 + k];
+      if (distance2(v, p) == 0) {
+        return false;
+      }
+    }
+    stamp++;
+    cavitySize = 0;
+    addToCavity(t);
+    int top = 0;
+    stack = ensure(stack, 1);
+    stack[top++] = t;
+    while (top > 0) {
+      int c = stack[--top];
+      for (int k = 0; k < 4; k++) {
+        int nb = neighbor[c * 4 + k];
+        if (nb < 0 || Math.abs(mark[nb]) == stamp) {
+          continue;
+        }
+        if (inSphere(nb, p)) {
+          addToCavity(nb);
+          stack = ensure(stack, top + 1);
+          stack[top++] = nb;
+        } else {
+          mark[nb] = -stamp;
+        }
+      }
+    }
+    // Grow the cavity until every boundary face sees p on its inner side
+    boolean grown;
+    do {
+      grown = false;
+      boundarySize = 0;
+      for (int i = 0; i < cavitySize && !grown; i++) {
+        int c = cavity[i];
+        for (int k = 0; k < 4; k++) {
+          int nb = neighbor[c * 4 + k];
+          if (nb >= 0 && mark[nb] == stamp) {
+            continue;
+          }
+          int[] f = FACES[k];
+          if (orient(vertex[c * 4 + f[0]], vertex[c * 4 + f[1]], vertex[c * 4 + f[2]], p) <= 0) {
+            if (nb < 0) {
+              throw new IllegalStateException("Point " + p + " lies outside the enclosing tetrahedron");
+            }
+            addToCavity(nb);
+            grown = true;
+            break;
+          }
+          boundaryTet = ensure(boundaryTet, boundarySize + 1);
+          boundaryFace = ensure(boundaryFace, boundarySize + 1);
+          boundaryTet[boundarySize] = c;
+          boundaryFace[boundarySize++] = k;
+        }
+      }
+    } while (grown);
+
+    fill(p);
+    for (int i = 0; i < cavitySize; i++) {
+      release(cavity[i]);
+    }
+    return true;
+  }
+
+  /** Re-fill the cavity with one tetrahedron per boundary face, joined to each other and to the outside. */
+  private void fill(int p) {
+    int slots = Integer.highestOneBit(Math.max(8, boundarySize * 3)) * 4;
+    if (edgeKeys.length < slots) {
+      edgeKeys = new long[slots];
+      edgeValues = new int[slots];
+    }
+    Arrays.fill(edgeKeys, 0, slots, -1L);
+    int mask = slots - 1;
+    for (int b = 0; b < boundarySize; b++) {
+      int c = boundaryTet[b];
+      int k = boundaryFace[b];
+      int[] f = FACES[k];
+      int a0 = vertex[c * 4 + f[0]], a1 = vertex[c * 4 + f[1]], a2 = vertex[c * 4 + f[2]];
+      int outside = neighbor[c * 4 + k];
+      int t = allocate();
+      setVertices(t, a0, a1, a2, p);
+      neighbor[t * 4 + 3] = outside;
+      if (outside >= 0) {
+        for (int j = 0; j < 4; j++) {
+          if (neighbor[outside * 4 + j] == c) {
+            neighbor[outside * 4 + j] = t;
+            break;
+          }
+        }
+      }
+      // Faces 0..2 of the new tetrahedron contain p and one edge of the boundary face
+      int[] corners = {a0, a1, a2};
+      for (int j = 0; j < 3; j++) {
+        int u = corners[(j + 1) % 3], w = corners[(j + 2) % 3];
+        long key = ((long) Math.min(u, w) << 32) | Math.max(u, w);
+        int h = (int) (mix(key) & mask);
+        while (edgeKeys[h] != -1L && edgeKeys[h] != key) {
+          h = (h + 1) & mask;
+        }
+        if (edgeKeys[h] == key) {
+          int other = edgeValues[h];
+          neighbor[t * 4 + j] = other >> 2;
+          neighbor[(other >> 2) * 4 + (other & 3)] = t;
+          edgeKeys[h] = -2L;
+        } else {
+          edgeKeys[h] = key;
+          edgeValues[h] = t << 2 | j;
+          neighbor[t * 4 + j] = -1;
+        }
+      }
+      last = t;
+    }
+  }
+
+  private static long mix(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return key;
+  }
+
+  /** A tetrahedron containing {@code p}, by a randomized visibility walk. */
+  private int locate(int p) {
+    int t = last;
+    int limit = 4 * (tetCount + 16);
+    for (int step = 0; step < limit; step++) {
+      seed ^= seed << 13;
+      seed ^= seed >>> 7;
+      seed ^= seed << 17;
+      int start = (int) (seed & 3);
+      boolean inside = true;
+      for (int i = 0; i < 4; i++) {
+        int k = (start + i) & 3;
+        int[] f = FACES[k];
+        if (orient(vertex[t * 4 + f[0]], vertex[t * 4 + f[1]], vertex[t * 4 + f[2]], p) < 0) {
+          int nb = neighbor[t * 4 + k];
+          if (nb >= 0) {
+            t = nb;
+            inside = false;
+            break;
+          }
+        }
+      }
+      if (inside) {
+        return t;
+      }
+    }
+    // Walk did not settle (round-off); any tetrahedron whose sphere holds p seeds the cavity
+    for (int t2 = 0; t2 < tetCount; t2++) {
+      if (vertex[t2 * 4] >= 0 && inSphere(t2, p)) {
+        return t2;
+      }
+    }
+    throw new IllegalStateException("Cannot locate point " + p);
+  }
+
+  private void addToCavity(int t) {
+    cavity = ensure(cavity, cavitySize + 1);
+    cavity[cavitySize++] = t;
+    mark[t] = stamp;
+  }
+
+  private int allocate() {
+    int t;
+    if (freeCount > 0) {
+      t = free[--freeCount];
+    } else {
+      t = tetCount++;
+      if (t >= mark.length) {
+        int capacity = mark.length * 2;
+        vertex = Arrays.copyOf(vertex, capacity * 4);
+        neighbor = Arrays.copyOf(neighbor, capacity * 4);
+        sphere = Arrays.copyOf(sphere, capacity * 4);
+        mark = Arrays.copyOf(mark, capacity);
+      }
+    }
+    mark[t] = 0;
+    return t;
+  }
+
+  private void release(int t) {
+    vertex[t * 4] = -1;
+    free = ensure(free, freeCount + 1);
+    free[freeCount++] = t;
+  }
+
+  private void setVertices(int t, int a, int b, int c, int d) {
+    vertex[t * 4] = a;
+    vertex[t * 4 + 1] = b;
+    vertex[t * 4 + 2] = c;
+    vertex[t * 4 + 3] = d;
+    circumsphere(t);
+  }
+
+  private void circumsphere(int t) {
+    int a = vertex[t * 4] * 3, b = vertex[t * 4 + 1] * 3, c = vertex[t * 4 + 2] * 3, d = vertex[t * 4 + 3] * 3;
+    double ux = xyz[b] - xyz[a], uy = xyz[b + 1] - xyz[a + 1], uz = xyz[b + 2] - xyz[a + 2];
+    double vx = xyz[c] - xyz[a], vy = xyz[c + 1] - xyz[a + 1], vz = xyz[c + 2] - xyz[a + 2];
+    double wx = xyz[d] - xyz[a], wy = xyz[d + 1] - xyz[a + 1], wz = xyz[d + 2] - xyz[a + 2];
+    double[] s = center(ux, uy, uz, vx, vy, vz, wx, wy, wz);
+    sphere[t * 4] = xyz[a] + s[0];
+    sphere[t * 4 + 1] = xyz[a + 1] + s[1];
+    sphere[t * 4 + 2] = xyz[a + 2] + s[2];
+    sphere[t * 4 + 3] = s[3];
+  }
+
+  /** Circumcenter offset from the first corner, and squared radius, of edges u, v, w. */
+  static double[] center(double ux, double uy, double uz, double vx, double vy, double vz,
+                         double wx, double wy, double wz) {
+    double uu = ux * ux + uy * uy + uz * uz;
+    double vv = vx * vx + vy * vy + vz * vz;
+    double ww = wx * wx + wy * wy + wz * wz;
+    // v x w, w x u, u x v
+    double ax = vy * wz - vz * wy, ay = vz * wx - vx * wz, az = vx * wy - vy * wx;
+    double bx = wy * uz - wz * uy, by = wz * ux - wx * uz, bz = wx * uy - wy * ux;
+    double cx = uy * vz - uz * vy, cy = uz * vx - ux * vz, cz = ux * vy - uy * vx;
+    double det = 2 * (ux * ax + uy * ay + uz * az);
+    if (det == 0) {
+      return new double[] {0, 0, 0, Double.POSITIVE_INFINITY};
+    }
+    double x = (uu * ax + vv * bx + ww * cx) / det;
+    double y = (uu * ay + vv * by + ww * cy) / det;
+    double z = (uu * az + vv * bz + ww * cz) / det;
+    return new double[] {x, y, z, x * x + y * y + z * z};
+  }
+
+  private boolean inSphere(int t, int p) {
+    double dx = xyz[p * 3] - sphere[t * 4];
+    double dy = xyz[p * 3 + 1] - sphere[t * 4 + 1];
+    double dz = xyz[p * 3 + 2] - sphere[t * 4 + 2];
+    return dx * dx + dy * dy + dz * dz < sphere[t * 4 + 3];
+  }
+
+  /** Six times the signed volume of (a, b, c, d); positive when d is on the positive side of abc. */
+  double orient(int a, int b, int c, int d) {
+    a *= 3;
+    b *= 3;
+    c *= 3;
+    d *= 3;
+    double ux = xyz[b] - xyz[a], uy = xyz[b + 1] - xyz[a + 1], uz = xyz[b + 2] - xyz[a + 2];
+    double vx = xyz[c] - xyz[a], vy = xyz[c + 1] - xyz[a + 1], vz = xyz[c + 2] - xyz[a + 2];
+    double wx = xyz[d] - xyz[a], wy = xyz[d + 1] - xyz[a + 1], wz = xyz[d + 2] - xyz[a + 2];
+    return ux * (vy * wz - vz * wy) - uy * (vx * wz - vz * wx) + uz * (vx * wy - vy * wx);
+  }
+
+  private double distance2(int a, int b) {
+    double dx = xyz[a * 3] - xyz[b * 3], dy = xyz[a * 3 + 1] - xyz[b * 3 + 1], dz = xyz[a * 3 + 2] - xyz[b * 3 + 2];
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  private static int[] ensure(int[] a, int size) {
+    return size <= a.length ? a : Arrays.copyOf(a, Math.max(size, a.length * 2));
+  }
+
+  /** Slots in use, live or free; live ones have {@code vertices()[4 t] >= 0}. */
+  int slotCount() {
+    return tetCount;
+  }
+
+  int[] vertices() {
+    return vertex;
+  }
+
+  /** Circumcenter and squared radius of each slot, 4 doubles per slot. */
+  double[] spheres() {
+    return sphere;
+  }
+
+  /** Whether slot {@code t} is live and has none of the enclosing vertices. */
+  boolean isReal(int t) {
+    int v = vertex[t * 4];
+    return v >= 0 && v < pointCount && vertex[t * 4 + 1] < pointCount
+        && vertex[t * 4 + 2] < pointCount && vertex[t * 4 + 3] < pointCount;
+  }
+}
@@ -0,0 +1,672 @@
+/*
+ * DelaunayMesher.java
+ * Tetrahedral volume mesh of a scanned surface without COMSOL.
+ */
+
+package comsolphysics.mesh;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+/**
+ * Meshes the volume a triangle surface encloses with linear tetrahedra,
+ * sized like a COMSOL {@code FreeTet} with custom {@code hmax}/{@code hmin}:
+ * element edges up to about {@code hmax}, and surface detail finer than
+ * {@code hmin} merged away.
+ *
+ * <p>Points are placed on the surface (the input vertices thinned to
+ * {@code hmin}, plus samples about {@code hmax} apart) and on a
+ * body-centred cubic lattice of spacing {@code hmax} that is kept at least
+ * half a cell clear of the surface. The points are tetrahedralized by
+ * Bowyer-Watson insertion in Morton order ({@link Delaunay3}), and the
+ * tetrahedra inside the surface are kept; inside is decided by the
+ * generalized winding number, so scans with holes still mesh. This carves
+ * the surface out of the Delaunay mesh rather than recovering it exactly,
+ * so boundary faces follow the scan to within the sample spacing.
+ *
+ * <p>Insertion runs in parallel across slabs along the longest axis. Each
+ * slab is triangulated with a margin of its neighbours' points, and keeps
+ * the tetrahedra whose circumcentre lies in the slab and whose
+ * circumsphere stays within the margin; those are Delaunay in the whole
+ * point set, so the slabs fit together without stitching. If the pieces do
+ * not close up around the kept volume, the mesh is redone in one piece.
+ *
+ * <pre>
+ *   java comsolphysics.mesh.DelaunayMesher assets/room2.stl --hmax 0.3 --hmin 0.1
+ * </pre>
+ */
+public final class DelaunayMesher {
+
+  /** Points per slab below which more slabs do not pay for their margins. */
+  static final int PARTITION_POINTS = 20_000;
+  /** Slab margin, in hmax. */
+  private static final double MARGIN = 4.0;
+  /** Surface sample spacing and thinning radius, in hmax. */
+  private static final double SAMPLE = 0.5;
+  private static final double SPACING = 0.7;
+  /** Lattice points closer than this to the surface are dropped, in hmax. */
+  private static final double CLEARANCE = 0.55;
+  /** Lattice points outside the surface are kept this close to it, in hmax. */
+  private static final double BAND = 2.0;
+  /** Relative jitter that keeps the lattice out of co-spherical configurations. */
+  private static final double JITTER = 1e-4;
+  /** Volume over cubed longest edge below which a tetrahedron on the surface is a sliver. */
+  private static final double SLIVER = 1e-3;
+
+  private static final byte SURFACE = 0;
+  private static final byte INTERIOR = 1;
+  private static final byte EXTERIOR = 2;
+
+  private DelaunayMesher() {
+  }
+
+  /** Mesh with {@link #defaultPartitions} slabs. */
+  public static TetMeshBuffer mesh(IndexedMesh surface, int[] boundaryIds, double hmax, double hmin) {
+    return mesh(surface, boundaryIds, hmax, hmin, defaultPartitions());
+  }
+
+  /**
+   * One slab per worker of the fork/join pool the caller runs on, such as a
+   * {@code JobScheduler} stage's; outside any pool, of the common pool. The
+   * parallel loops of a mesh run on that same pool.
+   */
+  public static int defaultPartitions() {
+    ForkJoinPool pool = ForkJoinTask.getPool();
+    return (pool != null ? pool : ForkJoinPool.commonPool()).getParallelism();
+  }
+
+  /**
+   * Mesh the inside of {@code surface} in domain 1. Each boundary face takes
+   * {@code boundaryIds[t]} of the surface triangle {@code t} nearest to it,
+   * or 1 if {@code boundaryIds} is null. At most {@code partitions} slabs
+   * are meshed in parallel, fewer when the point count does not warrant
+   * them.
+   */
+  public static TetMeshBuffer mesh(IndexedMesh surface, int[] boundaryIds, double hmax, double hmin,
+                                   int partitions) {
+    if (!(hmax > 0) || hmin < 0 || hmin > hmax) {
+      throw new IllegalArgumentException("Need 0 <= hmin <= hmax and hmax > 0: hmax=" + hmax + ", hmin=" + hmin);
+    }
+    if (boundaryIds != null && boundaryIds.length < surface.triangleCount()) {
+      throw new IllegalArgumentException("Need one boundary id per surface triangle");
+    }
+    if (surface.triangleCount() == 0) {
+      throw new IllegalArgumentException("Empty surface");
+    }
+    SurfaceTree tree = new SurfaceTree(surface);
+    Points points = new Points();
+    sampleSurface(surface, hmax, hmin, points);
+    fillLattice(surface, tree, hmax, points);
+    int n = points.count;
+    double[] xyz = Arrays.copyOf(points.xyz, n * 3);
+    byte[] kind = Arrays.copyOf(points.kind, n);
+    for (int i = 0; i < n * 3; i++) {
+      xyz[i] += (unit(i) * 2 - 1) * JITTER * hmax;
+    }
+
+    int slabs = Math.max(1, Math.min(partitions, n / PARTITION_POINTS));
+    int[] tets = triangulate(xyz, n, slabs, hmax);
+    int[] across = new int[tets.length];
+    boolean overlap = pair(tets, n, across);
+    boolean[] keep = carve(tets, xyz, kind, tree);
+    if (slabs > 1 && (overlap || !closed(keep, across))) {
+      System.out.println("Delaunay mesher: " + slabs + " slabs do not fit together; meshing in one piece");
+      tets = triangulate(xyz, n, 1, hmax);
+      across = new int[tets.length];
+      pair(tets, n, across);
+      keep = carve(tets, xyz, kind, tree);
+    }
+    return assemble(tets, keep, across, xyz, n, tree, boundaryIds, hmax, hmin);
+  }
+
+  /**
+   * Mesh an STL scan: welded as {@link VertexWelder} does, with one
+   * boundary per {@link SurfaceSegmenter} patch (numbered from 1).
+   */
+  public static TetMeshBuffer mesh(Path scan, double hmax, double hmin, int partitions) throws IOException {
+    IndexedMesh surface = VertexWelder.weld(StlMesh.read(scan));
+    int[] patches = SurfaceSegmenter.segment(surface).patchOfTriangle();
+    int[] boundaryIds = new int[patches.length];
+    for (int t = 0; t < patches.length; t++) {
+      boundaryIds[t] = patches[t] + 1;
+    }
+    return mesh(surface, boundaryIds, hmax, hmin, partitions);
+  }
+
+  /** Growable coordinate list with a point kind each. */
+  private static final class Points {
+    double[] xyz = new double[3 * 1024];
+    byte[] kind = new byte[1024];
+    int count;
+
+    void add(double x, double y, double z, byte k) {
+      if (count == kind.length) {
+        xyz = Arrays.copyOf(xyz, xyz.length * 2);
+        kind = Arrays.copyOf(kind, kind.length * 2);
+      }
+      xyz[count * 3] = x;
+      xyz[count * 3 + 1] = y;
+      xyz[count * 3 + 2] = z;
+      kind[count++] = k;
+    }
+  }
+
+  /** Uniform hash grid over accepted points for nearest-distance rejection. */
+  private static final class PointGrid {
+    private final double cell;
+    private final Points points;
+    private final Map<Long, int[]> cells = new HashMap<>();
+
+    PointGrid(double cell, Points points) {
+      this.cell = cell;
+      this.points = points;
+    }
+
+    private static long key(long i, long j, long k) {
+      return (i & 0x1FFFFF) << 42 | (j & 0x1FFFFF) << 21 | (k & 0x1FFFFF);
+    }
+
+    /** Add (x, y, z) as a surface point unless an accepted point lies within {@code radius}. */
+    boolean offer(double x, double y, double z, double radius) {
+      long i = (long) Math.floor(x / cell), j = (long) Math.floor(y / cell), k = (long) Math.floor(z / cell);
+      double r2 = radius * radius;
+      for (long a = i - 1; a <= i + 1; a++) {
+        for (long b = j - 1; b <= j + 1; b++) {
+          for (long c = k - 1; c <= k + 1; c++) {
+            int[] list = cells.get(key(a, b, c));
+            if (list == null) {
+              continue;
+            }
+            for (int m = 1; m <= list[0]; m++) {
+              int p = list[m] * 3;
+              double dx = points.xyz[p] - x, dy = points.xyz[p + 1] - y, dz = points.xyz[p + 2] - z;
+              if (dx * dx + dy * dy + dz * dz < r2 || (r2 == 0 && dx == 0 && dy == 0 && dz == 0)) {
+                return false;
+              }
+            }
+          }
+        }
+      }
+      long key = key(i, j, k);
+      int[] list = cells.get(key);
+      if (list == null) {
+        list = new int[4];
+      } else if (list[0] + 1 == list.length) {
+        list = Arrays.copyOf(list, list.length * 2);
+      }
+      list[++list[0]] = points.count;
+      cells.put(key, list);
+      points.add(x, y, z, SURFACE);
+      return true;
+    }
+  }
+
+  /** Input vertices thinned to hmin, then samples on each triangle thinned to about hmax. */
+  private static void sampleSurface(IndexedMesh surface, double hmax, double hmin, Points points) {
+    float[] p = surface.positions();
+    int[] idx = surface.indices();
+    PointGrid grid = new PointGrid(Math.max(hmin, SPACING * hmax), points);
+    for (int v = 0; v < surface.vertexCount(); v++) {
+      grid.offer(p[v * 3], p[v * 3 + 1], p[v * 3 + 2], hmin);
+    }
+    double step = SAMPLE * hmax;
+    for (int t = 0; t < surface.triangleCount(); t++) {
+      int a = idx[t * 3] * 3, b = idx[t * 3 + 1] * 3, c = idx[t * 3 + 2] * 3;
+      double abx = p[b] - p[a], aby = p[b + 1] - p[a + 1], abz = p[b + 2] - p[a + 2];
+      double acx = p[c] - p[a], acy = p[c + 1] - p[a + 1], acz = p[c + 2] - p[a + 2];
+      double bcx = p[c] - p[b], bcy = p[c + 1] - p[b + 1], bcz = p[c + 2] - p[b + 2];
+      double longest = Math.sqrt(Math.max(abx * abx + aby * aby + abz * abz,
+          Math.max(acx * acx + acy * acy + acz * acz, bcx * bcx + bcy * bcy + bcz * bcz)));
+      int m = (int) Math.ceil(longest / step);
+      for (int i = 0; i <= m; i++) {
+        for (int j = 0; i + j <= m; j++) {
+          if (i + j == 0 || i == m || j == m) {
+            continue;
+          }
+          double u = (double) i / m, w = (double) j / m;
+          grid.offer(p[a] + u * abx + w * acx, p[a + 1] + u * aby + w * acy, p[a + 2] + u * abz + w * acz,
+              SPACING * hmax);
+        }
+      }
+    }
+  }
+
+  /**
+   * Body-centred cubic lattice over the surface's box plus two cells,
+   * classified in parallel. Neighbouring lattice points are 0.87 hmax
+   * apart, so two that both keep their clearance cannot have the surface
+   * between them.
+   */
+  private static void fillLattice(IndexedMesh surface, SurfaceTree tree, double hmax, Points points) {
+    float[] box = surface.bounds();
+    double[] lo = new double[3];
+    int[] cells = new int[3];
+    for (int a = 0; a < 3; a++) {
+      lo[a] = box[a] - 2 * hmax;
+      cells[a] = (int) Math.ceil((box[a + 3] + 2 * hmax - lo[a]) / hmax);
+    }
+    long total = 2L * (cells[0] + 1) * (cells[1] + 1) * (cells[2] + 1);
+    if (total > Integer.MAX_VALUE / 3) {
+      throw new IllegalArgumentException("hmax " + hmax + " is too small for a surface this size");
+    }
+    int count = (int) total;
+    int nx = cells[0] + 1, ny = cells[1] + 1;
+    byte[] kind = new byte[count];
+    double clearance = CLEARANCE * hmax;
+    double reach = BAND * hmax;
+    IntStream.range(0, count).parallel().forEach(i -> {
+      double[] q = lattice(i, lo, nx, ny, hmax);
+      double[] d2 = new double[1];
+      if (q[0] > lo[0] + cells[0] * hmax || q[1] > lo[1] + cells[1] * hmax || q[2] > lo[2] + cells[2] * hmax) {
+        kind[i] = -1;
+        return;
+      }
+      boolean near = tree.nearest(q[0], q[1], q[2], reach, d2) >= 0;
+      if (near && d2[0] < clearance * clearance) {
+        kind[i] = -1;
+      } else if (Math.abs(tree.winding(q[0], q[1], q[2])) >= 0.5) {
+        kind[i] = INTERIOR;
+      } else {
+        // Outside, only a band along the surface is needed to carve against
+        kind[i] = near ? EXTERIOR : -1;
+      }
+    });
+    for (int i = 0; i < count; i++) {
+      if (kind[i] >= 0) {
+        double[] q = lattice(i, lo, nx, ny, hmax);
+        points.add(q[0], q[1], q[2], kind[i]);
+      }
+    }
+  }
+
+  /** Lattice point i: even i are cube corners, odd i cube centres. */
+  private static double[] lattice(int i, double[] lo, int nx, int ny, double h) {
+    int cell = i >> 1;
+    double shift = (i & 1) * 0.5 * h;
+    int x = cell % nx, y = (cell / nx) % ny, z = cell / (nx * ny);
+    return new double[] {lo[0] + x * h + shift, lo[1] + y * h + shift, lo[2] + z * h + shift};
+  }
+
+  /** Deterministic uniform value in [0, 1) for index i. */
+  private static double unit(long i) {
+    long z = i * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    z ^= z >>> 31;
+    return (z >>> 11) * 0x1.0p-53;
+  }
+
+  /**
+   * Delaunay tetrahedra of the n points, 4 global indices each, from
+   * {@code slabs} independent triangulations.
+   */
+  static int[] triangulate(double[] xyz, int n, int slabs, double hmax) {
+    int axis = 0;
+    double[] lo = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+    double[] hi = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+    for (int i = 0; i < n; i++) {
+      for (int a = 0; a < 3; a++) {
+        lo[a] = Math.min(lo[a], xyz[i * 3 + a]);
+        hi[a] = Math.max(hi[a], xyz[i * 3 + a]);
+      }
+    }
+    for (int a = 1; a < 3; a++) {
+      if (hi[a] - lo[a] > hi[axis] - lo[axis]) {
+        axis = a;
+      }
+    }
+    // Slab walls at quantiles, so slabs get equal point counts
+    double[] wall = new double[slabs + 1];
+    double[] along = new double[n];
+    for (int i = 0; i < n; i++) {
+      along[i] = xyz[i * 3 + axis];
+    }
+    Arrays.parallelSort(along);
+    wall[0] = Double.NEGATIVE_INFINITY;
+    wall[slabs] = Double.POSITIVE_INFINITY;
+    for (int s = 1; s < slabs; s++) {
+      wall[s] = along[(int) ((long) n * s / slabs)];
+    }
+    double margin = MARGIN * hmax;
+    int ax = axis;
+    int[][] pieces = new int[slabs][];
+    IntStream.range(0, slabs).parallel().forEach(s -> {
+      pieces[s] = slab(xyz, n, ax, wall[s], wall[s + 1], slabs == 1 ? Double.POSITIVE_INFINITY : margin, lo, hi);
+    });
+    int total = 0;
+    for (int[] piece : pieces) {
+      total += piece.length;
+    }
+    int[] tets = new int[total];
+    int at = 0;
+    for (int[] piece : pieces) {
+      System.arraycopy(piece, 0, tets, at, piece.length);
+      at += piece.length;
+    }
+    return tets;
+  }
+
+  /** The Delaunay tetrahedra owned by the slab [from, to) along axis, triangulated with its margin. */
+  private static int[] slab(double[] xyz, int n, int axis, double from, double to, double margin,
+                            double[] lo, double[] hi) {
+    // Points of the slab and its margin, in Morton order for short walks
+    long[] keys = new long[n];
+    int count = 0;
+    double[] scale = new double[3];
+    for (int a = 0; a < 3; a++) {
+      scale[a] = hi[a] > lo[a] ? 1023 / (hi[a] - lo[a]) : 0;
+    }
+    for (int i = 0; i < n; i++) {
+      double c = xyz[i * 3 + axis];
+      if (c >= from - margin && c < to + margin) {
+        long code = 0;
+        for (int a = 0; a < 3; a++) {
+          code |= spread((int) ((xyz[i * 3 + a] - lo[a]) * scale[a])) << a;
+        }
+        keys[count++] = code << 32 | i;
+      }
+    }
+    Arrays.parallelSort(keys, 0, count);
+    int[] global = new int[count];
+    double[] local = new double[(count + 4) * 3];
+    for (int j = 0; j < count; j++) {
+      int i = (int) keys[j];
+      global[j] = i;
+      System.arraycopy(xyz, i * 3, local, j * 3, 3);
+    }
+    Delaunay3 dt = new Delaunay3(local, count);
+    for (int j = 0; j < count; j++) {
+      dt.insert(j);
+    }
+
+    int[] vertex = dt.vertices();
+    int[] out = new int[dt.slotCount() * 4];
+    int m = 0;
+    int[] g = new int[4];
+    for (int t = 0; t < dt.slotCount(); t++) {
+      if (!dt.isReal(t)) {
+        continue;
+      }
+      for (int k = 0; k < 4; k++) {
+        g[k] = global[vertex[t * 4 + k]];
+      }
+      if (margin != Double.POSITIVE_INFINITY) {
+        // Circumsphere from corners in global order, so neighbouring slabs agree on the owner
+        int[] s = g.clone();
+        Arrays.sort(s);
+        int a = s[0] * 3;
+        double[] c = Delaunay3.center(
+            xyz[s[1] * 3] - xyz[a], xyz[s[1] * 3 + 1] - xyz[a + 1], xyz[s[1] * 3 + 2] - xyz[a + 2],
+            xyz[s[2] * 3] - xyz[a], xyz[s[2] * 3 + 1] - xyz[a + 1], xyz[s[2] * 3 + 2] - xyz[a + 2],
+            xyz[s[3] * 3] - xyz[a], xyz[s[3] * 3 + 1] - xyz[a + 1], xyz[s[3] * 3 + 2] - xyz[a + 2]);
+        double centre = xyz[a + axis] + c[axis];
+        double r = Math.sqrt(c[3]);
+        if (centre < from || centre >= to || centre - r < from - margin || centre + r >= to + margin) {
+          continue;
+        }
+      }
+      System.arraycopy(g, 0, out, m, 4);
+      m += 4;
+    }
+    return Arrays.copyOf(out, m);
+  }
+
+  /** The low 10 bits of v spread to every third bit. */
+  private static long spread(int v) {
+    long x = Math.max(0, Math.min(1023, v));
+    x = (x | x << 16) & 0x30000FFL;
+    x = (x | x << 8) & 0x300F00FL;
+    x = (x | x << 4) & 0x30C30C3L;
+    x = (x | x << 2) & 0x9249249L;
+    return x;
+  }
+
+  /**
+   * For every face (4 t + k) the tetrahedron across it, or -1 where only
+   * one tetrahedron has it. Returns whether some face is shared by more
+   * than two, which only happens when slabs overlap.
+   */
+  private static boolean pair(int[] tets, int n, int[] across) {
+    int faces = tets.length;
+    int[] start = new int[n + 1];
+    long[] keys = new long[faces];
+    int[] lowest = new int[faces];
+    int[] f = new int[3];
+    for (int id = 0; id < faces; id++) {
+      int t = id >> 2;
+      int[] corner = Delaunay3.FACES[id & 3];
+      for (int c = 0; c < 3; c++) {
+        f[c] = tets[t * 4 + corner[c]];
+      }
+      Arrays.sort(f);
+      lowest[id] = f[0];
+      keys[id] = (long) f[1] << 32 | f[2];
+      start[f[0] + 1]++;
+    }
+    for (int i = 0; i < n; i++) {
+      start[i + 1] += start[i];
+    }
+    int[] fill = Arrays.copyOf(start, n);
+    int[] byVertex = new int[faces];
+    for (int id = 0; id < faces; id++) {
+      byVertex[fill[lowest[id]]++] = id;
+    }
+    boolean[] overlap = new boolean[1];
+    IntStream.range(0, n).parallel().forEach(v -> {
+      int from = start[v], to = start[v + 1];
+      // Few faces per vertex; insertion sort by the other two corners
+      for (int i = from + 1; i < to; i++) {
+        int id = byVertex[i];
+        int j = i - 1;
+        while (j >= from && keys[byVertex[j]] > keys[id]) {
+          byVertex[j + 1] = byVertex[j];
+          j--;
+        }
+        byVertex[j + 1] = id;
+      }
+      for (int i = from; i < to; ) {
+        int j = i + 1;
+        while (j < to && keys[byVertex[j]] == keys[byVertex[i]]) {
+          j++;
+        }
+        if (j - i == 2) {
+          across[byVertex[i]] = byVertex[i + 1] >> 2;
+          across[byVertex[i + 1]] = byVertex[i] >> 2;
+        } else {
+          for (int k = i; k < j; k++) {
+            across[byVertex[k]] = -1;
+          }
+          if (j - i > 2) {
+            overlap[0] = true;
+          }
+        }
+        i = j;
+      }
+    });
+    return overlap[0];
+  }
+
+  /**
+   * Tetrahedra inside the surface: those with an interior lattice corner
+   * and no exterior one, and otherwise those whose centroid has winding
+   * number at least one half. Flat slivers spanning only surface points
+   * are dropped.
+   */
+  private static boolean[] carve(int[] tets, double[] xyz, byte[] kind, SurfaceTree tree) {
+    int count = tets.length / 4;
+    boolean[] keep = new boolean[count];
+    IntStream.range(0, count).parallel().forEach(t -> {
+      boolean interior = false, exterior = false;
+      for (int k = 0; k < 4; k++) {
+        byte c = kind[tets[t * 4 + k]];
+        interior |= c == INTERIOR;
+        exterior |= c == EXTERIOR;
+      }
+      if (interior != exterior) {
+        keep[t] = interior;
+        return;
+      }
+      if (!interior && quality(tets, xyz, t) < SLIVER) {
+        return;
+      }
+      double x = 0, y = 0, z = 0;
+      for (int k = 0; k < 4; k++) {
+        int v = tets[t * 4 + k] * 3;
+        x += xyz[v] / 4;
+        y += xyz[v + 1] / 4;
+        z += xyz[v + 2] / 4;
+      }
+      keep[t] = Math.abs(tree.winding(x, y, z)) >= 0.5;
+    });
+    return keep;
+  }
+
+  /** Volume over the cube of the longest edge; 0.118 for a regular tetrahedron. */
+  private static double quality(int[] tets, double[] xyz, int t) {
+    double longest = 0;
+    for (int i = 0; i < 4; i++) {
+      for (int j = i + 1; j < 4; j++) {
+        int a = tets[t * 4 + i] * 3, b = tets[t * 4 + j] * 3;
+        double dx = xyz[b] - xyz[a], dy = xyz[b + 1] - xyz[a + 1], dz = xyz[b + 2] - xyz[a + 2];
+        longest = Math.max(longest, dx * dx + dy * dy + dz * dz);
+      }
+    }
+    return volume(tets, xyz, t) / (longest * Math.sqrt(longest));
+  }
+
+  private static double volume(int[] tets, double[] xyz, int t) {
+    int a = tets[t * 4] * 3, b = tets[t * 4 + 1] * 3, c = tets[t * 4 + 2] * 3, d = tets[t * 4 + 3] * 3;
+    double ux = xyz[b] - xyz[a], uy = xyz[b + 1] - xyz[a + 1], uz = xyz[b + 2] - xyz[a + 2];
+    double vx = xyz[c] - xyz[a], vy = xyz[c + 1] - xyz[a + 1], vz = xyz[c + 2] - xyz[a + 2];
+    double wx = xyz[d] - xyz[a], wy = xyz[d + 1] - xyz[a + 1], wz = xyz[d + 2] - xyz[a + 2];
+    return Math.abs(ux * (vy * wz - vz * wy) - uy * (vx * wz - vz * wx) + uz * (vx * wy - vy * wx)) / 6.0;
+  }
+
+  /** Whether every face of a kept tetrahedron has a tetrahedron on its other side, kept or not. */
+  private static boolean closed(boolean[] keep, int[] across) {
+    return IntStream.range(0, keep.length).parallel().allMatch(t -> !keep[t]
+        || (across[t * 4] >= 0 && across[t * 4 + 1] >= 0 && across[t * 4 + 2] >= 0 && across[t * 4 + 3] >= 0));
+  }
+
+  /** Renumber the kept tetrahedra's nodes and write them with their boundary faces. */
+  private static TetMeshBuffer assemble(int[] tets, boolean[] keep, int[] across, double[] xyz, int n,
+                                        SurfaceTree tree, int[] boundaryIds, double hmax, double hmin) {
+    int[] node = new int[n];
+    Arrays.fill(node, -1);
+    int nodes = 0;
+    int elements = 0;
+    int faces = 0;
+    for (int t = 0; t < keep.length; t++) {
+      if (!keep[t]) {
+        continue;
+      }
+      elements++;
+      for (int k = 0; k < 4; k++) {
+        int v = tets[t * 4 + k];
+        if (node[v] < 0) {
+          node[v] = nodes++;
+        }
+        if (across[t * 4 + k] < 0 || !keep[across[t * 4 + k]]) {
+          faces++;
+        }
+      }
+    }
+    TetMeshBuffer out = TetMeshBuffer.allocate(nodes, elements, faces, hmax, hmin);
+    double[] coords = new double[nodes * 3];
+    for (int v = 0; v < n; v++) {
+      if (node[v] >= 0) {
+        System.arraycopy(xyz, v * 3, coords, node[v] * 3, 3);
+      }
+    }
+    int[] elem = new int[elements * 4];
+    int[] tri = new int[faces * 3];
+    int e = 0;
+    int f = 0;
+    for (int t = 0; t < keep.length; t++) {
+      if (!keep[t]) {
+        continue;
+      }
+      for (int k = 0; k < 4; k++) {
+        elem[e * 4 + k] = node[tets[t * 4 + k]];
+        if (across[t * 4 + k] < 0 || !keep[across[t * 4 + k]]) {
+          // Corner k is on the positive side of face k, so reverse it to face out
+          int[] c = Delaunay3.FACES[k];
+          tri[f * 3] = node[tets[t * 4 + c[0]]];
+          tri[f * 3 + 1] = node[tets[t * 4 + c[2]]];
+          tri[f * 3 + 2] = node[tets[t * 4 + c[1]]];
+          f++;
+        }
+      }
+      e++;
+    }
+    int[] boundary = new int[faces];
+    IntStream.range(0, faces).parallel().forEach(i -> {
+      if (boundaryIds == null) {
+        boundary[i] = 1;
+        return;
+      }
+      double x = 0, y = 0, z = 0;
+      for (int c = 0; c < 3; c++) {
+        x += coords[tri[i * 3 + c] * 3] / 3;
+        y += coords[tri[i * 3 + c] * 3 + 1] / 3;
+        z += coords[tri[i * 3 + c] * 3 + 2] / 3;
+      }
+      int nearest = tree.nearest(x, y, z, Double.POSITIVE_INFINITY, new double[1]);
+      boundary[i] = boundaryIds[nearest];
+    });
+    int[] domains = new int[elements];
+    Arrays.fill(domains, 1);
+    out.xyz().put(coords);
+    out.tets().put(elem);
+    out.domains().put(domains);
+    out.faces().put(tri);
+    out.faceBoundaries().put(boundary);
+    return out;
+  }
+
+  /**
+   * {@code DelaunayMesher scan.stl [--hmax H] [--hmin H] [--partitions N] [--out mesh.tetbin]}:
+   * mesh a scan, with one boundary per surface patch, and print the counts.
+   */
+  public static void main(String[] args) throws IOException {
+    Path scan = null;
+    Path out = null;
+    double hmax = 0.3;
+    double hmin = 0.1;
+    int partitions = defaultPartitions();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--hmax") && i + 1 < args.length) {
+        hmax = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("--hmin") && i + 1 < args.length) {
+        hmin = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("--partitions") && i + 1 < args.length) {
+        partitions = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--out") && i + 1 < args.length) {
+        out = Paths.get(args[++i]);
+      } else if (scan == null && !args[i].startsWith("--")) {
+        scan = Paths.get(args[i]);
+      } else {
+        scan = null;
+        break;
+      }
+    }
+    if (scan == null) {
+      System.err.println("usage: DelaunayMesher scan.stl [--hmax H] [--hmin H] [--partitions N] [--out mesh.tetbin]");
+      System.exit(2);
+    }
+    long start = System.nanoTime();
+    TetMeshBuffer mesh = mesh(scan, hmax, hmin, partitions);
+    System.out.printf("%s: %d tetrahedra, %d boundary triangles, %d nodes in %.2f s%n", scan.getFileName(),
+        mesh.getNumElem(), mesh.getNumElem("tri"), mesh.getNumElem("vtx"), (System.nanoTime() - start) / 1e9);
+    if (out != null) {
+      mesh.write(out);
+    }
+  }
+}
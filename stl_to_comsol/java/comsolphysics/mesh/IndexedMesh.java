@@ -0,0 +1,151 @@
+/*
+ * IndexedMesh.java
+ * Shared-vertex triangle mesh produced by VertexWelder.
+ */
+
+package comsolphysics.mesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * Indexed triangle mesh: unique vertex positions ({@code xyz} per vertex) and
+ * three vertex indices per triangle. Triangles keep the winding of the source
+ * STL, so facet normals can be recomputed from the indices.
+ */
+public final class IndexedMesh {
+
+  /** Magic number of the index buffer format written by {@link #writeIndexBuffer}. */
+  public static final int INDEX_BUFFER_MAGIC = 0x49445831; // "IDX1"
+
+  private final float[] positions;
+  private final int[] indices;
+  private final int vertexCount;
+  private final int triangleCount;
+  private final int sourceTriangleCount;
+
+  public IndexedMesh(float[] positions, int vertexCount, int[] indices, int triangleCount,
+                     int sourceTriangleCount) {
+    this.positions = positions;
+    this.vertexCount = vertexCount;
+    this.indices = indices;
+    this.triangleCount = triangleCount;
+    this.sourceTriangleCount = sourceTriangleCount;
+  }
+
+  public int vertexCount() {
+    return vertexCount;
+  }
+
+  public int triangleCount() {
+    return triangleCount;
+  }
+
+  /** Triangle count of the STL this mesh was welded from, before degenerates were dropped. */
+  public int sourceTriangleCount() {
+    return sourceTriangleCount;
+  }
+
+  /** Backing position array, 3 floats per vertex. Not copied. */
+  public float[] positions() {
+    return positions;
+  }
+
+  /** Backing index array, 3 ints per triangle. Not copied. */
+  public int[] indices() {
+    return indices;
+  }
+
+  /** Bounding box as {@code {minX, minY, minZ, maxX, maxY, maxZ}}. */
+  public float[] bounds() {
+    float[] b = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+        Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+    for (int i = 0; i < vertexCount * 3; i += 3) {
+      for (int a = 0; a < 3; a++) {
+        float v = positions[i + a];
+        if (v < b[a]) b[a] = v;
+        if (v > b[a + 3]) b[a + 3] = v;
+      }
+    }
+    return b;
+  }
+
+  /** Unnormalized facet normal (twice the triangle area in length) written into {@code out}. */
+  public void faceNormal(int tri, double[] out) {
+    int a = indices[tri * 3] * 3, b = indices[tri * 3 + 1] * 3, c = indices[tri * 3 + 2] * 3;
+    double ux = positions[b] - positions[a], uy = positions[b + 1] - positions[a + 1], uz = positions[b + 2] - positions[a + 2];
+    double vx = positions[c] - positions[a], vy = positions[c + 1] - positions[a + 1], vz = positions[c + 2] - positions[a + 2];
+    out[0] = uy * vz - uz * vy;
+    out[1] = uz * vx - ux * vz;
+    out[2] = ux * vy - uy * vx;
+  }
+
+  public double area(int tri) {
+    double[] n = new double[3];
+    faceNormal(tri, n);
+    return 0.5 * Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+  }
+
+  public double surfaceArea() {
+    return IntStream.range(0, triangleCount).parallel().mapToDouble(this::area).sum();
+  }
+
+  /** Write the welded mesh as binary STL; shared vertices are written bit-identical. */
+  public void writeStl(Path path) throws IOException {
+    double[] n = new double[3];
+    StlWriter.write(path, triangleCount, (t, out) -> {
+      faceNormal(t, n);
+      double len = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+      double inv = len > 0 ? 1.0 / len : 0.0;
+      out.putFloat((float) (n[0] * inv)).putFloat((float) (n[1] * inv)).putFloat((float) (n[2] * inv));
+      for (int k = 0; k < 3; k++) {
+        int v = indices[t * 3 + k] * 3;
+        out.putFloat(positions[v]).putFloat(positions[v + 1]).putFloat(positions[v + 2]);
+      }
+    });
+  }
+
+  /**
+   * Write a compact little-endian index buffer:
+   * {@code magic, vertexCount, triangleCount, float[3*V] positions, int[3*T] indices}.
+   */
+  public void writeIndexBuffer(Path path) throws IOException {
+    long bytes = 12L + 4L * (vertexCount * 3L + triangleCount * 3L);
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, bytes).order(ByteOrder.LITTLE_ENDIAN);
+      map.putInt(INDEX_BUFFER_MAGIC).putInt(vertexCount).putInt(triangleCount);
+      map.asFloatBuffer().put(positions, 0, vertexCount * 3);
+      map.position(map.position() + vertexCount * 3 * 4);
+      map.asIntBuffer().put(indices, 0, triangleCount * 3);
+    }
+  }
+
+  /** Read a buffer written by {@link #writeIndexBuffer}. */
+  public static IndexedMesh readIndexBuffer(Path path) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).order(ByteOrder.LITTLE_ENDIAN);
+      if (map.getInt() != INDEX_BUFFER_MAGIC) {
+        throw new IOException("Not an index buffer: " + path);
+      }
+      int v = map.getInt();
+      int t = map.getInt();
+      float[] positions = new float[v * 3];
+      int[] indices = new int[t * 3];
+      map.asFloatBuffer().get(positions);
+      map.position(map.position() + v * 3 * 4);
+      map.asIntBuffer().get(indices);
+      return new IndexedMesh(positions, v, indices, t, t);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "IndexedMesh[" + triangleCount + " triangles, " + vertexCount + " vertices]";
+  }
+}
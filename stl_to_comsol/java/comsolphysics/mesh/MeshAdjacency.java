@@ -0,0 +1,87 @@
+/*
+ * MeshAdjacency.java
+ * Vertex-to-triangle incidence for an IndexedMesh.
+ */
+
+package comsolphysics.mesh;
+
+/**
+ * Compressed vertex-to-triangle incidence lists. Triangles sharing an edge
+ * {@code (a, b)} are found by scanning the (short) list of triangles around
+ * {@code a} for ones that also reference {@code b}; this also covers
+ * non-manifold edges, which scans produce regularly.
+ */
+public final class MeshAdjacency {
+
+  private final IndexedMesh mesh;
+  private final int[] start;
+  private final int[] triangles;
+
+  public MeshAdjacency(IndexedMesh mesh) {
+    this.mesh = mesh;
+    int[] idx = mesh.indices();
+    int n = mesh.triangleCount() * 3;
+    start = new int[mesh.vertexCount() + 1];
+    for (int i = 0; i < n; i++) {
+      start[idx[i] + 1]++;
+    }
+    for (int v = 0; v < mesh.vertexCount(); v++) {
+      start[v + 1] += start[v];
+    }
+    triangles = new int[n];
+    int[] fill = start.clone();
+    for (int i = 0; i < n; i++) {
+      triangles[fill[idx[i]]++] = i / 3;
+    }
+  }
+
+  public IndexedMesh mesh() {
+    return mesh;
+  }
+
+  /** Number of triangles incident to vertex {@code v}. */
+  public int valence(int v) {
+    return start[v + 1] - start[v];
+  }
+
+  /** The {@code i}-th triangle incident to vertex {@code v}. */
+  public int triangle(int v, int i) {
+    return triangles[start[v] + i];
+  }
+
+  /**
+   * Write the triangles other than {@code tri} that share edge {@code k}
+   * (vertices {@code k} and {@code k+1}) into {@code out}; returns how many.
+   */
+  public int edgeNeighbors(int tri, int k, int[] out) {
+    int[] idx = mesh.indices();
+    int a = idx[tri * 3 + k];
+    int b = idx[tri * 3 + (k + 1) % 3];
+    int count = 0;
+    for (int i = start[a]; i < start[a + 1]; i++) {
+      int u = triangles[i];
+      if (u == tri) {
+        continue;
+      }
+      if (idx[u * 3] == b || idx[u * 3 + 1] == b || idx[u * 3 + 2] == b) {
+        if (count < out.length) {
+          out[count] = u;
+        }
+        count++;
+      }
+    }
+    return Math.min(count, out.length);
+  }
+
+  /** True if triangles {@code t} and {@code u} share at least one vertex. */
+  public boolean touches(int t, int u) {
+    int[] idx = mesh.indices();
+    for (int i = 0; i < 3; i++) {
+      int v = idx[t * 3 + i];
+      if (idx[u * 3] == v || idx[u * 3 + 1] == v || idx[u * 3 + 2] == v) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
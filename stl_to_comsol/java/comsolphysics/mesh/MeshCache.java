@@ -0,0 +1,358 @@
+/*
+ * MeshCache.java
+ * On-disk cache of built COMSOL meshes, keyed by geometry and mesh settings.
+ */
+
+package comsolphysics.mesh;
+
+import com.comsol.model.GeomFeature;
+import com.comsol.model.GeomSequence;
+import com.comsol.model.Model;
+import com.comsol.model.util.ModelUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Content-addressed store of meshes in COMSOL's native format. The key is a
+ * SHA-256 over the COMSOL version, the global parameter table, every
+ * feature and property of the geometry sequence and of the sequences
+ * nested in it (work planes), the contents of any file a
+ * geometry feature imports (the STL scan), and every feature, property and
+ * selected entity of the mesh sequence (the {@code size} settings and the
+ * named selections they refer to). A hit imports the stored mesh instead
+ * of running the mesher; a miss meshes as usual and stores the result.
+ *
+ * <p>Entries are evicted least recently used first (by file modification
+ * time, refreshed on every hit) once the directory grows past its byte
+ * budget. Cache I/O errors never fail a run: they are reported and the mesh
+ * is built normally.
+ *
+ * <pre>
+ *   // Instead of model.component("comp1").mesh("mesh1").run():
+ *   MeshCache.openDefault().run(model, "comp1", "geom1", "mesh1");
+ * </pre>
+ *
+ * <p>Meshes from the local {@link DelaunayMesher} are stored alongside as
+ * {@link TetMeshBuffer} files, keyed by the scan's contents and the sizes,
+ * and mapped straight back on a hit.
+ */
+public final class MeshCache {
+
+  /** Cache directory, relative to the working directory. */
+  public static final Path DEFAULT_DIR = Paths.get("mesh_cache");
+  public static final long DEFAULT_MAX_BYTES = 2L << 30;
+
+  /** Bumped when the key recipe changes so old entries stop matching. */
+  private static final String KEY_VERSION = "meshcache-3";
+  private static final String EXTENSION = ".mphbin";
+  private static final String TET_EXTENSION = ".tetbin";
+  /** Marks a file still being written; it keeps the extension so COMSOL exports it natively. */
+  private static final String TEMP = ".tmp";
+  private static final String IMPORT = "mcache_imp";
+
+  private final Path dir;
+  private final long maxBytes;
+
+  public MeshCache(Path dir, long maxBytes) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+    }
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+  }
+
+  public static MeshCache openDefault() {
+    return new MeshCache(DEFAULT_DIR, DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Build {@code mesh} from the cache if an entry matches the current
+   * geometry and mesh settings, otherwise run it and store the result.
+   * Returns whether the mesh came from the cache.
+   */
+  public boolean run(Model model, String comp, String geom, String mesh) {
+    String key;
+    try {
+      key = key(model, comp, geom, mesh);
+    } catch (IOException e) {
+      System.out.println("Mesh cache: cannot hash inputs (" + e.getMessage() + "); meshing");
+      model.component(comp).mesh(mesh).run();
+      return false;
+    }
+    Path entry = dir.resolve(key + EXTENSION);
+    if (Files.isRegularFile(entry) && load(model, comp, mesh, entry)) {
+      try {
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+      } catch (IOException e) {
+        // Only affects eviction order
+      }
+      System.out.println("Mesh cache: hit " + key.substring(0, 12));
+      return true;
+    }
+    model.component(comp).mesh(mesh).run();
+    try {
+      store(model, comp, mesh, entry);
+      System.out.println("Mesh cache: stored " + key.substring(0, 12));
+    } catch (IOException | RuntimeException e) {
+      System.out.println("Mesh cache: cannot store mesh (" + e.getMessage() + ")");
+    }
+    return false;
+  }
+
+  /**
+   * Import a stored mesh into {@code mesh}. The sequence's own features are
+   * deactivated rather than removed, so the saved model still records how
+   * the mesh was made; the global {@code size} node only configures them and
+   * stays. On failure they are reactivated and false returned.
+   */
+  private static boolean load(Model model, String comp, String mesh, Path entry) {
+    List<String> features = new ArrayList<>(Arrays.asList(model.component(comp).mesh(mesh).feature().tags()));
+    features.remove("size");
+    try {
+      for (String tag : features) {
+        model.component(comp).mesh(mesh).feature(tag).active(false);
+      }
+      model.component(comp).mesh(mesh).create(IMPORT, "Import");
+      model.component(comp).mesh(mesh).feature(IMPORT).set("source", "native");
+      model.component(comp).mesh(mesh).feature(IMPORT).set("filename", entry.toAbsolutePath().toString());
+      model.component(comp).mesh(mesh).run();
+      return model.component(comp).mesh(mesh).getNumElem() > 0;
+    } catch (RuntimeException e) {
+      System.out.println("Mesh cache: cannot import " + entry.getFileName() + " (" + e.getMessage() + ")");
+      if (Arrays.asList(model.component(comp).mesh(mesh).feature().tags()).contains(IMPORT)) {
+        model.component(comp).mesh(mesh).feature().remove(IMPORT);
+      }
+      for (String tag : features) {
+        model.component(comp).mesh(mesh).feature(tag).active(true);
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Tetrahedral mesh of an STL scan from {@link DelaunayMesher}, mapped
+   * from the cache if the same scan was meshed with the same sizes before,
+   * otherwise meshed and stored.
+   */
+  public TetMeshBuffer tetMesh(Path scan, double hmax, double hmin) throws IOException {
+    MessageDigest md = sha256();
+    update(md, KEY_VERSION);
+    update(md, "tet:" + hmax + ":" + hmin);
+    hashFile(md, scan);
+    String key = hex(md.digest());
+    Path entry = dir.resolve(key + TET_EXTENSION);
+    if (Files.isRegularFile(entry)) {
+      try {
+        TetMeshBuffer mesh = TetMeshBuffer.map(entry);
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        System.out.println("Mesh cache: hit " + key.substring(0, 12));
+        return mesh;
+      } catch (IOException e) {
+        System.out.println("Mesh cache: cannot map " + entry.getFileName() + " (" + e.getMessage() + ")");
+      }
+    }
+    TetMeshBuffer mesh = DelaunayMesher.mesh(scan, hmax, hmin, DelaunayMesher.defaultPartitions());
+    try {
+      Files.createDirectories(dir);
+      Path tmp = dir.resolve(entry.getFileName() + TEMP + TET_EXTENSION);
+      mesh.write(tmp);
+      Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      evict(entry);
+      System.out.println("Mesh cache: stored " + key.substring(0, 12));
+    } catch (IOException | RuntimeException e) {
+      System.out.println("Mesh cache: cannot store mesh (" + e.getMessage() + ")");
+    }
+    return mesh;
+  }
+
+  /** Export to a temporary name and move into place, so readers never see a partial file. */
+  private void store(Model model, String comp, String mesh, Path entry) throws IOException {
+    Files.createDirectories(dir);
+    Path tmp = dir.resolve(entry.getFileName() + TEMP + EXTENSION);
+    model.component(comp).mesh(mesh).export(tmp.toAbsolutePath().toString());
+    Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    evict(entry);
+  }
+
+  /**
+   * Delete least recently used entries until the cache fits its budget,
+   * keeping {@code keep}. Temporary files are neither counted nor deleted:
+   * a concurrent writer may still be filling one.
+   */
+  void evict(Path keep) throws IOException {
+    List<Path> entries = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.{mphbin,tetbin}")) {
+      for (Path p : files) {
+        // Another run's export or write still in progress
+        if (!p.getFileName().toString().contains(TEMP + ".")) {
+          entries.add(p);
+        }
+      }
+    }
+    int n = entries.size();
+    long[] size = new long[n];
+    long[] used = new long[n];
+    Integer[] order = new Integer[n];
+    long total = 0;
+    for (int i = 0; i < n; i++) {
+      size[i] = Files.size(entries.get(i));
+      used[i] = Files.getLastModifiedTime(entries.get(i)).toMillis();
+      order[i] = i;
+      total += size[i];
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(used[a], used[b]));
+    for (int k = 0; k < n && total > maxBytes; k++) {
+      Path p = entries.get(order[k]);
+      if (!p.equals(keep) && Files.deleteIfExists(p)) {
+        total -= size[order[k]];
+      }
+    }
+  }
+
+  /** Hex SHA-256 of everything that determines the mesh. */
+  public static String key(Model model, String comp, String geom, String mesh) throws IOException {
+    MessageDigest md = sha256();
+    update(md, KEY_VERSION);
+    update(md, ModelUtil.getComsolVersion());
+    // Feature properties may be expressions in the parameters, e.g. hmax = "h_room/20"
+    String[] names = model.param().varnames().clone();
+    Arrays.sort(names);
+    for (String name : names) {
+      update(md, "param:" + name + "=" + model.param().get(name));
+    }
+    updateGeometry(md, "geom:", model.component(comp).geom(geom));
+    for (String tag : model.component(comp).mesh(mesh).feature().tags()) {
+      if (!tag.equals(IMPORT)) {
+        update(md, "mesh:" + tag + ":" + model.component(comp).mesh(mesh).feature(tag).getType());
+        updateProperties(md, model.component(comp).mesh(mesh).feature(tag).properties(),
+            model.component(comp).mesh(mesh).feature(tag)::getString,
+            model.component(comp).mesh(mesh).feature(tag)::getStringArray);
+        updateSelection(md, model, comp, mesh, tag);
+      }
+    }
+    return hex(md.digest());
+  }
+
+  /**
+   * Hash the features of a geometry sequence, their types and properties,
+   * then the sequence a feature holds itself, such as the rectangles and
+   * polygons in {@code wp1.geom()}, under the feature's tag. Files the
+   * features import are hashed by content.
+   */
+  private static void updateGeometry(MessageDigest md, String prefix, GeomSequence sequence) throws IOException {
+    for (String tag : sequence.feature().tags()) {
+      GeomFeature feature = sequence.feature(tag);
+      update(md, prefix + tag + ":" + feature.getType());
+      for (String file : updateProperties(md, feature.properties(), feature::getString, feature::getStringArray)) {
+        hashFile(md, Paths.get(file));
+      }
+      GeomSequence nested;
+      try {
+        nested = feature.geom();
+      } catch (RuntimeException noSequence) {
+        // Not a work plane
+        continue;
+      }
+      if (nested != null) {
+        updateGeometry(md, prefix + tag + "/", nested);
+      }
+    }
+  }
+
+  /**
+   * Hash the entities a mesh feature applies to. A named selection is
+   * resolved to its entities, so editing {@code sel1} invalidates meshes
+   * whose size features refer to it. Features without a selection hash
+   * nothing.
+   */
+  private static void updateSelection(MessageDigest md, Model model, String comp, String mesh, String tag) {
+    String named;
+    int[] entities;
+    try {
+      named = model.component(comp).mesh(mesh).feature(tag).selection().named();
+      int dim = model.component(comp).mesh(mesh).feature(tag).selection().dimension();
+      entities = model.component(comp).mesh(mesh).feature(tag).selection().entities(dim);
+    } catch (RuntimeException noSelection) {
+      return;
+    }
+    update(md, "sel:" + named + ":" + Arrays.toString(entities));
+  }
+
+  private static String hex(byte[] digest) {
+    StringBuilder hex = new StringBuilder(64);
+    for (byte b : digest) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Hash a feature's properties in name order. A {@code filename} property
+   * is returned rather than hashed, so the caller hashes the file's
+   * contents and a moved checkout still hits.
+   */
+  private static List<String> updateProperties(MessageDigest md, String[] properties,
+      Function<String, String> scalar, Function<String, String[]> array) {
+    List<String> files = new ArrayList<>();
+    String[] sorted = properties.clone();
+    Arrays.sort(sorted);
+    for (String p : sorted) {
+      String value;
+      try {
+        value = scalar.apply(p);
+      } catch (RuntimeException notScalar) {
+        try {
+          value = String.join("\u0001", array.apply(p));
+        } catch (RuntimeException e) {
+          value = "?";
+        }
+      }
+      if (p.equals("filename") && value != null && !value.isEmpty()) {
+        files.add(value);
+      } else {
+        update(md, p + "=" + value);
+      }
+    }
+    return files;
+  }
+
+  private static void hashFile(MessageDigest md, Path file) throws IOException {
+    byte[] buf = new byte[1 << 16];
+    try (InputStream in = Files.newInputStream(file)) {
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        md.update(buf, 0, n);
+      }
+    }
+  }
+
+  private static void update(MessageDigest md, String s) {
+    byte[] bytes = String.valueOf(s).getBytes(StandardCharsets.UTF_8);
+    md.update((byte) (bytes.length >>> 24));
+    md.update((byte) (bytes.length >>> 16));
+    md.update((byte) (bytes.length >>> 8));
+    md.update((byte) bytes.length);
+    md.update(bytes);
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,347 @@
+/*
+ * MeshQuality.java
+ * Element quality statistics of a tetrahedral mesh, and limits a mesh must meet.
+ */
+
+package comsolphysics.mesh;
+
+import com.comsol.model.Model;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Per-element quality of a linear tetrahedral mesh, computed in parallel
+ * over flat element arrays:
+ *
+ * <ul>
+ *   <li>skewness quality, as COMSOL's {@code stat().setQualityMeasure("skewness")}:
+ *       1 minus the equiangular skew of the six dihedral angles against the
+ *       regular tetrahedron's 70.53 degrees, so 1 is ideal and 0 flat;</li>
+ *   <li>aspect ratio, circumradius over three times the inradius (1 for a
+ *       regular tetrahedron, unbounded for slivers);</li>
+ *   <li>smallest and largest dihedral angle;</li>
+ *   <li>volume.</li>
+ * </ul>
+ *
+ * <p>Quality and volume are also binned into histograms. {@link #check}
+ * compares the extremes against {@link Limits}, so a mesh with flat or
+ * needle elements is rejected right after meshing instead of surfacing as
+ * a diverging solve.
+ *
+ * <pre>
+ *   MeshQuality quality = MeshQuality.of(model, "comp1", "mesh1");
+ *   quality.printSummary(System.out);
+ *   quality.check(MeshQuality.Limits.DEFAULT);
+ * </pre>
+ */
+public final class MeshQuality {
+
+  /** Dihedral angle of the regular tetrahedron, acos(1/3). */
+  private static final double IDEAL = Math.acos(1.0 / 3.0);
+  /** Bins of the quality histogram over [0, 1], as in COMSOL's mesh statistics. */
+  public static final int QUALITY_BINS = 20;
+  /** Logarithmic bins of the volume histogram between the smallest and largest element. */
+  public static final int VOLUME_BINS = 10;
+
+  /** Thresholds a mesh must meet; elements outside them make {@link #check} fail. */
+  public static final class Limits {
+
+    /**
+     * Rejects elements so flat that the stiffness matrix is close to
+     * singular (quality below 0.01, a dihedral angle under half a degree or
+     * over 179.5), and needles with an aspect ratio over 1000.
+     */
+    public static final Limits DEFAULT = new Limits(0.01, 1000, 0.5, 179.5);
+
+    private final double minQuality;
+    private final double maxAspectRatio;
+    private final double minDihedral;
+    private final double maxDihedral;
+
+    /** Dihedral angles in degrees. */
+    public Limits(double minQuality, double maxAspectRatio, double minDihedral, double maxDihedral) {
+      this.minQuality = minQuality;
+      this.maxAspectRatio = maxAspectRatio;
+      this.minDihedral = minDihedral;
+      this.maxDihedral = maxDihedral;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "Limits[quality >= %s, aspect ratio <= %s, dihedral %s..%s deg]",
+          minQuality, maxAspectRatio, minDihedral, maxDihedral);
+    }
+  }
+
+  private final double[] xyz;
+  private final int[] tets;
+  private final double[] quality;
+  private final double[] aspectRatio;
+  private final double[] minDihedral;
+  private final double[] maxDihedral;
+  private final double[] volume;
+  private final long nanos;
+
+  private MeshQuality(double[] xyz, int[] tets) {
+    long start = System.nanoTime();
+    this.xyz = xyz;
+    this.tets = tets;
+    int n = tets.length / 4;
+    quality = new double[n];
+    aspectRatio = new double[n];
+    minDihedral = new double[n];
+    maxDihedral = new double[n];
+    volume = new double[n];
+    IntStream.range(0, n).parallel().forEach(this::measure);
+    nanos = System.nanoTime() - start;
+  }
+
+  /** Quality of the tetrahedra {@code tets[4 e ..]} over the nodes {@code xyz[3 v ..]}. */
+  public static MeshQuality of(double[] xyz, int[] tets) {
+    return new MeshQuality(xyz, tets);
+  }
+
+  public static MeshQuality of(TetMeshBuffer mesh) {
+    double[] xyz = new double[mesh.nodeCount() * 3];
+    int[] tets = new int[mesh.elementCount() * 4];
+    mesh.xyz().get(xyz);
+    mesh.tets().get(tets);
+    return new MeshQuality(xyz, tets);
+  }
+
+  /** Quality of the tetrahedra of mesh {@code mesh}, which must be built. */
+  public static MeshQuality of(Model model, String comp, String mesh) {
+    double[][] vtx = model.component(comp).mesh(mesh).getVertex();
+    int[][] tet = model.component(comp).mesh(mesh).getElem("tet");
+    // COMSOL returns coordinates as [sdim][vertex] and elements as [corner][element]
+    int nv = vtx[0].length;
+    double[] xyz = new double[nv * 3];
+    for (int v = 0; v < nv; v++) {
+      xyz[v * 3] = vtx[0][v];
+      xyz[v * 3 + 1] = vtx[1][v];
+      xyz[v * 3 + 2] = vtx[2][v];
+    }
+    int ne = tet.length == 0 ? 0 : tet[0].length;
+    int[] tets = new int[ne * 4];
+    for (int e = 0; e < ne; e++) {
+      for (int c = 0; c < 4; c++) {
+        tets[e * 4 + c] = tet[c][e];
+      }
+    }
+    return new MeshQuality(xyz, tets);
+  }
+
+  private void measure(int e) {
+    double[] p = new double[12];
+    for (int c = 0; c < 4; c++) {
+      System.arraycopy(xyz, tets[e * 4 + c] * 3, p, c * 3, 3);
+    }
+    double ux = p[3] - p[0], uy = p[4] - p[1], uz = p[5] - p[2];
+    double vx = p[6] - p[0], vy = p[7] - p[1], vz = p[8] - p[2];
+    double wx = p[9] - p[0], wy = p[10] - p[1], wz = p[11] - p[2];
+    double six = ux * (vy * wz - vz * wy) - uy * (vx * wz - vz * wx) + uz * (vx * wy - vy * wx);
+    volume[e] = Math.abs(six) / 6;
+
+    // Inward unit normal of the face opposite each corner, and the face areas
+    double[] normal = new double[12];
+    double area = 0;
+    for (int k = 0; k < 4; k++) {
+      int[] f = Delaunay3.FACES[k];
+      int a = f[0] * 3, b = f[1] * 3, c = f[2] * 3;
+      double ax = p[b] - p[a], ay = p[b + 1] - p[a + 1], az = p[b + 2] - p[a + 2];
+      double bx = p[c] - p[a], by = p[c + 1] - p[a + 1], bz = p[c + 2] - p[a + 2];
+      double nx = ay * bz - az * by, ny = az * bx - ax * bz, nz = ax * by - ay * bx;
+      double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+      area += len / 2;
+      double side = (p[k * 3] - p[a]) * nx + (p[k * 3 + 1] - p[a + 1]) * ny + (p[k * 3 + 2] - p[a + 2]) * nz;
+      double scale = len > 0 ? (side < 0 ? -1 : 1) / len : 0;
+      normal[k * 3] = nx * scale;
+      normal[k * 3 + 1] = ny * scale;
+      normal[k * 3 + 2] = nz * scale;
+    }
+    // The dihedral angle on the edge shared by faces k and l is pi minus the angle between their normals
+    double lo = Math.PI, hi = 0;
+    for (int k = 0; k < 4; k++) {
+      for (int l = k + 1; l < 4; l++) {
+        double dot = normal[k * 3] * normal[l * 3] + normal[k * 3 + 1] * normal[l * 3 + 1]
+            + normal[k * 3 + 2] * normal[l * 3 + 2];
+        double angle = Math.acos(Math.max(-1, Math.min(1, -dot)));
+        lo = Math.min(lo, angle);
+        hi = Math.max(hi, angle);
+      }
+    }
+    if (volume[e] == 0) {
+      lo = 0;
+      hi = Math.PI;
+    }
+    minDihedral[e] = Math.toDegrees(lo);
+    maxDihedral[e] = Math.toDegrees(hi);
+    double skew = Math.max((hi - IDEAL) / (Math.PI - IDEAL), (IDEAL - lo) / IDEAL);
+    quality[e] = Math.max(0, 1 - skew);
+
+    double[] sphere = Delaunay3.center(ux, uy, uz, vx, vy, vz, wx, wy, wz);
+    double inradius = area > 0 ? 3 * volume[e] / area : 0;
+    aspectRatio[e] = inradius > 0 ? Math.sqrt(sphere[3]) / (3 * inradius) : Double.POSITIVE_INFINITY;
+  }
+
+  public int elementCount() {
+    return volume.length;
+  }
+
+  /** Skewness quality per element, 0 (flat) to 1 (regular). Not copied. */
+  public double[] quality() {
+    return quality;
+  }
+
+  /** Circumradius over three times the inradius per element, 1 for a regular tetrahedron. Not copied. */
+  public double[] aspectRatio() {
+    return aspectRatio;
+  }
+
+  /** Unsigned volume per element. Not copied. */
+  public double[] volume() {
+    return volume;
+  }
+
+  public double minQuality() {
+    return IntStream.range(0, quality.length).parallel().mapToDouble(e -> quality[e]).min().orElse(1);
+  }
+
+  public double meanQuality() {
+    return IntStream.range(0, quality.length).parallel().mapToDouble(e -> quality[e]).average().orElse(1);
+  }
+
+  public double maxAspectRatio() {
+    return IntStream.range(0, aspectRatio.length).parallel().mapToDouble(e -> aspectRatio[e]).max().orElse(1);
+  }
+
+  /** Smallest dihedral angle in the mesh, degrees. */
+  public double minDihedral() {
+    return IntStream.range(0, minDihedral.length).parallel().mapToDouble(e -> minDihedral[e]).min().orElse(0);
+  }
+
+  /** Largest dihedral angle in the mesh, degrees. */
+  public double maxDihedral() {
+    return IntStream.range(0, maxDihedral.length).parallel().mapToDouble(e -> maxDihedral[e]).max().orElse(0);
+  }
+
+  public double minVolume() {
+    return IntStream.range(0, volume.length).parallel().mapToDouble(e -> volume[e]).min().orElse(0);
+  }
+
+  public double maxVolume() {
+    return IntStream.range(0, volume.length).parallel().mapToDouble(e -> volume[e]).max().orElse(0);
+  }
+
+  public double totalVolume() {
+    return IntStream.range(0, volume.length).parallel().mapToDouble(e -> volume[e]).sum();
+  }
+
+  /** Element counts per quality bin, {@link #QUALITY_BINS} bins over [0, 1]. */
+  public long[] qualityHistogram() {
+    return histogram(e -> (int) (quality[e] * QUALITY_BINS), QUALITY_BINS);
+  }
+
+  /**
+   * Element counts per volume bin, {@link #VOLUME_BINS} bins equally wide in
+   * log(volume) from {@link #minVolume} to {@link #maxVolume}; flat elements
+   * count in the first.
+   */
+  public long[] volumeHistogram() {
+    double lo = Math.log(Math.max(minVolume(), Double.MIN_NORMAL));
+    double hi = Math.log(Math.max(maxVolume(), Double.MIN_NORMAL));
+    double width = hi > lo ? (hi - lo) / VOLUME_BINS : 1;
+    return histogram(e -> volume[e] > 0 ? (int) ((Math.log(volume[e]) - lo) / width) : 0, VOLUME_BINS);
+  }
+
+  private long[] histogram(IntUnaryOperator bin, int bins) {
+    return IntStream.range(0, volume.length).parallel()
+        .collect(() -> new long[bins],
+            (counts, e) -> counts[Math.max(0, Math.min(bins - 1, bin.applyAsInt(e)))]++,
+            (a, b) -> {
+              for (int i = 0; i < bins; i++) {
+                a[i] += b[i];
+              }
+            });
+  }
+
+  /** The element with the lowest quality, or -1 for an empty mesh. */
+  public int worstElement() {
+    int worst = -1;
+    for (int e = 0; e < quality.length; e++) {
+      if (worst < 0 || quality[e] < quality[worst]) {
+        worst = e;
+      }
+    }
+    return worst;
+  }
+
+  /**
+   * Throw if any element is outside {@code limits}. The message lists
+   * every violated limit with the number of elements outside it, and the
+   * location of the worst element so it can be found in the scan.
+   */
+  public void check(Limits limits) {
+    List<String> problems = new ArrayList<>();
+    long low = count(e -> quality[e] < limits.minQuality);
+    if (low > 0) {
+      problems.add(String.format(Locale.ROOT, "%d elements with quality below %s (min %.3g)",
+          low, limits.minQuality, minQuality()));
+    }
+    long needles = count(e -> aspectRatio[e] > limits.maxAspectRatio);
+    if (needles > 0) {
+      problems.add(String.format(Locale.ROOT, "%d elements with aspect ratio above %s (max %.3g)",
+          needles, limits.maxAspectRatio, maxAspectRatio()));
+    }
+    long sharp = count(e -> minDihedral[e] < limits.minDihedral);
+    if (sharp > 0) {
+      problems.add(String.format(Locale.ROOT, "%d elements with a dihedral angle below %s deg (min %.3g)",
+          sharp, limits.minDihedral, minDihedral()));
+    }
+    long flat = count(e -> maxDihedral[e] > limits.maxDihedral);
+    if (flat > 0) {
+      problems.add(String.format(Locale.ROOT, "%d elements with a dihedral angle above %s deg (max %.4g)",
+          flat, limits.maxDihedral, maxDihedral()));
+    }
+    if (!problems.isEmpty()) {
+      int worst = worstElement();
+      double[] c = new double[3];
+      for (int k = 0; k < 4; k++) {
+        for (int d = 0; d < 3; d++) {
+          c[d] += xyz[tets[worst * 4 + k] * 3 + d] / 4;
+        }
+      }
+      throw new IllegalStateException(String.format(Locale.ROOT,
+          "Mesh rejected: %s; worst element %d at (%.3f, %.3f, %.3f)",
+          String.join(", ", problems), worst, c[0], c[1], c[2]));
+    }
+  }
+
+  private long count(IntPredicate test) {
+    return IntStream.range(0, volume.length).parallel().filter(test).count();
+  }
+
+  public void printSummary(PrintStream out) {
+    out.printf(Locale.ROOT, "  Element quality:  min %.3f, mean %.3f (skewness)%n", minQuality(), meanQuality());
+    out.printf(Locale.ROOT, "  Aspect ratio:     max %.3g%n", maxAspectRatio());
+    out.printf(Locale.ROOT, "  Dihedral angles:  %.2f .. %.2f deg%n", minDihedral(), maxDihedral());
+    out.printf(Locale.ROOT, "  Element volume:   %.3g .. %.3g m^3, total %.4g m^3%n",
+        minVolume(), maxVolume(), totalVolume());
+    out.println("  Quality histogram (" + QUALITY_BINS + " bins over 0..1): " + join(qualityHistogram()));
+    out.println("  Volume histogram (" + VOLUME_BINS + " log bins):        " + join(volumeHistogram()));
+    out.printf(Locale.ROOT, "  Measured %d elements in %.1f ms%n", elementCount(), nanos / 1e6);
+  }
+
+  private static String join(long[] counts) {
+    StringBuilder sb = new StringBuilder();
+    for (long c : counts) {
+      sb.append(sb.length() == 0 ? "" : " ").append(c);
+    }
+    return sb.toString();
+  }
+}
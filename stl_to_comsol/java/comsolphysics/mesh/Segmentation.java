@@ -0,0 +1,98 @@
+/*
+ * Segmentation.java
+ * Result of SurfaceSegmenter: patches and their categories.
+ */
+
+package comsolphysics.mesh;
+
+import java.io.PrintStream;
+
+/** Triangle-to-patch map plus per-patch category, area, mean normal and bounding box. */
+public final class Segmentation {
+
+  private final int[] patchOfTriangle;
+  private final int patchCount;
+  private final SurfaceCategory[] category;
+  private final double[] area;
+  private final double[] normalSum;
+  private final float[] bounds;
+
+  Segmentation(int[] patchOfTriangle, int patchCount, SurfaceCategory[] category,
+               double[] area, double[] normalSum, float[] bounds) {
+    this.patchOfTriangle = patchOfTriangle;
+    this.patchCount = patchCount;
+    this.category = category;
+    this.area = area;
+    this.normalSum = normalSum;
+    this.bounds = bounds;
+  }
+
+  public int patchCount() {
+    return patchCount;
+  }
+
+  public int patchOf(int triangle) {
+    return patchOfTriangle[triangle];
+  }
+
+  /** Backing triangle-to-patch array. Not copied. */
+  public int[] patchOfTriangle() {
+    return patchOfTriangle;
+  }
+
+  public SurfaceCategory category(int patch) {
+    return category[patch];
+  }
+
+  public double area(int patch) {
+    return area[patch];
+  }
+
+  /** Area-weighted unit normal of a patch, written into {@code out}. */
+  public void normal(int patch, double[] out) {
+    double x = normalSum[patch * 3], y = normalSum[patch * 3 + 1], z = normalSum[patch * 3 + 2];
+    double len = Math.sqrt(x * x + y * y + z * z);
+    double inv = len > 0 ? 1.0 / len : 0.0;
+    out[0] = x * inv;
+    out[1] = y * inv;
+    out[2] = z * inv;
+  }
+
+  /** Patch bounding box as {@code {minX, minY, minZ, maxX, maxY, maxZ}}. */
+  public float[] bounds(int patch) {
+    float[] b = new float[6];
+    System.arraycopy(bounds, patch * 6, b, 0, 6);
+    return b;
+  }
+
+  public int patchCount(SurfaceCategory c) {
+    int n = 0;
+    for (int p = 0; p < patchCount; p++) {
+      if (category[p] == c) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  public double area(SurfaceCategory c) {
+    double sum = 0;
+    for (int p = 0; p < patchCount; p++) {
+      if (category[p] == c) {
+        sum += area[p];
+      }
+    }
+    return sum;
+  }
+
+  /** Print the component groups in the format used by the generated models. */
+  public void printSummary(PrintStream out) {
+    out.println("  Detected component groups:");
+    for (SurfaceCategory c : SurfaceCategory.values()) {
+      int n = patchCount(c);
+      if (n > 0) {
+        out.println(String.format("    %s: %d patches, total area %.2f m^2", c.label(), n, area(c)));
+      }
+    }
+  }
+}
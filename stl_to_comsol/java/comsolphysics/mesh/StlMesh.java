@@ -0,0 +1,226 @@
+/*
+ * StlMesh.java
+ * Triangle soup loaded straight from a binary or ASCII STL file.
+ */
+
+package comsolphysics.mesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Unindexed STL triangle mesh stored in flat primitive arrays.
+ *
+ * <p>Vertices are packed as {@code x0 y0 z0 x1 y1 z1 x2 y2 z2} per triangle
+ * (9 floats) and facet normals as {@code nx ny nz} (3 floats). Binary files
+ * are memory-mapped and decoded in parallel; ASCII files are tokenized from a
+ * reusable byte buffer without allocating a string per line.
+ */
+public final class StlMesh {
+
+  private static final int HEADER_BYTES = 80;
+  private static final int RECORD_BYTES = 50;
+  /** Largest mapped window, rounded down to a whole number of facet records. */
+  private static final long MAX_WINDOW = (Integer.MAX_VALUE / RECORD_BYTES) * (long) RECORD_BYTES;
+  /** Triangles decoded per parallel task. */
+  private static final int DECODE_BLOCK = 1 << 16;
+
+  private final float[] vertices;
+  private final float[] normals;
+  private final int triangleCount;
+
+  public StlMesh(float[] vertices, float[] normals, int triangleCount) {
+    if (vertices.length < triangleCount * 9 || normals.length < triangleCount * 3) {
+      throw new IllegalArgumentException("Arrays too small for " + triangleCount + " triangles");
+    }
+    this.vertices = vertices;
+    this.normals = normals;
+    this.triangleCount = triangleCount;
+  }
+
+  /** Read a binary or ASCII STL file, detecting the format from its size and header. */
+  public static StlMesh read(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (isBinary(channel, size)) {
+        return readBinary(channel, size);
+      }
+      return AsciiStlParser.parse(channel);
+    }
+  }
+
+  private static boolean isBinary(FileChannel channel, long size) throws IOException {
+    if (size < HEADER_BYTES + 4) {
+      return false;
+    }
+    ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES + 4).order(ByteOrder.LITTLE_ENDIAN);
+    while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+      // keep reading until the header and count are in
+    }
+    long count = head.getInt(HEADER_BYTES) & 0xFFFFFFFFL;
+    if (HEADER_BYTES + 4 + count * RECORD_BYTES == size) {
+      return true;
+    }
+    // Exporters that write "solid" into a binary header still match the size check above,
+    // so anything left that starts with "solid" is treated as ASCII.
+    byte[] magic = new byte[5];
+    for (int i = 0; i < magic.length; i++) {
+      magic[i] = head.get(i);
+    }
+    return !"solid".equals(new String(magic, StandardCharsets.US_ASCII));
+  }
+
+  private static StlMesh readBinary(FileChannel channel, long size) throws IOException {
+    ByteBuffer countBuf = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+    channel.read(countBuf, HEADER_BYTES);
+    long declared = countBuf.getInt(0) & 0xFFFFFFFFL;
+    long available = (size - HEADER_BYTES - 4) / RECORD_BYTES;
+    long count = Math.min(declared, available);
+    if (count * 9 > Integer.MAX_VALUE - 8) {
+      throw new IOException("STL has too many triangles for a single array: " + count);
+    }
+    int n = (int) count;
+    float[] vertices = new float[n * 9];
+    float[] normals = new float[n * 3];
+
+    long offset = HEADER_BYTES + 4;
+    int first = 0;
+    while (first < n) {
+      long window = Math.min(MAX_WINDOW, (long) (n - first) * RECORD_BYTES);
+      MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, offset, window);
+      map.order(ByteOrder.LITTLE_ENDIAN);
+      decodeWindow(map, first, (int) (window / RECORD_BYTES), vertices, normals);
+      first += (int) (window / RECORD_BYTES);
+      offset += window;
+    }
+    return new StlMesh(vertices, normals, n);
+  }
+
+  private static void decodeWindow(ByteBuffer map, int first, int count,
+                                   float[] vertices, float[] normals) {
+    int blocks = (count + DECODE_BLOCK - 1) / DECODE_BLOCK;
+    IntStream range = IntStream.range(0, blocks);
+    if (blocks > 1) {
+      range = range.parallel();
+    }
+    // Absolute getters never touch the buffer position, so blocks can share one mapping.
+    range.forEach(b -> {
+      int start = b * DECODE_BLOCK;
+      int end = Math.min(count, start + DECODE_BLOCK);
+      for (int t = start; t < end; t++) {
+        int p = t * RECORD_BYTES;
+        int tri = first + t;
+        int nOff = tri * 3;
+        normals[nOff] = map.getFloat(p);
+        normals[nOff + 1] = map.getFloat(p + 4);
+        normals[nOff + 2] = map.getFloat(p + 8);
+        int vOff = tri * 9;
+        for (int k = 0; k < 9; k++) {
+          vertices[vOff + k] = map.getFloat(p + 12 + 4 * k);
+        }
+      }
+    });
+  }
+
+  public int triangleCount() {
+    return triangleCount;
+  }
+
+  /** Number of corner vertices (three per triangle, not deduplicated). */
+  public int vertexCount() {
+    return triangleCount * 3;
+  }
+
+  /** Backing vertex array, 9 floats per triangle. Not copied. */
+  public float[] vertices() {
+    return vertices;
+  }
+
+  /** Backing facet normal array, 3 floats per triangle. Not copied. */
+  public float[] normals() {
+    return normals;
+  }
+
+  /** Copy the vertices into a direct (off-heap) native-order buffer. */
+  public FloatBuffer toDirectVertexBuffer() {
+    FloatBuffer buf = ByteBuffer.allocateDirect(triangleCount * 9 * Float.BYTES)
+        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    buf.put(vertices, 0, triangleCount * 9).flip();
+    return buf;
+  }
+
+  /** Bounding box as {@code {minX, minY, minZ, maxX, maxY, maxZ}}. */
+  public float[] bounds() {
+    float[] b = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+        Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+    int len = triangleCount * 9;
+    for (int i = 0; i < len; i += 3) {
+      for (int a = 0; a < 3; a++) {
+        float v = vertices[i + a];
+        if (v < b[a]) b[a] = v;
+        if (v > b[a + 3]) b[a + 3] = v;
+      }
+    }
+    return b;
+  }
+
+  public double area(int tri) {
+    int o = tri * 9;
+    double ux = vertices[o + 3] - vertices[o], uy = vertices[o + 4] - vertices[o + 1], uz = vertices[o + 5] - vertices[o + 2];
+    double vx = vertices[o + 6] - vertices[o], vy = vertices[o + 7] - vertices[o + 1], vz = vertices[o + 8] - vertices[o + 2];
+    double cx = uy * vz - uz * vy, cy = uz * vx - ux * vz, cz = ux * vy - uy * vx;
+    return 0.5 * Math.sqrt(cx * cx + cy * cy + cz * cz);
+  }
+
+  public double surfaceArea() {
+    return IntStream.range(0, triangleCount).parallel().mapToDouble(this::area).sum();
+  }
+
+  /**
+   * Recompute facet normals from the vertex winding. Scanners frequently write
+   * zero normals, which would break any orientation-based classification.
+   */
+  public void recomputeNormals() {
+    IntStream.range(0, triangleCount).parallel().forEach(t -> {
+      int o = t * 9;
+      float ux = vertices[o + 3] - vertices[o], uy = vertices[o + 4] - vertices[o + 1], uz = vertices[o + 5] - vertices[o + 2];
+      float vx = vertices[o + 6] - vertices[o], vy = vertices[o + 7] - vertices[o + 1], vz = vertices[o + 8] - vertices[o + 2];
+      float cx = uy * vz - uz * vy, cy = uz * vx - ux * vz, cz = ux * vy - uy * vx;
+      float len = (float) Math.sqrt(cx * cx + cy * cy + cz * cz);
+      float inv = len > 0 ? 1f / len : 0f;
+      normals[t * 3] = cx * inv;
+      normals[t * 3 + 1] = cy * inv;
+      normals[t * 3 + 2] = cz * inv;
+    });
+  }
+
+  /** Write the mesh as binary STL. */
+  public void writeBinary(Path path) throws IOException {
+    StlWriter.write(path, triangleCount, (t, out) -> {
+      out.putFloat(normals[t * 3]).putFloat(normals[t * 3 + 1]).putFloat(normals[t * 3 + 2]);
+      for (int k = 0; k < 9; k++) {
+        out.putFloat(vertices[t * 9 + k]);
+      }
+    });
+  }
+
+  @Override
+  public String toString() {
+    float[] b = bounds();
+    return String.format("StlMesh[%d triangles, bbox %.2f x %.2f x %.2f m]",
+        triangleCount, b[3] - b[0], b[4] - b[1], b[5] - b[2]);
+  }
+
+  static float[] grow(float[] a, int minLength) {
+    return Arrays.copyOf(a, Math.max(minLength, a.length + (a.length >> 1) + 16));
+  }
+}
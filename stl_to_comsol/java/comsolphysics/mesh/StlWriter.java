@@ -0,0 +1,55 @@
+/*
+ * StlWriter.java
+ * Buffered binary STL output.
+ */
+
+package comsolphysics.mesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Writes binary STL through a single reusable direct buffer. */
+final class StlWriter {
+
+  /** Fills the 48 data bytes (normal + three vertices) of facet {@code tri}. */
+  interface FacetSource {
+    void put(int tri, ByteBuffer out);
+  }
+
+  private static final int BUFFER_RECORDS = 1 << 14;
+
+  private StlWriter() {
+  }
+
+  static void write(Path path, int triangleCount, FacetSource source) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_RECORDS * 50).order(ByteOrder.LITTLE_ENDIAN);
+    try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      byte[] header = new byte[80];
+      byte[] tag = "binary STL written by comsolphysics".getBytes(StandardCharsets.US_ASCII);
+      System.arraycopy(tag, 0, header, 0, tag.length);
+      buf.put(header).putInt(triangleCount);
+      for (int t = 0; t < triangleCount; t++) {
+        if (buf.remaining() < 50) {
+          drain(buf, out);
+        }
+        source.put(t, buf);
+        buf.putShort((short) 0);
+      }
+      drain(buf, out);
+    }
+  }
+
+  private static void drain(ByteBuffer buf, FileChannel out) throws IOException {
+    buf.flip();
+    while (buf.hasRemaining()) {
+      out.write(buf);
+    }
+    buf.clear();
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * SurfaceCategory.java
+ * Room component categories assigned to surface patches.
+ */
+
+package comsolphysics.mesh;
+
+/** Component categories, in the order the generated models report them. */
+public enum SurfaceCategory {
+  FLOOR("floor", "Floor"),
+  WALL("wall", "Walls"),
+  CEILING("ceiling", "Ceiling"),
+  DOOR("door", "Doors"),
+  WINDOW("window", "Windows"),
+  FURNITURE("furniture", "Furniture (tables, chairs, cabinets, etc.)"),
+  OTHER("other", "Other interior object");
+
+  private final String key;
+  private final String label;
+
+  SurfaceCategory(String key, String label) {
+    this.key = key;
+    this.label = label;
+  }
+
+  /** Category key as used by stl_analyzer.py and the material assignments. */
+  public String key() {
+    return key;
+  }
+
+  public String label() {
+    return label;
+  }
+
+  public static SurfaceCategory fromKey(String key) {
+    for (SurfaceCategory c : values()) {
+      if (c.key.equalsIgnoreCase(key) || c.name().equalsIgnoreCase(key)) {
+        return c;
+      }
+    }
+    throw new IllegalArgumentException("Unknown surface category: " + key);
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * SurfaceSegmenter.java
+ * Parallel region growing of surface patches and room-component classification.
+ */
+
+package comsolphysics.mesh;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits an {@link IndexedMesh} into surface patches and classifies them as
+ * floor, walls, ceiling, doors, windows, furniture or other.
+ *
+ * <p>Two triangles end up in the same patch when they share an edge, fall
+ * into the same orientation class (horizontal, vertical facing x, vertical
+ * facing y, other) and their normals differ by less than the angle
+ * threshold. Edges are processed by a fork/join split over triangle ranges
+ * and merged with a lock-free union-find, so the work scales with cores.
+ *
+ * <p>Patch classification follows {@code stl_analyzer._identify_components}
+ * so the reported groups keep their meaning, but it runs on connected
+ * patches rather than on single triangles.
+ */
+public final class SurfaceSegmenter {
+
+  /** Same thresholds as stl_analyzer._group_surfaces. */
+  public static final double DEFAULT_ANGLE_DEG = 15.0;
+
+  private static final int HORIZONTAL = 0;
+  private static final int VERTICAL_X = 1;
+  private static final int VERTICAL_Y = 2;
+  private static final int SLANTED = 3;
+
+  private static final int SPLIT_THRESHOLD = 1 << 13;
+
+  private final double angleDeg;
+  private final ForkJoinPool pool;
+
+  /** Runs on the fork/join pool of the calling thread, or the common pool outside one. */
+  public SurfaceSegmenter() {
+    this(DEFAULT_ANGLE_DEG, null);
+  }
+
+  /** {@code pool} null: as for {@link #SurfaceSegmenter()}. */
+  public SurfaceSegmenter(double angleDeg, ForkJoinPool pool) {
+    this.angleDeg = angleDeg;
+    this.pool = pool;
+  }
+
+  private ForkJoinPool pool() {
+    if (pool != null) {
+      return pool;
+    }
+    ForkJoinPool current = ForkJoinTask.getPool();
+    return current != null ? current : ForkJoinPool.commonPool();
+  }
+
+  public static Segmentation segment(IndexedMesh mesh) {
+    return new SurfaceSegmenter().run(mesh);
+  }
+
+  public Segmentation run(IndexedMesh mesh) {
+    int n = mesh.triangleCount();
+    float[] unit = new float[n * 3];
+    double[] triArea = new double[n];
+    byte[] orientation = new byte[n];
+    double cosVertical = Math.cos(Math.toRadians(angleDeg));
+    double sinVertical = Math.sin(Math.toRadians(angleDeg));
+    pool().invoke(new RangeTask(0, n, (lo, hi) -> {
+      double[] nrm = new double[3];
+      for (int t = lo; t < hi; t++) {
+        mesh.faceNormal(t, nrm);
+        double len = Math.sqrt(nrm[0] * nrm[0] + nrm[1] * nrm[1] + nrm[2] * nrm[2]);
+        double inv = len > 0 ? 1.0 / len : 0.0;
+        double nx = nrm[0] * inv, ny = nrm[1] * inv, nz = nrm[2] * inv;
+        triArea[t] = 0.5 * len;
+        unit[t * 3] = (float) nx;
+        unit[t * 3 + 1] = (float) ny;
+        unit[t * 3 + 2] = (float) nz;
+        double az = Math.abs(nz);
+        if (az > cosVertical) {
+          orientation[t] = HORIZONTAL;
+        } else if (az < sinVertical) {
+          orientation[t] = (byte) (Math.abs(nx) > Math.abs(ny) ? VERTICAL_X : VERTICAL_Y);
+        } else {
+          orientation[t] = SLANTED;
+        }
+      }
+    }));
+
+    MeshAdjacency adjacency = new MeshAdjacency(mesh);
+    ConcurrentUnionFind sets = new ConcurrentUnionFind(n);
+    float cosMerge = (float) Math.cos(Math.toRadians(angleDeg));
+    pool().invoke(new RangeTask(0, n, (lo, hi) -> {
+      int[] nb = new int[8];
+      for (int t = lo; t < hi; t++) {
+        for (int k = 0; k < 3; k++) {
+          int count = adjacency.edgeNeighbors(t, k, nb);
+          for (int i = 0; i < count; i++) {
+            int u = nb[i];
+            // Each undirected edge is seen from both sides; only the lower index merges
+            if (u < t || orientation[u] != orientation[t]) {
+              continue;
+            }
+            float dot = unit[t * 3] * unit[u * 3] + unit[t * 3 + 1] * unit[u * 3 + 1]
+                + unit[t * 3 + 2] * unit[u * 3 + 2];
+            if (dot >= cosMerge) {
+              sets.union(t, u);
+            }
+          }
+        }
+      }
+    }));
+
+    // Roots are the smallest triangle of each set, so a sequential sweep assigns dense ids
+    int[] patchOf = new int[n];
+    int patches = 0;
+    for (int t = 0; t < n; t++) {
+      int root = sets.find(t);
+      patchOf[t] = root == t ? patches++ : patchOf[root];
+    }
+
+    double[] area = new double[patches];
+    double[] normalSum = new double[patches * 3];
+    float[] bounds = new float[patches * 6];
+    byte[] patchOrientation = new byte[patches];
+    for (int p = 0; p < patches; p++) {
+      bounds[p * 6] = bounds[p * 6 + 1] = bounds[p * 6 + 2] = Float.POSITIVE_INFINITY;
+      bounds[p * 6 + 3] = bounds[p * 6 + 4] = bounds[p * 6 + 5] = Float.NEGATIVE_INFINITY;
+    }
+    int[] idx = mesh.indices();
+    float[] pos = mesh.positions();
+    for (int t = 0; t < n; t++) {
+      int p = patchOf[t];
+      double a = triArea[t];
+      area[p] += a;
+      normalSum[p * 3] += unit[t * 3] * a;
+      normalSum[p * 3 + 1] += unit[t * 3 + 1] * a;
+      normalSum[p * 3 + 2] += unit[t * 3 + 2] * a;
+      patchOrientation[p] = orientation[t];
+      for (int k = 0; k < 3; k++) {
+        int v = idx[t * 3 + k] * 3;
+        for (int ax = 0; ax < 3; ax++) {
+          float c = pos[v + ax];
+          if (c < bounds[p * 6 + ax]) bounds[p * 6 + ax] = c;
+          if (c > bounds[p * 6 + 3 + ax]) bounds[p * 6 + 3 + ax] = c;
+        }
+      }
+    }
+
+    SurfaceCategory[] category = classify(mesh.bounds(), bounds, patchOrientation, patches);
+    return new Segmentation(patchOf, patches, category, area, normalSum, bounds);
+  }
+
+  private static SurfaceCategory[] classify(float[] room, float[] bounds, byte[] orientation, int patches) {
+    SurfaceCategory[] category = new SurfaceCategory[patches];
+    for (int p = 0; p < patches; p++) {
+      category[p] = classify(room, bounds, p * 6, orientation[p]);
+    }
+    return category;
+  }
+
+  /**
+   * Classify a surface from its bounding box (six floats at {@code offset})
+   * and unit normal, relative to the room bounds, using the default angle
+   * threshold. Used for COMSOL boundaries that did not come from this segmenter.
+   */
+  public static SurfaceCategory classify(float[] room, float[] box, int offset,
+                                         double nx, double ny, double nz) {
+    double az = Math.abs(nz);
+    int orientation;
+    if (az > Math.cos(Math.toRadians(DEFAULT_ANGLE_DEG))) {
+      orientation = HORIZONTAL;
+    } else if (az < Math.sin(Math.toRadians(DEFAULT_ANGLE_DEG))) {
+      orientation = Math.abs(nx) > Math.abs(ny) ? VERTICAL_X : VERTICAL_Y;
+    } else {
+      orientation = SLANTED;
+    }
+    return classify(room, box, offset, orientation);
+  }
+
+  private static SurfaceCategory classify(float[] room, float[] box, int offset, int orientation) {
+    double minZ = room[2];
+    double height = room[5] - room[2];
+    double zTol = height * 0.1;
+    double lo = box[offset + 2];
+    double hi = box[offset + 5];
+    double midZ = 0.5 * (lo + hi);
+    switch (orientation) {
+      case HORIZONTAL:
+        if (Math.abs(midZ - minZ) < zTol) {
+          return SurfaceCategory.FLOOR;
+        } else if (Math.abs(midZ - room[5]) < zTol) {
+          return SurfaceCategory.CEILING;
+        }
+        return SurfaceCategory.FURNITURE;
+      case VERTICAL_X:
+      case VERTICAL_Y:
+        if (hi - lo > height * 0.6) {
+          return SurfaceCategory.WALL;
+        } else if (midZ > minZ + height * 0.3 && midZ < minZ + height * 0.8) {
+          return SurfaceCategory.WINDOW;
+        } else if (Math.abs(lo - minZ) < zTol) {
+          return SurfaceCategory.DOOR;
+        }
+        return SurfaceCategory.FURNITURE;
+      default:
+        return SurfaceCategory.OTHER;
+    }
+  }
+
+  /** Body of a parallel loop over {@code [lo, hi)}. */
+  interface RangeBody {
+    void apply(int lo, int hi);
+  }
+
+  static final class RangeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int lo;
+    private final int hi;
+    private final RangeBody body;
+
+    RangeTask(int lo, int hi, RangeBody body) {
+      this.lo = lo;
+      this.hi = hi;
+      this.body = body;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo <= SPLIT_THRESHOLD) {
+        body.apply(lo, hi);
+        return;
+      }
+      int mid = (lo + hi) >>> 1;
+      invokeAll(new RangeTask(lo, mid, body), new RangeTask(mid, hi, body));
+    }
+  }
+}
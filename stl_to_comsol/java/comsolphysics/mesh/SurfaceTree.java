@@ -0,0 +1,346 @@
+/*
+ * SurfaceTree.java
+ * Inside/outside and distance queries against a triangle surface.
+ */
+
+package comsolphysics.mesh;
+
+import java.util.Arrays;
+
+/**
+ * Bounding-sphere tree over the triangles of a surface, answering two
+ * queries the tetrahedral mesher needs: the generalized winding number of a
+ * point, and the nearest triangle.
+ *
+ * <p>The winding number is the solid angle the surface subtends at the
+ * point, over {@code 4 pi}: 1 inside a closed outward-oriented surface, 0
+ * outside, and a smooth value in between near holes, so scans that are not
+ * watertight still get a sensible inside. Nodes far from the point (farther
+ * than twice their radius) are replaced by their area-weighted normal
+ * dipole; nearby triangles use the exact (Van Oosterom) solid angle.
+ */
+final class SurfaceTree {
+
+  private static final int LEAF = 8;
+  private static final double FAR = 2.0;
+
+  private final double[] xyz;
+  private final int[] tri;
+  private final int[] order;
+  // Per node: first triangle and count in order[], children, sphere and dipole
+  private int[] first;
+  private int[] count;
+  private int[] left;
+  private int[] right;
+  private double[] center;
+  private double[] radius;
+  private double[] dipole;
+  private int nodeCount;
+
+  SurfaceTree(IndexedMesh mesh) {
+    float[] p = mesh.positions();
+    xyz = new double[mesh.vertexCount() * 3];
+    for (int i = 0; i < xyz.length; i++) {
+      xyz[i] = p[i];
+    }
+    int n = mesh.triangleCount();
+    tri = Arrays.copyOf(mesh.indices(), n * 3);
+    order = new int[n];
+    for (int t = 0; t < n; t++) {
+      order[t] = t;
+    }
+    int capacity = Math.max(1, 2 * (n / LEAF + 1) * 2);
+    first = new int[capacity];
+    count = new int[capacity];
+    left = new int[capacity];
+    right = new int[capacity];
+    center = new double[capacity * 3];
+    radius = new double[capacity];
+    dipole = new double[capacity * 3];
+    double[] centroid = new double[n * 3];
+    for (int t = 0; t < n; t++) {
+      for (int a = 0; a < 3; a++) {
+        centroid[t * 3 + a] = (xyz[tri[t * 3] * 3 + a] + xyz[tri[t * 3 + 1] * 3 + a] + xyz[tri[t * 3 + 2] * 3 + a]) / 3;
+      }
+    }
+    if (n > 0) {
+      build(0, n, centroid);
+    }
+  }
+
+  private int build(int from, int to, double[] centroid) {
+    if (nodeCount == first.length) {
+      int c = nodeCount * 2;
+      first = Arrays.copyOf(first, c);
+      count = Arrays.copyOf(count, c);
+      left = Arrays.copyOf(left, c);
+      right = Arrays.copyOf(right, c);
+      center = Arrays.copyOf(center, c * 3);
+      radius = Arrays.copyOf(radius, c);
+      dipole = Arrays.copyOf(dipole, c * 3);
+    }
+    int node = nodeCount++;
+    first[node] = from;
+    count[node] = to - from;
+    left[node] = -1;
+    right[node] = -1;
+
+    // Area-weighted centre and summed area vector (half the facet normals)
+    double area = 0, cx = 0, cy = 0, cz = 0, nx = 0, ny = 0, nz = 0;
+    double[] lo = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+    double[] hi = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+    double[] n = new double[3];
+    for (int i = from; i < to; i++) {
+      int t = order[i];
+      normal(t, n);
+      double a = 0.5 * Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+      area += a;
+      cx += a * centroid[t * 3];
+      cy += a * centroid[t * 3 + 1];
+      cz += a * centroid[t * 3 + 2];
+      nx += 0.5 * n[0];
+      ny += 0.5 * n[1];
+      nz += 0.5 * n[2];
+      for (int k = 0; k < 3; k++) {
+        int v = tri[t * 3 + k] * 3;
+        for (int d = 0; d < 3; d++) {
+          lo[d] = Math.min(lo[d], xyz[v + d]);
+          hi[d] = Math.max(hi[d], xyz[v + d]);
+        }
+      }
+    }
+    if (area > 0) {
+      cx /= area;
+      cy /= area;
+      cz /= area;
+    } else {
+      cx = (lo[0] + hi[0]) / 2;
+      cy = (lo[1] + hi[1]) / 2;
+      cz = (lo[2] + hi[2]) / 2;
+    }
+    double r2 = 0;
+    for (int i = from; i < to; i++) {
+      for (int k = 0; k < 3; k++) {
+        int v = tri[order[i] * 3 + k] * 3;
+        double dx = xyz[v] - cx, dy = xyz[v + 1] - cy, dz = xyz[v + 2] - cz;
+        r2 = Math.max(r2, dx * dx + dy * dy + dz * dz);
+      }
+    }
+    center[node * 3] = cx;
+    center[node * 3 + 1] = cy;
+    center[node * 3 + 2] = cz;
+    radius[node] = Math.sqrt(r2);
+    dipole[node * 3] = nx;
+    dipole[node * 3 + 1] = ny;
+    dipole[node * 3 + 2] = nz;
+
+    if (to - from <= LEAF) {
+      return node;
+    }
+    // Median split on the widest axis of the centroids
+    int axis = 0;
+    double[] clo = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+    double[] chi = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+    for (int i = from; i < to; i++) {
+      for (int d = 0; d < 3; d++) {
+        clo[d] = Math.min(clo[d], centroid[order[i] * 3 + d]);
+        chi[d] = Math.max(chi[d], centroid[order[i] * 3 + d]);
+      }
+    }
+    for (int d = 1; d < 3; d++) {
+      if (chi[d] - clo[d] > chi[axis] - clo[axis]) {
+        axis = d;
+      }
+    }
+    int mid = (from + to) >>> 1;
+    select(from, to - 1, mid, axis, centroid);
+    int l = build(from, mid, centroid);
+    int r = build(mid, to, centroid);
+    left[node] = l;
+    right[node] = r;
+    return node;
+  }
+
+  /** Partial quickselect of order[lo..hi] so order[k] holds the k-th centroid along axis. */
+  private void select(int lo, int hi, int k, int axis, double[] centroid) {
+    while (lo < hi) {
+      double pivot = centroid[order[(lo + hi) >>> 1] * 3 + axis];
+      int i = lo, j = hi;
+      while (i <= j) {
+        while (centroid[order[i] * 3 + axis] < pivot) {
+          i++;
+        }
+        while (centroid[order[j] * 3 + axis] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          int t = order[i];
+          order[i++] = order[j];
+          order[j--] = t;
+        }
+      }
+      if (k <= j) {
+        hi = j;
+      } else if (k >= i) {
+        lo = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  private void normal(int t, double[] out) {
+    int a = tri[t * 3] * 3, b = tri[t * 3 + 1] * 3, c = tri[t * 3 + 2] * 3;
+    double ux = xyz[b] - xyz[a], uy = xyz[b + 1] - xyz[a + 1], uz = xyz[b + 2] - xyz[a + 2];
+    double vx = xyz[c] - xyz[a], vy = xyz[c + 1] - xyz[a + 1], vz = xyz[c + 2] - xyz[a + 2];
+    out[0] = uy * vz - uz * vy;
+    out[1] = uz * vx - ux * vz;
+    out[2] = ux * vy - uy * vx;
+  }
+
+  /** Generalized winding number at (x, y, z). */
+  double winding(double x, double y, double z) {
+    if (nodeCount == 0) {
+      return 0;
+    }
+    double sum = 0;
+    int[] stack = new int[64];
+    int top = 0;
+    stack[top++] = 0;
+    while (top > 0) {
+      int node = stack[--top];
+      double dx = center[node * 3] - x, dy = center[node * 3 + 1] - y, dz = center[node * 3 + 2] - z;
+      double d2 = dx * dx + dy * dy + dz * dz;
+      double reach = FAR * radius[node];
+      if (d2 > reach * reach) {
+        double d = Math.sqrt(d2);
+        sum += (dipole[node * 3] * dx + dipole[node * 3 + 1] * dy + dipole[node * 3 + 2] * dz) / (d2 * d);
+      } else if (left[node] < 0) {
+        for (int i = first[node]; i < first[node] + count[node]; i++) {
+          sum += solidAngle(order[i], x, y, z);
+        }
+      } else {
+        if (top + 2 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = left[node];
+        stack[top++] = right[node];
+      }
+    }
+    return sum / (4 * Math.PI);
+  }
+
+  private double solidAngle(int t, double x, double y, double z) {
+    int a = tri[t * 3] * 3, b = tri[t * 3 + 1] * 3, c = tri[t * 3 + 2] * 3;
+    double ax = xyz[a] - x, ay = xyz[a + 1] - y, az = xyz[a + 2] - z;
+    double bx = xyz[b] - x, by = xyz[b + 1] - y, bz = xyz[b + 2] - z;
+    double cx = xyz[c] - x, cy = xyz[c + 1] - y, cz = xyz[c + 2] - z;
+    double la = Math.sqrt(ax * ax + ay * ay + az * az);
+    double lb = Math.sqrt(bx * bx + by * by + bz * bz);
+    double lc = Math.sqrt(cx * cx + cy * cy + cz * cz);
+    double det = ax * (by * cz - bz * cy) - ay * (bx * cz - bz * cx) + az * (bx * cy - by * cx);
+    double div = la * lb * lc + (ax * bx + ay * by + az * bz) * lc
+        + (ax * cx + ay * cy + az * cz) * lb + (bx * cx + by * cy + bz * cz) * la;
+    return 2 * Math.atan2(det, div);
+  }
+
+  /**
+   * Nearest triangle to (x, y, z) within {@code limit}, or -1; its squared
+   * distance is left in {@code distance2[0]}.
+   */
+  int nearest(double x, double y, double z, double limit, double[] distance2) {
+    double best = limit * limit;
+    int bestTri = -1;
+    if (nodeCount == 0) {
+      distance2[0] = best;
+      return -1;
+    }
+    double[] q = new double[3];
+    int[] stack = new int[64];
+    int top = 0;
+    stack[top++] = 0;
+    while (top > 0) {
+      int node = stack[--top];
+      double dx = center[node * 3] - x, dy = center[node * 3 + 1] - y, dz = center[node * 3 + 2] - z;
+      double gap = Math.sqrt(dx * dx + dy * dy + dz * dz) - radius[node];
+      if (gap > 0 && gap * gap >= best) {
+        continue;
+      }
+      if (left[node] < 0) {
+        for (int i = first[node]; i < first[node] + count[node]; i++) {
+          closest(order[i], x, y, z, q);
+          double ex = q[0] - x, ey = q[1] - y, ez = q[2] - z;
+          double e2 = ex * ex + ey * ey + ez * ez;
+          if (e2 < best) {
+            best = e2;
+            bestTri = order[i];
+          }
+        }
+      } else {
+        if (top + 2 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = left[node];
+        stack[top++] = right[node];
+      }
+    }
+    distance2[0] = best;
+    return bestTri;
+  }
+
+  /** Closest point of triangle t to p (Ericson, Real-Time Collision Detection 5.1.5). */
+  private void closest(int t, double px, double py, double pz, double[] out) {
+    int a = tri[t * 3] * 3, b = tri[t * 3 + 1] * 3, c = tri[t * 3 + 2] * 3;
+    double abx = xyz[b] - xyz[a], aby = xyz[b + 1] - xyz[a + 1], abz = xyz[b + 2] - xyz[a + 2];
+    double acx = xyz[c] - xyz[a], acy = xyz[c + 1] - xyz[a + 1], acz = xyz[c + 2] - xyz[a + 2];
+    double apx = px - xyz[a], apy = py - xyz[a + 1], apz = pz - xyz[a + 2];
+    double d1 = abx * apx + aby * apy + abz * apz;
+    double d2 = acx * apx + acy * apy + acz * apz;
+    if (d1 <= 0 && d2 <= 0) {
+      set(out, xyz[a], xyz[a + 1], xyz[a + 2]);
+      return;
+    }
+    double bpx = px - xyz[b], bpy = py - xyz[b + 1], bpz = pz - xyz[b + 2];
+    double d3 = abx * bpx + aby * bpy + abz * bpz;
+    double d4 = acx * bpx + acy * bpy + acz * bpz;
+    if (d3 >= 0 && d4 <= d3) {
+      set(out, xyz[b], xyz[b + 1], xyz[b + 2]);
+      return;
+    }
+    double vc = d1 * d4 - d3 * d2;
+    if (vc <= 0 && d1 >= 0 && d3 <= 0) {
+      double v = d1 / (d1 - d3);
+      set(out, xyz[a] + v * abx, xyz[a + 1] + v * aby, xyz[a + 2] + v * abz);
+      return;
+    }
+    double cpx = px - xyz[c], cpy = py - xyz[c + 1], cpz = pz - xyz[c + 2];
+    double d5 = abx * cpx + aby * cpy + abz * cpz;
+    double d6 = acx * cpx + acy * cpy + acz * cpz;
+    if (d6 >= 0 && d5 <= d6) {
+      set(out, xyz[c], xyz[c + 1], xyz[c + 2]);
+      return;
+    }
+    double vb = d5 * d2 - d1 * d6;
+    if (vb <= 0 && d2 >= 0 && d6 <= 0) {
+      double w = d2 / (d2 - d6);
+      set(out, xyz[a] + w * acx, xyz[a + 1] + w * acy, xyz[a + 2] + w * acz);
+      return;
+    }
+    double va = d3 * d6 - d5 * d4;
+    if (va <= 0 && (d4 - d3) >= 0 && (d5 - d6) >= 0) {
+      double w = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+      set(out, xyz[b] + w * (xyz[c] - xyz[b]), xyz[b + 1] + w * (xyz[c + 1] - xyz[b + 1]),
+          xyz[b + 2] + w * (xyz[c + 2] - xyz[b + 2]));
+      return;
+    }
+    double denom = 1 / (va + vb + vc);
+    double v = vb * denom, w = vc * denom;
+    set(out, xyz[a] + abx * v + acx * w, xyz[a + 1] + aby * v + acy * w, xyz[a + 2] + abz * v + acz * w);
+  }
+
+  private static void set(double[] out, double x, double y, double z) {
+    out[0] = x;
+    out[1] = y;
+    out[2] = z;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * TetMeshBuffer.java
+ * Off-heap tetrahedral mesh in one little-endian buffer.
+ */
+
+package comsolphysics.mesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A linear tetrahedral mesh held in a single direct buffer, laid out so the
+ * same bytes serve in memory and on disk:
+ * {@code magic, nodeCount, elementCount, faceCount, hmax, hmin,
+ * double[3*N] xyz, int[4*E] tets, int[E] domains, int[3*F] faces,
+ * int[F] faceBoundaries}. Node and element numbers are 0-based; domain and
+ * boundary numbers are 1-based as in COMSOL.
+ *
+ * <p>{@link #write} stores the buffer as is and {@link #map} maps a stored
+ * file back without copying, so a cached mesh costs no heap until a solver
+ * takes its arrays.
+ */
+public final class TetMeshBuffer {
+
+  /** Magic number of the format, {@code "TET1"}. */
+  public static final int MAGIC = 0x54455431;
+  private static final int HEADER = 32;
+
+  private final ByteBuffer buffer;
+  private final int nodeCount;
+  private final int elementCount;
+  private final int faceCount;
+
+  private TetMeshBuffer(ByteBuffer buffer) {
+    this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (this.buffer.getInt(0) != MAGIC) {
+      throw new IllegalArgumentException("Not a tetrahedral mesh buffer");
+    }
+    this.nodeCount = this.buffer.getInt(4);
+    this.elementCount = this.buffer.getInt(8);
+    this.faceCount = this.buffer.getInt(12);
+    if (this.buffer.capacity() < bytes(nodeCount, elementCount, faceCount)) {
+      throw new IllegalArgumentException("Truncated tetrahedral mesh buffer");
+    }
+  }
+
+  /** An empty direct buffer of the given size, to be filled through the views. */
+  public static TetMeshBuffer allocate(int nodeCount, int elementCount, int faceCount, double hmax, double hmin) {
+    long bytes = bytes(nodeCount, elementCount, faceCount);
+    if (bytes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Mesh too large for one buffer: " + bytes + " bytes");
+    }
+    ByteBuffer b = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+    b.putInt(0, MAGIC).putInt(4, nodeCount).putInt(8, elementCount).putInt(12, faceCount);
+    b.putDouble(16, hmax).putDouble(24, hmin);
+    return new TetMeshBuffer(b);
+  }
+
+  private static long bytes(int nodes, int elements, int faces) {
+    return HEADER + 24L * nodes + 20L * elements + 16L * faces;
+  }
+
+  public int nodeCount() {
+    return nodeCount;
+  }
+
+  public int elementCount() {
+    return elementCount;
+  }
+
+  public int faceCount() {
+    return faceCount;
+  }
+
+  /** Number of tetrahedra, as {@code mesh.getNumElem()} reports for a FreeTet mesh. */
+  public int getNumElem() {
+    return elementCount;
+  }
+
+  /** Number of elements of a COMSOL type: {@code "tet"}, {@code "tri"} (boundary) or {@code "vtx"} (nodes). */
+  public int getNumElem(String type) {
+    switch (type) {
+      case "tet":
+        return elementCount;
+      case "tri":
+        return faceCount;
+      case "vtx":
+        return nodeCount;
+      default:
+        throw new IllegalArgumentException("Unknown element type: " + type);
+    }
+  }
+
+  /** Maximum element size the mesh was made for. */
+  public double hmax() {
+    return buffer.getDouble(16);
+  }
+
+  /** Minimum element size the mesh was made for. */
+  public double hmin() {
+    return buffer.getDouble(24);
+  }
+
+  /** Coordinates, 3 per node. A view on the buffer. */
+  public DoubleBuffer xyz() {
+    return slice(HEADER, 24L * nodeCount).asDoubleBuffer();
+  }
+
+  /** Corners, 4 per element, positively oriented. A view on the buffer. */
+  public IntBuffer tets() {
+    return slice(HEADER + 24L * nodeCount, 16L * elementCount).asIntBuffer();
+  }
+
+  /** Geometry domain of each element. A view on the buffer. */
+  public IntBuffer domains() {
+    return slice(HEADER + 24L * nodeCount + 16L * elementCount, 4L * elementCount).asIntBuffer();
+  }
+
+  /** Boundary triangles, 3 nodes each, ordered so the normal points out of the mesh. A view on the buffer. */
+  public IntBuffer faces() {
+    return slice(HEADER + 24L * nodeCount + 20L * elementCount, 12L * faceCount).asIntBuffer();
+  }
+
+  /** Geometry boundary of each face. A view on the buffer. */
+  public IntBuffer faceBoundaries() {
+    return slice(HEADER + 24L * nodeCount + 20L * elementCount + 12L * faceCount, 4L * faceCount).asIntBuffer();
+  }
+
+  private ByteBuffer slice(long offset, long length) {
+    ByteBuffer b = buffer.duplicate();
+    b.position((int) offset).limit((int) (offset + length));
+    return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /** Write the buffer to {@code path}. */
+  public void write(Path path) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer b = buffer.duplicate();
+      b.clear();
+      while (b.hasRemaining()) {
+        ch.write(b);
+      }
+    }
+  }
+
+  /** Map a file written by {@link #write}, read-only. */
+  public static TetMeshBuffer map(Path path) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+      try {
+        return new TetMeshBuffer(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+      } catch (IllegalArgumentException e) {
+        throw new IOException(e.getMessage() + ": " + path);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "TetMeshBuffer[" + nodeCount + " nodes, " + elementCount + " tetrahedra, " + faceCount + " boundary faces]";
+  }
+}
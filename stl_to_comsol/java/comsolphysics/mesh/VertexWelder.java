@@ -0,0 +1,185 @@
+/*
+ * VertexWelder.java
+ * Merges coincident STL corners into shared vertices.
+ */
+
+package comsolphysics.mesh;
+
+import java.util.Arrays;
+
+/**
+ * Welds the corners of an {@link StlMesh} into an {@link IndexedMesh}.
+ *
+ * <p>Space is divided into cubic cells of edge {@code 2 * tolerance}. A
+ * point can only be within {@code tolerance} of points in its own cell or in
+ * the neighbouring cell on the near side of each axis, so each lookup probes
+ * at most eight cells. Every welded vertex is stored in an open-addressing
+ * table keyed by a 64-bit mix of its integer cell coordinates, with the exact
+ * coordinates kept alongside for verification, so a cell holding several
+ * vertices just under {@code 2 * tolerance} apart yields all of them; there
+ * is no boxing and no per-vertex object.
+ *
+ * <p>Triangles that collapse to a line or a point after welding are dropped,
+ * since COMSOL's import repair would otherwise have to remove them.
+ */
+public final class VertexWelder {
+
+  /** Default weld tolerance; matches the {@code importtol} used by the generated models. */
+  public static final double DEFAULT_TOLERANCE = 1.0E-6;
+
+  private static final long EMPTY = Long.MIN_VALUE;
+
+  private final double tolerance;
+  private final double cellSize;
+
+  // Open-addressing table: slot -> cell key, vertex id (one slot per vertex)
+  private long[] keys;
+  private int[] slots;
+  private int mask;
+  private int used;
+
+  // Per unique vertex: exact cell coordinates and welded position
+  private long[] cells;
+  private float[] positions;
+  private int vertexCount;
+
+  private VertexWelder(double tolerance, int expectedVertices) {
+    if (!(tolerance > 0)) {
+      throw new IllegalArgumentException("Weld tolerance must be positive: " + tolerance);
+    }
+    this.tolerance = tolerance;
+    this.cellSize = 2.0 * tolerance;
+    int capacity = Integer.highestOneBit(Math.max(16, expectedVertices * 2 - 1)) << 1;
+    keys = new long[capacity];
+    Arrays.fill(keys, EMPTY);
+    slots = new int[capacity];
+    mask = capacity - 1;
+    cells = new long[Math.max(16, expectedVertices) * 3];
+    positions = new float[Math.max(16, expectedVertices) * 3];
+  }
+
+  public static IndexedMesh weld(StlMesh stl) {
+    return weld(stl, DEFAULT_TOLERANCE);
+  }
+
+  public static IndexedMesh weld(StlMesh stl, double tolerance) {
+    int triangles = stl.triangleCount();
+    float[] src = stl.vertices();
+    // Closed scans have about half as many vertices as triangles; size for one per triangle
+    VertexWelder welder = new VertexWelder(tolerance, Math.max(16, triangles));
+    int[] indices = new int[triangles * 3];
+    int kept = 0;
+    for (int t = 0; t < triangles; t++) {
+      int o = t * 9;
+      int a = welder.lookup(src[o], src[o + 1], src[o + 2]);
+      int b = welder.lookup(src[o + 3], src[o + 4], src[o + 5]);
+      int c = welder.lookup(src[o + 6], src[o + 7], src[o + 8]);
+      if (a == b || b == c || a == c) {
+        continue;
+      }
+      indices[kept * 3] = a;
+      indices[kept * 3 + 1] = b;
+      indices[kept * 3 + 2] = c;
+      kept++;
+    }
+    return new IndexedMesh(Arrays.copyOf(welder.positions, welder.vertexCount * 3), welder.vertexCount,
+        Arrays.copyOf(indices, kept * 3), kept, triangles);
+  }
+
+  /** Return the id of a welded vertex within tolerance of (x, y, z), creating one if needed. */
+  private int lookup(float x, float y, float z) {
+    double fx = x / cellSize, fy = y / cellSize, fz = z / cellSize;
+    long cx = (long) Math.floor(fx), cy = (long) Math.floor(fy), cz = (long) Math.floor(fz);
+    // Neighbour on the near side of each axis: -1 if in the lower half of the cell, else +1
+    long nx = fx - cx < 0.5 ? -1 : 1;
+    long ny = fy - cy < 0.5 ? -1 : 1;
+    long nz = fz - cz < 0.5 ? -1 : 1;
+
+    double tol2 = tolerance * tolerance;
+    for (int probe = 0; probe < 8; probe++) {
+      long px = cx + ((probe & 1) != 0 ? nx : 0);
+      long py = cy + ((probe & 2) != 0 ? ny : 0);
+      long pz = cz + ((probe & 4) != 0 ? nz : 0);
+      int v = find(px, py, pz, x, y, z, tol2);
+      if (v >= 0) {
+        return v;
+      }
+    }
+    return insert(cx, cy, cz, x, y, z);
+  }
+
+  /** First vertex of cell (cx, cy, cz) within {@code sqrt(tol2)} of (x, y, z), or -1. */
+  private int find(long cx, long cy, long cz, float x, float y, float z, double tol2) {
+    long key = mix(cx, cy, cz);
+    for (int s = (int) key & mask; ; s = (s + 1) & mask) {
+      long k = keys[s];
+      if (k == EMPTY) {
+        return -1;
+      }
+      if (k == key) {
+        int v = slots[s];
+        if (cells[v * 3] == cx && cells[v * 3 + 1] == cy && cells[v * 3 + 2] == cz) {
+          double dx = positions[v * 3] - x, dy = positions[v * 3 + 1] - y, dz = positions[v * 3 + 2] - z;
+          if (dx * dx + dy * dy + dz * dz <= tol2) {
+            return v;
+          }
+        }
+      }
+    }
+  }
+
+  private int insert(long cx, long cy, long cz, float x, float y, float z) {
+    int v = vertexCount++;
+    if (v * 3 + 3 > positions.length) {
+      positions = Arrays.copyOf(positions, positions.length * 2);
+      cells = Arrays.copyOf(cells, cells.length * 2);
+    }
+    positions[v * 3] = x;
+    positions[v * 3 + 1] = y;
+    positions[v * 3 + 2] = z;
+    cells[v * 3] = cx;
+    cells[v * 3 + 1] = cy;
+    cells[v * 3 + 2] = cz;
+    // Indexed even when its cell is occupied: a later point may be within tolerance of this
+    // vertex but not of the one that came first
+    if (++used * 2 > keys.length) {
+      rehash();
+    }
+    put(mix(cx, cy, cz), v);
+    return v;
+  }
+
+  private void put(long key, int v) {
+    int s = (int) key & mask;
+    while (keys[s] != EMPTY) {
+      s = (s + 1) & mask;
+    }
+    keys[s] = key;
+    slots[s] = v;
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    int[] oldSlots = slots;
+    keys = new long[oldKeys.length * 2];
+    Arrays.fill(keys, EMPTY);
+    slots = new int[oldSlots.length * 2];
+    mask = keys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        put(oldKeys[i], oldSlots[i]);
+      }
+    }
+  }
+
+  /** 64-bit mix of three cell coordinates (splitmix64 finalizer); never returns EMPTY. */
+  static long mix(long x, long y, long z) {
+    long h = x * 0x9E3779B97F4A7C15L + y * 0xC2B2AE3D27D4EB4FL + z * 0x165667B19E3779F9L;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h == EMPTY ? 0 : h;
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Checkpointer.java
+ * Per-stage .mph checkpoints, copied to their final place in the background.
+ */
+
+package comsolphysics.pipeline;
+
+import com.comsol.model.Model;
+import com.comsol.model.util.ModelUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a checkpoint of the model after each completed stage and finds the
+ * latest valid one again on resume.
+ *
+ * <p>A COMSOL model must not be touched from two threads, so the
+ * {@code model.save} itself stays on the calling thread, but it only writes
+ * to a local temporary directory. Copying that file into the checkpoint
+ * directory (often a network share next to the model), fsyncing it and
+ * committing the manifest happen on a background thread while the next
+ * stage runs. The manifest names the stage, file, size and CRC-32; a
+ * checkpoint whose file does not match is ignored.
+ */
+final class Checkpointer implements AutoCloseable {
+
+  private static final String MANIFEST = "manifest.properties";
+
+  private final Path dir;
+  private final String key;
+  private final Path scratch;
+  private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "checkpoint-writer");
+    t.setDaemon(true);
+    return t;
+  });
+  private Future<?> pending;
+  private Model loaded;
+
+  /**
+   * @param key describes the inputs (scan contents, model class file,
+   *     arguments; see {@code StagePipeline.inputKey}); a checkpoint
+   *     written under another key is never resumed
+   */
+  Checkpointer(Path dir, String key) throws IOException {
+    this.dir = dir;
+    this.key = key;
+    this.scratch = Files.createTempDirectory("ckpt");
+    Files.createDirectories(dir);
+  }
+
+  /** Save {@code model} as the checkpoint for {@code stage} (1-based) named {@code name}. */
+  void save(int stage, String name, Model model) throws IOException {
+    Path local = scratch.resolve("stage" + stage + ".mph");
+    model.save(local.toString());
+    await();
+    pending = writer.submit(() -> {
+      commit(stage, name, local);
+      return null;
+    });
+  }
+
+  private void commit(int stage, String name, Path local) throws IOException {
+    String file = "stage" + stage + ".mph";
+    Path tmp = dir.resolve(file + ".tmp");
+    CRC32 crc = new CRC32();
+    long size = copy(local, tmp, crc);
+    Files.move(tmp, dir.resolve(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    Files.delete(local);
+
+    Properties manifest = new Properties();
+    manifest.setProperty("key", key);
+    manifest.setProperty("stage", Integer.toString(stage));
+    manifest.setProperty("name", name);
+    manifest.setProperty("file", file);
+    manifest.setProperty("size", Long.toString(size));
+    manifest.setProperty("crc", Long.toString(crc.getValue()));
+    Path manifestTmp = dir.resolve(MANIFEST + ".tmp");
+    try (OutputStream out = Files.newOutputStream(manifestTmp)) {
+      manifest.store(out, "Last completed stage");
+    }
+    Files.move(manifestTmp, dir.resolve(MANIFEST),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    // Earlier stages are superseded once the manifest points past them
+    for (int s = 1; s < stage; s++) {
+      Files.deleteIfExists(dir.resolve("stage" + s + ".mph"));
+    }
+  }
+
+  private static long copy(Path from, Path to, CRC32 crc) throws IOException {
+    byte[] buf = new byte[1 << 20];
+    long size = 0;
+    try (InputStream in = Files.newInputStream(from);
+         FileChannel out = FileChannel.open(to, StandardOpenOption.CREATE,
+             StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        crc.update(buf, 0, n);
+        out.write(ByteBuffer.wrap(buf, 0, n));
+        size += n;
+      }
+      out.force(true);
+    }
+    return size;
+  }
+
+  /**
+   * Stage number of the latest valid checkpoint for this key, or 0. On
+   * success the loaded model is available from {@link #loaded}.
+   */
+  int resume() {
+    Path manifestPath = dir.resolve(MANIFEST);
+    if (!Files.isRegularFile(manifestPath)) {
+      return 0;
+    }
+    Properties manifest = new Properties();
+    try (InputStream in = Files.newInputStream(manifestPath)) {
+      manifest.load(in);
+      if (!key.equals(manifest.getProperty("key"))) {
+        System.out.println("Checkpoint is for other inputs; starting over");
+        return 0;
+      }
+      Path file = dir.resolve(manifest.getProperty("file"));
+      if (Files.size(file) != Long.parseLong(manifest.getProperty("size"))
+          || crc(file) != Long.parseLong(manifest.getProperty("crc"))) {
+        System.out.println("Checkpoint " + file.getFileName() + " is damaged; starting over");
+        return 0;
+      }
+      loaded = ModelUtil.load(ModelTags.unique("Model"), file.toAbsolutePath().toString());
+      return Integer.parseInt(manifest.getProperty("stage"));
+    } catch (IOException | RuntimeException e) {
+      System.out.println("Cannot resume from checkpoint (" + e.getMessage() + "); starting over");
+      return 0;
+    }
+  }
+
+  Model loaded() {
+    return loaded;
+  }
+
+  private static long crc(Path file) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buf = new byte[1 << 20];
+    try (InputStream in = Files.newInputStream(file)) {
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        crc.update(buf, 0, n);
+      }
+    }
+    return crc.getValue();
+  }
+
+  /** Wait for the last checkpoint to be committed; its failure is reported, not thrown. */
+  void await() {
+    if (pending == null) {
+      return;
+    }
+    try {
+      pending.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      System.out.println("Checkpoint failed: " + e.getCause());
+    }
+    pending = null;
+  }
+
+  @Override
+  public void close() {
+    await();
+    writer.shutdown();
+    try {
+      Files.deleteIfExists(scratch);
+    } catch (IOException e) {
+      // A leftover empty temp directory is harmless
+    }
+  }
+}
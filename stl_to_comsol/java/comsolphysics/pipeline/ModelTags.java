@@ -0,0 +1,58 @@
+/*
+ * ModelTags.java
+ * Model tags that concurrent jobs on one COMSOL connection do not share.
+ */
+
+package comsolphysics.pipeline;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * COMSOL keeps models by tag, per connection. Jobs that share a
+ * connection (the workers of a {@code ModelServer}, the seats of a
+ * {@code JobScheduler}) must not all call {@code ModelUtil.create("Model")}:
+ * they would build into one model, and removing it after one job would
+ * pull it from under the others. Generated classes create their model as
+ *
+ * <pre>
+ *   Model model = ModelUtil.create(ModelTags.unique("Model"));
+ * </pre>
+ *
+ * <p>A tag is the prefix, this process's id and a counter, so it is not
+ * reused by this JVM or by another one on the same COMSOL server. A
+ * runner that calls {@link #track} around a job learns the tags that job
+ * took, and can remove exactly its models when it ends.
+ */
+public final class ModelTags {
+
+  private static final String PROCESS = Long.toString(ProcessHandle.current().pid());
+  private static final AtomicLong NEXT = new AtomicLong();
+  private static final ThreadLocal<List<String>> JOB = new ThreadLocal<>();
+
+  private ModelTags() {
+  }
+
+  /** A new tag such as {@code Model_4711_3}; added to the list {@link #track} set on this thread, if any. */
+  public static String unique(String prefix) {
+    String tag = prefix + "_" + PROCESS + "_" + NEXT.incrementAndGet();
+    List<String> job = JOB.get();
+    if (job != null) {
+      job.add(tag);
+    }
+    return tag;
+  }
+
+  /**
+   * Add the tags {@link #unique} hands out on this thread to
+   * {@code into}, until {@link #untrack}. The list must be safe to share
+   * if several threads track into it.
+   */
+  public static void track(List<String> into) {
+    JOB.set(into);
+  }
+
+  public static void untrack() {
+    JOB.remove();
+  }
+}
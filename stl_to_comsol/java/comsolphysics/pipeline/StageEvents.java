@@ -0,0 +1,228 @@
+/*
+ * StageEvents.java
+ * JSON-lines timing and memory events, one per model stage.
+ */
+
+package comsolphysics.pipeline;
+
+import com.comsol.model.Model;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends one JSON object per line to {@code <model>_events.jsonl} for each
+ * stage: wall-clock start, {@code System.nanoTime} duration, JVM heap,
+ * non-heap and direct/mapped buffer memory, process resident set size (where
+ * {@code /proc} has it, which includes COMSOL's native solver memory), GC
+ * time during the stage, and the element count of every mesh and degree of
+ * freedom count of every solution in the model. Callers add their own
+ * fields, such as iteration counts of the local solvers.
+ *
+ * <pre>
+ *   StageEvents.Span span = events.start("view_factors");
+ *   ...
+ *   span.put("surfaces", vf.size()).end(model);
+ * </pre>
+ *
+ * <p>Events are flushed line by line, so a run that dies still leaves the
+ * stages it finished.
+ */
+public final class StageEvents implements AutoCloseable {
+
+  private final BufferedWriter out;
+  private final String run;
+
+  /** Append to {@code file}; events from this process share a run id. */
+  public StageEvents(Path file, String run) throws IOException {
+    this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    this.run = run;
+  }
+
+  /** Events for model {@code name} in {@code <name>_events.jsonl}. */
+  public static StageEvents open(String name) throws IOException {
+    return new StageEvents(Paths.get(name + "_events.jsonl"), name + "-" + System.currentTimeMillis());
+  }
+
+  public Span start(String stage) {
+    return new Span(stage);
+  }
+
+  /** A stage being timed; {@link #end} writes its event. */
+  public final class Span {
+
+    private final StringBuilder json = new StringBuilder(256);
+    private final long startNanos = System.nanoTime();
+    private final long startGcMillis = gcMillis();
+    private long stopNanos = -1;
+
+    private Span(String stage) {
+      json.append("{\"run\":");
+      string(json, run);
+      json.append(",\"stage\":");
+      string(json, stage);
+      json.append(",\"start_ms\":").append(System.currentTimeMillis());
+    }
+
+    public Span put(String key, long value) {
+      json.append(",\"").append(key).append("\":").append(value);
+      return this;
+    }
+
+    public Span put(String key, double value) {
+      json.append(",\"").append(key).append("\":");
+      if (Double.isFinite(value)) {
+        json.append(value);
+      } else {
+        json.append("null");
+      }
+      return this;
+    }
+
+    public Span put(String key, boolean value) {
+      json.append(",\"").append(key).append("\":").append(value);
+      return this;
+    }
+
+    public Span put(String key, String value) {
+      json.append(",\"").append(key).append("\":");
+      string(json, value);
+      return this;
+    }
+
+    /**
+     * Fix {@code seconds} at the time so far; work done before {@link #end},
+     * such as writing a checkpoint, is then timed under its own key.
+     */
+    public Span stop() {
+      stopNanos = System.nanoTime();
+      return this;
+    }
+
+    /** Finish the stage and write its event; {@code model} may be null. */
+    public void end(Model model) {
+      long nanos = (stopNanos >= 0 ? stopNanos : System.nanoTime()) - startNanos;
+      json.append(",\"seconds\":").append(nanos / 1e9);
+      json.append(",\"gc_ms\":").append(gcMillis() - startGcMillis);
+      memory(json);
+      if (model != null) {
+        counts(json, model);
+      }
+      json.append('}');
+      write(json.toString());
+    }
+  }
+
+  private synchronized void write(String line) {
+    try {
+      out.write(line);
+      out.newLine();
+      out.flush();
+    } catch (IOException e) {
+      System.out.println("Cannot write stage event: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+
+  private static void memory(StringBuilder json) {
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+    json.append(",\"heap_used\":").append(heap.getUsed());
+    json.append(",\"heap_committed\":").append(heap.getCommitted());
+    json.append(",\"heap_max\":").append(heap.getMax());
+    json.append(",\"nonheap_used\":").append(nonHeap.getUsed());
+    long buffers = 0;
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      buffers += pool.getMemoryUsed();
+    }
+    json.append(",\"buffer_used\":").append(buffers);
+    long rss = residentBytes();
+    if (rss >= 0) {
+      json.append(",\"rss\":").append(rss);
+    }
+  }
+
+  /** Element count per mesh and DOF count per solution; missing ones are skipped. */
+  private static void counts(StringBuilder json, Model model) {
+    StringBuilder elements = new StringBuilder();
+    StringBuilder dofs = new StringBuilder();
+    try {
+      for (String comp : model.component().tags()) {
+        for (String mesh : model.component(comp).mesh().tags()) {
+          try {
+            int n = model.component(comp).mesh(mesh).getNumElem();
+            elements.append(elements.length() > 0 ? "," : "").append('"').append(mesh).append("\":").append(n);
+          } catch (RuntimeException notBuilt) {
+            // Mesh not built yet
+          }
+        }
+      }
+      for (String sol : model.sol().tags()) {
+        try {
+          // The DOF count from the solver, not the length of a copied solution vector
+          long n = model.sol(sol).getSize();
+          dofs.append(dofs.length() > 0 ? "," : "").append('"').append(sol).append("\":").append(n);
+        } catch (RuntimeException notSolved) {
+          // No solution yet
+        }
+      }
+    } catch (RuntimeException e) {
+      // Model in a state that cannot be queried; timing and memory still go out
+    }
+    json.append(",\"elements\":{").append(elements).append('}');
+    json.append(",\"dofs\":{").append(dofs).append('}');
+  }
+
+  private static long gcMillis() {
+    long sum = 0;
+    List<GarbageCollectorMXBean> gcs = ManagementFactory.getGarbageCollectorMXBeans();
+    for (GarbageCollectorMXBean gc : gcs) {
+      sum += Math.max(0, gc.getCollectionTime());
+    }
+    return sum;
+  }
+
+  /** VmRSS from /proc/self/status in bytes, or -1 where that does not exist. */
+  private static long residentBytes() {
+    try {
+      for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+        if (line.startsWith("VmRSS:")) {
+          String kb = line.substring(6).trim();
+          return Long.parseLong(kb.substring(0, kb.indexOf(' '))) * 1024;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      // Not Linux
+    }
+    return -1;
+  }
+
+  private static void string(StringBuilder json, String s) {
+    json.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < 0x20) {
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+    json.append('"');
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * StagePipeline.java
+ * Runs a generated model's run()..runN() stages with checkpoints and resume.
+ */
+
+package comsolphysics.pipeline;
+
+import com.comsol.model.Model;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The stages of a generated model class, run in order with a checkpoint
+ * after each. With resume on, the latest valid checkpoint is loaded and the
+ * stages it already covers are skipped.
+ *
+ * <pre>
+ *   Model model = new StagePipeline("room2", stlFile, resume)
+ *       .model(room2.class)
+ *       .stage("Geometry imported successfully", m -&gt; run())
+ *       .stage("Materials assigned", room2::run2)
+ *       ...
+ *       .run();
+ * </pre>
+ *
+ * <p>Checkpoints go to {@code <name>_checkpoints/}. A checkpoint that
+ * cannot be written is reported and the run continues. With
+ * {@link #events} set, each stage is also recorded as a {@link StageEvents}
+ * line. A stage that throws (such as a mesh rejected by
+ * {@link comsolphysics.mesh.MeshQuality#check}) stops the run before its
+ * checkpoint, and its line carries {@code "ok": false} and the error.
+ */
+public final class StagePipeline {
+
+  /** Command-line flag the generated classes accept to turn resume on. */
+  public static final String RESUME_FLAG = "--resume";
+
+  /** One {@code runN()} step; the first stage ignores its argument and creates the model. */
+  public interface Stage {
+    Model apply(Model model) throws IOException;
+  }
+
+  private final String name;
+  private final String key;
+  private final boolean resume;
+  private Class<?> modelClass;
+  private final List<String> arguments = new ArrayList<>();
+  private final List<String> messages = new ArrayList<>();
+  private final List<Stage> stages = new ArrayList<>();
+  private StageEvents events;
+
+  /**
+   * @param key identifies the inputs (e.g. the scan path); checkpoints
+   *     written for other inputs are not resumed. When it names a file, the
+   *     file's contents are the key rather than its path, so a scan edited
+   *     in place starts over.
+   */
+  public StagePipeline(String name, String key, boolean resume) {
+    this.name = name;
+    this.key = key;
+    this.resume = resume;
+  }
+
+  /**
+   * Also key checkpoints on the class file of {@code modelClass} and on
+   * {@code arguments}, the ones that change what the stages build. A class
+   * recompiled with other settings (an {@code hmax}, a material in
+   * {@code run2()}) then starts over instead of resuming. Library code the
+   * stages call is not part of the key.
+   */
+  public StagePipeline model(Class<?> modelClass, String... arguments) {
+    this.modelClass = modelClass;
+    this.arguments.clear();
+    this.arguments.addAll(Arrays.asList(arguments));
+    return this;
+  }
+
+  /**
+   * Checkpoint key: the pipeline name and a SHA-256 of the input file (or
+   * of the key itself if it is no file), the model class file and the
+   * arguments given to {@link #model}.
+   */
+  private String inputKey() throws IOException {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    Path file = key.isEmpty() ? null : Paths.get(key);
+    if (file != null && Files.isRegularFile(file)) {
+      try (InputStream in = Files.newInputStream(file)) {
+        update(md, in);
+      }
+    } else {
+      md.update(("key:" + key).getBytes(StandardCharsets.UTF_8));
+    }
+    if (modelClass != null) {
+      String className = modelClass.getName();
+      String classFile = className.substring(className.lastIndexOf('.') + 1) + ".class";
+      try (InputStream in = modelClass.getResourceAsStream(classFile)) {
+        if (in == null) {
+          throw new IOException("No class file for " + className);
+        }
+        md.update("\u0000class:".getBytes(StandardCharsets.UTF_8));
+        update(md, in);
+      }
+    }
+    for (String argument : arguments) {
+      md.update(("\u0000arg:" + argument).getBytes(StandardCharsets.UTF_8));
+    }
+    StringBuilder hex = new StringBuilder(name).append(":sha256:");
+    for (byte b : md.digest()) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  private static void update(MessageDigest md, InputStream in) throws IOException {
+    byte[] buf = new byte[1 << 16];
+    int n;
+    while ((n = in.read(buf)) > 0) {
+      md.update(buf, 0, n);
+    }
+  }
+
+  /** Whether {@code args} contains {@link #RESUME_FLAG}. */
+  public static boolean resumeRequested(String[] args) {
+    return Arrays.asList(args).contains(RESUME_FLAG);
+  }
+
+  /**
+   * {@code args} without {@link #RESUME_FLAG} or any other {@code --} flag
+   * (such as {@code --converge}), so positional arguments keep their index.
+   */
+  public static String[] positional(String[] args) {
+    return Arrays.stream(args).filter(a -> !a.startsWith("--")).toArray(String[]::new);
+  }
+
+  /** Add a stage; {@code message} is printed once it completes (or is skipped on resume). */
+  public StagePipeline stage(String message, Stage stage) {
+    messages.add(message);
+    stages.add(stage);
+    return this;
+  }
+
+  /** Record each stage, and the checkpoint it writes, to {@code events}. */
+  public StagePipeline events(StageEvents events) {
+    this.events = events;
+    return this;
+  }
+
+  public Path checkpointDir() {
+    return Paths.get(name + "_checkpoints");
+  }
+
+  public Model run() throws IOException {
+    try (Checkpointer checkpoints = new Checkpointer(checkpointDir(), inputKey())) {
+      Model model = null;
+      int done = 0;
+      if (resume) {
+        StageEvents.Span span = events == null ? null : events.start("resume");
+        done = Math.min(checkpoints.resume(), stages.size());
+        if (done > 0) {
+          model = checkpoints.loaded();
+          System.out.println("Resumed from checkpoint after stage " + done);
+          for (int s = 0; s < done; s++) {
+            System.out.println(messages.get(s) + " (checkpoint)");
+          }
+        }
+        if (span != null) {
+          span.put("stages", done).end(model);
+        }
+      }
+      for (int s = done; s < stages.size(); s++) {
+        StageEvents.Span span = events == null ? null : events.start("stage" + (s + 1));
+        try {
+          model = stages.get(s).apply(model);
+        } catch (IOException | RuntimeException e) {
+          // A failed or rejected stage still leaves its event, marked so estimates skip it
+          if (span != null) {
+            span.put("message", messages.get(s)).put("ok", false).put("error", String.valueOf(e.getMessage()))
+                .end(model);
+          }
+          throw e;
+        }
+        if (span != null) {
+          span.stop();
+        }
+        System.out.println(messages.get(s));
+        long saveStart = System.nanoTime();
+        try {
+          checkpoints.save(s + 1, messages.get(s), model);
+        } catch (IOException | RuntimeException e) {
+          System.out.println("Checkpoint after stage " + (s + 1) + " skipped (" + e.getMessage() + ")");
+        }
+        if (span != null) {
+          span.put("message", messages.get(s))
+              .put("checkpoint_seconds", (System.nanoTime() - saveStart) / 1e9)
+              .end(model);
+        }
+      }
+      return model;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * ComsolRadiation.java
+ * Radiosity inputs read from a COMSOL model.
+ */
+
+package comsolphysics.rad;
+
+import com.comsol.model.Model;
+import java.util.Arrays;
+
+/**
+ * Reads per-boundary emissivities (from the materials) and prescribed
+ * temperatures (from the common model inputs) for the surfaces of a
+ * {@link ViewFactorMatrix}, so a {@link RadiositySolver} sees the same data
+ * as the model's {@code rad} interface.
+ */
+public final class ComsolRadiation {
+
+  private ComsolRadiation() {
+  }
+
+  /**
+   * Emissivity of each boundary in {@code ids}. Materials are applied in
+   * model order, so a later material overrides an earlier one on shared
+   * boundaries, as in COMSOL. Boundaries without a material get {@code fallback}.
+   */
+  public static double[] emissivity(Model model, String comp, int[] ids, double fallback) {
+    double[] out = new double[ids.length];
+    Arrays.fill(out, fallback);
+    for (String tag : model.component(comp).material().tags()) {
+      String value = model.component(comp).material(tag).propertyGroup("def").getString("emissivity");
+      if (value == null || value.isEmpty()) {
+        continue;
+      }
+      double e;
+      try {
+        e = Double.parseDouble(value.trim());
+      } catch (NumberFormatException ex) {
+        throw new IllegalArgumentException("Material " + tag + ": emissivity is not a number: " + value);
+      }
+      assign(out, ids, model.component(comp).material(tag).selection().entities(2), e);
+    }
+    return out;
+  }
+
+  /**
+   * Temperature of each boundary in {@code ids} from the model's common
+   * inputs ({@code minpt*}), in kelvin; other boundaries get {@code fallback}.
+   */
+  public static double[] temperature(Model model, String comp, int[] ids, double fallback) {
+    double[] out = new double[ids.length];
+    Arrays.fill(out, fallback);
+    for (String tag : model.component(comp).common().tags()) {
+      double t = kelvin(model.component(comp).common(tag).getString("value"));
+      assign(out, ids, model.component(comp).common(tag).selection().entities(2), t);
+    }
+    return out;
+  }
+
+  private static void assign(double[] out, int[] ids, int[] entities, double value) {
+    int[] sorted = entities.clone();
+    Arrays.sort(sorted);
+    for (int i = 0; i < ids.length; i++) {
+      if (Arrays.binarySearch(sorted, ids[i]) >= 0) {
+        out[i] = value;
+      }
+    }
+  }
+
+  /** Parse {@code "160[degC]"}, {@code "300[K]"}, {@code "300"} or {@code "212[degF]"} to kelvin. */
+  static double kelvin(String expression) {
+    String s = expression.trim();
+    int bracket = s.indexOf('[');
+    String unit = bracket < 0 ? "K" : s.substring(bracket + 1, s.indexOf(']', bracket)).trim();
+    double v = Double.parseDouble((bracket < 0 ? s : s.substring(0, bracket)).trim());
+    switch (unit) {
+      case "K":
+        return v;
+      case "degC":
+        return v + 273.15;
+      case "degF":
+        return (v - 32) * 5.0 / 9.0 + 273.15;
+      default:
+        throw new IllegalArgumentException("Unsupported temperature unit: " + expression);
+    }
+  }
+}
@@ -0,0 +1,1162 @@
+/*
+ * HierarchicalRadiosity.java
+ * Clustered radiosity with memory close to linear in the surface count.
+ */
+
+package comsolphysics.rad;
+
+import comsolphysics.mesh.IndexedMesh;
+import comsolphysics.mesh.Segmentation;
+import comsolphysics.mesh.StlMesh;
+import comsolphysics.mesh.SurfaceCategory;
+import comsolphysics.mesh.SurfaceSegmenter;
+import comsolphysics.mesh.VertexWelder;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Solves the same balance as {@link RadiositySolver} without the dense
+ * view-factor matrix. Patches are grouped into octrees, one per dominant
+ * normal direction, and the radiation between two groups is carried by a
+ * single link once they are far apart compared to their size:
+ * {@code (r_a + r_b) / d < theta}, the opening criterion of Barnes-Hut.
+ * Pairs that fail it are refined by splitting the larger group, down to
+ * pairs of nearby patches. Their factors come from the rays of a
+ * {@link ViewFactorEngine}: each patch shoots its rays once and keeps the
+ * hits on its near partners only, so they equal the dense factors while
+ * only a bounded number per patch is stored. The number of links grows
+ * roughly like {@code n log n} instead of {@code n^2}.
+ *
+ * <p>Because a group's patches share an orientation cone, the power one
+ * group sends in direction {@code w} is {@code |sum J_i A_i n_i . w|} and
+ * what a patch of the receiving group gets is linear in its normal, as long
+ * as no normal in either cone turns edge-on along the link. Links where one
+ * might are refined too. A link then holds the sampled moments of the
+ * kernel {@code 1 / (pi r^2)} these linear forms need: a factor between
+ * two patches, a vector of {@code w} when one end is a group, and a
+ * symmetric tensor of {@code w w} when both are. Each Jacobi iteration
+ * <ul>
+ *   <li>pulls {@code sum J_i A_i n_i} up the trees,</li>
+ *   <li>gathers every link into its receiver: irradiation for a patch, an
+ *       irradiance vector for a group,</li>
+ *   <li>pushes the vectors down to the patches, and updates {@code J}.</li>
+ * </ul>
+ *
+ * <p>The moments are averaged over a few random point pairs of the two
+ * nodes, leaving out pairs some other surface blocks, so shadows are
+ * resolved only as finely as the links. Smaller {@code theta} means more
+ * links and a result closer to the dense one.
+ *
+ * <pre>
+ *   HierarchicalRadiosity h = new HierarchicalRadiosity(surfaces);
+ *   RadiositySolution sol = h.solve(emissivity, temperature, 293.15);
+ * </pre>
+ */
+public final class HierarchicalRadiosity {
+
+  /** Opening criterion by default. */
+  public static final double DEFAULT_THETA = 0.3;
+  /** Point pairs per link, for its factor and its visibility. */
+  static final int LINK_SAMPLES = 16;
+  /** Octree depth at which a group is no longer subdivided. */
+  private static final int MAX_DEPTH = 24;
+  private static final double TOLERANCE = 1e-10;
+  private static final int MAX_ITERATIONS = 10_000;
+
+  private final SurfaceSet surfaces;
+  private final TriangleBvh bvh;
+  private final double theta;
+  private final ViewFactorEngine engine;
+  private final int patches;
+
+  // Nodes 0 .. patches-1 are the patches, then the groups in post-order.
+  // Per node: bounding sphere and box, area, sum of A n, the half-angle of
+  // the normal cone around that sum, and the range of n . x over the node.
+  private int nodes;
+  private double[] cx, cy, cz, radius, box, area, mx, my, mz, cone, slabLo, slabHi;
+  // Children of group g = node - patches, in child[childStart[g] .. childStart[g + 1])
+  private int[] childStart;
+  private int[] child;
+  private final int root;
+  // Patches in depth-first order, so every node covers a range of ranks
+  private final int[] byRank;
+  private final int[] rankOf;
+  private int[] rankLo, rankHi;
+  private final double[] rankCdf;
+  private final double[] triangleCdf;
+
+  // Links grouped by receiver: source, and the offset of its moments in
+  // linkData; 1, 3 or 6 values by whether receiver and source are groups
+  private int[] linkStart;
+  private int[] linkSource;
+  private int[] linkOffset;
+  private float[] linkData;
+  private final double[] ambientFactor;
+  private double[] radiosity;
+  private int iterations;
+
+  public HierarchicalRadiosity(SurfaceSet surfaces) {
+    this(surfaces, DEFAULT_THETA, new ViewFactorEngine());
+  }
+
+  /**
+   * {@code theta}, in (0, 1), bounds the angle a linked group may subtend;
+   * {@code engine} traces the near field and supplies the seed and pool.
+   */
+  public HierarchicalRadiosity(SurfaceSet surfaces, double theta, ViewFactorEngine engine) {
+    if (!(theta > 0 && theta < 1)) {
+      throw new IllegalArgumentException("Opening criterion must be in (0, 1): " + theta);
+    }
+    this.surfaces = surfaces;
+    this.theta = theta;
+    this.engine = engine;
+    this.patches = surfaces.patchCount();
+    this.bvh = new TriangleBvh(surfaces);
+    int capacity = 2 * patches + 8;
+    cx = new double[capacity];
+    cy = new double[capacity];
+    cz = new double[capacity];
+    radius = new double[capacity];
+    box = new double[capacity * 6];
+    area = new double[capacity];
+    mx = new double[capacity];
+    my = new double[capacity];
+    mz = new double[capacity];
+    cone = new double[capacity];
+    slabLo = new double[capacity];
+    slabHi = new double[capacity];
+    childStart = new int[capacity - patches + 1];
+    child = new int[capacity];
+    nodes = patches;
+
+    triangleCdf = new double[surfaces.triangleCount() + 1];
+    for (int t = 0; t < surfaces.triangleCount(); t++) {
+      triangleCdf[t + 1] = triangleCdf[t] + surfaces.area[t];
+    }
+    for (int p = 0; p < patches; p++) {
+      patchGeometry(p);
+    }
+    root = buildTrees();
+    byRank = new int[patches];
+    rankOf = new int[patches];
+    Arrays.fill(rankOf, -1);
+    rankLo = new int[nodes];
+    rankHi = new int[nodes];
+    int ranked = rank(root, 0);
+    rankCdf = new double[patches + 1];
+    for (int r = 0; r < ranked; r++) {
+      rankCdf[r + 1] = rankCdf[r] + area[byRank[r]];
+    }
+    for (int c = 0; c < nodes; c++) {
+      slab(c);
+    }
+    link();
+
+    ambientFactor = new double[patches];
+    double[] ones = new double[patches];
+    Arrays.fill(ones, 1.0);
+    double[] seen = new double[patches];
+    gather(ones, seen, new double[nodes * 3], new double[nodes * 3]);
+    for (int p = 0; p < patches; p++) {
+      ambientFactor[p] = Math.max(0.0, 1.0 - seen[p]);
+    }
+  }
+
+  public int linkCount() {
+    return linkSource.length;
+  }
+
+  /** Groups above the patches. */
+  public int clusterCount() {
+    return nodes - patches;
+  }
+
+  /** Bytes held by the hierarchy and its links. */
+  public long bytes() {
+    return (long) linkSource.length * 8 + (long) linkData.length * 4 + (long) nodes * (14 * 8 + 4 * 4)
+        + (long) patches * 8 * 4;
+  }
+
+  /** Fraction of patch {@code i}'s view taken by the set; the rest is ambient. */
+  public double rowSum(int i) {
+    return 1.0 - ambientFactor[i];
+  }
+
+  /** Jacobi iterations of the last solve. */
+  public int lastIterations() {
+    return iterations;
+  }
+
+  /**
+   * Solve for the radiosity, as {@link RadiositySolver#solve}; warm-starts
+   * from the previous solve.
+   */
+  public RadiositySolution solve(double[] emissivity, double[] temperature, double ambient) {
+    double ambientPower = RadiositySolver.SIGMA * Math.pow(ambient, 4);
+    double[] emitted = new double[patches];
+    double[] reflectivity = new double[patches];
+    for (int i = 0; i < patches; i++) {
+      emitted[i] = emissivity[i] * RadiositySolver.SIGMA * Math.pow(temperature[i], 4);
+      reflectivity[i] = 1.0 - emissivity[i];
+    }
+    if (radiosity == null) {
+      radiosity = new double[patches];
+      for (int i = 0; i < patches; i++) {
+        radiosity[i] = emitted[i] + reflectivity[i] * ambientPower;
+      }
+    }
+    double[] irradiation = new double[patches];
+    double[] up = new double[nodes * 3];
+    double[] down = new double[nodes * 3];
+    iterations = 0;
+    while (true) {
+      gather(radiosity, irradiation, up, down);
+      double change = 0, scale = 0;
+      for (int i = 0; i < patches; i++) {
+        irradiation[i] += ambientFactor[i] * ambientPower;
+        double j = emitted[i] + reflectivity[i] * irradiation[i];
+        change = Math.max(change, Math.abs(j - radiosity[i]));
+        scale = Math.max(scale, Math.abs(j));
+        radiosity[i] = j;
+      }
+      iterations++;
+      if (change <= TOLERANCE * scale) {
+        break;
+      }
+      if (iterations == MAX_ITERATIONS) {
+        throw new IllegalStateException("Hierarchical radiosity did not converge in " + iterations
+            + " iterations, change " + change);
+      }
+    }
+    gather(radiosity, irradiation, up, down);
+    for (int i = 0; i < patches; i++) {
+      irradiation[i] += ambientFactor[i] * ambientPower;
+    }
+    double[] areas = new double[patches];
+    for (int i = 0; i < patches; i++) {
+      areas[i] = surfaces.patchArea(i);
+    }
+    return new RadiositySolution(surfaces.ids(), areas, radiosity.clone(), irradiation);
+  }
+
+  /** Irradiation from the set alone, {@code sum_j F_ij J_j}, into {@code g}. */
+  private void gather(double[] j, double[] g, double[] up, double[] down) {
+    // Pull: sum J A n per node; groups come after their children
+    for (int p = 0; p < patches; p++) {
+      up[p * 3] = j[p] * mx[p];
+      up[p * 3 + 1] = j[p] * my[p];
+      up[p * 3 + 2] = j[p] * mz[p];
+    }
+    for (int c = patches; c < nodes; c++) {
+      double sx = 0, sy = 0, sz = 0;
+      for (int k = childStart[c - patches]; k < childStart[c - patches + 1]; k++) {
+        int q = child[k];
+        sx += up[q * 3];
+        sy += up[q * 3 + 1];
+        sz += up[q * 3 + 2];
+      }
+      up[c * 3] = sx;
+      up[c * 3 + 1] = sy;
+      up[c * 3 + 2] = sz;
+    }
+    engine.pool().invoke(new ViewFactorEngine.PatchTask(0, nodes, r -> {
+      double sum = 0, ex = 0, ey = 0, ez = 0;
+      float[] m = linkData;
+      for (int l = linkStart[r]; l < linkStart[r + 1]; l++) {
+        int s = linkSource[l];
+        int o = linkOffset[l];
+        if (r < patches) {
+          sum += s < patches ? m[o] * j[s] : m[o] * up[s * 3] + m[o + 1] * up[s * 3 + 1] + m[o + 2] * up[s * 3 + 2];
+        } else if (s < patches) {
+          ex += m[o] * j[s];
+          ey += m[o + 1] * j[s];
+          ez += m[o + 2] * j[s];
+        } else {
+          double ux = up[s * 3], uy = up[s * 3 + 1], uz = up[s * 3 + 2];
+          ex += m[o] * ux + m[o + 3] * uy + m[o + 4] * uz;
+          ey += m[o + 3] * ux + m[o + 1] * uy + m[o + 5] * uz;
+          ez += m[o + 4] * ux + m[o + 5] * uy + m[o + 2] * uz;
+        }
+      }
+      if (r < patches) {
+        g[r] = sum;
+      } else {
+        down[r * 3] = ex;
+        down[r * 3 + 1] = ey;
+        down[r * 3 + 2] = ez;
+      }
+    }));
+    // Push: groups before their children, so walk the groups backwards
+    for (int c = nodes - 1; c >= patches; c--) {
+      for (int k = childStart[c - patches]; k < childStart[c - patches + 1]; k++) {
+        int q = child[k];
+        if (q < patches) {
+          double len = Math.sqrt(mx[q] * mx[q] + my[q] * my[q] + mz[q] * mz[q]);
+          if (len > 0) {
+            g[q] += Math.max(0.0, (down[c * 3] * mx[q] + down[c * 3 + 1] * my[q] + down[c * 3 + 2] * mz[q]) / len);
+          }
+        } else {
+          down[q * 3] += down[c * 3];
+          down[q * 3 + 1] += down[c * 3 + 1];
+          down[q * 3 + 2] += down[c * 3 + 2];
+        }
+      }
+    }
+  }
+
+  // ---------------------------------------------------------------- hierarchy
+
+  /** Sphere, area-weighted normal and normal cone of patch {@code p}. */
+  private void patchGeometry(int p) {
+    SurfaceSet s = surfaces;
+    double sx = 0, sy = 0, sz = 0;
+    for (int t = s.first(p); t < s.end(p); t++) {
+      double sign = s.twoSided() && s.nx[t] * sx + s.ny[t] * sy + s.nz[t] * sz < 0 ? -1 : 1;
+      sx += sign * s.area[t] * s.nx[t];
+      sy += sign * s.area[t] * s.ny[t];
+      sz += sign * s.area[t] * s.nz[t];
+    }
+    if (s.twoSided() && dominant(sx, sy, sz) % 2 == 1) {
+      // Either side will do; pick the one with a positive dominant component
+      sx = -sx;
+      sy = -sy;
+      sz = -sz;
+    }
+    mx[p] = sx;
+    my[p] = sy;
+    mz[p] = sz;
+    area[p] = s.patchArea(p);
+    double len = Math.sqrt(sx * sx + sy * sy + sz * sz);
+    double widest = 0;
+    for (int t = s.first(p); t < s.end(p); t++) {
+      double c = len > 0 ? (s.nx[t] * sx + s.ny[t] * sy + s.nz[t] * sz) / len : -1;
+      widest = Math.max(widest, Math.acos(Math.max(-1, Math.min(1, s.twoSided() ? Math.abs(c) : c))));
+    }
+    cone[p] = len > 1e-9 * area[p] ? widest : Math.PI;
+    float[] b = new float[6];
+    s.patchBounds(p, b, 0);
+    for (int c = 0; c < 6; c++) {
+      box[p * 6 + c] = b[c];
+    }
+    cx[p] = 0.5 * (b[0] + b[3]);
+    cy[p] = 0.5 * (b[1] + b[4]);
+    cz[p] = 0.5 * (b[2] + b[5]);
+    radius[p] = s.first(p) == s.end(p) ? 0
+        : 0.5 * Math.sqrt(sq(b[3] - b[0]) + sq(b[4] - b[1]) + sq(b[5] - b[2]));
+  }
+
+  /** Axis of the largest component, times 2, plus 1 if it is negative. */
+  private static int dominant(double x, double y, double z) {
+    double ax = Math.abs(x), ay = Math.abs(y), az = Math.abs(z);
+    if (ax >= ay && ax >= az) {
+      return x < 0 ? 1 : 0;
+    }
+    if (ay >= az) {
+      return y < 0 ? 3 : 2;
+    }
+    return z < 0 ? 5 : 4;
+  }
+
+  /** One octree per orientation class under a common root; returns the root. */
+  private int buildTrees() {
+    int[] count = new int[7];
+    for (int p = 0; p < patches; p++) {
+      if (surfaces.first(p) < surfaces.end(p)) {
+        count[dominant(mx[p], my[p], mz[p]) + 1]++;
+      }
+    }
+    for (int c = 0; c < 6; c++) {
+      count[c + 1] += count[c];
+    }
+    int[] order = new int[count[6]];
+    int[] fill = Arrays.copyOf(count, 6);
+    for (int p = 0; p < patches; p++) {
+      if (surfaces.first(p) < surfaces.end(p)) {
+        order[fill[dominant(mx[p], my[p], mz[p])]++] = p;
+      }
+    }
+    int[] roots = new int[6];
+    int classes = 0;
+    for (int c = 0; c < 6; c++) {
+      if (count[c + 1] > count[c]) {
+        double[] box = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int k = count[c]; k < count[c + 1]; k++) {
+          int p = order[k];
+          box[0] = Math.min(box[0], cx[p]);
+          box[1] = Math.min(box[1], cy[p]);
+          box[2] = Math.min(box[2], cz[p]);
+          box[3] = Math.max(box[3], cx[p]);
+          box[4] = Math.max(box[4], cy[p]);
+          box[5] = Math.max(box[5], cz[p]);
+        }
+        roots[classes++] = build(order, count[c], count[c + 1], box, 0);
+      }
+    }
+    if (classes == 1 && roots[0] >= patches) {
+      return roots[0];
+    }
+    // A single patch, or several classes: one group on top
+    return group(roots, classes);
+  }
+
+  /** Octree over the patch centres {@code idx[lo, hi)} within {@code box}; returns its node. */
+  private int build(int[] idx, int lo, int hi, double[] box, int depth) {
+    if (hi - lo == 1) {
+      return idx[lo];
+    }
+    int[] octant = new int[hi - lo];
+    int[] count = new int[9];
+    while (true) {
+      double midX = 0.5 * (box[0] + box[3]), midY = 0.5 * (box[1] + box[4]), midZ = 0.5 * (box[2] + box[5]);
+      Arrays.fill(count, 0);
+      for (int k = lo; k < hi; k++) {
+        int p = idx[k];
+        int o = (cx[p] > midX ? 1 : 0) | (cy[p] > midY ? 2 : 0) | (cz[p] > midZ ? 4 : 0);
+        octant[k - lo] = o;
+        count[o + 1]++;
+      }
+      if (depth >= MAX_DEPTH) {
+        return group(Arrays.copyOfRange(idx, lo, hi), hi - lo);
+      }
+      int filled = 0;
+      for (int o = 0; o < 8; o++) {
+        filled += count[o + 1] > 0 ? 1 : 0;
+      }
+      if (filled > 1) {
+        break;
+      }
+      // Everything in one octant: shrink the box rather than add a chain of groups
+      int o = octant[0];
+      box = octantBox(box, o);
+      depth++;
+    }
+    for (int o = 0; o < 8; o++) {
+      count[o + 1] += count[o];
+    }
+    int[] sorted = new int[hi - lo];
+    int[] fill = Arrays.copyOf(count, 8);
+    for (int k = lo; k < hi; k++) {
+      sorted[fill[octant[k - lo]]++] = idx[k];
+    }
+    System.arraycopy(sorted, 0, idx, lo, hi - lo);
+    int[] kids = new int[8];
+    int n = 0;
+    for (int o = 0; o < 8; o++) {
+      if (count[o + 1] > count[o]) {
+        kids[n++] = build(idx, lo + count[o], lo + count[o + 1], octantBox(box, o), depth + 1);
+      }
+    }
+    return group(kids, n);
+  }
+
+  private static double[] octantBox(double[] box, int o) {
+    double[] b = box.clone();
+    for (int c = 0; c < 3; c++) {
+      double mid = 0.5 * (box[c] + box[c + 3]);
+      if ((o >> c & 1) == 1) {
+        b[c] = mid;
+      } else {
+        b[c + 3] = mid;
+      }
+    }
+    return b;
+  }
+
+  /** A new group over {@code kids[0, n)}; its sphere encloses theirs. */
+  private int group(int[] kids, int n) {
+    int c = nodes++;
+    int g = c - patches;
+    childStart[g + 1] = childStart[g] + n;
+    System.arraycopy(kids, 0, child, childStart[g], n);
+    double[] b = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+        Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+    double sx = 0, sy = 0, sz = 0, a = 0;
+    for (int k = 0; k < n; k++) {
+      int q = kids[k];
+      for (int i = 0; i < 3; i++) {
+        b[i] = Math.min(b[i], box[q * 6 + i]);
+        b[i + 3] = Math.max(b[i + 3], box[q * 6 + i + 3]);
+      }
+      sx += mx[q];
+      sy += my[q];
+      sz += mz[q];
+      a += area[q];
+    }
+    System.arraycopy(b, 0, box, c * 6, 6);
+    cx[c] = 0.5 * (b[0] + b[3]);
+    cy[c] = 0.5 * (b[1] + b[4]);
+    cz[c] = 0.5 * (b[2] + b[5]);
+    double r = 0;
+    for (int k = 0; k < n; k++) {
+      int q = kids[k];
+      r = Math.max(r, Math.sqrt(sq(cx[q] - cx[c]) + sq(cy[q] - cy[c]) + sq(cz[q] - cz[c])) + radius[q]);
+    }
+    radius[c] = r;
+    area[c] = a;
+    mx[c] = sx;
+    my[c] = sy;
+    mz[c] = sz;
+    double len = Math.sqrt(sx * sx + sy * sy + sz * sz);
+    double widest = 0;
+    for (int k = 0; k < n && len > 1e-9 * a; k++) {
+      int q = kids[k];
+      double lq = Math.sqrt(mx[q] * mx[q] + my[q] * my[q] + mz[q] * mz[q]);
+      double cos = lq > 0 ? (mx[q] * sx + my[q] * sy + mz[q] * sz) / (lq * len) : -1;
+      widest = Math.max(widest, Math.acos(Math.max(-1, Math.min(1, cos))) + cone[q]);
+    }
+    cone[c] = len > 1e-9 * a ? Math.min(widest, Math.PI) : Math.PI;
+    return c;
+  }
+
+  /** Number the patches under {@code node} depth-first from {@code next}; returns the next free rank. */
+  private int rank(int node, int next) {
+    rankLo[node] = next;
+    if (node < patches) {
+      byRank[next] = node;
+      rankOf[node] = next;
+      next++;
+    } else {
+      for (int k = childStart[node - patches]; k < childStart[node - patches + 1]; k++) {
+        next = rank(child[k], next);
+      }
+    }
+    rankHi[node] = next;
+    return next;
+  }
+
+  /** Range of {@code n . x} over the triangle corners under {@code node}, {@code n} its cone axis. */
+  private void slab(int node) {
+    SurfaceSet s = surfaces;
+    double len = Math.sqrt(mx[node] * mx[node] + my[node] * my[node] + mz[node] * mz[node]);
+    double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+    if (len > 0) {
+      double ax = mx[node] / len, ay = my[node] / len, az = mz[node] / len;
+      for (int r = rankLo[node]; r < rankHi[node]; r++) {
+        int p = byRank[r];
+        for (int t = s.first(p); t < s.end(p); t++) {
+          double h = s.ox[t] * ax + s.oy[t] * ay + s.oz[t] * az;
+          double h1 = h + s.e1x[t] * ax + s.e1y[t] * ay + s.e1z[t] * az;
+          double h2 = h + s.e2x[t] * ax + s.e2y[t] * ay + s.e2z[t] * az;
+          lo = Math.min(lo, Math.min(h, Math.min(h1, h2)));
+          hi = Math.max(hi, Math.max(h, Math.max(h1, h2)));
+        }
+      }
+    }
+    slabLo[node] = lo;
+    slabHi[node] = hi;
+  }
+
+  // -------------------------------------------------------------------- links
+
+  /** Refine from the root and compute the moments of every link. */
+  private void link() {
+    Pairs pairs = new Pairs();
+    refineSelf(root, pairs);
+    int count = pairs.size;
+    // Both directions of pair k, at k * 12 and k * 12 + 6
+    float[] moments = new float[count * 12];
+    Near near = near(pairs);
+    engine.pool().invoke(new ViewFactorEngine.PatchTask(0, count, k -> {
+      int a = pairs.data[k * 2], b = pairs.data[k * 2 + 1];
+      if (b < 0) {
+        moments[k * 12] = near.factor(a, ~b);
+        moments[k * 12 + 6] = near.factor(~b, a);
+        return;
+      }
+      double[] out = new double[12];
+      sample(a, b, new SplittableRandom(engine.seed() * 0x9E3779B97F4A7C15L + k), bvh.newStack(), out);
+      for (int i = 0; i < 12; i++) {
+        moments[k * 12 + i] = (float) out[i];
+      }
+    }));
+
+    // Group by receiver, dropping links that carry nothing
+    linkStart = new int[nodes + 1];
+    int values = 0;
+    for (int l = 0; l < count * 2; l++) {
+      int r = end(pairs, l, 0), size = size(r, end(pairs, l, 1));
+      if (carries(moments, l * 6, size)) {
+        linkStart[r + 1]++;
+        values += size;
+      }
+    }
+    for (int r = 0; r < nodes; r++) {
+      linkStart[r + 1] += linkStart[r];
+    }
+    linkSource = new int[linkStart[nodes]];
+    linkOffset = new int[linkStart[nodes]];
+    linkData = new float[values];
+    int[] fill = Arrays.copyOf(linkStart, nodes);
+    values = 0;
+    for (int l = 0; l < count * 2; l++) {
+      int r = end(pairs, l, 0), s = end(pairs, l, 1), size = size(r, s);
+      if (carries(moments, l * 6, size)) {
+        int i = fill[r]++;
+        linkSource[i] = s;
+        linkOffset[i] = values;
+        System.arraycopy(moments, l * 6, linkData, values, size);
+        values += size;
+      }
+    }
+  }
+
+  /** Receiver ({@code which} 0) or source (1) of direction {@code l}: pair {@code l / 2}, reversed if odd. */
+  private static int end(Pairs pairs, int l, int which) {
+    int a = pairs.data[l / 2 * 2], b = pairs.data[l / 2 * 2 + 1];
+    b = b < 0 ? ~b : b;
+    return l % 2 == which ? a : b;
+  }
+
+  /** Moments a link from {@code s} to {@code r} holds. */
+  private int size(int r, int s) {
+    return r < patches && s < patches ? 1 : r >= patches && s >= patches ? 6 : 3;
+  }
+
+  private static boolean carries(float[] m, int o, int size) {
+    for (int i = o; i < o + size; i++) {
+      if (m[i] != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void refineSelf(int a, Pairs out) {
+    if (a < patches) {
+      return;
+    }
+    int g = a - patches;
+    for (int i = childStart[g]; i < childStart[g + 1]; i++) {
+      refineSelf(child[i], out);
+      for (int j = childStart[g]; j < i; j++) {
+        refine(child[j], child[i], out);
+      }
+    }
+  }
+
+  /**
+   * Link {@code a} and {@code b} if they are well separated and neither
+   * normal cone turns edge-on along the link; otherwise split the node in
+   * the way, or, for two patches, link them for exact integration.
+   */
+  private void refine(int a, int b, Pairs out) {
+    if (area[a] == 0 || area[b] == 0) {
+      return;
+    }
+    double dx = cx[b] - cx[a], dy = cy[b] - cy[a], dz = cz[b] - cz[a];
+    double d = Math.sqrt(dx * dx + dy * dy + dz * dz);
+    double reach = radius[a] + radius[b];
+    int split;
+    if (reach < theta * d) {
+      boolean edgeOnA = side(a, b) == 0;
+      boolean edgeOnB = side(b, a) == 0;
+      // A patch evaluates its own cosine, so only a group's cone matters,
+      // though a patch edge-on to a whole group is refined through the group
+      split = larger(edgeOnA ? a : -1, edgeOnB ? b : -1);
+      if (split < 0 && edgeOnA != edgeOnB) {
+        split = larger(a, b);
+      }
+      if (split < 0) {
+        out.add(a, b);
+        return;
+      }
+    } else {
+      split = larger(a, b);
+      if (split < 0) {
+        out.add(a, ~b);
+        return;
+      }
+    }
+    int other = split == a ? b : a;
+    for (int k = childStart[split - patches]; k < childStart[split - patches + 1]; k++) {
+      refine(child[k], other, out);
+    }
+  }
+
+  /** The group among {@code a} and {@code b} (-1 for none) with the larger sphere, or -1. */
+  private int larger(int a, int b) {
+    boolean ga = a >= patches, gb = b >= patches;
+    if (ga && gb) {
+      return radius[a] >= radius[b] ? a : b;
+    }
+    return ga ? a : gb ? b : -1;
+  }
+
+  /**
+   * Sign of {@code n . (y - x)} for every normal {@code n} in the cone of
+   * {@code node}, {@code x} in {@code node} and {@code y} in {@code other}:
+   * 1, -1, or 0 if it may change. {@code other}'s box is measured against
+   * the slab {@code node} spans along its axis; a cone of half-angle
+   * {@code a} needs the gap to be at least {@code tan a} times the longest
+   * distance between the two.
+   */
+  private int side(int node, int other) {
+    double len = Math.sqrt(mx[node] * mx[node] + my[node] * my[node] + mz[node] * mz[node]);
+    if (len == 0 || cone[node] >= 0.5 * Math.PI) {
+      return 0;
+    }
+    double ax = mx[node] / len, ay = my[node] / len, az = mz[node] / len;
+    int o = other * 6;
+    double centre = 0.5 * ((box[o] + box[o + 3]) * ax + (box[o + 1] + box[o + 4]) * ay + (box[o + 2] + box[o + 5]) * az);
+    double half = 0.5 * ((box[o + 3] - box[o]) * Math.abs(ax) + (box[o + 4] - box[o + 1]) * Math.abs(ay)
+        + (box[o + 5] - box[o + 2]) * Math.abs(az));
+    double reach = 0;
+    if (cone[node] > 0) {
+      double d = Math.sqrt(sq(cx[other] - cx[node]) + sq(cy[other] - cy[node]) + sq(cz[other] - cz[node]));
+      reach = Math.tan(cone[node]) * (d + radius[node] + radius[other]);
+    }
+    // Touching is fine: rays along the plane carry nothing either way
+    reach -= 1e-6 * (radius[node] + radius[other]);
+    if (centre - half - slabHi[node] >= reach) {
+      return 1;
+    }
+    if (slabLo[node] - centre - half >= reach) {
+      return -1;
+    }
+    return 0;
+  }
+
+  /**
+   * Moments of the links {@code a <- b} into {@code out[0, 6)} and
+   * {@code b <- a} into {@code out[6, 12)}, averaged over random point
+   * pairs; pairs that something else blocks add nothing.
+   */
+  private void sample(int a, int b, SplittableRandom rnd, TriangleBvh.Stack stack, double[] out) {
+    double[] x = new double[3], y = new double[3];
+    int sideA = a < patches ? 1 : side(a, b);
+    int sideB = b < patches ? 1 : side(b, a);
+    for (int k = 0; k < LINK_SAMPLES; k++) {
+      int tx = samplePoint(a, rnd, x);
+      int ty = samplePoint(b, rnd, y);
+      double wx = y[0] - x[0], wy = y[1] - x[1], wz = y[2] - x[2];
+      double r2 = wx * wx + wy * wy + wz * wz;
+      if (r2 == 0 || !clear(x, y, tx, a, b, stack)) {
+        continue;
+      }
+      double r = Math.sqrt(r2);
+      double kernel = 1 / (Math.PI * r2 * LINK_SAMPLES);
+      add(out, 0, a, tx, sideA, b, ty, sideB, wx / r, wy / r, wz / r, kernel);
+      add(out, 6, b, ty, sideB, a, tx, sideA, -wx / r, -wy / r, -wz / r, kernel);
+    }
+  }
+
+  /**
+   * One sample of the link {@code r <- s}, {@code w} pointing from the
+   * point of {@code r} (on triangle {@code tr}) to that of {@code s}. A
+   * patch receives with its cosine and sends with its projected area; a
+   * group's cosine and {@code sum J A n} are applied per iteration, with
+   * its side fixing the sign.
+   */
+  private void add(double[] out, int o, int r, int tr, int sideR, int s, int ts, int sideS,
+      double wx, double wy, double wz, double kernel) {
+    boolean twoSided = surfaces.twoSided();
+    double weight = kernel;
+    if (r < patches) {
+      double cos = surfaces.nx[tr] * wx + surfaces.ny[tr] * wy + surfaces.nz[tr] * wz;
+      weight *= twoSided ? 0.5 * Math.abs(cos) : Math.max(0.0, cos);
+    } else {
+      if (sideR < 0 && !twoSided) {
+        return;
+      }
+      weight *= (twoSided ? 0.5 : 1.0) * sideR;
+    }
+    if (s < patches) {
+      weight *= area[s] * Math.abs(surfaces.nx[ts] * wx + surfaces.ny[ts] * wy + surfaces.nz[ts] * wz);
+      if (r < patches) {
+        out[o] += weight;
+      } else {
+        out[o] += weight * wx;
+        out[o + 1] += weight * wy;
+        out[o + 2] += weight * wz;
+      }
+      return;
+    }
+    // |sum J A n . w| = -sideS (sum J A n . w): the group faces back along -w
+    weight *= -sideS;
+    if (r < patches) {
+      out[o] += weight * wx;
+      out[o + 1] += weight * wy;
+      out[o + 2] += weight * wz;
+    } else {
+      out[o] += weight * wx * wx;
+      out[o + 1] += weight * wy * wy;
+      out[o + 2] += weight * wz * wz;
+      out[o + 3] += weight * wx * wy;
+      out[o + 4] += weight * wx * wz;
+      out[o + 5] += weight * wy * wz;
+    }
+  }
+
+  /** Whether the segment {@code x y} reaches {@code y} without hitting anything outside {@code a} and {@code b}. */
+  private boolean clear(double[] x, double[] y, int from, int a, int b, TriangleBvh.Stack stack) {
+    double dx = y[0] - x[0], dy = y[1] - x[1], dz = y[2] - x[2];
+    double len = Math.sqrt(dx * dx + dy * dy + dz * dz);
+    if (len == 0) {
+      return true;
+    }
+    return bvh.anyHit((float) x[0], (float) x[1], (float) x[2], (float) (dx / len), (float) (dy / len),
+        (float) (dz / len), (float) (len * (1 - 1e-4)), from, t -> {
+          int r = rankOf[surfaces.patch[t]];
+          return r >= rankLo[a] && r < rankHi[a] || r >= rankLo[b] && r < rankHi[b];
+        }, stack) < 0;
+  }
+
+  /** Area-uniform random point of the patches under {@code node} into {@code out}; returns its triangle. */
+  private int samplePoint(int node, SplittableRandom rnd, double[] out) {
+    int lo = rankLo[node], hi = rankHi[node];
+    int p = byRank[search(rankCdf, lo, hi, rankCdf[lo] + rnd.nextDouble() * (rankCdf[hi] - rankCdf[lo]))];
+    return samplePatch(p, rnd, out);
+  }
+
+  /** Area-uniform random point of patch {@code p}; returns its triangle. */
+  private int samplePatch(int p, SplittableRandom rnd, double[] out) {
+    SurfaceSet s = surfaces;
+    int first = s.first(p), end = s.end(p);
+    int t = search(triangleCdf, first, end, triangleCdf[first] + rnd.nextDouble() * (triangleCdf[end] - triangleCdf[first]));
+    double r1 = Math.sqrt(rnd.nextDouble()), r2 = rnd.nextDouble();
+    double a = r1 * (1 - r2), b = r1 * r2;
+    out[0] = s.ox[t] + a * s.e1x[t] + b * s.e2x[t];
+    out[1] = s.oy[t] + a * s.e1y[t] + b * s.e2y[t];
+    out[2] = s.oz[t] + a * s.e1z[t] + b * s.e2z[t];
+    return t;
+  }
+
+  /** Index {@code i} in {@code [lo, hi)} with {@code cdf[i] <= x < cdf[i + 1]}, clamped. */
+  private static int search(double[] cdf, int lo, int hi, double x) {
+    hi--;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (cdf[mid] <= x) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Factors of the near patch pairs, from each patch's full set of engine
+   * rays; the rest of every row is dropped as soon as it is traced.
+   */
+  private Near near(Pairs pairs) {
+    Near near = new Near();
+    near.start = new int[patches + 1];
+    for (int k = 0; k < pairs.size; k++) {
+      if (pairs.data[k * 2 + 1] < 0) {
+        near.start[pairs.data[k * 2] + 1]++;
+        near.start[~pairs.data[k * 2 + 1] + 1]++;
+      }
+    }
+    for (int p = 0; p < patches; p++) {
+      near.start[p + 1] += near.start[p];
+    }
+    near.partner = new int[near.start[patches]];
+    near.factor = new float[near.partner.length];
+    int[] fill = Arrays.copyOf(near.start, patches);
+    for (int k = 0; k < pairs.size; k++) {
+      int a = pairs.data[k * 2], b = ~pairs.data[k * 2 + 1];
+      if (b >= 0) {
+        near.partner[fill[a]++] = b;
+        near.partner[fill[b]++] = a;
+      }
+    }
+    int[][] rowColumns = new int[patches][];
+    float[][] rowValues = new float[patches][];
+    ThreadLocal<ViewFactorEngine.Scratch> scratch = engine.scratch(surfaces, bvh);
+    engine.pool().invoke(new ViewFactorEngine.PatchTask(0, patches, p -> {
+      int lo = near.start[p], hi = near.start[p + 1];
+      if (lo == hi) {
+        return;
+      }
+      Arrays.sort(near.partner, lo, hi);
+      engine.row(surfaces, bvh, p, scratch.get(), rowColumns, rowValues);
+      for (int k = lo; k < hi; k++) {
+        int i = Arrays.binarySearch(rowColumns[p], near.partner[k]);
+        near.factor[k] = i >= 0 ? rowValues[p][i] : 0f;
+      }
+      rowColumns[p] = null;
+      rowValues[p] = null;
+    }));
+    return near;
+  }
+
+  /** Factors of the near patch pairs, by row, partners ascending. */
+  private static final class Near {
+    int[] start;
+    int[] partner;
+    float[] factor;
+
+    float factor(int a, int b) {
+      int i = Arrays.binarySearch(partner, start[a], start[a + 1], b);
+      return i >= 0 ? factor[i] : 0f;
+    }
+  }
+
+  private static double sq(double x) {
+    return x * x;
+  }
+
+  /** Node pairs from the refinement; a patch pair for exact integration is stored as {@code (a, ~b)}. */
+  private static final class Pairs {
+    int[] data = new int[1024];
+    int size;
+
+    void add(int a, int b) {
+      if (size * 2 == data.length) {
+        data = Arrays.copyOf(data, data.length * 2);
+      }
+      data[size * 2] = a;
+      data[size * 2 + 1] = b;
+      size++;
+    }
+  }
+
+  // ---------------------------------------------------------------- benchmark
+
+  /** Largest and RMS difference in radiosity, relative to the largest radiosity of {@code reference}. */
+  public static void compare(RadiositySolution reference, RadiositySolution approx, PrintStream out) {
+    double max = 0, sq = 0, scale = 0;
+    for (int i = 0; i < reference.size(); i++) {
+      double e = approx.radiosity(i) - reference.radiosity(i);
+      max = Math.max(max, Math.abs(e));
+      sq += e * e;
+      scale = Math.max(scale, Math.abs(reference.radiosity(i)));
+    }
+    out.printf("  Radiosity error:  max %.2e, rms %.2e (relative to %.1f W/m^2)%n", max / scale,
+        Math.sqrt(sq / reference.size()) / scale, scale);
+    out.printf("  Net to ambient:   %.1f W dense, %.1f W hierarchical%n", reference.totalPower(),
+        approx.totalPower());
+  }
+
+  /**
+   * {@code HierarchicalRadiosity scan.stl [--theta T] [--rays N]}: segment a
+   * scan and solve its radiation both ways, with the floor region warmer and
+   * the furniture hot, printing time, memory and the difference.
+   *
+   * <p>{@code HierarchicalRadiosity --sweep 8,16,24 [--dense-max N] [--theta T]
+   * [--rays N]} does the same on {@link #gridRoom}s of growing size and
+   * prints one row per size and where the hierarchy starts to use less
+   * memory and time than the dense matrix. The dense side is skipped above
+   * {@code N} patches (default 4000, about 0.6 GB).
+   */
+  public static void main(String[] args) throws IOException {
+    Path scan = null;
+    int[] sweep = null;
+    int denseMax = 4000;
+    double theta = DEFAULT_THETA;
+    int rays = ViewFactorEngine.DEFAULT_RAYS_PER_PATCH;
+    boolean usage = false;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--theta") && i + 1 < args.length) {
+        theta = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("--rays") && i + 1 < args.length) {
+        rays = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--sweep") && i + 1 < args.length) {
+        sweep = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+      } else if (args[i].equals("--dense-max") && i + 1 < args.length) {
+        denseMax = Integer.parseInt(args[++i]);
+      } else if (scan == null && !args[i].startsWith("--")) {
+        scan = Paths.get(args[i]);
+      } else {
+        usage = true;
+      }
+    }
+    if (usage || (scan == null) == (sweep == null)) {
+      System.err.println("usage: HierarchicalRadiosity scan.stl [--theta T] [--rays N]");
+      System.err.println("       HierarchicalRadiosity --sweep 8,16,24 [--dense-max N] [--theta T] [--rays N]");
+      System.exit(2);
+    }
+    if (sweep != null) {
+      sweep(sweep, denseMax, theta, rays, System.out);
+      return;
+    }
+    IndexedMesh mesh = VertexWelder.weld(StlMesh.read(scan));
+    Segmentation seg = SurfaceSegmenter.segment(mesh);
+    SurfaceSet surfaces = SurfaceSet.fromSegmentation(mesh, seg);
+    System.out.printf("%s: %d surfaces, %d triangles%n", scan.getFileName(), surfaces.patchCount(),
+        surfaces.triangleCount());
+    double[][] inputs = inputs(mesh, seg);
+    Timing dense = Timing.dense(surfaces, rays, inputs);
+    System.out.printf("Dense:        %.2f s view factors, %.2f s solve, %d non-zeros, %.1f MB%n",
+        dense.setupSeconds, dense.solveSeconds, dense.size, dense.bytes / 1e6);
+    Timing hierarchical = Timing.hierarchical(surfaces, theta, rays, inputs);
+    HierarchicalRadiosity h = hierarchical.hierarchy;
+    System.out.printf("Hierarchical: %.2f s links, %.2f s solve (%d iterations), %d links, %d groups, %.1f MB%n",
+        hierarchical.setupSeconds, hierarchical.solveSeconds, h.lastIterations(), h.linkCount(),
+        h.clusterCount(), h.bytes() / 1e6);
+    compare(dense.solution, hierarchical.solution, System.out);
+  }
+
+  /**
+   * One row per room size in {@code cells}: patches, dense non-zeros,
+   * memory and time, the same for the hierarchy, and the largest radiosity
+   * difference; then the first size at which the hierarchy wins each.
+   */
+  static void sweep(int[] cells, int denseMax, double theta, int rays, PrintStream out) {
+    out.printf("Grid rooms, theta %.2f, %d rays per patch%n", theta, rays);
+    out.printf("%8s %12s %10s %9s %12s %10s %9s %9s%n", "patches", "dense nnz", "dense MB", "dense s",
+        "links", "hier MB", "hier s", "max err");
+    String memory = null;
+    String time = null;
+    int largestDense = 0;
+    for (int c : cells) {
+      IndexedMesh mesh = gridRoom(c);
+      Segmentation seg = SurfaceSegmenter.segment(mesh);
+      SurfaceSet surfaces = SurfaceSet.fromSegmentation(mesh, seg);
+      int n = surfaces.patchCount();
+      double[][] inputs = inputs(mesh, seg);
+      Timing hierarchical = Timing.hierarchical(surfaces, theta, rays, inputs);
+      if (n > denseMax) {
+        out.printf("%8d %12s %10s %9s %12d %10.1f %9.2f %9s%n", n, "-", "-", "-", hierarchical.size,
+            hierarchical.bytes / 1e6, hierarchical.seconds(), "-");
+        continue;
+      }
+      Timing dense = Timing.dense(surfaces, rays, inputs);
+      largestDense = n;
+      out.printf("%8d %12d %10.1f %9.2f %12d %10.1f %9.2f %9.2e%n", n, dense.size, dense.bytes / 1e6,
+          dense.seconds(), hierarchical.size, hierarchical.bytes / 1e6, hierarchical.seconds(),
+          maxError(dense.solution, hierarchical.solution));
+      if (memory == null && hierarchical.bytes < dense.bytes) {
+        memory = String.format("from %d patches (%.1f MB against %.1f MB dense)", n, hierarchical.bytes / 1e6,
+            dense.bytes / 1e6);
+      }
+      if (time == null && hierarchical.seconds() < dense.seconds()) {
+        time = String.format("from %d patches (%.2f s against %.2f s dense)", n, hierarchical.seconds(),
+            dense.seconds());
+      }
+    }
+    String none = "not up to " + largestDense + " patches";
+    out.println("Hierarchy smaller: " + (memory != null ? memory : none));
+    out.println("Hierarchy faster:  " + (time != null ? time : none));
+  }
+
+  /** One solve of a benchmark: setup (view factors or links), solve, and what it stores. */
+  private static final class Timing {
+    double setupSeconds;
+    double solveSeconds;
+    /** Non-zeros of F, or links. */
+    long size;
+    long bytes;
+    RadiositySolution solution;
+    HierarchicalRadiosity hierarchy;
+
+    double seconds() {
+      return setupSeconds + solveSeconds;
+    }
+
+    static Timing dense(SurfaceSet surfaces, int rays, double[][] inputs) {
+      Timing t = new Timing();
+      long start = System.nanoTime();
+      ViewFactorMatrix vf = new ViewFactorEngine(rays, 1L, null).run(surfaces);
+      t.setupSeconds = (System.nanoTime() - start) / 1e9;
+      start = System.nanoTime();
+      t.solution = new RadiositySolver(vf).solve(inputs[0], inputs[1], RadiositySolver.DEFAULT_TEMPERATURE);
+      t.solveSeconds = (System.nanoTime() - start) / 1e9;
+      t.size = vf.nonZeros();
+      // F as stored, plus the solver's system (pattern and diagonal, values, two factor copies)
+      t.bytes = t.size * 8 + (t.size + surfaces.patchCount()) * (4 + 8 + 8 + 8);
+      return t;
+    }
+
+    static Timing hierarchical(SurfaceSet surfaces, double theta, int rays, double[][] inputs) {
+      Timing t = new Timing();
+      long start = System.nanoTime();
+      t.hierarchy = new HierarchicalRadiosity(surfaces, theta, new ViewFactorEngine(rays, 1L, null));
+      t.setupSeconds = (System.nanoTime() - start) / 1e9;
+      start = System.nanoTime();
+      t.solution = t.hierarchy.solve(inputs[0], inputs[1], RadiositySolver.DEFAULT_TEMPERATURE);
+      t.solveSeconds = (System.nanoTime() - start) / 1e9;
+      t.size = t.hierarchy.linkCount();
+      t.bytes = t.hierarchy.bytes();
+      return t;
+    }
+  }
+
+  /** Emissivity and temperature per patch: furniture hot, the rest warmer towards the top. */
+  private static double[][] inputs(IndexedMesh mesh, Segmentation seg) {
+    int n = seg.patchCount();
+    double[] emissivity = new double[n];
+    double[] temperature = new double[n];
+    float[] bounds = mesh.bounds();
+    for (int p = 0; p < n; p++) {
+      float[] b = seg.bounds(p);
+      double height = (0.5 * (b[2] + b[5]) - bounds[2]) / Math.max(bounds[5] - bounds[2], 1e-9);
+      boolean furniture = seg.category(p) == SurfaceCategory.FURNITURE;
+      emissivity[p] = furniture ? 0.7 : 0.9;
+      temperature[p] = furniture ? 330.0 : 288.15 + 10.0 * height;
+    }
+    return new double[][] {emissivity, temperature};
+  }
+
+  private static double maxError(RadiositySolution reference, RadiositySolution approx) {
+    double max = 0, scale = 0;
+    for (int i = 0; i < reference.size(); i++) {
+      max = Math.max(max, Math.abs(approx.radiosity(i) - reference.radiosity(i)));
+      scale = Math.max(scale, Math.abs(reference.radiosity(i)));
+    }
+    return max / scale;
+  }
+
+  /**
+   * A 5 x 4 x 2.6 m room with a 1.6 x 0.9 x 0.75 m table on the floor. Each
+   * face of the room is cut into {@code cells} x {@code cells} quads, each
+   * face of the table into a quarter as many per side; quads share no
+   * vertices, so the segmenter keeps each as its own patch, about
+   * {@code 6 cells^2} in all.
+   */
+  static IndexedMesh gridRoom(int cells) {
+    if (cells < 1) {
+      throw new IllegalArgumentException("cells must be at least 1: " + cells);
+    }
+    int table = Math.max(1, cells / 4);
+    int quads = 6 * cells * cells + 5 * table * table;
+    float[] xyz = new float[quads * 12];
+    int[] tri = new int[quads * 6];
+    int q = box(xyz, tri, 0, new double[] {0, 0, 0}, new double[] {5, 4, 2.6}, cells, true);
+    q = box(xyz, tri, q, new double[] {1.7, 1.55, 0}, new double[] {3.3, 2.45, 0.75}, table, false);
+    return new IndexedMesh(xyz, quads * 4, tri, quads * 2, quads * 2);
+  }
+
+  /** The faces of box {@code lo}..{@code hi} as grids from quad {@code q}; returns the next quad. */
+  private static int box(float[] xyz, int[] tri, int q, double[] lo, double[] hi, int cells, boolean bottom) {
+    double dx = hi[0] - lo[0], dy = hi[1] - lo[1], dz = hi[2] - lo[2];
+    if (bottom) {
+      q = grid(xyz, tri, q, lo, new double[] {dx, 0, 0}, new double[] {0, dy, 0}, cells);
+    }
+    q = grid(xyz, tri, q, new double[] {lo[0], lo[1], hi[2]}, new double[] {dx, 0, 0}, new double[] {0, dy, 0}, cells);
+    q = grid(xyz, tri, q, lo, new double[] {dx, 0, 0}, new double[] {0, 0, dz}, cells);
+    q = grid(xyz, tri, q, new double[] {lo[0], hi[1], lo[2]}, new double[] {dx, 0, 0}, new double[] {0, 0, dz}, cells);
+    q = grid(xyz, tri, q, lo, new double[] {0, dy, 0}, new double[] {0, 0, dz}, cells);
+    return grid(xyz, tri, q, new double[] {hi[0], lo[1], lo[2]}, new double[] {0, dy, 0}, new double[] {0, 0, dz},
+        cells);
+  }
+
+  /** The parallelogram {@code o + s u + t v} as {@code cells} x {@code cells} quads of two triangles. */
+  private static int grid(float[] xyz, int[] tri, int q, double[] o, double[] u, double[] v, int cells) {
+    for (int i = 0; i < cells; i++) {
+      for (int j = 0; j < cells; j++, q++) {
+        for (int c = 0; c < 4; c++) {
+          double s = (i + (c == 1 || c == 2 ? 1 : 0)) / (double) cells;
+          double t = (j + (c >= 2 ? 1 : 0)) / (double) cells;
+          for (int k = 0; k < 3; k++) {
+            xyz[q * 12 + c * 3 + k] = (float) (o[k] + s * u[k] + t * v[k]);
+          }
+        }
+        int base = q * 4;
+        tri[q * 6] = base;
+        tri[q * 6 + 1] = base + 1;
+        tri[q * 6 + 2] = base + 2;
+        tri[q * 6 + 3] = base;
+        tri[q * 6 + 4] = base + 2;
+        tri[q * 6 + 5] = base + 3;
+      }
+    }
+    return q;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * RadiositySolution.java
+ * Per-surface result of a RadiositySolver run.
+ */
+
+package comsolphysics.rad;
+
+import java.io.PrintStream;
+
+/**
+ * Radiosity {@code J} ({@code rad.Ju}), irradiation {@code G}
+ * ({@code rad.Grad}) and net radiative flux {@code J - G} per surface, all
+ * in W/m^2, indexed like the {@link ViewFactorMatrix} or {@link SurfaceSet}
+ * they came from.
+ */
+public final class RadiositySolution {
+
+  private final int[] ids;
+  private final double[] area;
+  private final double[] radiosity;
+  private final double[] irradiation;
+
+  RadiositySolution(int[] ids, double[] area, double[] radiosity, double[] irradiation) {
+    this.ids = ids;
+    this.area = area;
+    this.radiosity = radiosity;
+    this.irradiation = irradiation;
+  }
+
+  public int size() {
+    return radiosity.length;
+  }
+
+  /** External id of surface {@code i}. */
+  public int id(int i) {
+    return ids[i];
+  }
+
+  public double radiosity(int i) {
+    return radiosity[i];
+  }
+
+  public double irradiation(int i) {
+    return irradiation[i];
+  }
+
+  /** Net radiative flux leaving surface {@code i}, W/m^2. */
+  public double netFlux(int i) {
+    return radiosity[i] - irradiation[i];
+  }
+
+  /** Net radiated power of surface {@code i}, W. */
+  public double power(int i) {
+    return netFlux(i) * area[i];
+  }
+
+  /** Net radiated power summed over the surfaces with the given ids, W. */
+  public double powerOf(int... ids) {
+    double sum = 0;
+    for (int i = 0; i < this.ids.length; i++) {
+      for (int id : ids) {
+        if (this.ids[i] == id) {
+          sum += power(i);
+          break;
+        }
+      }
+    }
+    return sum;
+  }
+
+  /** Total net power leaving the set, i.e. lost to ambient through openings, W. */
+  public double totalPower() {
+    double sum = 0;
+    for (int i = 0; i < radiosity.length; i++) {
+      sum += power(i);
+    }
+    return sum;
+  }
+
+  public void printSummary(PrintStream out) {
+    double minJ = Double.POSITIVE_INFINITY, maxJ = Double.NEGATIVE_INFINITY;
+    for (double j : radiosity) {
+      minJ = Math.min(minJ, j);
+      maxJ = Math.max(maxJ, j);
+    }
+    out.printf("  Surfaces:         %d%n", radiosity.length);
+    out.printf("  Radiosity (J):    %.1f .. %.1f W/m^2%n", minJ, maxJ);
+    out.printf("  Net to ambient:   %.1f W%n", totalPower());
+  }
+}
@@ -0,0 +1,283 @@
+/*
+ * RadiositySolver.java
+ * Grey diffuse radiosity between surfaces with prescribed temperatures.
+ */
+
+package comsolphysics.rad;
+
+import comsolphysics.solve.CsrMatrix;
+import comsolphysics.solve.IterativeSolver;
+import comsolphysics.solve.MappedCsrMatrix;
+import java.util.Arrays;
+
+/**
+ * Solves the grey, diffuse surface-to-surface radiation balance for
+ * surfaces at fixed temperatures, the same problem the COMSOL {@code rad}
+ * interface solves when every surface temperature is prescribed:
+ *
+ * <pre>
+ *   J_i = e_i s T_i^4 + (1 - e_i) G_i
+ *   G_i = sum_j F_ij J_j + (1 - sum_j F_ij) s T_amb^4
+ * </pre>
+ *
+ * whatever a surface does not see of the set is taken to be ambient. The
+ * outputs correspond to {@code rad.Ju}, {@code rad.Grad} and the net
+ * radiative flux {@code J - G}.
+ *
+ * <p>The system {@code (I - diag(1 - e) F) J = b} is built once per
+ * view-factor matrix on CSR arrays; emissivities and temperatures can then
+ * change between calls, and each solve warm-starts from the previous
+ * radiosity.
+ *
+ * <p>Over view factors kept in a file ({@link ViewFactorEngine#run(SurfaceSet,
+ * java.nio.file.Path)}) no system is built: each Jacobi iteration
+ * {@code J = b + (1 - e) F J} streams F once, tile by tile, so the heap holds
+ * only a few vectors per surface.
+ */
+public final class RadiositySolver {
+
+  /** Stefan-Boltzmann constant, W/(m^2 K^4). */
+  public static final double SIGMA = 5.670374419e-8;
+  /** COMSOL's default surface and ambient temperature, K. */
+  public static final double DEFAULT_TEMPERATURE = 293.15;
+
+  /** Iteration used for the linear system. */
+  public enum Method {
+    /** Gauss-Seidel on the radiosity equations as they stand. */
+    GAUSS_SEIDEL,
+    /**
+     * Jacobi-preconditioned CG on the area-weighted form, with {@code A_i F_ij}
+     * averaged with {@code A_j F_ji} to restore the symmetry that sampling
+     * noise breaks.
+     */
+    PCG
+  }
+
+  private static final double TOLERANCE = 1e-10;
+  private static final int MAX_ITERATIONS = 10_000;
+  /** Reflectivity floor so black surfaces keep a finite row scale in the symmetric form. */
+  private static final double MIN_REFLECTIVITY = 1e-6;
+
+  private final int[] ids;
+  private final double[] area;
+  private final Method method;
+  private final double[] ambientFactor;
+  // In memory: the system, and per stored entry F_ij and (A_i F_ij + A_j F_ji) / 2
+  private final ViewFactorMatrix vf;
+  private final CsrMatrix system;
+  private final double[] factor;
+  private final double[] exchange;
+  // Mapped: F itself and its diagonal, which the system leaves out
+  private final MappedCsrMatrix mapped;
+  private final double[] selfFactor;
+  private double[] radiosity;
+  private IterativeSolver.Result lastResult;
+
+  public RadiositySolver(ViewFactorMatrix vf) {
+    this(vf, Method.GAUSS_SEIDEL);
+  }
+
+  public RadiositySolver(ViewFactorMatrix vf, Method method) {
+    this.vf = vf;
+    this.method = method;
+    this.mapped = null;
+    this.selfFactor = null;
+    int n = vf.size();
+    ids = vf.ids();
+    area = new double[n];
+    for (int i = 0; i < n; i++) {
+      area[i] = vf.area(i);
+    }
+    ambientFactor = new double[n];
+    for (int i = 0; i < n; i++) {
+      ambientFactor[i] = Math.max(0.0, 1.0 - vf.rowSum(i));
+    }
+    system = structure(vf);
+    int[] rowStart = system.rowStart();
+    int[] columns = system.columns();
+    factor = new double[system.nonZeros()];
+    exchange = new double[system.nonZeros()];
+    for (int i = 0; i < n; i++) {
+      for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+        int j = columns[k];
+        if (j != i) {
+          factor[k] = vf.get(i, j);
+          exchange[k] = 0.5 * (vf.area(i) * factor[k] + vf.area(j) * vf.get(j, i));
+        }
+      }
+    }
+  }
+
+  /**
+   * Solver over view factors mapped from a file, for {@code surfaces}; see
+   * the class comment. {@link ViewFactorEngine#run(SurfaceSet,
+   * java.nio.file.Path)} checks that the file was traced for them.
+   */
+  public RadiositySolver(SurfaceSet surfaces, MappedCsrMatrix factors) {
+    if (factors.size() != surfaces.patchCount()) {
+      throw new IllegalArgumentException("View factors for " + factors.size() + " surfaces, not "
+          + surfaces.patchCount());
+    }
+    this.mapped = factors;
+    this.method = null;
+    this.vf = null;
+    this.system = null;
+    this.factor = null;
+    this.exchange = null;
+    int n = factors.size();
+    ids = surfaces.ids().clone();
+    area = new double[n];
+    ambientFactor = new double[n];
+    for (int i = 0; i < n; i++) {
+      area[i] = surfaces.patchArea(i);
+      ambientFactor[i] = Math.max(0.0, 1.0 - factors.rowSum(i));
+    }
+    selfFactor = factors.diagonal();
+  }
+
+  /** Pattern of F plus the diagonal; values are filled per solve. */
+  private static CsrMatrix structure(ViewFactorMatrix vf) {
+    int n = vf.size();
+    int[] fStart = vf.rowStart();
+    int[] fCol = vf.columns();
+    int[] rowStart = new int[n + 1];
+    int[] columns = new int[vf.nonZeros() + n];
+    int k = 0;
+    for (int i = 0; i < n; i++) {
+      rowStart[i] = k;
+      boolean diagonal = false;
+      for (int f = fStart[i]; f < fStart[i + 1]; f++) {
+        if (!diagonal && fCol[f] > i) {
+          columns[k++] = i;
+          diagonal = true;
+        }
+        if (fCol[f] != i) {
+          columns[k++] = fCol[f];
+        }
+      }
+      if (!diagonal) {
+        columns[k++] = i;
+      }
+    }
+    rowStart[n] = k;
+    return new CsrMatrix(n, rowStart, Arrays.copyOf(columns, k), new double[k]);
+  }
+
+  /**
+   * Solve for the radiosity.
+   *
+   * @param emissivity  per surface, 0..1
+   * @param temperature per surface, kelvin
+   * @param ambient     temperature of everything outside the set, kelvin
+   */
+  public RadiositySolution solve(double[] emissivity, double[] temperature, double ambient) {
+    if (mapped != null) {
+      return solveMapped(emissivity, temperature, ambient);
+    }
+    int n = vf.size();
+    double ambientPower = SIGMA * Math.pow(ambient, 4);
+    double[] b = new double[n];
+    double[] values = system.values();
+    int[] rowStart = system.rowStart();
+    int[] columns = system.columns();
+    boolean symmetric = method == Method.PCG;
+    for (int i = 0; i < n; i++) {
+      double rho = Math.max(1.0 - emissivity[i], symmetric ? MIN_REFLECTIVITY : 0.0);
+      double emitted = emissivity[i] * SIGMA * Math.pow(temperature[i], 4);
+      double scale = symmetric ? area[i] / rho : 1.0;
+      b[i] = scale * (emitted + rho * ambientFactor[i] * ambientPower);
+      for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+        int j = columns[k];
+        if (j == i) {
+          values[k] = scale;
+        } else {
+          values[k] = symmetric ? -exchange[k] : -rho * factor[k];
+        }
+      }
+    }
+
+    start(emissivity, temperature, ambientPower);
+    lastResult = symmetric
+        ? IterativeSolver.pcg(system, b, radiosity, TOLERANCE, MAX_ITERATIONS)
+        : IterativeSolver.gaussSeidel(system, b, radiosity, 1.0, TOLERANCE, MAX_ITERATIONS);
+    if (!lastResult.converged()) {
+      throw new IllegalStateException("Radiosity solve " + lastResult);
+    }
+
+    double[] irradiation = new double[n];
+    int[] fStart = vf.rowStart();
+    int[] fCol = vf.columns();
+    float[] fVal = vf.values();
+    for (int i = 0; i < n; i++) {
+      double g = ambientFactor[i] * ambientPower;
+      for (int k = fStart[i]; k < fStart[i + 1]; k++) {
+        g += fVal[k] * radiosity[fCol[k]];
+      }
+      irradiation[i] = g;
+    }
+    return new RadiositySolution(ids, area, radiosity.clone(), irradiation);
+  }
+
+  /** Start from each surface's own emission plus reflected ambient, unless there is a previous solution. */
+  private void start(double[] emissivity, double[] temperature, double ambientPower) {
+    if (radiosity == null) {
+      radiosity = new double[ids.length];
+      for (int i = 0; i < ids.length; i++) {
+        radiosity[i] = emissivity[i] * SIGMA * Math.pow(temperature[i], 4)
+            + (1.0 - emissivity[i]) * ambientPower;
+      }
+    }
+  }
+
+  /** Jacobi on {@code J = b + rho (F - diag F) J}, the same system as the in-memory solve. */
+  private RadiositySolution solveMapped(double[] emissivity, double[] temperature, double ambient) {
+    int n = mapped.size();
+    double ambientPower = SIGMA * Math.pow(ambient, 4);
+    double[] b = new double[n];
+    double[] rho = new double[n];
+    double b2 = 0;
+    for (int i = 0; i < n; i++) {
+      rho[i] = 1.0 - emissivity[i];
+      b[i] = emissivity[i] * SIGMA * Math.pow(temperature[i], 4) + rho[i] * ambientFactor[i] * ambientPower;
+      b2 += b[i] * b[i];
+    }
+    start(emissivity, temperature, ambientPower);
+    double bnorm = Math.sqrt(b2);
+    double[] fj = new double[n];
+    double residual = 0;
+    int it = 0;
+    while (bnorm > 0 && it < MAX_ITERATIONS) {
+      it++;
+      mapped.multiply(radiosity, fj);
+      double r2 = 0;
+      for (int i = 0; i < n; i++) {
+        double next = b[i] + rho[i] * (fj[i] - selfFactor[i] * radiosity[i]);
+        r2 += (next - radiosity[i]) * (next - radiosity[i]);
+        radiosity[i] = next;
+      }
+      residual = Math.sqrt(r2) / bnorm;
+      if (residual <= TOLERANCE) {
+        break;
+      }
+    }
+    if (bnorm == 0) {
+      Arrays.fill(radiosity, 0.0);
+    }
+    lastResult = new IterativeSolver.Result(it, residual, residual <= TOLERANCE);
+    if (!lastResult.converged()) {
+      throw new IllegalStateException("Radiosity solve " + lastResult);
+    }
+
+    double[] irradiation = new double[n];
+    mapped.multiply(radiosity, irradiation);
+    for (int i = 0; i < n; i++) {
+      irradiation[i] += ambientFactor[i] * ambientPower;
+    }
+    return new RadiositySolution(ids, area, radiosity.clone(), irradiation);
+  }
+
+  /** Iteration count and residual of the last solve. */
+  public IterativeSolver.Result lastResult() {
+    return lastResult;
+  }
+}
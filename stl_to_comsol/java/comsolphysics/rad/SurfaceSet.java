@@ -0,0 +1,466 @@
+/*
+ * SurfaceSet.java
+ * Radiating surfaces in structure-of-arrays form.
+ */
+
+package comsolphysics.rad;
+
+import comsolphysics.mesh.IndexedMesh;
+import comsolphysics.mesh.Segmentation;
+import comsolphysics.select.BoundaryMesh;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Triangles of a set of radiating surfaces ("patches"), stored as one
+ * primitive array per component: first corner, the two edge vectors, unit
+ * normal and area. Triangles are grouped by patch ({@link #first}/{@link #end}),
+ * and patch {@code i} corresponds to the external id {@code ids()[i]} (a
+ * COMSOL boundary number or a segmentation patch).
+ *
+ * <p>Normals point to the side that radiates. A two-sided set radiates from
+ * both faces of every triangle, which is what an unoriented scan needs.
+ *
+ * <p>A patch between two transparent domains is transparent: it still shoots
+ * rays, e.g. as a mean-radiant-temperature sensor, but does not block or
+ * receive them, and {@link TriangleBvh} leaves its triangles out.
+ *
+ * <p>{@link #write} and {@link #read} keep a set next to its
+ * {@link ViewFactorMatrix}, so a later run can tell which patches moved and
+ * update the matrix with a {@link ViewFactorUpdater}.
+ */
+public final class SurfaceSet {
+
+  /** Magic number of the file format written by {@link #write}. */
+  public static final int MAGIC = 0x53524631; // "SRF1"
+
+  final float[] ox, oy, oz;
+  final float[] e1x, e1y, e1z;
+  final float[] e2x, e2y, e2z;
+  final float[] nx, ny, nz;
+  final float[] area;
+  final int[] patch;
+  private final int[] patchStart;
+  private final double[] patchArea;
+  private final int[] ids;
+  private final boolean twoSided;
+  private BitSet transparent = new BitSet();
+
+  private SurfaceSet(int triangles, int[] ids, boolean twoSided) {
+    ox = new float[triangles];
+    oy = new float[triangles];
+    oz = new float[triangles];
+    e1x = new float[triangles];
+    e1y = new float[triangles];
+    e1z = new float[triangles];
+    e2x = new float[triangles];
+    e2y = new float[triangles];
+    e2z = new float[triangles];
+    nx = new float[triangles];
+    ny = new float[triangles];
+    nz = new float[triangles];
+    area = new float[triangles];
+    patch = new int[triangles];
+    patchStart = new int[ids.length + 1];
+    patchArea = new double[ids.length];
+    this.ids = ids;
+    this.twoSided = twoSided;
+  }
+
+  /**
+   * Triangles of the given COMSOL boundaries. Each boundary radiates away
+   * from whichever adjacent domain is in {@code opaqueDomains}; boundaries
+   * with no opaque side, or opaque on both, keep their mesh orientation.
+   * Given opaque domains, a boundary with other domains on both sides is
+   * transparent, as in the rad interface where every domain outside the
+   * opaque selection has {@code opaque=0}. The exterior (domain 0) then
+   * counts as opaque for both rules, so a boundary between a transparent
+   * domain and the outside radiates into the transparent domain.
+   *
+   * @param boundaries    1-based boundary numbers; patch {@code i} is {@code boundaries[i]}
+   * @param opaqueDomains domains that block radiation (e.g. the rad Opacity selection)
+   */
+  public static SurfaceSet fromBoundaries(BoundaryMesh mesh, int[] boundaries, int... opaqueDomains) {
+    int[] patchOf = new int[mesh.boundaryCount() + 1];
+    Arrays.fill(patchOf, -1);
+    for (int i = 0; i < boundaries.length; i++) {
+      patchOf[boundaries[i]] = i;
+    }
+    BitSet opaque = new BitSet();
+    for (int d : opaqueDomains) {
+      if (d > 0) {
+        opaque.set(d);
+      }
+    }
+    if (!opaque.isEmpty()) {
+      // The exterior
+      opaque.set(0);
+    }
+    int[][] upDown = mesh.upDown();
+    boolean[] flip = new boolean[boundaries.length];
+    BitSet transparent = new BitSet();
+    for (int i = 0; i < boundaries.length && upDown != null; i++) {
+      int up = upDown[0][boundaries[i] - 1], down = upDown[1][boundaries[i] - 1];
+      // The normal points into the "up" domain; radiate into the transparent side
+      flip[i] = opaque.get(up) && !opaque.get(down);
+      if (!opaque.isEmpty() && !opaque.get(up) && !opaque.get(down)) {
+        transparent.set(i);
+      }
+    }
+    int[] entity = mesh.entity();
+    int[] triPatch = new int[entity.length];
+    for (int t = 0; t < entity.length; t++) {
+      triPatch[t] = patchOf[entity[t]];
+    }
+    SurfaceSet s = build(mesh.xyz(), mesh.triangles(), triPatch, boundaries.clone(), flip, false);
+    s.transparent = transparent;
+    return s;
+  }
+
+  /** Two-sided patches of a segmented scan; patch {@code p} has id {@code p + 1}. */
+  public static SurfaceSet fromSegmentation(IndexedMesh mesh, Segmentation seg) {
+    float[] pos = mesh.positions();
+    double[] xyz = new double[mesh.vertexCount() * 3];
+    for (int i = 0; i < xyz.length; i++) {
+      xyz[i] = pos[i];
+    }
+    int[] triPatch = new int[mesh.triangleCount()];
+    for (int t = 0; t < triPatch.length; t++) {
+      triPatch[t] = seg.patchOf(t);
+    }
+    int[] ids = new int[seg.patchCount()];
+    for (int p = 0; p < ids.length; p++) {
+      ids[p] = p + 1;
+    }
+    return build(xyz, mesh.indices(), triPatch, ids, new boolean[ids.length], true);
+  }
+
+  /** Triangles with {@code triPatch[t] < 0} are left out. Degenerate triangles are dropped. */
+  private static SurfaceSet build(double[] xyz, int[] tri, int[] triPatch, int[] ids, boolean[] flip,
+                                  boolean twoSided) {
+    int patches = ids.length;
+    int[] start = new int[patches + 1];
+    for (int p : triPatch) {
+      if (p >= 0) {
+        start[p + 1]++;
+      }
+    }
+    for (int p = 0; p < patches; p++) {
+      start[p + 1] += start[p];
+    }
+    SurfaceSet s = new SurfaceSet(start[patches], ids, twoSided);
+    System.arraycopy(start, 0, s.patchStart, 0, patches + 1);
+    int[] fill = Arrays.copyOf(start, patches);
+    int kept = 0;
+    for (int t = 0; t < triPatch.length; t++) {
+      int p = triPatch[t];
+      if (p < 0) {
+        continue;
+      }
+      int a = tri[t * 3] * 3, b = tri[t * 3 + 1] * 3, c = tri[t * 3 + 2] * 3;
+      if (flip[p]) {
+        int swap = b;
+        b = c;
+        c = swap;
+      }
+      double ux = xyz[b] - xyz[a], uy = xyz[b + 1] - xyz[a + 1], uz = xyz[b + 2] - xyz[a + 2];
+      double vx = xyz[c] - xyz[a], vy = xyz[c + 1] - xyz[a + 1], vz = xyz[c + 2] - xyz[a + 2];
+      double cx = uy * vz - uz * vy, cy = uz * vx - ux * vz, cz = ux * vy - uy * vx;
+      double len = Math.sqrt(cx * cx + cy * cy + cz * cz);
+      if (len == 0) {
+        continue;
+      }
+      int i = fill[p]++;
+      s.ox[i] = (float) xyz[a];
+      s.oy[i] = (float) xyz[a + 1];
+      s.oz[i] = (float) xyz[a + 2];
+      s.e1x[i] = (float) ux;
+      s.e1y[i] = (float) uy;
+      s.e1z[i] = (float) uz;
+      s.e2x[i] = (float) vx;
+      s.e2y[i] = (float) vy;
+      s.e2z[i] = (float) vz;
+      s.nx[i] = (float) (cx / len);
+      s.ny[i] = (float) (cy / len);
+      s.nz[i] = (float) (cz / len);
+      s.area[i] = (float) (0.5 * len);
+      s.patch[i] = p;
+      s.patchArea[p] += 0.5 * len;
+      kept++;
+    }
+    return kept == start[patches] ? s : s.compact(fill, start);
+  }
+
+  /** Close the gaps left by dropped degenerate triangles. */
+  private SurfaceSet compact(int[] fill, int[] start) {
+    int patches = ids.length;
+    int n = 0;
+    for (int p = 0; p < patches; p++) {
+      n += fill[p] - start[p];
+    }
+    SurfaceSet s = new SurfaceSet(n, ids, twoSided);
+    s.transparent = transparent;
+    int j = 0;
+    for (int p = 0; p < patches; p++) {
+      s.patchStart[p] = j;
+      s.patchArea[p] = patchArea[p];
+      for (int i = start[p]; i < fill[p]; i++, j++) {
+        s.copyFrom(this, i, j);
+      }
+    }
+    s.patchStart[patches] = j;
+    return s;
+  }
+
+  private void copyFrom(SurfaceSet o, int i, int j) {
+    ox[j] = o.ox[i];
+    oy[j] = o.oy[i];
+    oz[j] = o.oz[i];
+    e1x[j] = o.e1x[i];
+    e1y[j] = o.e1y[i];
+    e1z[j] = o.e1z[i];
+    e2x[j] = o.e2x[i];
+    e2y[j] = o.e2y[i];
+    e2z[j] = o.e2z[i];
+    nx[j] = o.nx[i];
+    ny[j] = o.ny[i];
+    nz[j] = o.nz[i];
+    area[j] = o.area[i];
+    patch[j] = o.patch[i];
+  }
+
+  /**
+   * A copy with the patches whose ids are in {@code moved} carried by the
+   * rigid motion {@code x' = R x + t}, given row-major as
+   * {@code {r00, r01, r02, t0, r10, r11, r12, t1, r20, r21, r22, t2}}.
+   * Triangles keep their order, so the copy pairs with this set in a
+   * {@link ViewFactorUpdater}.
+   */
+  public SurfaceSet moved(int[] moved, double[] motion) {
+    if (motion.length != 12) {
+      throw new IllegalArgumentException("Expected a 3 x 4 motion, got " + motion.length + " values");
+    }
+    BitSet patches = new BitSet();
+    for (int id : moved) {
+      boolean found = false;
+      for (int p = 0; p < ids.length; p++) {
+        if (ids[p] == id) {
+          patches.set(p);
+          found = true;
+        }
+      }
+      if (!found) {
+        throw new IllegalArgumentException("No patch with id " + id);
+      }
+    }
+    SurfaceSet s = new SurfaceSet(area.length, ids, twoSided);
+    s.transparent = transparent;
+    System.arraycopy(patchStart, 0, s.patchStart, 0, patchStart.length);
+    System.arraycopy(patchArea, 0, s.patchArea, 0, patchArea.length);
+    for (int i = 0; i < area.length; i++) {
+      s.copyFrom(this, i, i);
+      if (!patches.get(patch[i])) {
+        continue;
+      }
+      double x = ox[i], y = oy[i], z = oz[i];
+      s.ox[i] = (float) (motion[0] * x + motion[1] * y + motion[2] * z + motion[3]);
+      s.oy[i] = (float) (motion[4] * x + motion[5] * y + motion[6] * z + motion[7]);
+      s.oz[i] = (float) (motion[8] * x + motion[9] * y + motion[10] * z + motion[11]);
+      s.e1x[i] = (float) (motion[0] * e1x[i] + motion[1] * e1y[i] + motion[2] * e1z[i]);
+      s.e1y[i] = (float) (motion[4] * e1x[i] + motion[5] * e1y[i] + motion[6] * e1z[i]);
+      s.e1z[i] = (float) (motion[8] * e1x[i] + motion[9] * e1y[i] + motion[10] * e1z[i]);
+      s.e2x[i] = (float) (motion[0] * e2x[i] + motion[1] * e2y[i] + motion[2] * e2z[i]);
+      s.e2y[i] = (float) (motion[4] * e2x[i] + motion[5] * e2y[i] + motion[6] * e2z[i]);
+      s.e2z[i] = (float) (motion[8] * e2x[i] + motion[9] * e2y[i] + motion[10] * e2z[i]);
+      s.nx[i] = (float) (motion[0] * nx[i] + motion[1] * ny[i] + motion[2] * nz[i]);
+      s.ny[i] = (float) (motion[4] * nx[i] + motion[5] * ny[i] + motion[6] * nz[i]);
+      s.nz[i] = (float) (motion[8] * nx[i] + motion[9] * ny[i] + motion[10] * nz[i]);
+    }
+    return s;
+  }
+
+  /** A copy with the patches whose ids are in {@code moved} shifted by {@code (dx, dy, dz)}. */
+  public SurfaceSet translated(int[] moved, double dx, double dy, double dz) {
+    return moved(moved, new double[] {1, 0, 0, dx, 0, 1, 0, dy, 0, 0, 1, dz});
+  }
+
+  /** Whether patch {@code p} has exactly the same triangles here as patch {@code q} of {@code o}. */
+  boolean samePatch(int p, SurfaceSet o, int q) {
+    int n = end(p) - first(p);
+    if (n != o.end(q) - o.first(q)) {
+      return false;
+    }
+    for (int k = 0; k < n; k++) {
+      int i = first(p) + k, j = o.first(q) + k;
+      if (ox[i] != o.ox[j] || oy[i] != o.oy[j] || oz[i] != o.oz[j]
+          || e1x[i] != o.e1x[j] || e1y[i] != o.e1y[j] || e1z[i] != o.e1z[j]
+          || e2x[i] != o.e2x[j] || e2y[i] != o.e2y[j] || e2z[i] != o.e2z[j]
+          || nx[i] != o.nx[j] || ny[i] != o.ny[j] || nz[i] != o.nz[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Whether both sets have the same transparent patches. */
+  boolean sameOpacity(SurfaceSet o) {
+    return transparent.equals(o.transparent);
+  }
+
+  /** Bounds of patch {@code p}'s triangles, {@code min xyz, max xyz}, written to {@code b} at {@code o}. */
+  void patchBounds(int p, float[] b, int o) {
+    Arrays.fill(b, o, o + 3, Float.POSITIVE_INFINITY);
+    Arrays.fill(b, o + 3, o + 6, Float.NEGATIVE_INFINITY);
+    for (int i = first(p); i < end(p); i++) {
+      for (int c = 0; c < 3; c++) {
+        float x = c == 0 ? ox[i] : c == 1 ? oy[i] : oz[i];
+        float u = c == 0 ? e1x[i] : c == 1 ? e1y[i] : e1z[i];
+        float v = c == 0 ? e2x[i] : c == 1 ? e2y[i] : e2z[i];
+        b[o + c] = Math.min(b[o + c], Math.min(x, Math.min(x + u, x + v)));
+        b[o + 3 + c] = Math.max(b[o + 3 + c], Math.max(x, Math.max(x + u, x + v)));
+      }
+    }
+  }
+
+  public int triangleCount() {
+    return area.length;
+  }
+
+  public int patchCount() {
+    return ids.length;
+  }
+
+  /** External id of every patch. Not copied. */
+  public int[] ids() {
+    return ids;
+  }
+
+  public boolean twoSided() {
+    return twoSided;
+  }
+
+  /** First triangle of patch {@code p}. */
+  public int first(int p) {
+    return patchStart[p];
+  }
+
+  /** One past the last triangle of patch {@code p}. */
+  public int end(int p) {
+    return patchStart[p + 1];
+  }
+
+  public double patchArea(int p) {
+    return patchArea[p];
+  }
+
+  /** Whether patch {@code p}, and so each of its triangles, blocks rays. */
+  public boolean opaque(int p) {
+    return !transparent.get(p);
+  }
+
+  /**
+   * Hash of the ids, triangle coordinates and transparent patches, used to
+   * tell whether a stored view-factor matrix still belongs to this geometry.
+   */
+  public long fingerprint() {
+    long h = 0x9E3779B97F4A7C15L ^ ids.length;
+    for (int id : ids) {
+      h = mix(h + id);
+    }
+    // All-opaque sets hash as they did before transparency was tracked
+    for (int p = transparent.nextSetBit(0); p >= 0; p = transparent.nextSetBit(p + 1)) {
+      h = mix(h ^ (0x5452414EL + p));
+    }
+    for (int i = 0; i < area.length; i++) {
+      h = mix(h + Float.floatToIntBits(ox[i]));
+      h = mix(h + Float.floatToIntBits(oy[i]));
+      h = mix(h + Float.floatToIntBits(oz[i]));
+      h = mix(h + Float.floatToIntBits(e1x[i]) * 31L + Float.floatToIntBits(e2x[i]));
+      h = mix(h + Float.floatToIntBits(e1y[i]) * 31L + Float.floatToIntBits(e2y[i]));
+      h = mix(h + Float.floatToIntBits(e1z[i]) * 31L + Float.floatToIntBits(e2z[i]));
+    }
+    return h;
+  }
+
+  /**
+   * Write a little-endian file:
+   * {@code magic, triangles, patches, twoSided, int[n] ids, int[n+1] patchStart,
+   * double[n] patchArea}, then per triangle {@code float[13]} (corner, edges,
+   * normal, area) and {@code int} patch, each as one array, and last
+   * {@code int count, int[count]} transparent patches. Files without that
+   * tail read as all opaque.
+   */
+  public void write(Path path) throws IOException {
+    int t = area.length;
+    int n = ids.length;
+    int[] clear = transparent.stream().toArray();
+    long bytes = 16L + 4L * n + 4L * (n + 1) + 8L * n + 56L * t + 4L + 4L * clear.length;
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, bytes).order(ByteOrder.LITTLE_ENDIAN);
+      map.putInt(MAGIC).putInt(t).putInt(n).putInt(twoSided ? 1 : 0);
+      map.asIntBuffer().put(ids);
+      map.position(map.position() + 4 * n);
+      map.asIntBuffer().put(patchStart);
+      map.position(map.position() + 4 * (n + 1));
+      map.asDoubleBuffer().put(patchArea);
+      map.position(map.position() + 8 * n);
+      for (float[] a : new float[][] {ox, oy, oz, e1x, e1y, e1z, e2x, e2y, e2z, nx, ny, nz, area}) {
+        map.asFloatBuffer().put(a);
+        map.position(map.position() + 4 * t);
+      }
+      map.asIntBuffer().put(patch);
+      map.position(map.position() + 4 * t);
+      map.putInt(clear.length);
+      map.asIntBuffer().put(clear);
+    }
+  }
+
+  /** Read a file written by {@link #write}. */
+  public static SurfaceSet read(Path path) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).order(ByteOrder.LITTLE_ENDIAN);
+      if (map.getInt() != MAGIC) {
+        throw new IOException("Not a surface-set file: " + path);
+      }
+      int t = map.getInt();
+      int n = map.getInt();
+      boolean twoSided = map.getInt() != 0;
+      int[] ids = new int[n];
+      map.asIntBuffer().get(ids);
+      map.position(map.position() + 4 * n);
+      SurfaceSet s = new SurfaceSet(t, ids, twoSided);
+      map.asIntBuffer().get(s.patchStart);
+      map.position(map.position() + 4 * (n + 1));
+      map.asDoubleBuffer().get(s.patchArea);
+      map.position(map.position() + 8 * n);
+      for (float[] a : new float[][] {s.ox, s.oy, s.oz, s.e1x, s.e1y, s.e1z, s.e2x, s.e2y, s.e2z, s.nx, s.ny, s.nz,
+          s.area}) {
+        map.asFloatBuffer().get(a);
+        map.position(map.position() + 4 * t);
+      }
+      map.asIntBuffer().get(s.patch);
+      map.position(map.position() + 4 * t);
+      if (map.remaining() >= 4) {
+        int[] clear = new int[map.getInt()];
+        map.asIntBuffer().get(clear);
+        for (int p : clear) {
+          s.transparent.set(p);
+        }
+      }
+      return s;
+    }
+  }
+
+  static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,430 @@
+/*
+ * SymmetricViewFactors.java
+ * View factors stored once per pair through reciprocity.
+ */
+
+package comsolphysics.rad;
+
+import comsolphysics.solve.CsrMatrix;
+import comsolphysics.solve.IterativeSolver;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * View factors kept as the symmetric exchange {@code S_ij = A_i F_ij =
+ * A_j F_ji} (m^2), strictly upper triangle only, in CSR form; both
+ * {@code F_ij = S_ij / A_i} and {@code F_ji = S_ij / A_j} come from one
+ * stored value, so reciprocity holds exactly and the storage is half that
+ * of a {@link ViewFactorMatrix}.
+ *
+ * <p>The closure error of surface i is {@code 1 - sum_j F_ij}: what its rays
+ * lost to openings, or to holes in a broken scan. {@link #smooth} removes it
+ * for closed enclosures by the least-squares adjustment of Lawson (1995):
+ * {@code S'_ij = S_ij + S_ij^2 (l_i + l_j)}, with the multipliers
+ * {@code l} solved so every row sums to 1. Corrections are relative to each
+ * factor, so zeros stay zero and reciprocity is kept.
+ */
+public final class SymmetricViewFactors {
+
+  /** Magic number of the file format written by {@link #write}. */
+  public static final int MAGIC = 0x56465331; // "VFS1"
+  /** Largest closure error left by {@link #smooth}; below float resolution is not reachable. */
+  private static final double CLOSURE_TOLERANCE = 1e-6;
+  private static final double SOLVER_TOLERANCE = 1e-8;
+  private static final int SMOOTHING_ROUNDS = 8;
+
+  private final int[] ids;
+  private final double[] area;
+  private final int[] rowStart;
+  private final int[] columns;
+  private final float[] values;
+  private final long fingerprint;
+  // sum_j S_ij over the whole row, upper and lower part
+  private final double[] exchange;
+
+  public SymmetricViewFactors(int[] ids, double[] area, int[] rowStart, int[] columns, float[] values,
+                              long fingerprint) {
+    this.ids = ids;
+    this.area = area;
+    this.rowStart = rowStart;
+    this.columns = columns;
+    this.values = values;
+    this.fingerprint = fingerprint;
+    this.exchange = new double[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+        if (columns[k] <= i) {
+          throw new IllegalArgumentException("Row " + i + " holds column " + columns[k] + " outside the upper triangle");
+        }
+        exchange[i] += values[k];
+        exchange[columns[k]] += values[k];
+      }
+    }
+  }
+
+  /**
+   * Fold traced rows of {@code F} into exchanges. {@code A_i F_ij} and
+   * {@code A_j F_ji} are independent estimates of the same exchange with
+   * variances proportional to {@code A_i} and {@code A_j}; weighting them
+   * inversely gives {@code S_ij = (F_ij + F_ji) A_i A_j / (A_i + A_j)}, which
+   * leans on the smaller patch's rays.
+   */
+  static SymmetricViewFactors fromRows(SurfaceSet surfaces, int[][] rowColumns, float[][] rowValues) {
+    int n = surfaces.patchCount();
+    double[] area = new double[n];
+    for (int p = 0; p < n; p++) {
+      area[p] = surfaces.patchArea(p);
+    }
+    // Every entry lands in the upper row of its pair, once from each end at most
+    int[] count = new int[n + 1];
+    for (int i = 0; i < n; i++) {
+      for (int j : rowColumns[i]) {
+        count[Math.min(i, j) + 1]++;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      count[i + 1] += count[i];
+    }
+    int[] pairColumn = new int[count[n]];
+    double[] pairValue = new double[count[n]];
+    int[] fill = Arrays.copyOf(count, n);
+    for (int i = 0; i < n; i++) {
+      for (int k = 0; k < rowColumns[i].length; k++) {
+        int j = rowColumns[i][k];
+        int at = fill[Math.min(i, j)]++;
+        pairColumn[at] = Math.max(i, j);
+        pairValue[at] = area[i] * area[j] / (area[i] + area[j]) * rowValues[i][k];
+      }
+    }
+    int[] rowStart = new int[n + 1];
+    int[] columns = new int[count[n]];
+    float[] values = new float[count[n]];
+    int m = 0;
+    Integer[] order = new Integer[0];
+    for (int i = 0; i < n; i++) {
+      rowStart[i] = m;
+      int lo = count[i], hi = count[i + 1];
+      if (order.length < hi - lo) {
+        order = new Integer[hi - lo];
+      }
+      for (int k = lo; k < hi; k++) {
+        order[k - lo] = k;
+      }
+      Arrays.sort(order, 0, hi - lo, (a, b) -> Integer.compare(pairColumn[a], pairColumn[b]));
+      for (int k = 0; k < hi - lo; k++) {
+        int at = order[k];
+        if (m > rowStart[i] && columns[m - 1] == pairColumn[at]) {
+          values[m - 1] += (float) pairValue[at];
+        } else {
+          columns[m] = pairColumn[at];
+          values[m++] = (float) pairValue[at];
+        }
+      }
+    }
+    rowStart[n] = m;
+    return new SymmetricViewFactors(surfaces.ids().clone(), area, rowStart, Arrays.copyOf(columns, m),
+        Arrays.copyOf(values, m), surfaces.fingerprint());
+  }
+
+  /**
+   * Fold the rows of {@code rows}, traced for {@code surfaces}, as
+   * {@link #fromRows} does; for a matrix kept between runs rather than
+   * traced by {@link ViewFactorEngine#runReciprocal} itself.
+   */
+  public static SymmetricViewFactors fromMatrix(SurfaceSet surfaces, ViewFactorMatrix rows) {
+    if (rows.fingerprint() != surfaces.fingerprint() || rows.size() != surfaces.patchCount()) {
+      throw new IllegalArgumentException("View factors were computed for other surfaces");
+    }
+    int n = rows.size();
+    int[] start = rows.rowStart();
+    int[][] rowColumns = new int[n][];
+    float[][] rowValues = new float[n][];
+    for (int i = 0; i < n; i++) {
+      rowColumns[i] = Arrays.copyOfRange(rows.columns(), start[i], start[i + 1]);
+      rowValues[i] = Arrays.copyOfRange(rows.values(), start[i], start[i + 1]);
+    }
+    return fromRows(surfaces, rowColumns, rowValues);
+  }
+
+  public int size() {
+    return ids.length;
+  }
+
+  /** Stored pairs; a {@link ViewFactorMatrix} of the same factors has twice as many non-zeros. */
+  public int pairs() {
+    return rowStart[ids.length];
+  }
+
+  /** External id of each patch. Not copied. */
+  public int[] ids() {
+    return ids;
+  }
+
+  public double area(int i) {
+    return area[i];
+  }
+
+  /** {@link SurfaceSet#fingerprint()} of the geometry the factors were computed for. */
+  public long fingerprint() {
+    return fingerprint;
+  }
+
+  /** Exchange {@code A_i F_ij}, m^2. */
+  public double exchange(int i, int j) {
+    if (i == j) {
+      return 0.0;
+    }
+    int lo = Math.min(i, j), hi = Math.max(i, j);
+    int k = Arrays.binarySearch(columns, rowStart[lo], rowStart[lo + 1], hi);
+    return k >= 0 ? values[k] : 0.0;
+  }
+
+  public double get(int i, int j) {
+    return exchange(i, j) / area[i];
+  }
+
+  /** Enclosure sum of row i. */
+  public double rowSum(int i) {
+    return exchange[i] / area[i];
+  }
+
+  /** {@code 1 - sum_j F_ij}: the fraction of surface i's view that leaves the set. */
+  public double closureError(int i) {
+    return 1.0 - rowSum(i);
+  }
+
+  /**
+   * Least-squares closure for a closed enclosure: the nearest symmetric
+   * exchanges, in the relative sense above, whose rows all sum to 1. Each
+   * round solves for the multipliers by conjugate gradients; exchanges the
+   * correction would make negative are set to zero and the next round
+   * closes again.
+   */
+  public SymmetricViewFactors smooth() {
+    int n = ids.length;
+    float[] adjusted = values.clone();
+    double[] sum = exchange.clone();
+    // Multiplier system: M_ii = sum_j w_ij, M_ij = w_ij with w_ij = S_ij^2, symmetric positive semi-definite
+    int[] mStart = new int[n + 1];
+    for (int i = 0; i < n; i++) {
+      for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+        mStart[i + 1]++;
+        mStart[columns[k] + 1]++;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      mStart[i + 1] += mStart[i] + 1;
+    }
+    int[] mColumns = new int[mStart[n]];
+    int[] fill = new int[n];
+    for (int i = 0; i < n; i++) {
+      mColumns[mStart[i]] = i;
+      fill[i] = mStart[i] + 1;
+    }
+    for (int i = 0; i < n; i++) {
+      for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+        mColumns[fill[i]++] = columns[k];
+        mColumns[fill[columns[k]]++] = i;
+      }
+    }
+    // Position of each stored pair in both rows of M, found once
+    int[] upper = new int[values.length];
+    int[] lower = new int[values.length];
+    int[] diagonal = new int[n];
+    for (int i = 0; i < n; i++) {
+      Arrays.sort(mColumns, mStart[i], mStart[i + 1]);
+      diagonal[i] = Arrays.binarySearch(mColumns, mStart[i], mStart[i + 1], i);
+    }
+    for (int i = 0; i < n; i++) {
+      for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+        int j = columns[k];
+        upper[k] = Arrays.binarySearch(mColumns, mStart[i], mStart[i + 1], j);
+        lower[k] = Arrays.binarySearch(mColumns, mStart[j], mStart[j + 1], i);
+      }
+    }
+    CsrMatrix m = new CsrMatrix(n, mStart, mColumns, new double[mStart[n]]);
+    double[] mValues = m.values();
+    double[] lambda = new double[n];
+    double[] residual = new double[n];
+    for (int round = 0; round < SMOOTHING_ROUNDS; round++) {
+      double worst = 0;
+      for (int i = 0; i < n; i++) {
+        residual[i] = area[i] - sum[i];
+        worst = Math.max(worst, Math.abs(residual[i]) / area[i]);
+      }
+      if (worst <= CLOSURE_TOLERANCE) {
+        break;
+      }
+      Arrays.fill(mValues, 0.0);
+      boolean[] isolated = new boolean[n];
+      Arrays.fill(isolated, true);
+      for (int i = 0; i < n; i++) {
+        for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+          int j = columns[k];
+          double w = (double) adjusted[k] * adjusted[k];
+          if (w > 0) {
+            mValues[upper[k]] += w;
+            mValues[lower[k]] += w;
+            mValues[diagonal[i]] += w;
+            mValues[diagonal[j]] += w;
+            isolated[i] = false;
+            isolated[j] = false;
+          }
+        }
+      }
+      // A surface that sees nothing cannot be closed; keep its row out of the system
+      for (int i = 0; i < n; i++) {
+        if (isolated[i]) {
+          mValues[diagonal[i]] = 1.0;
+          residual[i] = 0.0;
+        }
+      }
+      Arrays.fill(lambda, 0.0);
+      IterativeSolver.Result result = IterativeSolver.pcg(m, residual, lambda, SOLVER_TOLERANCE, Math.max(1000, n));
+      if (!result.converged()) {
+        throw new IllegalStateException("Closure smoothing " + result);
+      }
+      Arrays.fill(sum, 0.0);
+      for (int i = 0; i < n; i++) {
+        for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+          int j = columns[k];
+          double s = adjusted[k];
+          adjusted[k] = (float) Math.max(0.0, s + s * s * (lambda[i] + lambda[j]));
+          sum[i] += adjusted[k];
+          sum[j] += adjusted[k];
+        }
+      }
+    }
+    return new SymmetricViewFactors(ids, area, rowStart, columns, adjusted, fingerprint);
+  }
+
+  /** The full matrix {@code F_ij = S_ij / A_i}, for the solvers. */
+  public ViewFactorMatrix toMatrix() {
+    int n = ids.length;
+    int[] start = new int[n + 1];
+    for (int i = 0; i < n; i++) {
+      for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+        start[i + 1]++;
+        start[columns[k] + 1]++;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      start[i + 1] += start[i];
+    }
+    int[] fill = Arrays.copyOf(start, n);
+    int[] cols = new int[start[n]];
+    float[] vals = new float[start[n]];
+    // Lower entries of row j come from rows i < j in order, so every row stays ascending
+    for (int i = 0; i < n; i++) {
+      for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+        int j = columns[k];
+        cols[fill[j]] = i;
+        vals[fill[j]++] = (float) (values[k] / area[j]);
+      }
+      for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+        cols[fill[i]] = columns[k];
+        vals[fill[i]++] = (float) (values[k] / area[i]);
+      }
+    }
+    return new ViewFactorMatrix(ids, area, start, cols, vals, fingerprint);
+  }
+
+  /** Largest {@code |closureError(i)|}. */
+  public double maxClosureError() {
+    double max = 0;
+    for (int i = 0; i < ids.length; i++) {
+      max = Math.max(max, Math.abs(closureError(i)));
+    }
+    return max;
+  }
+
+  /** RMS of {@code closureError(i)} over the surfaces. */
+  public double rmsClosureError() {
+    int n = ids.length;
+    double sq = 0;
+    for (int i = 0; i < n; i++) {
+      double e = closureError(i);
+      sq += e * e;
+    }
+    return n > 0 ? Math.sqrt(sq / n) : 0.0;
+  }
+
+  /** Largest and RMS closure error, and the {@code worst} surfaces by closure error. */
+  public void printClosure(PrintStream out, int worst) {
+    int n = ids.length;
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    out.printf("  Closure error:    max %.2e, rms %.2e over %d surfaces%n", maxClosureError(), rmsClosureError(), n);
+    Arrays.sort(order, (a, b) -> Double.compare(Math.abs(closureError(b)), Math.abs(closureError(a))));
+    for (int k = 0; k < Math.min(worst, n); k++) {
+      int i = order[k];
+      out.printf("    surface %d: %.4f (area %.3f m^2)%n", ids[i], closureError(i), area[i]);
+    }
+  }
+
+  /**
+   * Write a little-endian file:
+   * {@code magic, n, pairs, fingerprint, int[n] ids, double[n] area, int[n+1] rowStart,
+   * int[pairs] columns, float[pairs] exchanges}.
+   */
+  public void write(Path path) throws IOException {
+    int n = ids.length;
+    int nnz = pairs();
+    long bytes = 20L + 4L * n + 8L * n + 4L * (n + 1) + 8L * nnz;
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, bytes).order(ByteOrder.LITTLE_ENDIAN);
+      map.putInt(MAGIC).putInt(n).putInt(nnz).putLong(fingerprint);
+      map.asIntBuffer().put(ids);
+      map.position(map.position() + 4 * n);
+      map.asDoubleBuffer().put(area);
+      map.position(map.position() + 8 * n);
+      map.asIntBuffer().put(rowStart, 0, n + 1);
+      map.position(map.position() + 4 * (n + 1));
+      map.asIntBuffer().put(columns, 0, nnz);
+      map.position(map.position() + 4 * nnz);
+      map.asFloatBuffer().put(values, 0, nnz);
+    }
+  }
+
+  /** Read a file written by {@link #write}. */
+  public static SymmetricViewFactors read(Path path) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).order(ByteOrder.LITTLE_ENDIAN);
+      if (map.getInt() != MAGIC) {
+        throw new IOException("Not a symmetric view-factor file: " + path);
+      }
+      int n = map.getInt();
+      int nnz = map.getInt();
+      long fingerprint = map.getLong();
+      int[] ids = new int[n];
+      double[] area = new double[n];
+      int[] rowStart = new int[n + 1];
+      int[] columns = new int[nnz];
+      float[] values = new float[nnz];
+      map.asIntBuffer().get(ids);
+      map.position(map.position() + 4 * n);
+      map.asDoubleBuffer().get(area);
+      map.position(map.position() + 8 * n);
+      map.asIntBuffer().get(rowStart);
+      map.position(map.position() + 4 * (n + 1));
+      map.asIntBuffer().get(columns);
+      map.position(map.position() + 4 * nnz);
+      map.asFloatBuffer().get(values);
+      return new SymmetricViewFactors(ids, area, rowStart, columns, values, fingerprint);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SymmetricViewFactors[" + ids.length + " patches, " + pairs() + " pairs]";
+  }
+}
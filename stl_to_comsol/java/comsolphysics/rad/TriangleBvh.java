@@ -0,0 +1,527 @@
+/*
+ * TriangleBvh.java
+ * Ray-casting BVH over the triangles of a SurfaceSet.
+ */
+
+package comsolphysics.rad;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Bounding volume hierarchy for closest-hit and any-hit ray queries. Only
+ * the triangles of opaque patches ({@link SurfaceSet#opaque}) go into the
+ * tree, so transparent ones cost neither a box nor an intersection test
+ * during traversal. Nodes live in flat
+ * arrays; the triangles are copied into leaf order so each leaf is a
+ * contiguous run of the structure-of-arrays data and the inner intersection
+ * loop walks primitive arrays with unit stride.
+ *
+ * <p>Built top-down with a binned surface area heuristic. Queries allocate
+ * nothing once a {@link Stack} has been created for the calling thread.
+ * {@link #refit} moves some patches' triangles and recomputes only the
+ * boxes above them, keeping the tree's shape; that is what rigidly moving
+ * one piece of furniture needs, though many large moves slowly loosen the
+ * boxes until a rebuild pays off.
+ */
+final class TriangleBvh {
+
+  /** Ranges this small always become leaves. */
+  private static final int LEAF_SIZE = 2;
+  /** Ranges larger than this are always split. */
+  private static final int MAX_LEAF_SIZE = 8;
+  private static final int BINS = 16;
+  /** Minimum ray parameter, so a ray does not hit the triangle it starts on. */
+  static final float T_MIN = 1.0e-5f;
+
+  // Triangles in leaf order
+  private final float[] ox, oy, oz, e1x, e1y, e1z, e2x, e2y, e2z;
+  private final int[] triangle;
+  // Triangles of the source set, opaque or not
+  private final int sourceTriangles;
+
+  // Nodes: box, and either (left child, right child) or a leaf range (first, -count)
+  private float[] box;
+  private int[] left;
+  private int[] right;
+  private int nodes;
+  private int depth;
+
+  private final float[] cx, cy, cz;
+  private final int[] order;
+
+  TriangleBvh(SurfaceSet s) {
+    sourceTriangles = s.triangleCount();
+    cx = new float[sourceTriangles];
+    cy = new float[sourceTriangles];
+    cz = new float[sourceTriangles];
+    int n = 0;
+    for (int p = 0; p < s.patchCount(); p++) {
+      n += s.opaque(p) ? s.end(p) - s.first(p) : 0;
+    }
+    order = new int[n];
+    n = 0;
+    for (int i = 0; i < sourceTriangles; i++) {
+      cx[i] = s.ox[i] + (s.e1x[i] + s.e2x[i]) / 3f;
+      cy[i] = s.oy[i] + (s.e1y[i] + s.e2y[i]) / 3f;
+      cz[i] = s.oz[i] + (s.e1z[i] + s.e2z[i]) / 3f;
+      if (s.opaque(s.patch[i])) {
+        order[n++] = i;
+      }
+    }
+    int capacity = Math.max(1, 2 * n + 1);
+    box = new float[capacity * 6];
+    left = new int[capacity];
+    right = new int[capacity];
+    if (n > 0) {
+      build(s, 0, n, 1);
+    }
+
+    ox = new float[n];
+    oy = new float[n];
+    oz = new float[n];
+    e1x = new float[n];
+    e1y = new float[n];
+    e1z = new float[n];
+    e2x = new float[n];
+    e2y = new float[n];
+    e2z = new float[n];
+    triangle = order;
+    for (int i = 0; i < n; i++) {
+      int t = order[i];
+      ox[i] = s.ox[t];
+      oy[i] = s.oy[t];
+      oz[i] = s.oz[t];
+      e1x[i] = s.e1x[t];
+      e1y[i] = s.e1y[t];
+      e1z[i] = s.e1z[t];
+      e2x[i] = s.e2x[t];
+      e2y[i] = s.e2y[t];
+      e2z[i] = s.e2z[t];
+    }
+  }
+
+  /** A copy of {@code base} with the triangles of the {@code changed} patches taken from {@code s}. */
+  private TriangleBvh(TriangleBvh base, SurfaceSet s, BitSet changed) {
+    triangle = base.triangle;
+    sourceTriangles = base.sourceTriangles;
+    order = base.order;
+    left = base.left;
+    right = base.right;
+    nodes = base.nodes;
+    depth = base.depth;
+    cx = cy = cz = null;
+    ox = base.ox.clone();
+    oy = base.oy.clone();
+    oz = base.oz.clone();
+    e1x = base.e1x.clone();
+    e1y = base.e1y.clone();
+    e1z = base.e1z.clone();
+    e2x = base.e2x.clone();
+    e2y = base.e2y.clone();
+    e2z = base.e2z.clone();
+    box = base.box.clone();
+    // Children are allocated after their parent, so a reverse sweep visits them first
+    boolean[] dirty = new boolean[nodes];
+    for (int node = nodes - 1; node >= 0; node--) {
+      int r = right[node];
+      if (r <= 0) {
+        int end = left[node] - r;
+        for (int i = left[node]; i < end; i++) {
+          int t = triangle[i];
+          if (changed.get(s.patch[t])) {
+            ox[i] = s.ox[t];
+            oy[i] = s.oy[t];
+            oz[i] = s.oz[t];
+            e1x[i] = s.e1x[t];
+            e1y[i] = s.e1y[t];
+            e1z[i] = s.e1z[t];
+            e2x[i] = s.e2x[t];
+            e2y[i] = s.e2y[t];
+            e2z[i] = s.e2z[t];
+            dirty[node] = true;
+          }
+        }
+        if (dirty[node]) {
+          float[] b = empty();
+          for (int i = left[node]; i < end; i++) {
+            grow(b, ox[i], oy[i], oz[i]);
+            grow(b, ox[i] + e1x[i], oy[i] + e1y[i], oz[i] + e1z[i]);
+            grow(b, ox[i] + e2x[i], oy[i] + e2y[i], oz[i] + e2z[i]);
+          }
+          System.arraycopy(b, 0, box, node * 6, 6);
+        }
+      } else if (dirty[left[node]] || dirty[r]) {
+        float[] b = empty();
+        union(b, box, left[node] * 6);
+        union(b, box, r * 6);
+        System.arraycopy(b, 0, box, node * 6, 6);
+        dirty[node] = true;
+      }
+    }
+  }
+
+  /**
+   * This tree with the triangles of the {@code changed} patches moved to
+   * where they are in {@code s}. {@code s} must have the triangles of the
+   * set this tree was built for, in the same order and with the same
+   * opacity, only displaced; the tree itself is left as it was.
+   */
+  TriangleBvh refit(SurfaceSet s, BitSet changed) {
+    if (s.triangleCount() != sourceTriangles) {
+      throw new IllegalArgumentException("Refit needs the same triangles: " + s.triangleCount() + " vs "
+          + sourceTriangles);
+    }
+    return new TriangleBvh(this, s, changed);
+  }
+
+  private int build(SurfaceSet s, int lo, int hi, int level) {
+    depth = Math.max(depth, level);
+    int node = allocate();
+    float[] b = empty();
+    float[] c = empty();
+    for (int i = lo; i < hi; i++) {
+      int t = order[i];
+      grow(b, s.ox[t], s.oy[t], s.oz[t]);
+      grow(b, s.ox[t] + s.e1x[t], s.oy[t] + s.e1y[t], s.oz[t] + s.e1z[t]);
+      grow(b, s.ox[t] + s.e2x[t], s.oy[t] + s.e2y[t], s.oz[t] + s.e2z[t]);
+      grow(c, cx[t], cy[t], cz[t]);
+    }
+    System.arraycopy(b, 0, box, node * 6, 6);
+    int n = hi - lo;
+    int mid = n <= LEAF_SIZE ? -1 : sahSplit(s, lo, hi, c, b);
+    if (mid < 0 && n <= MAX_LEAF_SIZE) {
+      left[node] = lo;
+      right[node] = -n;
+      return node;
+    }
+    if (mid <= lo || mid >= hi) {
+      // No useful SAH split (coincident centroids); fall back to the median
+      int axis = longestAxis(c);
+      mid = (lo + hi) >>> 1;
+      select(axis == 0 ? cx : axis == 1 ? cy : cz, lo, hi - 1, mid);
+    }
+    int l = build(s, lo, mid, level + 1);
+    int r = build(s, mid, hi, level + 1);
+    left[node] = l;
+    right[node] = r;
+    return node;
+  }
+
+  private static float[] empty() {
+    return new float[] {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+        Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+  }
+
+  private static int longestAxis(float[] c) {
+    int axis = 0;
+    for (int a = 1; a < 3; a++) {
+      if (c[a + 3] - c[a] > c[axis + 3] - c[axis]) {
+        axis = a;
+      }
+    }
+    return axis;
+  }
+
+  private static float halfArea(float[] b, int o) {
+    float x = b[o + 3] - b[o], y = b[o + 4] - b[o + 1], z = b[o + 5] - b[o + 2];
+    return x * y + y * z + z * x;
+  }
+
+  /**
+   * Binned surface-area-heuristic split over the centroid bounds {@code c}.
+   * Partitions {@code order[lo, hi)} and returns the split index, or -1 when
+   * keeping the range as a leaf is cheaper. Room scans mix wall-sized and
+   * centimetre-sized triangles, where a plain median split leaves heavily
+   * overlapping children.
+   */
+  private int sahSplit(SurfaceSet s, int lo, int hi, float[] c, float[] nodeBox) {
+    float bestCost = Float.POSITIVE_INFINITY;
+    int bestAxis = -1, bestBin = -1;
+    float[] binBox = new float[BINS * 6];
+    int[] binCount = new int[BINS];
+    float[] rightArea = new float[BINS];
+    for (int axis = 0; axis < 3; axis++) {
+      float min = c[axis], extent = c[axis + 3] - c[axis];
+      if (!(extent > 0f)) {
+        continue;
+      }
+      float[] key = axis == 0 ? cx : axis == 1 ? cy : cz;
+      float scale = BINS / extent;
+      Arrays.fill(binCount, 0);
+      for (int k = 0; k < BINS; k++) {
+        System.arraycopy(empty(), 0, binBox, k * 6, 6);
+      }
+      float[] tmp = new float[6];
+      for (int i = lo; i < hi; i++) {
+        int t = order[i];
+        int k = Math.min(BINS - 1, (int) ((key[t] - min) * scale));
+        binCount[k]++;
+        System.arraycopy(binBox, k * 6, tmp, 0, 6);
+        grow(tmp, s.ox[t], s.oy[t], s.oz[t]);
+        grow(tmp, s.ox[t] + s.e1x[t], s.oy[t] + s.e1y[t], s.oz[t] + s.e1z[t]);
+        grow(tmp, s.ox[t] + s.e2x[t], s.oy[t] + s.e2y[t], s.oz[t] + s.e2z[t]);
+        System.arraycopy(tmp, 0, binBox, k * 6, 6);
+      }
+      float[] acc = empty();
+      for (int k = BINS - 1; k > 0; k--) {
+        union(acc, binBox, k * 6);
+        rightArea[k] = halfArea(acc, 0);
+      }
+      acc = empty();
+      int leftCount = 0;
+      for (int k = 0; k < BINS - 1; k++) {
+        union(acc, binBox, k * 6);
+        leftCount += binCount[k];
+        int rightCount = (hi - lo) - leftCount;
+        if (leftCount == 0 || rightCount == 0) {
+          continue;
+        }
+        float cost = halfArea(acc, 0) * leftCount + rightArea[k + 1] * rightCount;
+        if (cost < bestCost) {
+          bestCost = cost;
+          bestAxis = axis;
+          bestBin = k;
+        }
+      }
+    }
+    if (bestAxis < 0) {
+      return hi - lo <= MAX_LEAF_SIZE ? -1 : lo;
+    }
+    // Relative cost of traversing vs intersecting is taken as 1; a leaf costs one test per triangle
+    float leafCost = halfArea(nodeBox, 0) * (hi - lo);
+    if (hi - lo <= MAX_LEAF_SIZE && bestCost >= leafCost) {
+      return -1;
+    }
+    float[] key = bestAxis == 0 ? cx : bestAxis == 1 ? cy : cz;
+    float min = c[bestAxis], scale = BINS / (c[bestAxis + 3] - c[bestAxis]);
+    int i = lo, j = hi - 1;
+    while (i <= j) {
+      if (Math.min(BINS - 1, (int) ((key[order[i]] - min) * scale)) <= bestBin) {
+        i++;
+      } else {
+        int t = order[i];
+        order[i] = order[j];
+        order[j--] = t;
+      }
+    }
+    return i;
+  }
+
+  private static void union(float[] acc, float[] b, int o) {
+    for (int a = 0; a < 3; a++) {
+      if (b[o + a] < acc[a]) acc[a] = b[o + a];
+      if (b[o + 3 + a] > acc[a + 3]) acc[a + 3] = b[o + 3 + a];
+    }
+  }
+
+  private static void grow(float[] b, float x, float y, float z) {
+    b[0] = Math.min(b[0], x);
+    b[1] = Math.min(b[1], y);
+    b[2] = Math.min(b[2], z);
+    b[3] = Math.max(b[3], x);
+    b[4] = Math.max(b[4], y);
+    b[5] = Math.max(b[5], z);
+  }
+
+  private int allocate() {
+    if (nodes == left.length) {
+      int cap = nodes * 2;
+      box = Arrays.copyOf(box, cap * 6);
+      left = Arrays.copyOf(left, cap);
+      right = Arrays.copyOf(right, cap);
+    }
+    return nodes++;
+  }
+
+  /** Quickselect so that order[k] has the median key. */
+  private void select(float[] key, int lo, int hi, int k) {
+    while (lo < hi) {
+      float pivot = key[order[(lo + hi) >>> 1]];
+      int i = lo, j = hi;
+      while (i <= j) {
+        while (key[order[i]] < pivot) i++;
+        while (key[order[j]] > pivot) j--;
+        if (i <= j) {
+          int t = order[i];
+          order[i] = order[j];
+          order[j] = t;
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) {
+        hi = j;
+      } else if (k >= i) {
+        lo = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  /** Per-thread traversal stack. */
+  Stack newStack() {
+    return new Stack(depth + 2);
+  }
+
+  static final class Stack {
+    final int[] nodes;
+    final float[] entry;
+
+    Stack(int size) {
+      nodes = new int[size * 2];
+      entry = new float[size * 2];
+    }
+  }
+
+  /**
+   * Closest triangle hit by the ray {@code o + t d}, {@code T_MIN < t < tMax},
+   * as an index into the source {@link SurfaceSet}, or -1. {@code skip} is a
+   * triangle to ignore (the one the ray leaves from), or -1.
+   */
+  int closestHit(float px, float py, float pz, float dx, float dy, float dz, float tMax, int skip,
+                 Stack stack) {
+    if (nodes == 0) {
+      return -1;
+    }
+    float ix = 1f / dx, iy = 1f / dy, iz = 1f / dz;
+    float best = tMax;
+    int hit = -1;
+    int[] st = stack.nodes;
+    float[] entry = stack.entry;
+    int sp = 0;
+    st[sp] = 0;
+    entry[sp++] = slab(0, px, py, pz, ix, iy, iz);
+    while (sp > 0) {
+      int node = st[--sp];
+      // Entry distances were computed on push; skip nodes behind the current best hit
+      if (entry[sp] >= best) {
+        continue;
+      }
+      int r = right[node];
+      if (r <= 0) {
+        int end = left[node] - r;
+        for (int i = left[node]; i < end; i++) {
+          float t = intersect(i, px, py, pz, dx, dy, dz);
+          if (t > T_MIN && t < best && triangle[i] != skip) {
+            best = t;
+            hit = triangle[i];
+          }
+        }
+      } else {
+        // Push the farther child first so the nearer one is searched first
+        int l = left[node];
+        float tl = slab(l, px, py, pz, ix, iy, iz);
+        float tr = slab(r, px, py, pz, ix, iy, iz);
+        if (tl < tr) {
+          if (tr < best) push(st, entry, sp++, r, tr);
+          if (tl < best) push(st, entry, sp++, l, tl);
+        } else {
+          if (tl < best) push(st, entry, sp++, l, tl);
+          if (tr < best) push(st, entry, sp++, r, tr);
+        }
+      }
+    }
+    return hit;
+  }
+
+  /** {@link #anyHit(float, float, float, float, float, float, float, int, IntPredicate, Stack)} with no filter. */
+  int anyHit(float px, float py, float pz, float dx, float dy, float dz, float tMax, int skip, Stack stack) {
+    return anyHit(px, py, pz, dx, dy, dz, tMax, skip, null, stack);
+  }
+
+  /**
+   * Some triangle hit by the ray {@code o + t d}, {@code T_MIN < t < tMax},
+   * or -1: the first found, not the closest, so a visibility query stops at
+   * the first occluder instead of searching on for a nearer one. Hits for
+   * which {@code pass} (may be null) holds are not occluders; the search goes
+   * on past them.
+   */
+  int anyHit(float px, float py, float pz, float dx, float dy, float dz, float tMax, int skip, IntPredicate pass,
+             Stack stack) {
+    if (nodes == 0) {
+      return -1;
+    }
+    float ix = 1f / dx, iy = 1f / dy, iz = 1f / dz;
+    int[] st = stack.nodes;
+    int sp = 0;
+    if (slab(0, px, py, pz, ix, iy, iz) < tMax) {
+      st[sp++] = 0;
+    }
+    while (sp > 0) {
+      int node = st[--sp];
+      int r = right[node];
+      if (r <= 0) {
+        int end = left[node] - r;
+        for (int i = left[node]; i < end; i++) {
+          float t = intersect(i, px, py, pz, dx, dy, dz);
+          if (t > T_MIN && t < tMax && triangle[i] != skip && (pass == null || !pass.test(triangle[i]))) {
+            return triangle[i];
+          }
+        }
+      } else {
+        // No ordering needed: any occluder ends the query
+        int l = left[node];
+        if (slab(r, px, py, pz, ix, iy, iz) < tMax) st[sp++] = r;
+        if (slab(l, px, py, pz, ix, iy, iz) < tMax) st[sp++] = l;
+      }
+    }
+    return -1;
+  }
+
+  private static void push(int[] st, float[] entry, int sp, int node, float t) {
+    st[sp] = node;
+    entry[sp] = t;
+  }
+
+  /**
+   * Entry distance of the ray into the node box, or +inf on a miss. Plain
+   * comparisons rather than Math.min/max, which pay for NaN and signed-zero
+   * handling in this innermost test.
+   */
+  private float slab(int node, float px, float py, float pz, float ix, float iy, float iz) {
+    int o = node * 6;
+    float t0 = (box[o] - px) * ix, t1 = (box[o + 3] - px) * ix;
+    float near = t0 < t1 ? t0 : t1, far = t0 < t1 ? t1 : t0;
+    t0 = (box[o + 1] - py) * iy;
+    t1 = (box[o + 4] - py) * iy;
+    float lo = t0 < t1 ? t0 : t1, hi = t0 < t1 ? t1 : t0;
+    near = lo > near ? lo : near;
+    far = hi < far ? hi : far;
+    t0 = (box[o + 2] - pz) * iz;
+    t1 = (box[o + 5] - pz) * iz;
+    lo = t0 < t1 ? t0 : t1;
+    hi = t0 < t1 ? t1 : t0;
+    near = lo > near ? lo : near;
+    far = hi < far ? hi : far;
+    if (near < 0f) {
+      near = 0f;
+    }
+    return far >= near ? near : Float.POSITIVE_INFINITY;
+  }
+
+  /** Moller-Trumbore; returns the ray parameter or -1 on a miss. */
+  private float intersect(int i, float px, float py, float pz, float dx, float dy, float dz) {
+    float ax = e1x[i], ay = e1y[i], az = e1z[i];
+    float bx = e2x[i], by = e2y[i], bz = e2z[i];
+    float qx = dy * bz - dz * by, qy = dz * bx - dx * bz, qz = dx * by - dy * bx;
+    float det = ax * qx + ay * qy + az * qz;
+    if (det == 0f) {
+      return -1f;
+    }
+    float inv = 1f / det;
+    float sx = px - ox[i], sy = py - oy[i], sz = pz - oz[i];
+    float u = (sx * qx + sy * qy + sz * qz) * inv;
+    if (u < 0f || u > 1f) {
+      return -1f;
+    }
+    float rx = sy * az - sz * ay, ry = sz * ax - sx * az, rz = sx * ay - sy * ax;
+    float v = (dx * rx + dy * ry + dz * rz) * inv;
+    if (v < 0f || u + v > 1f) {
+      return -1f;
+    }
+    return (bx * rx + by * ry + bz * rz) * inv;
+  }
+}
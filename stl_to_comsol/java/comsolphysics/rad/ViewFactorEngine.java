@@ -0,0 +1,350 @@
+/*
+ * ViewFactorEngine.java
+ * Diffuse view factors by stratified Monte Carlo ray casting.
+ */
+
+package comsolphysics.rad;
+
+import comsolphysics.solve.MappedCsrMatrix;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the diffuse view-factor matrix of a {@link SurfaceSet}: from each
+ * patch, {@code raysPerPatch} rays are emitted with area-uniform origins and
+ * cosine-weighted directions (stratified over an {@code s x s} grid of the
+ * hemisphere), and traced against a {@link TriangleBvh}. {@code F[i][j]} is
+ * the fraction of patch i's rays whose closest hit lies on patch j.
+ *
+ * <p>Patches are processed in parallel on a fork/join pool. Every patch
+ * draws from its own seeded generator, so the result does not depend on
+ * thread count or scheduling. Hits on the emitting patch are discarded,
+ * matching {@code selfIrradiation=false} in the rad interface.
+ */
+public final class ViewFactorEngine {
+
+  /** Rays per patch by default (64 x 64 strata). */
+  public static final int DEFAULT_RAYS_PER_PATCH = 4096;
+  /** Rows traced between writes by {@link #run(SurfaceSet, Path)}. */
+  private static final int BATCH_ROWS = 4096;
+
+  private final int strata;
+  private final long seed;
+  private final ForkJoinPool pool;
+
+  public ViewFactorEngine() {
+    this(DEFAULT_RAYS_PER_PATCH, 1L, null);
+  }
+
+  /**
+   * {@code raysPerPatch} is rounded up to a square number. With
+   * {@code pool} null, each run uses the fork/join pool it is called on
+   * (a {@code JobScheduler} stage's, say), or the common pool outside one.
+   */
+  public ViewFactorEngine(int raysPerPatch, long seed, ForkJoinPool pool) {
+    this.strata = (int) Math.ceil(Math.sqrt(raysPerPatch));
+    this.seed = seed;
+    this.pool = pool;
+  }
+
+  public int raysPerPatch() {
+    return strata * strata;
+  }
+
+  ForkJoinPool pool() {
+    if (pool != null) {
+      return pool;
+    }
+    ForkJoinPool current = ForkJoinTask.getPool();
+    return current != null ? current : ForkJoinPool.commonPool();
+  }
+
+  long seed() {
+    return seed;
+  }
+
+  public static ViewFactorMatrix compute(SurfaceSet surfaces) {
+    return new ViewFactorEngine().run(surfaces);
+  }
+
+  public ViewFactorMatrix run(SurfaceSet surfaces) {
+    return run(surfaces, new TriangleBvh(surfaces));
+  }
+
+  ViewFactorMatrix run(SurfaceSet surfaces, TriangleBvh bvh) {
+    int n = surfaces.patchCount();
+    int[][] rowColumns = new int[n][];
+    float[][] rowValues = new float[n][];
+    ThreadLocal<Scratch> scratch = scratch(surfaces, bvh);
+    pool().invoke(new PatchTask(0, n, p -> row(surfaces, bvh, p, scratch.get(), rowColumns, rowValues)));
+    return assemble(surfaces, rowColumns, rowValues);
+  }
+
+  /**
+   * View factors stored once per pair. Every patch shoots half of
+   * {@link #raysPerPatch()} rays and the two directions of each pair are
+   * combined into one exchange {@code A_i F_ij} (see
+   * {@link SymmetricViewFactors}): half the rays of {@link #run(SurfaceSet)}
+   * for comparable variance, reciprocal by construction and in half the
+   * storage.
+   */
+  public SymmetricViewFactors runReciprocal(SurfaceSet surfaces) {
+    ViewFactorEngine half = halved();
+    TriangleBvh bvh = new TriangleBvh(surfaces);
+    int n = surfaces.patchCount();
+    int[][] rowColumns = new int[n][];
+    float[][] rowValues = new float[n][];
+    ThreadLocal<Scratch> scratch = half.scratch(surfaces, bvh);
+    pool().invoke(new PatchTask(0, n, p -> half.row(surfaces, bvh, p, scratch.get(), rowColumns, rowValues)));
+    return SymmetricViewFactors.fromRows(surfaces, rowColumns, rowValues);
+  }
+
+  /**
+   * The engine {@link #runReciprocal} traces its rows with: half the rays,
+   * the same seed and pool. Rows from its {@link #run(SurfaceSet)}, or kept
+   * current by a {@link ViewFactorUpdater} over it, fold through
+   * {@link SymmetricViewFactors#fromMatrix} into what {@code runReciprocal}
+   * returns.
+   */
+  public ViewFactorEngine halved() {
+    return new ViewFactorEngine(Math.max(1, raysPerPatch() / 2), seed, pool);
+  }
+
+  /**
+   * The {@link SurfaceSet#fingerprint()} of {@code surfaces} mixed with this
+   * engine's rays per patch and seed: factors traced under the same tag are
+   * the same factors.
+   */
+  public long tag(SurfaceSet surfaces) {
+    return SurfaceSet.mix(SurfaceSet.mix(surfaces.fingerprint() ^ raysPerPatch()) + seed);
+  }
+
+  /**
+   * View factors of {@code surfaces} in a {@link MappedCsrMatrix} at
+   * {@code path}, tagged with {@link #tag}. A file there with the same tag
+   * is mapped as it is, so the factors carry over between runs; one traced
+   * for other surfaces or with other rays is traced again. Rows are traced
+   * {@value #BATCH_ROWS} at a time and appended to the file, so the heap
+   * never holds more than one batch.
+   */
+  public MappedCsrMatrix run(SurfaceSet surfaces, Path path) throws IOException {
+    int n = surfaces.patchCount();
+    long tag = tag(surfaces);
+    if (Files.isRegularFile(path)) {
+      try {
+        MappedCsrMatrix cached = MappedCsrMatrix.open(path);
+        if (cached.tag() == tag && cached.size() == n) {
+          return cached;
+        }
+      } catch (IOException e) {
+        // Not a matrix file, or a truncated one: trace again
+      }
+    }
+    TriangleBvh bvh = new TriangleBvh(surfaces);
+    int[][] rowColumns = new int[n][];
+    float[][] rowValues = new float[n][];
+    ThreadLocal<Scratch> scratch = scratch(surfaces, bvh);
+    try (MappedCsrMatrix.Writer out = MappedCsrMatrix.writer(path, n, 4, tag)) {
+      for (int lo = 0; lo < n; lo += BATCH_ROWS) {
+        int hi = Math.min(n, lo + BATCH_ROWS);
+        pool().invoke(new PatchTask(lo, hi, p -> row(surfaces, bvh, p, scratch.get(), rowColumns, rowValues)));
+        for (int p = lo; p < hi; p++) {
+          out.row(rowColumns[p], rowValues[p], rowColumns[p].length);
+          rowColumns[p] = null;
+          rowValues[p] = null;
+        }
+      }
+      return out.finish(false);
+    }
+  }
+
+  /** Per-thread scratch sized for {@code surfaces}. */
+  ThreadLocal<Scratch> scratch(SurfaceSet surfaces, TriangleBvh bvh) {
+    int n = surfaces.patchCount();
+    int maxTriangles = 0;
+    for (int p = 0; p < n; p++) {
+      maxTriangles = Math.max(maxTriangles, surfaces.end(p) - surfaces.first(p));
+    }
+    int cdfSize = maxTriangles;
+    return ThreadLocal.withInitial(() -> new Scratch(n, cdfSize, bvh));
+  }
+
+  /** Trace row {@code p} into {@code rowColumns[p]} (ascending) and {@code rowValues[p]}. */
+  void row(SurfaceSet surfaces, TriangleBvh bvh, int p, Scratch s, int[][] rowColumns, float[][] rowValues) {
+    trace(surfaces, bvh, p, s);
+    rowColumns[p] = Arrays.copyOf(s.touched, s.touchedCount);
+    Arrays.sort(rowColumns[p]);
+    float[] v = new float[s.touchedCount];
+    float inv = 1f / (strata * strata);
+    for (int k = 0; k < v.length; k++) {
+      int j = rowColumns[p][k];
+      v[k] = s.hits[j] * inv;
+      s.hits[j] = 0;
+    }
+    rowValues[p] = v;
+    s.touchedCount = 0;
+  }
+
+  /** One CSR matrix from per-row arrays. */
+  static ViewFactorMatrix assemble(SurfaceSet surfaces, int[][] rowColumns, float[][] rowValues) {
+    int n = surfaces.patchCount();
+    int[] rowStart = new int[n + 1];
+    for (int p = 0; p < n; p++) {
+      rowStart[p + 1] = rowStart[p] + rowColumns[p].length;
+    }
+    int[] columns = new int[rowStart[n]];
+    float[] values = new float[rowStart[n]];
+    double[] area = new double[n];
+    for (int p = 0; p < n; p++) {
+      System.arraycopy(rowColumns[p], 0, columns, rowStart[p], rowColumns[p].length);
+      System.arraycopy(rowValues[p], 0, values, rowStart[p], rowValues[p].length);
+      area[p] = surfaces.patchArea(p);
+    }
+    return new ViewFactorMatrix(surfaces.ids().clone(), area, rowStart, columns, values,
+        surfaces.fingerprint());
+  }
+
+  /** Shoot this patch's rays and count hits per target patch into {@code s.hits}. */
+  private void trace(SurfaceSet sf, TriangleBvh bvh, int p, Scratch s) {
+    int first = sf.first(p), end = sf.end(p);
+    if (first == end) {
+      return;
+    }
+    SplittableRandom rnd = start(sf, p, s);
+    float[] ray = s.ray;
+    for (int k = 0; k < strata * strata; k++) {
+      int t = nextRay(sf, p, k, rnd, s, ray);
+      int hit = bvh.closestHit(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], Float.POSITIVE_INFINITY, t, s.stack);
+      if (hit < 0) {
+        continue;
+      }
+      int q = sf.patch[hit];
+      if (q == p) {
+        continue;
+      }
+      if (s.hits[q]++ == 0) {
+        s.touched[s.touchedCount++] = q;
+      }
+    }
+  }
+
+  /**
+   * Fill {@code s.cdf} with the area distribution of patch {@code p} and
+   * return its ray generator. Rays depend only on the seed, the patch number
+   * and the patch's own triangles, so an unchanged patch shoots the same
+   * rays in every run.
+   */
+  SplittableRandom start(SurfaceSet sf, int p, Scratch s) {
+    int first = sf.first(p), end = sf.end(p);
+    double total = 0;
+    for (int t = first; t < end; t++) {
+      total += sf.area[t];
+      s.cdf[t - first] = total;
+    }
+    s.total = total;
+    return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + p);
+  }
+
+  /** Ray {@code k} of patch {@code p} as origin and direction in {@code ray}; returns the origin triangle. */
+  int nextRay(SurfaceSet sf, int p, int k, SplittableRandom rnd, Scratch s, float[] ray) {
+    int first = sf.first(p), end = sf.end(p);
+    // Origin: triangle by area, then uniform barycentric coordinates
+    int t = first + search(s.cdf, end - first, rnd.nextDouble() * s.total);
+    double r1 = Math.sqrt(rnd.nextDouble()), r2 = rnd.nextDouble();
+    float a = (float) (r1 * (1 - r2)), b = (float) (r1 * r2);
+    ray[0] = sf.ox[t] + a * sf.e1x[t] + b * sf.e2x[t];
+    ray[1] = sf.oy[t] + a * sf.e1y[t] + b * sf.e2y[t];
+    ray[2] = sf.oz[t] + a * sf.e1z[t] + b * sf.e2z[t];
+
+    // Direction: cosine-weighted, stratified in (u1, u2)
+    double u1 = (k % strata + rnd.nextDouble()) / strata;
+    double u2 = (k / strata + rnd.nextDouble()) / strata;
+    double radius = Math.sqrt(u1), phi = 2 * Math.PI * u2;
+    double lx = radius * Math.cos(phi), ly = radius * Math.sin(phi), lz = Math.sqrt(1 - u1);
+    double nx = sf.nx[t], ny = sf.ny[t], nz = sf.nz[t];
+    if (sf.twoSided() && rnd.nextBoolean()) {
+      nx = -nx;
+      ny = -ny;
+      nz = -nz;
+    }
+    // Orthonormal basis around n (Duff et al. 2017)
+    double sign = Math.copySign(1.0, nz);
+    double c = -1.0 / (sign + nz);
+    double d = nx * ny * c;
+    double tx = 1 + sign * nx * nx * c, ty = sign * d, tz = -sign * nx;
+    double bx = d, by = sign + ny * ny * c, bz = -ny;
+    ray[3] = (float) (lx * tx + ly * bx + lz * nx);
+    ray[4] = (float) (lx * ty + ly * by + lz * ny);
+    ray[5] = (float) (lx * tz + ly * bz + lz * nz);
+    return t;
+  }
+
+  /** First index in {@code cdf[0, n)} whose value exceeds {@code x}. */
+  private static int search(double[] cdf, int n, double x) {
+    int lo = 0, hi = n - 1;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (cdf[mid] > x) {
+        hi = mid;
+      } else {
+        lo = mid + 1;
+      }
+    }
+    return lo;
+  }
+
+  static final class Scratch {
+    final int[] hits;
+    final int[] touched;
+    int touchedCount;
+    final double[] cdf;
+    double total;
+    final float[] ray = new float[6];
+    final TriangleBvh.Stack stack;
+
+    Scratch(int patches, int maxTriangles, TriangleBvh bvh) {
+      hits = new int[patches];
+      touched = new int[patches];
+      cdf = new double[maxTriangles];
+      stack = bvh.newStack();
+    }
+  }
+
+  interface PatchBody {
+    void apply(int patch);
+  }
+
+  /** Splits down to single patches; per-patch cost varies too much for coarser chunks. */
+  static final class PatchTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int lo;
+    private final int hi;
+    private final PatchBody body;
+
+    PatchTask(int lo, int hi, PatchBody body) {
+      this.lo = lo;
+      this.hi = hi;
+      this.body = body;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo == 1) {
+        body.apply(lo);
+        return;
+      }
+      if (hi <= lo) {
+        return;
+      }
+      int mid = (lo + hi) >>> 1;
+      invokeAll(new PatchTask(lo, mid, body), new PatchTask(mid, hi, body));
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * ViewFactorMatrix.java
+ * Sparse diffuse view-factor matrix between radiating patches.
+ */
+
+package comsolphysics.rad;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * View factors {@code F[i][j]} (fraction of the radiation leaving patch i
+ * that arrives at patch j) in compressed sparse row form, together with the
+ * patch areas and external ids. Row sums fall short of 1 by whatever escapes
+ * through openings that are not part of the set.
+ */
+public final class ViewFactorMatrix {
+
+  /** Magic number of the file format written by {@link #write}. */
+  public static final int MAGIC = 0x56464D31; // "VFM1"
+
+  private final int[] ids;
+  private final double[] area;
+  private final int[] rowStart;
+  private final int[] columns;
+  private final float[] values;
+  private final long fingerprint;
+
+  public ViewFactorMatrix(int[] ids, double[] area, int[] rowStart, int[] columns, float[] values,
+                          long fingerprint) {
+    this.ids = ids;
+    this.area = area;
+    this.rowStart = rowStart;
+    this.columns = columns;
+    this.values = values;
+    this.fingerprint = fingerprint;
+  }
+
+  public int size() {
+    return ids.length;
+  }
+
+  public int nonZeros() {
+    return rowStart[ids.length];
+  }
+
+  /** External id of each patch (e.g. COMSOL boundary number). Not copied. */
+  public int[] ids() {
+    return ids;
+  }
+
+  public double area(int i) {
+    return area[i];
+  }
+
+  /** {@link SurfaceSet#fingerprint()} of the geometry the factors were computed for. */
+  public long fingerprint() {
+    return fingerprint;
+  }
+
+  /** CSR row offsets, {@code size() + 1} entries. Not copied. */
+  public int[] rowStart() {
+    return rowStart;
+  }
+
+  /** CSR column indices, ascending within each row. Not copied. */
+  public int[] columns() {
+    return columns;
+  }
+
+  /** CSR values. Not copied. */
+  public float[] values() {
+    return values;
+  }
+
+  public double get(int i, int j) {
+    int k = Arrays.binarySearch(columns, rowStart[i], rowStart[i + 1], j);
+    return k >= 0 ? values[k] : 0.0;
+  }
+
+  /** Enclosure sum of row i; 1 for a patch that sees only other patches of the set. */
+  public double rowSum(int i) {
+    double sum = 0;
+    for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+      sum += values[k];
+    }
+    return sum;
+  }
+
+  /**
+   * Relative reciprocity violation {@code sum|A_i F_ij - A_j F_ji| / sum A_i F_ij}
+   * over all stored entries; zero for exact factors, so a measure of sampling
+   * noise.
+   */
+  public double reciprocityError() {
+    double diff = 0, total = 0;
+    for (int i = 0; i < ids.length; i++) {
+      for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+        int j = columns[k];
+        double a = area[i] * values[k];
+        diff += Math.abs(a - area[j] * get(j, i));
+        total += a;
+      }
+    }
+    return total > 0 ? diff / total : 0.0;
+  }
+
+  /**
+   * Write a little-endian file:
+   * {@code magic, n, nnz, fingerprint, int[n] ids, double[n] area, int[n+1] rowStart,
+   * int[nnz] columns, float[nnz] values}.
+   */
+  public void write(Path path) throws IOException {
+    int n = ids.length;
+    int nnz = nonZeros();
+    long bytes = 20L + 4L * n + 8L * n + 4L * (n + 1) + 8L * nnz;
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, bytes).order(ByteOrder.LITTLE_ENDIAN);
+      map.putInt(MAGIC).putInt(n).putInt(nnz).putLong(fingerprint);
+      map.asIntBuffer().put(ids);
+      map.position(map.position() + 4 * n);
+      map.asDoubleBuffer().put(area);
+      map.position(map.position() + 8 * n);
+      map.asIntBuffer().put(rowStart, 0, n + 1);
+      map.position(map.position() + 4 * (n + 1));
+      map.asIntBuffer().put(columns, 0, nnz);
+      map.position(map.position() + 4 * nnz);
+      map.asFloatBuffer().put(values, 0, nnz);
+    }
+  }
+
+  /** Read a file written by {@link #write}. */
+  public static ViewFactorMatrix read(Path path) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).order(ByteOrder.LITTLE_ENDIAN);
+      if (map.getInt() != MAGIC) {
+        throw new IOException("Not a view-factor file: " + path);
+      }
+      int n = map.getInt();
+      int nnz = map.getInt();
+      long fingerprint = map.getLong();
+      int[] ids = new int[n];
+      double[] area = new double[n];
+      int[] rowStart = new int[n + 1];
+      int[] columns = new int[nnz];
+      float[] values = new float[nnz];
+      map.asIntBuffer().get(ids);
+      map.position(map.position() + 4 * n);
+      map.asDoubleBuffer().get(area);
+      map.position(map.position() + 8 * n);
+      map.asIntBuffer().get(rowStart);
+      map.position(map.position() + 4 * (n + 1));
+      map.asIntBuffer().get(columns);
+      map.position(map.position() + 4 * nnz);
+      map.asFloatBuffer().get(values);
+      return new ViewFactorMatrix(ids, area, rowStart, columns, values, fingerprint);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ViewFactorMatrix[" + ids.length + " patches, " + nonZeros() + " non-zeros]";
+  }
+}
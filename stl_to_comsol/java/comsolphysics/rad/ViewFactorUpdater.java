@@ -0,0 +1,280 @@
+/*
+ * ViewFactorUpdater.java
+ * Updates a view-factor matrix after some patches move.
+ */
+
+package comsolphysics.rad;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a {@link ViewFactorMatrix} current while pieces of furniture (or the
+ * stove) are moved, without retracing the whole room. {@link #update} takes
+ * the surfaces after a move and
+ * <ul>
+ *   <li>finds the patches whose triangles changed, and refits the BVH over
+ *       them (or rebuilds it, if their triangulation changed);</li>
+ *   <li>retraces the rows of the changed patches;</li>
+ *   <li>for every other patch, regenerates its rays (the same ones
+ *       {@link ViewFactorEngine} shot, since rays depend only on the seed and
+ *       the patch) and retraces only those that cross a changed patch's box
+ *       before or after the move: only they can have changed target. Their
+ *       old and new hits adjust the cached row; all other entries are kept.</li>
+ * </ul>
+ * The result is the matrix a full {@link ViewFactorEngine#run} would give
+ * for the new surfaces, at the cost of the rays near the moved parts.
+ *
+ * <p>The cached matrix must come from an engine with the same rays per patch
+ * and seed. If the patch ids or the transparent patches differ, the matrix
+ * is recomputed in full.
+ *
+ * <pre>
+ *   ViewFactorUpdater updater = new ViewFactorUpdater(engine, surfaces, factors);
+ *   ViewFactorMatrix moved = updater.update(surfaces.translated(stoveIds, 0.5, 0, 0));
+ * </pre>
+ */
+public final class ViewFactorUpdater {
+
+  private final ViewFactorEngine engine;
+  private SurfaceSet surfaces;
+  private ViewFactorMatrix factors;
+  private TriangleBvh bvh;
+  private int changedPatches;
+  private long tracedRays;
+
+  /** {@code factors} must have been computed by {@code engine} for {@code surfaces}. */
+  public ViewFactorUpdater(ViewFactorEngine engine, SurfaceSet surfaces, ViewFactorMatrix factors) {
+    if (factors.fingerprint() != surfaces.fingerprint()) {
+      throw new IllegalArgumentException("View factors were computed for other surfaces");
+    }
+    this.engine = engine;
+    this.surfaces = surfaces;
+    this.factors = factors;
+    this.bvh = new TriangleBvh(surfaces);
+  }
+
+  public SurfaceSet surfaces() {
+    return surfaces;
+  }
+
+  public ViewFactorMatrix factors() {
+    return factors;
+  }
+
+  /** Patches whose triangles changed in the last {@link #update}. */
+  public int changedPatches() {
+    return changedPatches;
+  }
+
+  /** Rays traced in the last {@link #update}; a full recompute traces {@code raysPerPatch} per patch. */
+  public long tracedRays() {
+    return tracedRays;
+  }
+
+  /** View factors for {@code after}, which becomes the new reference for the next update. */
+  public ViewFactorMatrix update(SurfaceSet after) {
+    SurfaceSet before = surfaces;
+    int n = before.patchCount();
+    if (!Arrays.equals(before.ids(), after.ids()) || !before.sameOpacity(after)) {
+      bvh = new TriangleBvh(after);
+      factors = engine.run(after, bvh);
+      surfaces = after;
+      changedPatches = n;
+      tracedRays = (long) n * engine.raysPerPatch();
+      return factors;
+    }
+    BitSet changed = new BitSet(n);
+    boolean sameShape = true;
+    for (int p = 0; p < n; p++) {
+      if (!before.samePatch(p, after, p)) {
+        changed.set(p);
+        sameShape &= before.end(p) - before.first(p) == after.end(p) - after.first(p);
+      }
+    }
+    changedPatches = changed.cardinality();
+    if (changed.isEmpty()) {
+      tracedRays = 0;
+      surfaces = after;
+      return factors;
+    }
+    TriangleBvh oldBvh = bvh;
+    TriangleBvh newBvh = sameShape ? oldBvh.refit(after, changed) : new TriangleBvh(after);
+
+    // Boxes of the changed patches where they were and where they are, after their union
+    float[] swept = new float[(changedPatches * 2 + 1) * 6];
+    int boxes = 1;
+    for (int p = changed.nextSetBit(0); p >= 0; p = changed.nextSetBit(p + 1)) {
+      before.patchBounds(p, swept, boxes++ * 6);
+      after.patchBounds(p, swept, boxes++ * 6);
+    }
+    for (int c = 0; c < 3; c++) {
+      swept[c] = Float.POSITIVE_INFINITY;
+      swept[c + 3] = Float.NEGATIVE_INFINITY;
+      for (int b = 1; b < boxes; b++) {
+        swept[c] = Math.min(swept[c], swept[b * 6 + c]);
+        swept[c + 3] = Math.max(swept[c + 3], swept[b * 6 + c + 3]);
+      }
+    }
+
+    int rays = engine.raysPerPatch();
+    float inv = 1f / rays;
+    int[] rowStart = factors.rowStart();
+    int[] columns = factors.columns();
+    float[] values = factors.values();
+    int[][] rowColumns = new int[n][];
+    float[][] rowValues = new float[n][];
+    AtomicLong traced = new AtomicLong();
+    ThreadLocal<ViewFactorEngine.Scratch> scratch = engine.scratch(after, newBvh);
+    ThreadLocal<ViewFactorEngine.Scratch> oldScratch = engine.scratch(before, oldBvh);
+    int boxCount = boxes;
+    engine.pool().invoke(new ViewFactorEngine.PatchTask(0, n, p -> {
+      ViewFactorEngine.Scratch s = scratch.get();
+      if (changed.get(p)) {
+        engine.row(after, newBvh, p, s, rowColumns, rowValues);
+        traced.addAndGet(rays);
+        return;
+      }
+      int[] delta = s.hits;
+      int touched = 0;
+      long count = 0;
+      if (after.first(p) < after.end(p)) {
+        ViewFactorEngine.Scratch o = oldScratch.get();
+        SplittableRandom rnd = engine.start(after, p, s);
+        float[] ray = s.ray;
+        int shift = before.first(p) - after.first(p);
+        for (int k = 0; k < rays; k++) {
+          int t = engine.nextRay(after, p, k, rnd, s, ray);
+          if (!crosses(swept, 0, 1, ray) || !crosses(swept, 1, boxCount, ray)) {
+            continue;
+          }
+          count++;
+          int was = oldBvh.closestHit(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], Float.POSITIVE_INFINITY,
+              t + shift, o.stack);
+          int is = newBvh.closestHit(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], Float.POSITIVE_INFINITY,
+              t, s.stack);
+          int q0 = was < 0 || before.patch[was] == p ? -1 : before.patch[was];
+          int q1 = is < 0 || after.patch[is] == p ? -1 : after.patch[is];
+          if (q0 == q1) {
+            continue;
+          }
+          if (q0 >= 0) {
+            touched = mark(s, q0, touched);
+            delta[q0]--;
+          }
+          if (q1 >= 0) {
+            touched = mark(s, q1, touched);
+            delta[q1]++;
+          }
+        }
+      }
+      traced.addAndGet(count);
+      merge(p, rowStart, columns, values, rays, inv, s, touched, rowColumns, rowValues);
+    }));
+    tracedRays = traced.get();
+    bvh = newBvh;
+    surfaces = after;
+    factors = ViewFactorEngine.assemble(after, rowColumns, rowValues);
+    return factors;
+  }
+
+  /** Add {@code q} to the touched list once per row; {@code s.touched} doubles as the list. */
+  private static int mark(ViewFactorEngine.Scratch s, int q, int touched) {
+    for (int k = 0; k < touched; k++) {
+      if (s.touched[k] == q) {
+        return touched;
+      }
+    }
+    s.touched[touched] = q;
+    return touched + 1;
+  }
+
+  /** Cached row {@code p} plus the hit-count changes in {@code s.hits}, which are cleared. */
+  private static void merge(int p, int[] rowStart, int[] columns, float[] values, int rays, float inv,
+      ViewFactorEngine.Scratch s, int touched, int[][] rowColumns, float[][] rowValues) {
+    int[] delta = s.hits;
+    boolean any = false;
+    for (int k = 0; k < touched; k++) {
+      any |= delta[s.touched[k]] != 0;
+    }
+    int lo = rowStart[p], hi = rowStart[p + 1];
+    if (!any) {
+      for (int k = 0; k < touched; k++) {
+        delta[s.touched[k]] = 0;
+      }
+      rowColumns[p] = Arrays.copyOfRange(columns, lo, hi);
+      rowValues[p] = Arrays.copyOfRange(values, lo, hi);
+      return;
+    }
+    int[] cols = new int[hi - lo + touched];
+    int[] counts = new int[cols.length];
+    int m = 0;
+    for (int k = lo; k < hi; k++) {
+      int j = columns[k];
+      // Stored values are hit counts over rays, so the counts come back exactly
+      counts[m] = Math.round(values[k] * rays) + delta[j];
+      delta[j] = 0;
+      cols[m++] = j;
+    }
+    for (int k = 0; k < touched; k++) {
+      int j = s.touched[k];
+      if (delta[j] != 0) {
+        counts[m] = delta[j];
+        delta[j] = 0;
+        cols[m++] = j;
+      }
+    }
+    Integer[] order = new Integer[m];
+    for (int k = 0; k < m; k++) {
+      order[k] = k;
+    }
+    Arrays.sort(order, (a, b) -> Integer.compare(cols[a], cols[b]));
+    int kept = 0;
+    for (int k = 0; k < m; k++) {
+      kept += counts[order[k]] > 0 ? 1 : 0;
+    }
+    int[] c = new int[kept];
+    float[] v = new float[kept];
+    kept = 0;
+    for (int k = 0; k < m; k++) {
+      int i = order[k];
+      if (counts[i] > 0) {
+        c[kept] = cols[i];
+        v[kept++] = counts[i] * inv;
+      }
+    }
+    rowColumns[p] = c;
+    rowValues[p] = v;
+  }
+
+  /**
+   * Whether the ray, taken as a half-line, meets any of the boxes
+   * {@code [from, to)}. Written like the BVH's slab test, so a NaN from an
+   * axis-parallel ray counts as a hit rather than a miss.
+   */
+  private static boolean crosses(float[] box, int from, int to, float[] ray) {
+    float ix = 1f / ray[3], iy = 1f / ray[4], iz = 1f / ray[5];
+    for (int b = from; b < to; b++) {
+      int o = b * 6;
+      float t0 = (box[o] - ray[0]) * ix, t1 = (box[o + 3] - ray[0]) * ix;
+      float near = t0 < t1 ? t0 : t1, far = t0 < t1 ? t1 : t0;
+      t0 = (box[o + 1] - ray[1]) * iy;
+      t1 = (box[o + 4] - ray[1]) * iy;
+      float lo = t0 < t1 ? t0 : t1, hi = t0 < t1 ? t1 : t0;
+      near = lo > near ? lo : near;
+      far = hi < far ? hi : far;
+      t0 = (box[o + 2] - ray[2]) * iz;
+      t1 = (box[o + 5] - ray[2]) * iz;
+      lo = t0 < t1 ? t0 : t1;
+      hi = t0 < t1 ? t1 : t0;
+      near = lo > near ? lo : near;
+      far = hi < far ? hi : far;
+      if (!(far < near) && !(far < 0f)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
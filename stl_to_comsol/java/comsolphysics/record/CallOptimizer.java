@@ -0,0 +1,181 @@
+/*
+ * CallOptimizer.java
+ * Drops overwritten sets and repeated runs from a recorded call batch.
+ */
+
+package comsolphysics.record;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites one batch of recorded calls (everything between two reads of
+ * model state) into an equivalent, shorter one.
+ *
+ * <p>Runs are deferred to the end of the batch and go out in build order
+ * (geometry, mesh, solver, plots), so each runs once against the final
+ * settings. A run is dropped if the same node is run again later (or run
+ * fully, e.g. {@code run()} after {@code run("imp1")}). It is emitted in
+ * place only when a later call edits something below its own node and no
+ * later run would pick that edit up, as when a feature is built and then
+ * deactivated; upstream runs that will not come again go out just before
+ * it.
+ *
+ * <p>Then, scanning backwards, a set is dropped when a later set writes the
+ * same slot (see {@link RecordedCall#slot}) and nothing in between could have
+ * observed it: no structural call on the node or above it, and no emitted run
+ * of a node above it. A toggle such as {@code setEntry("activate", "rad",
+ * false)} followed by {@code true} collapses to the last call.
+ */
+final class CallOptimizer {
+
+  private CallOptimizer() {
+  }
+
+  static List<RecordedCall> optimize(List<RecordedCall> calls) {
+    return collapseSets(deferRuns(calls));
+  }
+
+  static List<RecordedCall> deferRuns(List<RecordedCall> calls) {
+    List<RecordedCall> out = new ArrayList<>(calls.size());
+    List<RecordedCall> pending = new ArrayList<>();
+    for (int i = 0; i < calls.size(); i++) {
+      RecordedCall c = calls.get(i);
+      if (c.kind == RecordedCall.Kind.RUN) {
+        boolean covered = false;
+        for (Iterator<RecordedCall> it = pending.iterator(); it.hasNext(); ) {
+          RecordedCall p = it.next();
+          if (p.path.equals(c.path)) {
+            if (covers(c, p)) {
+              it.remove();
+            } else if (covers(p, c)) {
+              covered = true;
+            }
+          }
+        }
+        if (!covered) {
+          pending.add(c);
+        }
+        continue;
+      }
+      CallPath touched = touched(c);
+      for (int k = 0; k < pending.size(); k++) {
+        RecordedCall p = pending.get(k);
+        if (touched.startsWith(p.path) && !runAgainLater(calls, i, p)) {
+          // p has to build the state as it is now; runs it depends on that will not
+          // come again go first
+          int rank = rank(p.path);
+          List<RecordedCall> now = new ArrayList<>();
+          for (RecordedCall q : pending) {
+            if (q == p || rank(q.path) < rank && !runAgainLater(calls, i, q)) {
+              now.add(q);
+            }
+          }
+          now.sort((a, b) -> Integer.compare(rank(a.path), rank(b.path)));
+          out.addAll(now);
+          pending.removeAll(now);
+          k = -1;
+        }
+      }
+      out.add(c);
+    }
+    pending.sort((a, b) -> Integer.compare(rank(a.path), rank(b.path)));
+    out.addAll(pending);
+    return out;
+  }
+
+  static List<RecordedCall> collapseSets(List<RecordedCall> calls) {
+    // Slots written later in the batch, grouped by node so a barrier can clear a subtree
+    Map<String, Set<String>> overwritten = new HashMap<>();
+    Map<String, Set<String>> overwrittenKeys = new HashMap<>();
+    boolean[] keep = new boolean[calls.size()];
+    for (int i = calls.size() - 1; i >= 0; i--) {
+      RecordedCall c = calls.get(i);
+      keep[i] = true;
+      if (c.kind == RecordedCall.Kind.SET) {
+        Set<String> slots = overwritten.computeIfAbsent(c.path.key, k -> new HashSet<>());
+        Set<String> keys = overwrittenKeys.computeIfAbsent(c.path.key, k -> new HashSet<>());
+        String key = c.propertyKey();
+        if (slots.contains(c.slot()) || key != null && keys.contains(key)) {
+          keep[i] = false;
+          continue;
+        }
+        slots.add(c.slot());
+        if (key != null && c.method.getName().equals("set")) {
+          // A whole-property set also overwrites earlier setIndex calls on the key
+          keys.add(key);
+        }
+      } else {
+        CallPath barrier = c.kind == RecordedCall.Kind.RUN ? c.path : touched(c);
+        overwritten.keySet().removeIf(node -> startsWith(node, barrier.key));
+        overwrittenKeys.keySet().removeIf(node -> startsWith(node, barrier.key));
+      }
+    }
+    List<RecordedCall> out = new ArrayList<>(calls.size());
+    for (int i = 0; i < calls.size(); i++) {
+      if (keep[i]) {
+        out.add(calls.get(i));
+      }
+    }
+    return out;
+  }
+
+  /** Whether running {@code a} makes running {@code b} (same node, earlier) redundant. */
+  private static boolean covers(RecordedCall a, RecordedCall b) {
+    if (CallPath.sameArgs(a.values, b.values) && a.method.getName().equals(b.method.getName())) {
+      return true;
+    }
+    String name = a.method.getName();
+    return name.equals("runAll") || name.equals("run") && a.values.length == 0;
+  }
+
+  private static boolean runAgainLater(List<RecordedCall> calls, int from, RecordedCall run) {
+    for (int j = from + 1; j < calls.size(); j++) {
+      RecordedCall c = calls.get(j);
+      if (c.kind == RecordedCall.Kind.RUN && c.path.equals(run.path) && covers(c, run)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** The node a set or structural call changes: the created or removed item, else the call's own node. */
+  static CallPath touched(RecordedCall c) {
+    String name = c.method.getName();
+    if ((name.equals("create") || name.equals("remove")) && c.values.length > 0 && c.values[0] instanceof String) {
+      CallPath item = c.path.item((String) c.values[0]);
+      if (item != null) {
+        return item;
+      }
+    }
+    return c.path;
+  }
+
+  /** Build order: geometry, mesh, solver and study, then results. */
+  static int rank(CallPath path) {
+    for (CallPath p = path; !p.isRoot(); p = p.parent) {
+      if (p.parent.isRoot() || p.parent.parent.isRoot()) {
+        switch (p.name()) {
+          case "geom":
+            return 0;
+          case "mesh":
+            return 1;
+          case "result":
+            return 3;
+          default:
+            break;
+        }
+      }
+    }
+    return 2;
+  }
+
+  private static boolean startsWith(String key, String prefix) {
+    return key.equals(prefix) || key.startsWith(prefix + ".");
+  }
+}
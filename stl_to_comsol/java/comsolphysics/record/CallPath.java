@@ -0,0 +1,113 @@
+/*
+ * CallPath.java
+ * Navigation chain from the model to an API node, e.g. component("comp1").geom("geom1").
+ */
+
+package comsolphysics.record;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Immutable linked list of navigation calls starting at the model. Two
+ * paths name the same node exactly when their {@link #key} strings are
+ * equal. Each step keeps its {@link Method} so it can be replayed on the
+ * real model.
+ */
+final class CallPath {
+
+  final CallPath parent;
+  final Method method;
+  final Object[] args;
+  /** Interface of the node the path leads to. */
+  final Class<?> type;
+  final String key;
+
+  private CallPath(CallPath parent, Method method, Object[] args, Class<?> type, String key) {
+    this.parent = parent;
+    this.method = method;
+    this.args = args;
+    this.type = type;
+    this.key = key;
+  }
+
+  static CallPath root(Class<?> modelType) {
+    return new CallPath(null, null, new Object[0], modelType, "model");
+  }
+
+  CallPath child(Method method, Object[] args) {
+    Object[] a = args == null ? new Object[0] : args;
+    return new CallPath(this, method, a, method.getReturnType(),
+        key + "." + RecordedCall.format(method.getName(), RecordedCall.spread(method, a)));
+  }
+
+  /** The same node seen as {@code type}, for calls declared to return a wider or narrower interface. */
+  CallPath as(Class<?> other) {
+    return other == type ? this : new CallPath(parent, method, args, other, key);
+  }
+
+  /**
+   * The item {@code create(tag, ...)} on this path makes: {@code x().create}
+   * makes {@code x(tag)}, {@code x(t).create} makes {@code x(t).feature(tag)}.
+   * Null if the API has no such accessor.
+   */
+  CallPath item(String tag) {
+    try {
+      if (!isRoot() && !hasArgs()) {
+        return parent.child(parent.type.getMethod(name(), String.class), new Object[] {tag});
+      }
+      return child(type.getMethod("feature", String.class), new Object[] {tag});
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /** The list {@link #item} entries belong to, i.e. what {@code tags()} is called on. */
+  CallPath list() {
+    try {
+      if (!isRoot() && !hasArgs()) {
+        return this;
+      }
+      return child(type.getMethod("feature"), null);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  boolean isRoot() {
+    return parent == null;
+  }
+
+  /** Name of the last step, or null at the root. */
+  String name() {
+    return method == null ? null : method.getName();
+  }
+
+  boolean hasArgs() {
+    return args.length > 0;
+  }
+
+  /** Whether {@code this} is {@code other} or lies below it. */
+  boolean startsWith(CallPath other) {
+    return key.equals(other.key) || key.startsWith(other.key + ".");
+  }
+
+  @Override
+  public String toString() {
+    return key;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof CallPath && ((CallPath) o).key.equals(key);
+  }
+
+  @Override
+  public int hashCode() {
+    return key.hashCode();
+  }
+
+  static boolean sameArgs(Object[] a, Object[] b) {
+    return Arrays.deepEquals(a, b);
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * LocalModelState.java
+ * In-memory tags, types and properties for a RecordingModel with no server.
+ */
+
+package comsolphysics.record;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What a local {@link RecordingModel} knows: the tags created in each list,
+ * each node's type and the last value set for each of its properties.
+ * Updated as calls are recorded, before any optimization.
+ */
+final class LocalModelState {
+
+  private final Map<String, Set<String>> tags = new HashMap<>();
+  private final Map<String, String> types = new HashMap<>();
+  private final Map<String, Map<String, Object>> properties = new HashMap<>();
+
+  void apply(RecordedCall c) {
+    String name = c.method.getName();
+    Object[] a = c.values;
+    switch (name) {
+      case "create": {
+        CallPath item = c.path.item((String) a[0]);
+        CallPath list = c.path.list();
+        if (item == null || list == null) {
+          return;
+        }
+        forget(item.key);
+        tags.computeIfAbsent(list.key, k -> new LinkedHashSet<>()).add((String) a[0]);
+        if (a.length > 1 && a[1] instanceof String) {
+          types.put(item.key, (String) a[1]);
+        }
+        return;
+      }
+      case "remove": {
+        CallPath item = c.path.item((String) a[0]);
+        CallPath list = c.path.list();
+        if (list != null && tags.containsKey(list.key)) {
+          tags.get(list.key).remove(a[0]);
+        }
+        if (item != null) {
+          forget(item.key);
+        }
+        return;
+      }
+      case "clear":
+        forget(c.path.key);
+        return;
+      case "set":
+        if (a.length == 2 && a[0] instanceof String) {
+          props(c.path.key).put((String) a[0], a[1]);
+        }
+        return;
+      case "label":
+      case "active":
+      case "title":
+      case "description":
+        props(c.path.key).put(name, a[0]);
+        return;
+      default:
+        // Other calls do not change anything the local model can be asked about
+    }
+  }
+
+  Object read(CallPath path, Method method, Object[] args) {
+    String name = method.getName();
+    Map<String, Object> props = properties.get(path.key);
+    switch (name) {
+      case "tags": {
+        Set<String> t = tags.get(path.key);
+        return t == null ? new String[0] : t.toArray(new String[0]);
+      }
+      case "getType":
+        return types.get(path.key);
+      case "properties":
+        return props == null ? new String[0] : props.keySet().toArray(new String[0]);
+      case "hasProperty":
+        return props != null && props.containsKey((String) args[0]);
+      case "getString":
+        return props == null ? null : scalar(props.get((String) args[0]));
+      case "getStringArray":
+        return props == null ? null : strings(props.get((String) args[0]));
+      case "getDouble":
+        return Double.parseDouble(required(props, (String) args[0]));
+      case "getInt":
+        return Integer.parseInt(required(props, (String) args[0]));
+      default:
+        throw new UnsupportedOperationException(name + "() needs a COMSOL server (" + path.key + ")");
+    }
+  }
+
+  private Map<String, Object> props(String key) {
+    return properties.computeIfAbsent(key, k -> new LinkedHashMap<>());
+  }
+
+  /** Drop everything known at or below {@code key}. */
+  private void forget(String key) {
+    String below = key + ".";
+    tags.keySet().removeIf(k -> k.equals(key) || k.startsWith(below));
+    types.keySet().removeIf(k -> k.equals(key) || k.startsWith(below));
+    properties.keySet().removeIf(k -> k.equals(key) || k.startsWith(below));
+  }
+
+  private static String required(Map<String, Object> props, String key) {
+    String v = props == null ? null : scalar(props.get(key));
+    if (v == null) {
+      throw new IllegalArgumentException("Property not set: " + key);
+    }
+    return v;
+  }
+
+  private static String scalar(Object v) {
+    if (v != null && v.getClass().isArray()) {
+      // set(key, value) through a varargs overload arrives as a one-element array
+      return Array.getLength(v) == 1 ? scalar(Array.get(v, 0)) : null;
+    }
+    return v == null ? null : String.valueOf(v);
+  }
+
+  private static String[] strings(Object v) {
+    if (v == null) {
+      return null;
+    }
+    if (!v.getClass().isArray()) {
+      return new String[] {String.valueOf(v)};
+    }
+    List<String> out = new ArrayList<>();
+    for (int i = 0, n = Array.getLength(v); i < n; i++) {
+      out.add(String.valueOf(Array.get(v, i)));
+    }
+    return out.toArray(new String[0]);
+  }
+}
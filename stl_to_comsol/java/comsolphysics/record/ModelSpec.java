@@ -0,0 +1,695 @@
+/*
+ * ModelSpec.java
+ * Model-building calls kept as data and applied by one small loop.
+ */
+
+package comsolphysics.record;
+
+import com.comsol.model.Model;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The straight-line part of a generated model class (geometry, selections,
+ * materials, physics settings, views) as a compact file instead of
+ * thousands of lines of Java. A section is a list of calls, each a node,
+ * a method name and the argument values; {@link #apply} runs a section
+ * against a model in one short loop. HotSpot will not compile a method
+ * past 8000 bytecodes, so an exported {@code run2()} is interpreted every
+ * time, while the loop here is compiled after a few hundred calls.
+ *
+ * <p>Only method names and argument values as written in the source are
+ * stored, not signatures. Overloads are chosen when the file is read,
+ * against the {@link Model} interfaces on the classpath and in the order
+ * javac uses: exact types, then widening and boxing, then varargs. The
+ * same file therefore works across COMSOL versions, and a call the API no
+ * longer has fails at {@link #read} rather than halfway through a build.
+ *
+ * <pre>
+ *   ModelSpec.Recorder r = ModelSpec.recorder();
+ *   r.section("run");
+ *   ... generated calls on r.model() ...
+ *   r.finish().write(Paths.get("model.spec"));
+ *
+ *   ModelSpec.read(Paths.get("model.spec")).apply("run", model);
+ * </pre>
+ *
+ * <p>{@code java comsolphysics.record.ModelSpec model.spec [section]}
+ * prints the calls as Java, for review and diffs. Printing does not bind
+ * the calls, so it needs no COMSOL classes ({@link #readUnbound}).
+ *
+ * <p>File layout (little-endian): magic, string table, node paths
+ * (parent, method, arguments), then named sections of calls (node,
+ * method, arguments). Arguments are tagged values: null, String, int,
+ * long, double, boolean, and one- or two-dimensional int, double and
+ * String arrays.
+ */
+public final class ModelSpec {
+
+  public static final int MAGIC = 0x4D535031; // "MSP1"
+
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte INT = 2;
+  private static final byte LONG = 3;
+  private static final byte DOUBLE = 4;
+  private static final byte BOOLEAN = 5;
+  private static final byte INTS = 6;
+  private static final byte DOUBLES = 7;
+  private static final byte STRINGS = 8;
+  private static final byte INTS2 = 9;
+  private static final byte DOUBLES2 = 10;
+  private static final byte STRINGS2 = 11;
+
+  /** Boxed numeric types in widening order, beside their primitives. */
+  private static final List<Class<?>> BOXED = Arrays.asList(Integer.class, Long.class, Float.class, Double.class);
+  private static final List<Class<?>> PRIMITIVE = Arrays.asList(int.class, long.class, float.class, double.class);
+
+  /** Node paths; 0 is the model, and a parent always comes before its children. */
+  private final int[] parent;
+  private final String[] names;
+  private final Object[][] values;
+  private final String[] keys;
+  private final Method[] methods;
+  private final Object[][] args;
+  private final Map<String, Op[]> sections;
+  private final boolean bound;
+
+  private ModelSpec(int[] parent, String[] names, Object[][] values, Map<String, Op[]> sections, boolean bind) {
+    int n = parent.length;
+    this.parent = parent;
+    this.names = names;
+    this.values = values;
+    this.sections = sections;
+    this.bound = bind;
+    this.keys = new String[n];
+    this.methods = new Method[n];
+    this.args = new Object[n][];
+    Class<?>[] types = new Class<?>[n];
+    keys[0] = "model";
+    types[0] = Model.class;
+    for (int i = 1; i < n; i++) {
+      keys[i] = keys[parent[i]] + "." + RecordedCall.format(names[i], values[i]);
+    }
+    if (!bind) {
+      return;
+    }
+    for (int i = 1; i < n; i++) {
+      methods[i] = resolve(types[parent[i]], names[i], values[i], keys[i]);
+      args[i] = pack(methods[i], values[i]);
+      types[i] = methods[i].getReturnType();
+    }
+    for (Op[] ops : sections.values()) {
+      for (Op op : ops) {
+        op.method = resolve(types[op.path], op.name, op.values, keys[op.path] + "." + op.name);
+        op.args = pack(op.method, op.values);
+        op.structure = RecordingModel.kind(op.name) == RecordedCall.Kind.STRUCTURE;
+      }
+    }
+  }
+
+  /** One call: {@code method(args)} on the node at path {@code path}. */
+  private static final class Op {
+
+    final int path;
+    final String name;
+    final Object[] values;
+    Method method;
+    Object[] args;
+    /** Creates or removes nodes, so looked-up nodes may be stale afterwards. */
+    boolean structure;
+
+    Op(int path, String name, Object[] values) {
+      this.path = path;
+      this.name = name;
+      this.values = values;
+    }
+  }
+
+  public static Recorder recorder() {
+    return new Recorder();
+  }
+
+  /** Section names, in file order. */
+  public List<String> sections() {
+    return Collections.unmodifiableList(new ArrayList<>(sections.keySet()));
+  }
+
+  /** Number of calls in {@code section}. */
+  public int size(String section) {
+    return section(section).length;
+  }
+
+  /** Run the calls of {@code section} on {@code model}, in order. Returns {@code model}. */
+  public Model apply(String section, Model model) {
+    if (!bound) {
+      throw new IllegalStateException("Spec was read unbound; read it with read() to apply it");
+    }
+    Op[] ops = section(section);
+    // Nodes looked up so far, by path; cleared whenever the tree changes shape
+    Object[] nodes = new Object[parent.length];
+    nodes[0] = model;
+    for (Op op : ops) {
+      RecordingModel.invoke(node(nodes, op.path), op.method, op.args);
+      if (op.structure) {
+        Arrays.fill(nodes, 1, nodes.length, null);
+      }
+    }
+    return model;
+  }
+
+  private Object node(Object[] nodes, int path) {
+    Object node = nodes[path];
+    if (node == null) {
+      node = RecordingModel.invoke(node(nodes, parent[path]), methods[path], args[path]);
+      nodes[path] = node;
+    }
+    return node;
+  }
+
+  private Op[] section(String name) {
+    Op[] ops = sections.get(name);
+    if (ops == null) {
+      throw new IllegalArgumentException("No section " + name + " in spec (have " + sections.keySet() + ")");
+    }
+    return ops;
+  }
+
+  /** The calls of {@code section} as Java statements. */
+  public List<String> toJava(String section) {
+    List<String> out = new ArrayList<>();
+    for (Op op : section(section)) {
+      out.add(keys[op.path] + "." + RecordedCall.format(op.name, op.values) + ";");
+    }
+    return out;
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // Overload resolution
+
+  /**
+   * The method {@code name} on {@code type} that javac would pick for
+   * {@code values}: fixed arity first, then varargs, lowest conversion cost
+   * within a phase.
+   */
+  static Method resolve(Class<?> type, String name, Object[] values, String where) {
+    for (boolean varargs : new boolean[] {false, true}) {
+      Method best = null;
+      int bestCost = Integer.MAX_VALUE;
+      for (Method m : type.getMethods()) {
+        if (!m.getName().equals(name) || varargs && !m.isVarArgs()) {
+          continue;
+        }
+        int cost = cost(m.getParameterTypes(), values, varargs);
+        if (cost < 0) {
+          continue;
+        }
+        // On a tie keep the narrower return type (an interface re-declaring an inherited method)
+        if (cost < bestCost || cost == bestCost
+            && best.getReturnType().isAssignableFrom(m.getReturnType())) {
+          best = m;
+          bestCost = cost;
+        }
+      }
+      if (best != null) {
+        return best;
+      }
+    }
+    throw new IllegalArgumentException("No " + type.getName() + "." + RecordedCall.format(name, values)
+        + " for " + where);
+  }
+
+  private static int cost(Class<?>[] params, Object[] values, boolean varargs) {
+    int fixed = varargs ? params.length - 1 : params.length;
+    if (varargs ? values.length < fixed : values.length != fixed) {
+      return -1;
+    }
+    int total = 0;
+    for (int i = 0; i < values.length; i++) {
+      int c = cost(i < fixed ? params[i] : params[fixed].getComponentType(), values[i]);
+      if (c < 0) {
+        return -1;
+      }
+      total += c;
+    }
+    return total;
+  }
+
+  /** 0 for an exact match, more for unboxing, widening and supertypes; -1 if not applicable. */
+  private static int cost(Class<?> param, Object value) {
+    if (value == null) {
+      return param.isPrimitive() ? -1 : 1;
+    }
+    Class<?> type = value.getClass();
+    if (param == type) {
+      return 0;
+    }
+    if (param.isPrimitive()) {
+      if (param == boolean.class) {
+        return type == Boolean.class ? 1 : -1;
+      }
+      int from = BOXED.indexOf(type);
+      int to = PRIMITIVE.indexOf(param);
+      return from < 0 || to < from ? -1 : 1 + to - from;
+    }
+    if (!param.isInstance(value)) {
+      return -1;
+    }
+    return param == Object.class ? 5 : 4;
+  }
+
+  /** Arguments for {@link Method#invoke}, with trailing values gathered into the varargs array. */
+  static Object[] pack(Method method, Object[] values) {
+    Class<?>[] params = method.getParameterTypes();
+    if (!method.isVarArgs() || cost(params, values, false) >= 0) {
+      return values;
+    }
+    int fixed = params.length - 1;
+    Object rest = Array.newInstance(params[fixed].getComponentType(), values.length - fixed);
+    for (int i = fixed; i < values.length; i++) {
+      Array.set(rest, i - fixed, values[i]);
+    }
+    Object[] out = Arrays.copyOf(values, params.length);
+    out[fixed] = rest;
+    return out;
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // File format
+
+  public void write(Path path) throws IOException {
+    Map<String, Integer> strings = new LinkedHashMap<>();
+    Out body = new Out();
+    body.putInt(parent.length);
+    for (int i = 1; i < parent.length; i++) {
+      body.putInt(parent[i]).putInt(intern(strings, names[i]));
+      putValues(body, strings, values[i]);
+    }
+    body.putInt(sections.size());
+    for (Map.Entry<String, Op[]> s : sections.entrySet()) {
+      body.putInt(intern(strings, s.getKey())).putInt(s.getValue().length);
+      for (Op op : s.getValue()) {
+        body.putInt(op.path).putInt(intern(strings, op.name));
+        putValues(body, strings, op.values);
+      }
+    }
+    Out head = new Out();
+    head.putInt(MAGIC).putInt(strings.size());
+    for (String s : strings.keySet()) {
+      byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+      head.putInt(utf8.length).put(utf8);
+    }
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer[] parts = {head.flip(), body.flip()};
+      while (parts[1].hasRemaining()) {
+        ch.write(parts);
+      }
+    }
+  }
+
+  /**
+   * Read a spec and bind its calls to the COMSOL API on the classpath.
+   *
+   * @throws IOException if the file is not a spec, or a call has no
+   *     matching method in this COMSOL version
+   */
+  public static ModelSpec read(Path path) throws IOException {
+    return read(path, true);
+  }
+
+  /**
+   * Read a spec for {@link #toJava} only, without looking up any method;
+   * {@link #apply} then throws.
+   *
+   * @throws IOException if the file is not a spec
+   */
+  public static ModelSpec readUnbound(Path path) throws IOException {
+    return read(path, false);
+  }
+
+  private static ModelSpec read(Path path, boolean bind) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).order(ByteOrder.LITTLE_ENDIAN);
+      if (map.getInt() != MAGIC) {
+        throw new IOException("Not a model spec: " + path);
+      }
+      String[] strings = new String[map.getInt()];
+      for (int i = 0; i < strings.length; i++) {
+        byte[] utf8 = new byte[map.getInt()];
+        map.get(utf8);
+        strings[i] = new String(utf8, StandardCharsets.UTF_8);
+      }
+      int n = map.getInt();
+      int[] parent = new int[n];
+      String[] names = new String[n];
+      Object[][] values = new Object[n][];
+      values[0] = new Object[0];
+      for (int i = 1; i < n; i++) {
+        parent[i] = map.getInt();
+        names[i] = strings[map.getInt()];
+        values[i] = getValues(map, strings);
+        if (parent[i] < 0 || parent[i] >= i) {
+          throw new IOException("Corrupt model spec (node " + i + "): " + path);
+        }
+      }
+      Map<String, Op[]> sections = new LinkedHashMap<>();
+      for (int s = map.getInt(); s > 0; s--) {
+        String name = strings[map.getInt()];
+        Op[] ops = new Op[map.getInt()];
+        for (int i = 0; i < ops.length; i++) {
+          int node = map.getInt();
+          if (node < 0 || node >= n) {
+            throw new IOException("Corrupt model spec (section " + name + "): " + path);
+          }
+          ops[i] = new Op(node, strings[map.getInt()], getValues(map, strings));
+        }
+        sections.put(name, ops);
+      }
+      try {
+        return new ModelSpec(parent, names, values, sections, bind);
+      } catch (IllegalArgumentException e) {
+        throw new IOException(path + " does not match this COMSOL API: " + e.getMessage(), e);
+      }
+    } catch (RuntimeException e) {
+      // A truncated file or an index out of range
+      throw new IOException("Corrupt model spec: " + path, e);
+    }
+  }
+
+  private static int intern(Map<String, Integer> strings, String s) {
+    return strings.computeIfAbsent(s, k -> strings.size());
+  }
+
+  private static void putValues(Out out, Map<String, Integer> strings, Object[] values) {
+    out.putInt(values.length);
+    for (Object v : values) {
+      if (v == null) {
+        out.put(NULL);
+      } else if (v instanceof String) {
+        out.put(STRING).putInt(intern(strings, (String) v));
+      } else if (v instanceof Integer) {
+        out.put(INT).putInt((Integer) v);
+      } else if (v instanceof Long) {
+        out.put(LONG).putLong((Long) v);
+      } else if (v instanceof Double) {
+        out.put(DOUBLE).putDouble((Double) v);
+      } else if (v instanceof Boolean) {
+        out.put(BOOLEAN).put((byte) ((Boolean) v ? 1 : 0));
+      } else if (v instanceof int[]) {
+        out.put(INTS);
+        putInts(out, (int[]) v);
+      } else if (v instanceof double[]) {
+        out.put(DOUBLES);
+        putDoubles(out, (double[]) v);
+      } else if (v instanceof String[]) {
+        out.put(STRINGS);
+        putStrings(out, strings, (String[]) v);
+      } else if (v instanceof int[][]) {
+        out.put(INTS2).putInt(((int[][]) v).length);
+        for (int[] row : (int[][]) v) {
+          putInts(out, row);
+        }
+      } else if (v instanceof double[][]) {
+        out.put(DOUBLES2).putInt(((double[][]) v).length);
+        for (double[] row : (double[][]) v) {
+          putDoubles(out, row);
+        }
+      } else if (v instanceof String[][]) {
+        out.put(STRINGS2).putInt(((String[][]) v).length);
+        for (String[] row : (String[][]) v) {
+          putStrings(out, strings, row);
+        }
+      } else {
+        throw new IllegalArgumentException("Cannot store a " + v.getClass().getName() + " in a model spec");
+      }
+    }
+  }
+
+  private static void putInts(Out out, int[] a) {
+    out.putInt(a.length);
+    for (int x : a) {
+      out.putInt(x);
+    }
+  }
+
+  private static void putDoubles(Out out, double[] a) {
+    out.putInt(a.length);
+    for (double x : a) {
+      out.putDouble(x);
+    }
+  }
+
+  private static void putStrings(Out out, Map<String, Integer> strings, String[] a) {
+    out.putInt(a.length);
+    for (String s : a) {
+      out.putInt(intern(strings, s));
+    }
+  }
+
+  private static Object[] getValues(ByteBuffer in, String[] strings) throws IOException {
+    Object[] out = new Object[in.getInt()];
+    for (int i = 0; i < out.length; i++) {
+      byte tag = in.get();
+      switch (tag) {
+        case NULL:
+          break;
+        case STRING:
+          out[i] = strings[in.getInt()];
+          break;
+        case INT:
+          out[i] = in.getInt();
+          break;
+        case LONG:
+          out[i] = in.getLong();
+          break;
+        case DOUBLE:
+          out[i] = in.getDouble();
+          break;
+        case BOOLEAN:
+          out[i] = in.get() != 0;
+          break;
+        case INTS:
+          out[i] = getInts(in);
+          break;
+        case DOUBLES:
+          out[i] = getDoubles(in);
+          break;
+        case STRINGS:
+          out[i] = getStrings(in, strings);
+          break;
+        case INTS2: {
+          int[][] a = new int[in.getInt()][];
+          for (int r = 0; r < a.length; r++) {
+            a[r] = getInts(in);
+          }
+          out[i] = a;
+          break;
+        }
+        case DOUBLES2: {
+          double[][] a = new double[in.getInt()][];
+          for (int r = 0; r < a.length; r++) {
+            a[r] = getDoubles(in);
+          }
+          out[i] = a;
+          break;
+        }
+        case STRINGS2: {
+          String[][] a = new String[in.getInt()][];
+          for (int r = 0; r < a.length; r++) {
+            a[r] = getStrings(in, strings);
+          }
+          out[i] = a;
+          break;
+        }
+        default:
+          throw new IOException("Unknown value tag " + tag);
+      }
+    }
+    return out;
+  }
+
+  private static int[] getInts(ByteBuffer in) {
+    int[] a = new int[in.getInt()];
+    in.asIntBuffer().get(a);
+    in.position(in.position() + 4 * a.length);
+    return a;
+  }
+
+  private static double[] getDoubles(ByteBuffer in) {
+    double[] a = new double[in.getInt()];
+    in.asDoubleBuffer().get(a);
+    in.position(in.position() + 8 * a.length);
+    return a;
+  }
+
+  private static String[] getStrings(ByteBuffer in, String[] strings) {
+    String[] a = new String[in.getInt()];
+    for (int i = 0; i < a.length; i++) {
+      a[i] = strings[in.getInt()];
+    }
+    return a;
+  }
+
+  /** Growable little-endian buffer. */
+  private static final class Out {
+
+    private ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+    private Out room(int n) {
+      if (buf.remaining() < n) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(2 * buf.capacity(), buf.position() + n))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        buf.flip();
+        bigger.put(buf);
+        buf = bigger;
+      }
+      return this;
+    }
+
+    Out put(byte b) {
+      room(1).buf.put(b);
+      return this;
+    }
+
+    Out put(byte[] b) {
+      room(b.length).buf.put(b);
+      return this;
+    }
+
+    Out putInt(int v) {
+      room(4).buf.putInt(v);
+      return this;
+    }
+
+    Out putLong(long v) {
+      room(8).buf.putLong(v);
+      return this;
+    }
+
+    Out putDouble(double v) {
+      room(8).buf.putDouble(v);
+      return this;
+    }
+
+    ByteBuffer flip() {
+      buf.flip();
+      return buf;
+    }
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // Recording
+
+  /**
+   * Captures calls made on {@link #model()} into named sections. The model
+   * has no server behind it (see {@link RecordingModel#local()}) and keeps
+   * every call as made; nothing is optimized away.
+   */
+  public static final class Recorder {
+
+    private final RecordingModel recording = RecordingModel.capture();
+    private final Map<String, List<RecordedCall>> sections = new LinkedHashMap<>();
+    private String current;
+
+    private Recorder() {
+    }
+
+    public Model model() {
+      return recording.model();
+    }
+
+    /** Calls made from now on go to section {@code name}. */
+    public Recorder section(String name) {
+      close();
+      if (sections.containsKey(name)) {
+        throw new IllegalArgumentException("Duplicate section: " + name);
+      }
+      sections.put(name, new ArrayList<>());
+      current = name;
+      return this;
+    }
+
+    /** The spec of everything recorded, bound to the API on the classpath. */
+    public ModelSpec finish() {
+      close();
+      Map<String, Integer> ids = new HashMap<>();
+      List<CallPath> paths = new ArrayList<>();
+      Map<String, Op[]> ops = new LinkedHashMap<>();
+      for (Map.Entry<String, List<RecordedCall>> s : sections.entrySet()) {
+        List<Op> list = new ArrayList<>();
+        for (RecordedCall c : s.getValue()) {
+          list.add(new Op(id(ids, paths, c.path), c.method.getName(), c.values));
+        }
+        ops.put(s.getKey(), list.toArray(new Op[0]));
+      }
+      int n = paths.size() + 1;
+      int[] parent = new int[n];
+      String[] names = new String[n];
+      Object[][] values = new Object[n][];
+      values[0] = new Object[0];
+      for (int i = 1; i < n; i++) {
+        CallPath p = paths.get(i - 1);
+        parent[i] = p.parent.isRoot() ? 0 : ids.get(p.parent.key);
+        names[i] = p.name();
+        values[i] = RecordedCall.spread(p.method, p.args);
+      }
+      return new ModelSpec(parent, names, values, ops, true);
+    }
+
+    private static int id(Map<String, Integer> ids, List<CallPath> paths, CallPath path) {
+      if (path.isRoot()) {
+        return 0;
+      }
+      Integer id = ids.get(path.key);
+      if (id == null) {
+        id(ids, paths, path.parent);
+        paths.add(path);
+        id = paths.size();
+        ids.put(path.key, id);
+      }
+      return id;
+    }
+
+    private void close() {
+      List<RecordedCall> calls = recording.drain();
+      if (current == null) {
+        if (!calls.isEmpty()) {
+          throw new IllegalStateException(calls.size() + " calls recorded before the first section");
+        }
+        return;
+      }
+      sections.get(current).addAll(calls);
+    }
+  }
+
+  /** Print a spec, or one section of it, as Java. */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("usage: ModelSpec <file.spec> [section]");
+      System.exit(2);
+    }
+    ModelSpec spec = readUnbound(Paths.get(args[0]));
+    for (String section : args.length > 1 ? Collections.singletonList(args[1]) : spec.sections()) {
+      System.out.println("// " + section + " (" + spec.size(section) + " calls)");
+      for (String line : spec.toJava(section)) {
+        System.out.println(line);
+      }
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * RecordedCall.java
+ * One mutating or run call captured by a RecordingModel.
+ */
+
+package comsolphysics.record;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+
+/**
+ * A call on the node at {@link #path}, kept with its {@link Method} for
+ * replay. {@link #kind} says how the {@link CallOptimizer} may treat it.
+ */
+final class RecordedCall {
+
+  enum Kind {
+    /** Changes a value another call of the same {@link #slot} overwrites (set, label, active, ...). */
+    SET,
+    /** Creates, removes or resets nodes; never dropped, and stops older sets below it collapsing. */
+    STRUCTURE,
+    /** Builds a geometry, mesh, solution or plot; deferred to the end of the batch. */
+    RUN
+  }
+
+  final CallPath path;
+  final Method method;
+  /** Arguments as passed to {@link #method}, for replay. */
+  final Object[] args;
+  /** Arguments as written at the call site, with a varargs array spread out. */
+  final Object[] values;
+  final Kind kind;
+
+  RecordedCall(CallPath path, Method method, Object[] args, Kind kind) {
+    this.path = path;
+    this.method = method;
+    this.args = args == null ? new Object[0] : args;
+    this.values = spread(method, this.args);
+    this.kind = kind;
+  }
+
+  static Object[] spread(Method method, Object[] args) {
+    if (!method.isVarArgs() || args.length == 0 || args[args.length - 1] == null) {
+      return args;
+    }
+    Object last = args[args.length - 1];
+    int n = Array.getLength(last);
+    Object[] out = new Object[args.length - 1 + n];
+    System.arraycopy(args, 0, out, 0, args.length - 1);
+    for (int i = 0; i < n; i++) {
+      out[args.length - 1 + i] = Array.get(last, i);
+    }
+    return out;
+  }
+
+  /**
+   * Identity of the value a SET call writes: the node plus the method and
+   * its leading key arguments ({@code set("hmax", ...)} has key
+   * {@code hmax}, {@code setEntry("activate", "rad", ...)} has
+   * {@code activate/rad}). Positional selection sets and
+   * {@code all()}/{@code named()} share one slot, since each replaces the
+   * selection.
+   */
+  String slot() {
+    String name = method.getName();
+    switch (name) {
+      case "set":
+        if (values.length == 2 && values[0] instanceof String) {
+          return path.key + "#set:" + values[0];
+        }
+        return path.key + "#content";
+      case "all":
+      case "named":
+        return path.key + "#content";
+      case "setEntry":
+        return path.key + "#setEntry:" + values[0] + "/" + values[1];
+      case "setIndex":
+        return path.key + "#setIndex:" + values[0] + "/" + values[2];
+      default:
+        return path.key + "#" + name;
+    }
+  }
+
+  /** The property key a {@code set(key, value)} or {@code setIndex(key, value, i)} writes, else null. */
+  String propertyKey() {
+    String name = method.getName();
+    if ((name.equals("set") && values.length == 2 || name.equals("setIndex")) && values[0] instanceof String) {
+      return (String) values[0];
+    }
+    return null;
+  }
+
+  /** The call as Java source, e.g. {@code model.component("comp1").mesh("mesh1").run()}. */
+  @Override
+  public String toString() {
+    return path.key + "." + format(method.getName(), values);
+  }
+
+  static String format(String name, Object[] args) {
+    StringBuilder s = new StringBuilder(name).append('(');
+    for (int i = 0; i < args.length; i++) {
+      if (i > 0) {
+        s.append(", ");
+      }
+      literal(s, args[i]);
+    }
+    return s.append(')').toString();
+  }
+
+  private static void literal(StringBuilder s, Object v) {
+    if (v == null) {
+      s.append("null");
+    } else if (v instanceof String) {
+      s.append('"').append(((String) v).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+    } else if (v.getClass().isArray()) {
+      s.append('{');
+      for (int i = 0, n = Array.getLength(v); i < n; i++) {
+        if (i > 0) {
+          s.append(", ");
+        }
+        literal(s, Array.get(v, i));
+      }
+      s.append('}');
+    } else {
+      s.append(v);
+    }
+  }
+}
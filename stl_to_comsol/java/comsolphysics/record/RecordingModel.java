@@ -0,0 +1,299 @@
+/*
+ * RecordingModel.java
+ * A Model that records API calls and sends an optimized batch on demand.
+ */
+
+package comsolphysics.record;
+
+import com.comsol.model.Model;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sits between generated model code and a {@link Model}. Navigation calls
+ * ({@code component("comp1").geom("geom1")}) only extend a path; sets,
+ * structural calls and runs are recorded. When the code reads model state
+ * ({@code getNumElem()}, {@code tags()}, {@code entities()}, {@code save()},
+ * ...) the recorded batch is passed through {@link CallOptimizer} and
+ * replayed on the real model before the read is forwarded.
+ *
+ * <pre>
+ *   Model model = RecordingModel.wrap(ModelUtil.create(ModelTags.unique("Model")));
+ *   ... generated calls ...
+ *   RecordingModel.of(model).flush();
+ * </pre>
+ *
+ * <p>{@link #local()} gives a model with no server behind it: it keeps tags,
+ * types and property values in memory, answers {@code tags()},
+ * {@code getString()} and the like from them, and keeps the optimized calls
+ * in {@link #sent()}. That is enough to check what the optimizer does to a
+ * generated class without a COMSOL license; reads that need a built model
+ * throw {@link UnsupportedOperationException}.
+ */
+public final class RecordingModel {
+
+  private static final Set<String> RUNS = new HashSet<>(Arrays.asList("run", "runAll", "runCurrent"));
+  private static final Set<String> SETS = new HashSet<>(Arrays.asList(
+      "set", "setEntry", "setIndex", "setType", "setQualityMeasure", "setAttribute", "label",
+      "active", "title", "description", "modelPath", "geometricModel", "all", "named", "attach",
+      "geomRep", "useConstrDim"));
+  private static final Set<String> STRUCTURE = new HashSet<>(Arrays.asList(
+      "create", "remove", "clear", "init", "add", "contribute", "createAutoSequence",
+      "createAutoSequences", "placeAfter", "constrDimBuild", "move"));
+
+  private final Model target;
+  private final LocalModelState local;
+  /** Keep every call as recorded, for {@link ModelSpec.Recorder}; nothing is sent. */
+  private final boolean capture;
+  private final List<RecordedCall> batch = new ArrayList<>();
+  private final List<String> sent = new ArrayList<>();
+  private final Map<String, Object> resolved = new HashMap<>();
+  private final Model proxy;
+  private long recorded;
+  private long replayed;
+
+  private RecordingModel(Model target, boolean capture) {
+    this.target = target;
+    this.local = target == null ? new LocalModelState() : null;
+    this.capture = capture;
+    this.proxy = (Model) proxy(CallPath.root(Model.class));
+  }
+
+  /** Record calls on {@code target} and send them optimized. Wrapping twice returns the same model. */
+  public static Model wrap(Model target) {
+    if (of(target) != null) {
+      return target;
+    }
+    return new RecordingModel(target, false).proxy;
+  }
+
+  /** An in-memory model with no server behind it. */
+  public static Model local() {
+    return new RecordingModel(null, false).proxy;
+  }
+
+  /** A local recorder that keeps the raw calls for {@link #drain}. */
+  static RecordingModel capture() {
+    return new RecordingModel(null, true);
+  }
+
+  /** The recorder behind a model from {@link #wrap} or {@link #local}, or null. */
+  public static RecordingModel of(Model model) {
+    if (model != null && Proxy.isProxyClass(model.getClass())) {
+      InvocationHandler h = Proxy.getInvocationHandler(model);
+      if (h instanceof Handler) {
+        return ((Handler) h).recorder();
+      }
+    }
+    return null;
+  }
+
+  public Model model() {
+    return proxy;
+  }
+
+  /** Optimize and replay the calls recorded since the last flush. */
+  public void flush() {
+    if (capture || batch.isEmpty()) {
+      return;
+    }
+    List<RecordedCall> calls = CallOptimizer.optimize(batch);
+    batch.clear();
+    for (RecordedCall c : calls) {
+      sent.add(c.toString());
+      replayed++;
+      if (target != null) {
+        invoke(resolve(c.path), c.method, c.args);
+        if (c.kind == RecordedCall.Kind.STRUCTURE) {
+          // Removed or re-created nodes must be looked up again
+          resolved.clear();
+        }
+      }
+    }
+  }
+
+  /** The calls recorded since the last drain, unoptimized; capture mode only. */
+  List<RecordedCall> drain() {
+    List<RecordedCall> calls = new ArrayList<>(batch);
+    batch.clear();
+    return calls;
+  }
+
+  /** Calls recorded so far. */
+  public long recordedCount() {
+    return recorded;
+  }
+
+  /** Calls sent to the model after optimization. */
+  public long sentCount() {
+    return replayed;
+  }
+
+  /** The optimized calls, as Java source, in the order they were sent. */
+  public List<String> sent() {
+    return Collections.unmodifiableList(sent);
+  }
+
+  @Override
+  public String toString() {
+    return "RecordingModel[" + recorded + " calls recorded, " + replayed + " sent, "
+        + batch.size() + " pending]";
+  }
+
+  private Object proxy(CallPath path) {
+    return Proxy.newProxyInstance(path.type.getClassLoader(), new Class<?>[] {path.type}, new Handler(path));
+  }
+
+  private Object resolve(CallPath path) {
+    if (path.isRoot()) {
+      return target;
+    }
+    Object node = resolved.get(path.key);
+    if (node == null) {
+      node = invoke(resolve(path.parent), path.method, path.args);
+      resolved.put(path.key, node);
+    }
+    return node;
+  }
+
+  static Object invoke(Object on, Method method, Object[] args) {
+    try {
+      return method.invoke(on, args);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private Object call(CallPath path, Method method, Object[] args) {
+    String name = method.getName();
+    Class<?> returns = method.getReturnType();
+    boolean interfaceResult = returns.isInterface();
+    RecordedCall.Kind kind = kind(path, method);
+
+    if (kind != null) {
+      RecordedCall c = new RecordedCall(path, method, args, kind);
+      batch.add(c);
+      recorded++;
+      if (local != null) {
+        local.apply(c);
+      }
+      if (!interfaceResult) {
+        return null;
+      }
+      if (kind == RecordedCall.Kind.STRUCTURE && name.equals("create")) {
+        // Chained calls on the created node go through its accessor, never through create again
+        return proxy(CallOptimizer.touched(c).as(returns));
+      }
+      return proxy(path.as(returns));
+    }
+
+    if (isNavigation(method, args)) {
+      return proxy(path.child(method, args));
+    }
+
+    // A read: the model has to be up to date first
+    flush();
+    if (target != null) {
+      return invoke(resolve(path), method, args);
+    }
+    return local.read(path, method, args);
+  }
+
+  /**
+   * How {@code method} on the node at {@code path} is recorded, or null for
+   * navigation and reads. A call that returns a value rather than a node
+   * ({@code label()}, {@code named()}) is a read whatever its name. A
+   * selection has no child nodes, so every other call on one changes it:
+   * {@code selection().geom("geom1", 2)} sets its geometry and dimension.
+   */
+  static RecordedCall.Kind kind(CallPath path, Method method) {
+    Class<?> returns = method.getReturnType();
+    if (returns != void.class && !returns.isInterface()) {
+      return null;
+    }
+    String name = method.getName();
+    RecordedCall.Kind kind = kind(name);
+    if (kind == null && "selection".equals(path.name()) && !isQuery(name)) {
+      return RecordedCall.Kind.SET;
+    }
+    return kind;
+  }
+
+  /** How a call named {@code name} is recorded by name alone, or null. */
+  static RecordedCall.Kind kind(String name) {
+    return RUNS.contains(name) ? RecordedCall.Kind.RUN
+        : SETS.contains(name) ? RecordedCall.Kind.SET
+        : STRUCTURE.contains(name) ? RecordedCall.Kind.STRUCTURE
+        : null;
+  }
+
+  static boolean isNavigation(Method method, Object[] args) {
+    String name = method.getName();
+    if (!method.getReturnType().isInterface() || isQuery(name)) {
+      return false;
+    }
+    if (name.equals("export") && args != null && args.length > 0) {
+      // export(filename) writes a file
+      return false;
+    }
+    if (args != null) {
+      for (Object a : args) {
+        if (!(a instanceof String || a instanceof Integer)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean isQuery(String name) {
+    return name.startsWith("get") || name.startsWith("is") || name.startsWith("has");
+  }
+
+  private final class Handler implements InvocationHandler {
+
+    private final CallPath path;
+
+    Handler(CallPath path) {
+      this.path = path;
+    }
+
+    RecordingModel recorder() {
+      return RecordingModel.this;
+    }
+
+    @Override
+    public Object invoke(Object self, Method method, Object[] args) {
+      if (method.getDeclaringClass() == Object.class) {
+        switch (method.getName()) {
+          case "equals":
+            return self == args[0];
+          case "hashCode":
+            return System.identityHashCode(self);
+          default:
+            return path.key;
+        }
+      }
+      return call(path, method, args);
+    }
+  }
+}
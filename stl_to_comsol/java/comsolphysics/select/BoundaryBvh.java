@@ -0,0 +1,167 @@
+/*
+ * BoundaryBvh.java
+ * Bounding volume hierarchy over boundary bounding boxes.
+ */
+
+package comsolphysics.select;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Static BVH over the per-boundary boxes of a {@link BoundaryTable}, stored in
+ * flat arrays. Built top-down by median split on the longest axis with up to
+ * {@value #LEAF_SIZE} boundaries per leaf, so box queries cost
+ * {@code O(log n + k)} instead of a scan over every boundary.
+ */
+final class BoundaryBvh {
+
+  private static final int LEAF_SIZE = 4;
+
+  private final float[] boxes;
+  private final int[] order;
+  // Per node: box (6 floats), and either children (left, right) or a leaf range (first, count)
+  private float[] nodeBox;
+  private int[] nodeLeft;
+  private int[] nodeRight;
+  private int[] nodeFirst;
+  private int[] nodeCount;
+  private int nodes;
+
+  BoundaryBvh(float[] boxes, int count) {
+    this.boxes = boxes;
+    order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    int capacity = Math.max(1, 2 * count / LEAF_SIZE + 2);
+    nodeBox = new float[capacity * 6];
+    nodeLeft = new int[capacity];
+    nodeRight = new int[capacity];
+    nodeFirst = new int[capacity];
+    nodeCount = new int[capacity];
+    if (count > 0) {
+      build(0, count);
+    }
+  }
+
+  private int build(int lo, int hi) {
+    int node = allocate();
+    float[] b = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+        Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+    for (int i = lo; i < hi; i++) {
+      int o = order[i] * 6;
+      for (int a = 0; a < 3; a++) {
+        b[a] = Math.min(b[a], boxes[o + a]);
+        b[a + 3] = Math.max(b[a + 3], boxes[o + 3 + a]);
+      }
+    }
+    System.arraycopy(b, 0, nodeBox, node * 6, 6);
+    if (hi - lo <= LEAF_SIZE) {
+      nodeFirst[node] = lo;
+      nodeCount[node] = hi - lo;
+      nodeLeft[node] = -1;
+      return node;
+    }
+    int axis = 0;
+    for (int a = 1; a < 3; a++) {
+      if (b[a + 3] - b[a] > b[axis + 3] - b[axis]) {
+        axis = a;
+      }
+    }
+    int mid = (lo + hi) >>> 1;
+    select(lo, hi - 1, mid, axis);
+    int left = build(lo, mid);
+    int right = build(mid, hi);
+    nodeLeft[node] = left;
+    nodeRight[node] = right;
+    return node;
+  }
+
+  private int allocate() {
+    if (nodes == nodeLeft.length) {
+      int cap = nodes * 2;
+      nodeBox = Arrays.copyOf(nodeBox, cap * 6);
+      nodeLeft = Arrays.copyOf(nodeLeft, cap);
+      nodeRight = Arrays.copyOf(nodeRight, cap);
+      nodeFirst = Arrays.copyOf(nodeFirst, cap);
+      nodeCount = Arrays.copyOf(nodeCount, cap);
+    }
+    return nodes++;
+  }
+
+  private float centre(int item, int axis) {
+    return boxes[item * 6 + axis] + boxes[item * 6 + 3 + axis];
+  }
+
+  /** Quickselect so that order[k] has the median centre on {@code axis}. */
+  private void select(int lo, int hi, int k, int axis) {
+    while (lo < hi) {
+      float pivot = centre(order[(lo + hi) >>> 1], axis);
+      int i = lo, j = hi;
+      while (i <= j) {
+        while (centre(order[i], axis) < pivot) i++;
+        while (centre(order[j], axis) > pivot) j--;
+        if (i <= j) {
+          int t = order[i];
+          order[i] = order[j];
+          order[j] = t;
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) {
+        hi = j;
+      } else if (k >= i) {
+        lo = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Set bits for boundaries whose box intersects the query box, or lies fully
+   * inside it when {@code inside} is true.
+   */
+  void query(float[] q, boolean inside, BitSet out) {
+    if (nodes == 0) {
+      return;
+    }
+    int[] stack = new int[64];
+    int sp = 0;
+    stack[sp++] = 0;
+    while (sp > 0) {
+      int node = stack[--sp];
+      if (!overlaps(nodeBox, node * 6, q)) {
+        continue;
+      }
+      if (nodeLeft[node] < 0) {
+        for (int i = nodeFirst[node]; i < nodeFirst[node] + nodeCount[node]; i++) {
+          int b = order[i];
+          if (inside ? contains(q, boxes, b * 6) : overlaps(boxes, b * 6, q)) {
+            out.set(b);
+          }
+        }
+      } else {
+        if (sp + 2 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[sp++] = nodeLeft[node];
+        stack[sp++] = nodeRight[node];
+      }
+    }
+  }
+
+  private static boolean overlaps(float[] box, int o, float[] q) {
+    return box[o] <= q[3] && box[o + 3] >= q[0]
+        && box[o + 1] <= q[4] && box[o + 4] >= q[1]
+        && box[o + 2] <= q[5] && box[o + 5] >= q[2];
+  }
+
+  private static boolean contains(float[] q, float[] box, int o) {
+    return box[o] >= q[0] && box[o + 3] <= q[3]
+        && box[o + 1] >= q[1] && box[o + 4] <= q[4]
+        && box[o + 2] >= q[2] && box[o + 5] <= q[5];
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * BoundaryMesh.java
+ * Triangulated model boundaries tagged with their boundary numbers.
+ */
+
+package comsolphysics.select;
+
+/**
+ * Flat boundary triangulation: vertex coordinates, three 0-based vertex
+ * indices per triangle, the 1-based boundary number of each triangle and,
+ * when known, the domains above and below each boundary.
+ */
+public final class BoundaryMesh {
+
+  private final double[] xyz;
+  private final int[] triangles;
+  private final int[] entity;
+  private final int[][] upDown;
+  private final int boundaryCount;
+
+  public BoundaryMesh(double[] xyz, int[] triangles, int[] entity, int[][] upDown, int boundaryCount) {
+    this.xyz = xyz;
+    this.triangles = triangles;
+    this.entity = entity;
+    this.upDown = upDown;
+    this.boundaryCount = boundaryCount;
+  }
+
+  /** Vertex coordinates, 3 per vertex. Not copied. */
+  public double[] xyz() {
+    return xyz;
+  }
+
+  /** Vertex indices, 3 per triangle. Not copied. */
+  public int[] triangles() {
+    return triangles;
+  }
+
+  /** Boundary number (1-based) of each triangle. Not copied. */
+  public int[] entity() {
+    return entity;
+  }
+
+  /** Domain above/below each boundary as {@code [2][boundaries]}, or null. */
+  public int[][] upDown() {
+    return upDown;
+  }
+
+  public int triangleCount() {
+    return entity.length;
+  }
+
+  public int vertexCount() {
+    return xyz.length / 3;
+  }
+
+  public int boundaryCount() {
+    return boundaryCount;
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * BoundaryQuery.java
+ * Composable boundary predicates.
+ */
+
+package comsolphysics.select;
+
+import comsolphysics.mesh.SurfaceCategory;
+import java.util.BitSet;
+
+/**
+ * A set of boundaries narrowed by chained predicates. Each predicate
+ * intersects the current set; {@link #or} and {@link #minus} combine queries.
+ * Box predicates are answered by the BVH, the others by a pass over the
+ * current members only.
+ */
+public final class BoundaryQuery {
+
+  private final SelectionBuilder owner;
+  private final BitSet members;
+
+  BoundaryQuery(SelectionBuilder owner, BitSet members) {
+    this.owner = owner;
+    this.members = members;
+  }
+
+  private BoundaryTable table() {
+    return owner.table();
+  }
+
+  /** Boundaries whose bounding box intersects the box (COMSOL Box selection, "intersects"). */
+  public BoundaryQuery intersecting(double xmin, double ymin, double zmin,
+                                    double xmax, double ymax, double zmax) {
+    return box(xmin, ymin, zmin, xmax, ymax, zmax, false);
+  }
+
+  /** Boundaries lying entirely inside the box (COMSOL Box selection, "inside"). */
+  public BoundaryQuery inside(double xmin, double ymin, double zmin,
+                              double xmax, double ymax, double zmax) {
+    return box(xmin, ymin, zmin, xmax, ymax, zmax, true);
+  }
+
+  private BoundaryQuery box(double xmin, double ymin, double zmin,
+                            double xmax, double ymax, double zmax, boolean inside) {
+    BitSet hits = new BitSet(table().count());
+    owner.bvh().query(new float[] {(float) xmin, (float) ymin, (float) zmin,
+        (float) xmax, (float) ymax, (float) zmax}, inside, hits);
+    members.and(hits);
+    return this;
+  }
+
+  /** Boundaries whose mean normal is within {@code toleranceDeg} of (nx, ny, nz), either side. */
+  public BoundaryQuery normal(double nx, double ny, double nz, double toleranceDeg) {
+    double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+    double cos = Math.cos(Math.toRadians(toleranceDeg));
+    BoundaryTable t = table();
+    for (int b = members.nextSetBit(0); b >= 0; b = members.nextSetBit(b + 1)) {
+      double dot = (t.normalX(b) * nx + t.normalY(b) * ny + t.normalZ(b) * nz) / len;
+      if (Math.abs(dot) < cos) {
+        members.clear(b);
+      }
+    }
+    return this;
+  }
+
+  public BoundaryQuery category(SurfaceCategory... categories) {
+    BoundaryTable t = table();
+    for (int b = members.nextSetBit(0); b >= 0; b = members.nextSetBit(b + 1)) {
+      boolean keep = false;
+      for (SurfaceCategory c : categories) {
+        keep |= t.category(b) == c;
+      }
+      if (!keep) {
+        members.clear(b);
+      }
+    }
+    return this;
+  }
+
+  /** Boundaries with at least {@code minArea} square metres. */
+  public BoundaryQuery minArea(double minArea) {
+    BoundaryTable t = table();
+    for (int b = members.nextSetBit(0); b >= 0; b = members.nextSetBit(b + 1)) {
+      if (t.area(b) < minArea) {
+        members.clear(b);
+      }
+    }
+    return this;
+  }
+
+  /** Boundaries touching any of the given domains on either side. */
+  public BoundaryQuery adjacentToDomains(int... domains) {
+    return domainSides(domains, false);
+  }
+
+  /**
+   * Boundaries with exactly one side in the given domains, which is what a
+   * COMSOL {@code Adjacent} selection returns with its default settings.
+   */
+  public BoundaryQuery exteriorOf(int... domains) {
+    return domainSides(domains, true);
+  }
+
+  private BoundaryQuery domainSides(int[] domains, boolean exteriorOnly) {
+    BitSet set = new BitSet();
+    for (int d : domains) {
+      if (d > 0) {
+        set.set(d);
+      }
+    }
+    BoundaryTable t = table();
+    for (int b = members.nextSetBit(0); b >= 0; b = members.nextSetBit(b + 1)) {
+      boolean up = set.get(t.up(b));
+      boolean down = set.get(t.down(b));
+      if (exteriorOnly ? up == down : !up && !down) {
+        members.clear(b);
+      }
+    }
+    return this;
+  }
+
+  /** Boundaries sharing an edge or vertex with a member of {@code other}, excluding its members. */
+  public BoundaryQuery adjacentTo(BoundaryQuery other) {
+    BitSet near = new BitSet(table().count());
+    BoundaryTable t = table();
+    for (int b = other.members.nextSetBit(0); b >= 0; b = other.members.nextSetBit(b + 1)) {
+      for (int i = 0; i < t.adjacentCount(b); i++) {
+        near.set(t.adjacent(b, i));
+      }
+    }
+    near.andNot(other.members);
+    members.and(near);
+    return this;
+  }
+
+  /** An independent query over the same members, so this one can be reused. */
+  public BoundaryQuery copy() {
+    return new BoundaryQuery(owner, (BitSet) members.clone());
+  }
+
+  public BoundaryQuery or(BoundaryQuery other) {
+    members.or(other.members);
+    return this;
+  }
+
+  public BoundaryQuery minus(BoundaryQuery other) {
+    members.andNot(other.members);
+    return this;
+  }
+
+  public int size() {
+    return members.cardinality();
+  }
+
+  /** Selected boundaries as 1-based COMSOL entity numbers, ascending. */
+  public int[] ids() {
+    int[] ids = new int[members.cardinality()];
+    int n = 0;
+    for (int b = members.nextSetBit(0); b >= 0; b = members.nextSetBit(b + 1)) {
+      ids[n++] = b + 1;
+    }
+    return ids;
+  }
+
+  /** Domains on either side of the selected boundaries (1-based, no exterior). */
+  public int[] domains() {
+    BitSet d = new BitSet();
+    BoundaryTable t = table();
+    for (int b = members.nextSetBit(0); b >= 0; b = members.nextSetBit(b + 1)) {
+      if (t.up(b) > 0) d.set(t.up(b));
+      if (t.down(b) > 0) d.set(t.down(b));
+    }
+    return d.stream().toArray();
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * BoundaryTable.java
+ * Per-boundary geometry summary used by the selection engine.
+ */
+
+package comsolphysics.select;
+
+import comsolphysics.mesh.IndexedMesh;
+import comsolphysics.mesh.Segmentation;
+import comsolphysics.mesh.SurfaceCategory;
+import comsolphysics.mesh.SurfaceSegmenter;
+import java.util.Arrays;
+
+/**
+ * Geometric summary of the boundaries of a model: bounding box, area-weighted
+ * normal, area, the domains on either side, boundary-to-boundary adjacency
+ * and a {@link SurfaceCategory}. Boundary {@code i} here is COMSOL boundary
+ * {@code i + 1}.
+ *
+ * <p>Built from any triangulation whose triangles carry their boundary
+ * number: a COMSOL boundary mesh (see {@link ComsolBoundaries}) or the
+ * patches of a {@link Segmentation}.
+ */
+public final class BoundaryTable {
+
+  private final int count;
+  private final float[] bounds;
+  private final float[] normals;
+  private final double[] area;
+  private final int[] up;
+  private final int[] down;
+  private final SurfaceCategory[] category;
+  private final int[] adjStart;
+  private final int[] adjList;
+  private final float[] roomBounds;
+
+  private BoundaryTable(int count, float[] bounds, float[] normals, double[] area, int[] up, int[] down,
+                        SurfaceCategory[] category, int[] adjStart, int[] adjList, float[] roomBounds) {
+    this.count = count;
+    this.bounds = bounds;
+    this.normals = normals;
+    this.area = area;
+    this.up = up;
+    this.down = down;
+    this.category = category;
+    this.adjStart = adjStart;
+    this.adjList = adjList;
+    this.roomBounds = roomBounds;
+  }
+
+  /**
+   * Build from a triangulated boundary mesh.
+   *
+   * @param xyz       vertex coordinates, 3 per vertex
+   * @param tri       vertex indices, 3 per triangle (0-based)
+   * @param entity    boundary number of each triangle (1-based, as COMSOL reports it)
+   * @param upDown    domain above/below each boundary ({@code [2][boundaries]}, 0 = outside), or null
+   * @param count     number of boundaries
+   */
+  public static BoundaryTable fromTriangles(double[] xyz, int[] tri, int[] entity, int[][] upDown, int count) {
+    int triangles = entity.length;
+    float[] bounds = new float[count * 6];
+    for (int b = 0; b < count; b++) {
+      Arrays.fill(bounds, b * 6, b * 6 + 3, Float.POSITIVE_INFINITY);
+      Arrays.fill(bounds, b * 6 + 3, b * 6 + 6, Float.NEGATIVE_INFINITY);
+    }
+    double[] nsum = new double[count * 3];
+    double[] area = new double[count];
+    float[] room = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+        Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+
+    for (int t = 0; t < triangles; t++) {
+      int b = entity[t] - 1;
+      int a0 = tri[t * 3] * 3, a1 = tri[t * 3 + 1] * 3, a2 = tri[t * 3 + 2] * 3;
+      double ux = xyz[a1] - xyz[a0], uy = xyz[a1 + 1] - xyz[a0 + 1], uz = xyz[a1 + 2] - xyz[a0 + 2];
+      double vx = xyz[a2] - xyz[a0], vy = xyz[a2 + 1] - xyz[a0 + 1], vz = xyz[a2 + 2] - xyz[a0 + 2];
+      double cx = uy * vz - uz * vy, cy = uz * vx - ux * vz, cz = ux * vy - uy * vx;
+      area[b] += 0.5 * Math.sqrt(cx * cx + cy * cy + cz * cz);
+      nsum[b * 3] += 0.5 * cx;
+      nsum[b * 3 + 1] += 0.5 * cy;
+      nsum[b * 3 + 2] += 0.5 * cz;
+      for (int k = 0; k < 3; k++) {
+        int v = tri[t * 3 + k] * 3;
+        for (int ax = 0; ax < 3; ax++) {
+          float c = (float) xyz[v + ax];
+          if (c < bounds[b * 6 + ax]) bounds[b * 6 + ax] = c;
+          if (c > bounds[b * 6 + 3 + ax]) bounds[b * 6 + 3 + ax] = c;
+          if (c < room[ax]) room[ax] = c;
+          if (c > room[3 + ax]) room[3 + ax] = c;
+        }
+      }
+    }
+
+    float[] normals = new float[count * 3];
+    SurfaceCategory[] category = new SurfaceCategory[count];
+    for (int b = 0; b < count; b++) {
+      double x = nsum[b * 3], y = nsum[b * 3 + 1], z = nsum[b * 3 + 2];
+      double len = Math.sqrt(x * x + y * y + z * z);
+      double inv = len > 0 ? 1.0 / len : 0.0;
+      normals[b * 3] = (float) (x * inv);
+      normals[b * 3 + 1] = (float) (y * inv);
+      normals[b * 3 + 2] = (float) (z * inv);
+      category[b] = area[b] > 0
+          ? SurfaceSegmenter.classify(room, bounds, b * 6, x * inv, y * inv, z * inv)
+          : SurfaceCategory.OTHER;
+    }
+
+    int[] upArr = new int[count];
+    int[] downArr = new int[count];
+    if (upDown != null) {
+      System.arraycopy(upDown[0], 0, upArr, 0, Math.min(count, upDown[0].length));
+      System.arraycopy(upDown[1], 0, downArr, 0, Math.min(count, upDown[1].length));
+    }
+
+    int[][] adj = adjacency(tri, entity, xyz.length / 3, count);
+    return new BoundaryTable(count, bounds, normals, area, upArr, downArr, category, adj[0], adj[1], room);
+  }
+
+  public static BoundaryTable fromMesh(BoundaryMesh mesh) {
+    return fromTriangles(mesh.xyz(), mesh.triangles(), mesh.entity(), mesh.upDown(), mesh.boundaryCount());
+  }
+
+  /** Build from segmentation patches, treating patch {@code p} as boundary {@code p + 1}. */
+  public static BoundaryTable fromSegmentation(IndexedMesh mesh, Segmentation seg) {
+    float[] pos = mesh.positions();
+    double[] xyz = new double[mesh.vertexCount() * 3];
+    for (int i = 0; i < xyz.length; i++) {
+      xyz[i] = pos[i];
+    }
+    int[] entity = new int[mesh.triangleCount()];
+    for (int t = 0; t < entity.length; t++) {
+      entity[t] = seg.patchOf(t) + 1;
+    }
+    BoundaryTable table = fromTriangles(xyz, Arrays.copyOf(mesh.indices(), mesh.triangleCount() * 3),
+        entity, null, seg.patchCount());
+    // Keep the segmenter's own labels; they were decided per triangle orientation class
+    for (int p = 0; p < seg.patchCount(); p++) {
+      table.category[p] = seg.category(p);
+    }
+    return table;
+  }
+
+  /** Boundaries sharing at least one mesh vertex, as CSR lists. */
+  private static int[][] adjacency(int[] tri, int[] entity, int vertices, int count) {
+    // vertex -> boundaries touching it (deduplicated per vertex)
+    int[] vStart = new int[vertices + 1];
+    for (int i = 0; i < entity.length * 3; i++) {
+      vStart[tri[i] + 1]++;
+    }
+    for (int v = 0; v < vertices; v++) {
+      vStart[v + 1] += vStart[v];
+    }
+    int[] vList = new int[entity.length * 3];
+    int[] fill = vStart.clone();
+    for (int i = 0; i < entity.length * 3; i++) {
+      vList[fill[tri[i]]++] = entity[i / 3] - 1;
+    }
+
+    long[] pairs = new long[16];
+    int pairCount = 0;
+    for (int v = 0; v < vertices; v++) {
+      int lo = vStart[v], hi = vStart[v + 1];
+      Arrays.sort(vList, lo, hi);
+      for (int i = lo; i < hi; i++) {
+        if (i > lo && vList[i] == vList[i - 1]) {
+          continue;
+        }
+        for (int j = i + 1; j < hi; j++) {
+          if (vList[j] == vList[j - 1] || vList[j] == vList[i]) {
+            continue;
+          }
+          if (pairCount + 2 > pairs.length) {
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+          }
+          pairs[pairCount++] = ((long) vList[i] << 32) | vList[j];
+          pairs[pairCount++] = ((long) vList[j] << 32) | vList[i];
+        }
+      }
+    }
+    Arrays.sort(pairs, 0, pairCount);
+    int[] start = new int[count + 1];
+    int[] list = new int[pairCount];
+    int n = 0;
+    for (int i = 0; i < pairCount; i++) {
+      if (i > 0 && pairs[i] == pairs[i - 1]) {
+        continue;
+      }
+      int from = (int) (pairs[i] >>> 32);
+      start[from + 1]++;
+      list[n++] = (int) pairs[i];
+    }
+    for (int b = 0; b < count; b++) {
+      start[b + 1] += start[b];
+    }
+    return new int[][] {start, Arrays.copyOf(list, n)};
+  }
+
+  public int count() {
+    return count;
+  }
+
+  /** Bounding boxes, 6 floats per boundary. Not copied. */
+  float[] boundsArray() {
+    return bounds;
+  }
+
+  public float[] bounds(int b) {
+    return Arrays.copyOfRange(bounds, b * 6, b * 6 + 6);
+  }
+
+  /** Bounds of the whole model as {@code {minX, minY, minZ, maxX, maxY, maxZ}}. */
+  public float[] modelBounds() {
+    return roomBounds.clone();
+  }
+
+  public double normalX(int b) {
+    return normals[b * 3];
+  }
+
+  public double normalY(int b) {
+    return normals[b * 3 + 1];
+  }
+
+  public double normalZ(int b) {
+    return normals[b * 3 + 2];
+  }
+
+  public double area(int b) {
+    return area[b];
+  }
+
+  /** Domain on the positive normal side (0 if outside the geometry). */
+  public int up(int b) {
+    return up[b];
+  }
+
+  /** Domain on the negative normal side (0 if outside the geometry). */
+  public int down(int b) {
+    return down[b];
+  }
+
+  public SurfaceCategory category(int b) {
+    return category[b];
+  }
+
+  public int adjacentCount(int b) {
+    return adjStart[b + 1] - adjStart[b];
+  }
+
+  public int adjacent(int b, int i) {
+    return adjList[adjStart[b] + i];
+  }
+}
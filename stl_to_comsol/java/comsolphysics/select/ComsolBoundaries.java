@@ -0,0 +1,66 @@
+/*
+ * ComsolBoundaries.java
+ * Reads a BoundaryTable from a built COMSOL geometry.
+ */
+
+package comsolphysics.select;
+
+import com.comsol.model.Model;
+
+/**
+ * Reads the boundaries of a COMSOL geometry by meshing them with a throwaway
+ * triangle mesh and reading back vertices, triangles and their boundary
+ * numbers. Domain adjacency comes from {@code getUpDown()}. The temporary
+ * mesh sequence is removed again.
+ */
+public final class ComsolBoundaries {
+
+  private static final String TEMP_MESH = "msel_tmp";
+
+  private ComsolBoundaries() {
+  }
+
+  /** Boundary table from an extremely coarse boundary mesh (enough for boxes, normals and adjacency). */
+  public static BoundaryTable read(Model model, String comp, String geom) {
+    return BoundaryTable.fromMesh(readMesh(model, comp, geom, 9));
+  }
+
+  /**
+   * Boundary triangulation at the given {@code hauto} size (1 = extremely
+   * fine, 9 = extremely coarse).
+   */
+  public static BoundaryMesh readMesh(Model model, String comp, String geom, int hauto) {
+    model.component(comp).mesh().create(TEMP_MESH);
+    try {
+      model.component(comp).mesh(TEMP_MESH).feature("size").set("hauto", hauto);
+      model.component(comp).mesh(TEMP_MESH).create("ftri1", "FreeTri");
+      model.component(comp).mesh(TEMP_MESH).feature("ftri1").selection().all();
+      model.component(comp).mesh(TEMP_MESH).run();
+
+      double[][] vtx = model.component(comp).mesh(TEMP_MESH).getVertex();
+      int[][] elem = model.component(comp).mesh(TEMP_MESH).getElem("tri");
+      int[] entity = model.component(comp).mesh(TEMP_MESH).getElemEntity("tri");
+      int[][] upDown = model.component(comp).geom(geom).getUpDown();
+      int boundaries = model.component(comp).geom(geom).getNBoundaries();
+
+      // COMSOL returns coordinates as [sdim][vertex] and elements as [corner][element]
+      int nv = vtx[0].length;
+      double[] xyz = new double[nv * 3];
+      for (int v = 0; v < nv; v++) {
+        xyz[v * 3] = vtx[0][v];
+        xyz[v * 3 + 1] = vtx[1][v];
+        xyz[v * 3 + 2] = vtx[2][v];
+      }
+      int nt = entity.length;
+      int[] tri = new int[nt * 3];
+      for (int t = 0; t < nt; t++) {
+        tri[t * 3] = elem[0][t];
+        tri[t * 3 + 1] = elem[1][t];
+        tri[t * 3 + 2] = elem[2][t];
+      }
+      return new BoundaryMesh(xyz, tri, entity, upDown, boundaries);
+    } finally {
+      model.component(comp).mesh().remove(TEMP_MESH);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * SelectionBuilder.java
+ * Named COMSOL selections computed from geometric predicates.
+ */
+
+package comsolphysics.select;
+
+import com.comsol.model.Model;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Computes boundary sets from predicates over a {@link BoundaryTable} and
+ * writes them into the model as {@code Explicit} selections.
+ *
+ * <p>Entity numbers are resolved when the builder runs, against the geometry
+ * that was just built, so a changed scan or CAD edit cannot leave a selection
+ * pointing at stale boundaries. Because the result is an explicit list,
+ * COMSOL does not re-evaluate {@code Box}/{@code Adjacent} selections on
+ * every rebuild either.
+ *
+ * <pre>
+ *   SelectionBuilder sel = new SelectionBuilder(ComsolBoundaries.read(model, "comp1", "geom1"));
+ *   sel.boundaries("walls", "Painted walls", sel.all().category(SurfaceCategory.WALL));
+ *   sel.apply(model, "comp1", "geom1");
+ * </pre>
+ */
+public final class SelectionBuilder {
+
+  private final BoundaryTable table;
+  private final BoundaryBvh bvh;
+  private final List<Named> selections = new ArrayList<>();
+
+  public SelectionBuilder(BoundaryTable table) {
+    this.table = table;
+    this.bvh = new BoundaryBvh(table.boundsArray(), table.count());
+  }
+
+  BoundaryTable table() {
+    return table;
+  }
+
+  BoundaryBvh bvh() {
+    return bvh;
+  }
+
+  /** A query starting from every boundary. */
+  public BoundaryQuery all() {
+    BitSet members = new BitSet(table.count());
+    members.set(0, table.count());
+    return new BoundaryQuery(this, members);
+  }
+
+  /** A query starting from the given 1-based boundary numbers. */
+  public BoundaryQuery of(int... ids) {
+    BitSet members = new BitSet(table.count());
+    for (int id : ids) {
+      members.set(id - 1);
+    }
+    return new BoundaryQuery(this, members);
+  }
+
+  /** Register a boundary (dimension 2) selection. */
+  public int[] boundaries(String tag, String label, BoundaryQuery query) {
+    int[] ids = query.ids();
+    selections.add(new Named(tag, label, 2, ids));
+    return ids;
+  }
+
+  /** Register a domain (dimension 3) selection from explicit domain numbers. */
+  public int[] domains(String tag, String label, int... ids) {
+    int[] sorted = ids.clone();
+    Arrays.sort(sorted);
+    selections.add(new Named(tag, label, 3, sorted));
+    return sorted;
+  }
+
+  /** Create or replace every registered selection in the model component. */
+  public void apply(Model model, String comp, String geom) {
+    List<String> existing = Arrays.asList(model.component(comp).selection().tags());
+    for (Named s : selections) {
+      if (existing.contains(s.tag)) {
+        model.component(comp).selection().remove(s.tag);
+      }
+      model.component(comp).selection().create(s.tag, "Explicit");
+      model.component(comp).selection(s.tag).geom(geom, s.dim);
+      model.component(comp).selection(s.tag).set(s.ids);
+      model.component(comp).selection(s.tag).label(s.label);
+    }
+  }
+
+  /** Java source for the registered selections, for pasting into a generated model. */
+  public String toJava(String comp, String geom) {
+    StringBuilder out = new StringBuilder();
+    for (Named s : selections) {
+      String sel = "    model.component(\"" + comp + "\").selection(\"" + s.tag + "\")";
+      out.append("    model.component(\"").append(comp).append("\").selection().create(\"")
+          .append(s.tag).append("\", \"Explicit\");\n");
+      out.append(sel).append(".geom(\"").append(geom).append("\", ").append(s.dim).append(");\n");
+      out.append(sel).append(".set(");
+      for (int i = 0; i < s.ids.length; i++) {
+        out.append(i > 0 ? ", " : "").append(s.ids[i]);
+      }
+      out.append(");\n");
+      out.append(sel).append(".label(\"").append(s.label).append("\");\n");
+    }
+    return out.toString();
+  }
+
+  private static final class Named {
+    final String tag;
+    final String label;
+    final int dim;
+    final int[] ids;
+
+    Named(String tag, String label, int dim, int[] ids) {
+      this.tag = tag;
+      this.label = label;
+      this.dim = dim;
+      this.ids = ids;
+    }
+  }
+}
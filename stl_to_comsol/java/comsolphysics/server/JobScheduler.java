@@ -0,0 +1,679 @@
+/*
+ * JobScheduler.java
+ * Runs a queue of model jobs stage by stage under a seat, core and memory budget.
+ */
+
+package comsolphysics.server;
+
+import comsolphysics.pipeline.StageEvents;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs many model jobs at once instead of one room after another. Each
+ * stage of a job ({@code run()}, {@code run2(model)}, ...) is scheduled on
+ * its own, so one room can mesh while another solves; a job's stages still
+ * run in order.
+ *
+ * <ul>
+ *   <li>A job holds a license seat and its memory estimate from its first
+ *       stage until its last, since its model lives that long.</li>
+ *   <li>Each stage runs on a fork/join pool of its core share: one core for
+ *       stages estimated under {@link #LIGHT_STAGE_SECONDS}; others wait
+ *       for at least cores/seats and split what is free evenly with the
+ *       stages starting together.</li>
+ *   <li>Ready stages go shortest remaining job first, so small rooms are
+ *       not stuck behind whole-floor scans; started jobs finish sooner and
+ *       free their seat.</li>
+ *   <li>Backpressure: a new job waits while its memory estimate exceeds
+ *       what is left of the budget or of the machine's available memory
+ *       ({@code MemAvailable}), unless nothing else is running.</li>
+ * </ul>
+ *
+ * <p>Estimates come from each class's {@code <class>_events.jsonl} (see
+ * {@link StageEvents}): the median seconds of each stage and the peak
+ * resident memory of runs made outside the scheduler. Without history, a
+ * stage is assumed to take {@link #DEFAULT_STAGE_SECONDS} per MiB of the
+ * job's first argument (the scan), at least that once. The scheduler
+ * appends its own stage events, with core share and queueing time, to the
+ * same files; a failed stage's event carries its error and stack trace.
+ *
+ * <pre>
+ *   java -cp "$COMSOL/plugins/*:build/classes" comsolphysics.server.JobScheduler \
+ *       --seats 8 --cores 64 --memory 200g queue.txt
+ * </pre>
+ *
+ * <p>The queue file has one job per line: {@code class classpath [args...]},
+ * optionally preceded by {@code seconds=30,5,600} (per-stage estimates) and
+ * {@code memory=6g}. {@code --executor local} runs the queue on
+ * {@link StageExecutor#local} instead of COMSOL, scaled by
+ * {@code --time-scale}.
+ */
+public final class JobScheduler {
+
+  /** Stages estimated shorter than this run on one core. */
+  public static final double LIGHT_STAGE_SECONDS = 5;
+  /** Estimate for a stage with no history, per MiB of scan. */
+  public static final double DEFAULT_STAGE_SECONDS = 60;
+  /** Stage count assumed for a job not yet opened and without history. */
+  public static final int DEFAULT_STAGES = 6;
+  public static final long DEFAULT_JOB_MEMORY = 4L << 30;
+
+  /** One stage's expected wall time at its full core share. */
+  public static final class Estimate {
+    public final double seconds;
+    /** From history or the queue file rather than the default. */
+    public final boolean known;
+
+    Estimate(double seconds, boolean known) {
+      this.seconds = seconds;
+      this.known = known;
+    }
+  }
+
+  /** How one stage ran. */
+  public static final class StageResult {
+    public final String stage;
+    public final int cores;
+    public final double queuedSeconds;
+    public final double seconds;
+
+    StageResult(String stage, int cores, double queuedSeconds, double seconds) {
+      this.stage = stage;
+      this.cores = cores;
+      this.queuedSeconds = queuedSeconds;
+      this.seconds = seconds;
+    }
+  }
+
+  /** A model class to run, and, once the scheduler has run it, how it went. */
+  public static final class Job {
+
+    public final String className;
+    public final String classpath;
+    public final String[] args;
+    private final int order;
+    private final List<Estimate> estimates;
+    private final double defaultSeconds;
+    private final long memory;
+    private int maxCores = 1;
+
+    // Guarded by the scheduler's lock
+    private StageExecutor.Session session;
+    private List<String> stages;
+    private int next;
+    private boolean admitted;
+    private boolean running;
+    private boolean finished;
+    private Throwable error;
+    private long readySince;
+    private StageEvents events;
+    private final List<StageResult> results = new ArrayList<>();
+
+    Job(int order, String className, String classpath, String[] args,
+        List<Estimate> estimates, double defaultSeconds, long memory) {
+      this.order = order;
+      this.className = className;
+      this.classpath = classpath;
+      this.args = args;
+      this.estimates = estimates;
+      this.defaultSeconds = defaultSeconds;
+      this.memory = memory;
+    }
+
+    /** Stages the job has, or is expected to have before it is opened. */
+    public synchronized int stageCount() {
+      if (stages != null) {
+        return stages.size();
+      }
+      return estimates.isEmpty() ? DEFAULT_STAGES : estimates.size();
+    }
+
+    public Estimate estimate(int stage) {
+      return stage < estimates.size() ? estimates.get(stage) : new Estimate(defaultSeconds, false);
+    }
+
+    /** The widest core share stage {@code stage} is given. */
+    public int maxCores(int stage) {
+      return estimate(stage).seconds < LIGHT_STAGE_SECONDS ? 1 : maxCores;
+    }
+
+    public long memory() {
+      return memory;
+    }
+
+    public synchronized boolean failed() {
+      return error != null;
+    }
+
+    public synchronized Throwable error() {
+      return error;
+    }
+
+    public synchronized List<StageResult> results() {
+      return new ArrayList<>(results);
+    }
+
+    double remainingSeconds() {
+      double sum = 0;
+      for (int s = next, n = stageCount(); s < n; s++) {
+        sum += estimate(s).seconds;
+      }
+      return sum;
+    }
+
+    String stageName(int stage) {
+      return stages != null ? stages.get(stage) : stage == 0 ? "run" : "run" + (stage + 1);
+    }
+  }
+
+  private final StageExecutor executor;
+  private final int seats;
+  private final int cores;
+  private final long memoryBudget;
+  private final int maxStageCores;
+  private final List<Job> jobs = new ArrayList<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private boolean recordEvents = true;
+  private PrintStream console = System.out;
+  private int seatsUsed;
+  private int coresUsed;
+  private long memoryReserved;
+
+  /**
+   * @param seats jobs that may hold a model at once
+   * @param cores cores shared by the running stages
+   * @param memoryBudget bytes of job memory estimates that may be admitted at once
+   * @param maxStageCores widest share one stage gets
+   */
+  public JobScheduler(StageExecutor executor, int seats, int cores, long memoryBudget, int maxStageCores) {
+    if (seats < 1 || cores < 1 || maxStageCores < 1) {
+      throw new IllegalArgumentException("seats, cores and maxStageCores must be at least 1");
+    }
+    this.executor = executor;
+    this.seats = seats;
+    this.cores = cores;
+    this.memoryBudget = memoryBudget;
+    this.maxStageCores = Math.min(maxStageCores, cores);
+  }
+
+  /** Whether to append stage events to {@code <class>_events.jsonl} (on by default). */
+  public JobScheduler events(boolean on) {
+    this.recordEvents = on;
+    return this;
+  }
+
+  /**
+   * Queue a job, estimated from its history in the working directory.
+   *
+   * @param seconds per-stage estimates that override the history, or null
+   * @param memory bytes the job needs, or 0 for its history or the default
+   */
+  public Job add(String className, String classpath, String[] args, double[] seconds, long memory) {
+    Path history = Paths.get(className + "_events.jsonl");
+    List<Estimate> estimates = new ArrayList<>();
+    long peak = 0;
+    if (seconds != null) {
+      for (double s : seconds) {
+        estimates.add(new Estimate(s, true));
+      }
+    } else if (Files.isReadable(history)) {
+      estimates = history(history);
+    }
+    if (memory <= 0 && Files.isReadable(history)) {
+      peak = peakMemory(history);
+    }
+    double mib = 1;
+    if (args.length > 0 && Files.isRegularFile(Paths.get(args[0]))) {
+      try {
+        mib = Math.max(1, Files.size(Paths.get(args[0])) / (double) (1 << 20));
+      } catch (IOException e) {
+        // Keep the minimum
+      }
+    }
+    long need = memory > 0 ? memory : peak > 0 ? peak : DEFAULT_JOB_MEMORY;
+    Job job = new Job(jobs.size(), className, classpath, args, estimates, DEFAULT_STAGE_SECONDS * mib, need);
+    job.maxCores = maxStageCores;
+    jobs.add(job);
+    return job;
+  }
+
+  public List<Job> jobs() {
+    return Collections.unmodifiableList(jobs);
+  }
+
+  /** Run every queued job; returns once all have finished or failed. */
+  public List<Job> run() throws InterruptedException {
+    console = System.out;
+    boolean prefix = !ThreadOutput.installed();
+    if (prefix) {
+      ThreadOutput.install();
+    }
+    long start = System.nanoTime();
+    lock.lock();
+    try {
+      for (Job job : jobs) {
+        job.readySince = start;
+      }
+      while (!allFinished()) {
+        dispatch(prefix);
+        // Woken when a stage ends; the timeout re-reads available memory
+        changed.await(1, TimeUnit.SECONDS);
+      }
+    } finally {
+      lock.unlock();
+    }
+    return jobs();
+  }
+
+  private boolean allFinished() {
+    for (Job job : jobs) {
+      if (!job.finished) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Start every ready stage the budget allows. Called with the lock held. */
+  private void dispatch(boolean prefix) {
+    int free = cores - coresUsed;
+    if (free <= 0) {
+      return;
+    }
+    List<Job> ready = new ArrayList<>();
+    for (Job job : jobs) {
+      if (!job.finished && !job.running) {
+        ready.add(job);
+      }
+    }
+    ready.sort(Comparator.comparingDouble(Job::remainingSeconds).thenComparingInt(j -> j.order));
+
+    int seatsFree = seats - seatsUsed;
+    long memoryFree = memoryBudget - memoryReserved;
+    long available = availableMemory();
+    List<Job> starting = new ArrayList<>();
+    int spare = free;
+    for (Job job : ready) {
+      int min = minCores(job, job.next);
+      if (min > spare) {
+        continue;
+      }
+      if (!job.admitted) {
+        if (seatsFree == 0) {
+          continue;
+        }
+        boolean idle = coresUsed == 0 && seatsUsed == 0 && starting.isEmpty();
+        if (!idle && (job.memory > memoryFree || job.memory > available)) {
+          // A smaller job further down may still fit
+          continue;
+        }
+        seatsFree--;
+        memoryFree -= job.memory;
+        available -= job.memory;
+      }
+      spare -= min;
+      starting.add(job);
+    }
+    // Cores left after every minimum go to the wider stages, evenly
+    for (int i = 0; i < starting.size(); i++) {
+      Job job = starting.get(i);
+      int min = minCores(job, job.next);
+      int share = Math.min(job.maxCores(job.next), min + spare / (starting.size() - i));
+      spare -= share - min;
+      start(job, share, prefix);
+    }
+  }
+
+  /**
+   * Fewest cores a stage starts with: one for light stages, otherwise an
+   * even split of the budget over the seats, so a long solve does not start
+   * on the one core left over and keep it for its whole run.
+   */
+  private int minCores(Job job, int stage) {
+    return Math.min(job.maxCores(stage), Math.max(1, cores / seats));
+  }
+
+  private void start(Job job, int share, boolean prefix) {
+    if (!job.admitted) {
+      job.admitted = true;
+      seatsUsed++;
+      memoryReserved += job.memory;
+    }
+    job.running = true;
+    coresUsed += share;
+    int stage = job.next;
+    double queued = (System.nanoTime() - job.readySince) / 1e9;
+    ForkJoinPool pool = new ForkJoinPool(share);
+    pool.execute(() -> {
+      try {
+        runStage(job, stage, share, queued, pool, prefix);
+      } finally {
+        pool.shutdown();
+      }
+    });
+  }
+
+  /** Runs on the stage's pool, without the lock until the stage is done. */
+  private void runStage(Job job, int stage, int share, double queued, ForkJoinPool pool, boolean prefix) {
+    String name = job.className;
+    ThreadOutput.Redirect out = prefix
+        ? ThreadOutput.redirect((stream, text) -> console.println("[" + name + "] " + text))
+        : null;
+    long start = System.nanoTime();
+    StageEvents.Span span = null;
+    Throwable error = null;
+    try {
+      // Events first, so a job whose class cannot be opened still logs why
+      if (recordEvents && job.events == null) {
+        job.events = StageEvents.open(name);
+      }
+      if (job.events != null) {
+        span = job.events.start("stage" + (stage + 1));
+      }
+      if (job.session == null) {
+        StageExecutor.Session session = executor.open(job);
+        synchronized (job) {
+          job.session = session;
+          job.stages = session.stages();
+        }
+      }
+      job.session.run(stage, pool);
+    } catch (Throwable t) {
+      error = t;
+    } finally {
+      if (out != null) {
+        out.close();
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    String stageName = job.stageName(stage);
+    if (span != null) {
+      span.put("message", stageName).put("cores", share).put("queued_seconds", queued)
+          .put("scheduled", true).put("ok", error == null);
+      if (error != null) {
+        span.put("error", String.valueOf(error)).put("trace", stackTrace(error));
+      }
+      if (job.session != null) {
+        job.session.record(span);
+      } else {
+        span.end(null);
+      }
+    }
+    if (error == null) {
+      console.println(String.format(Locale.ROOT, "%s %s: %.1f s on %d cores (queued %.1f s)",
+          name, stageName, seconds, share, queued));
+    } else {
+      console.println(name + " " + stageName + " failed: " + error
+          + (span != null ? " (trace in " + name + "_events.jsonl)" : ""));
+    }
+
+    lock.lock();
+    try {
+      synchronized (job) {
+        job.results.add(new StageResult(stageName, share, queued, seconds));
+        job.error = error;
+      }
+      coresUsed -= share;
+      job.running = false;
+      job.next = stage + 1;
+      job.readySince = System.nanoTime();
+      if (error != null || job.next >= job.stageCount()) {
+        finish(job);
+      }
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Release the job's seat and memory. Called with the lock held. */
+  private void finish(Job job) {
+    job.finished = true;
+    if (job.session != null) {
+      job.session.close();
+    }
+    if (job.events != null) {
+      try {
+        job.events.close();
+      } catch (IOException e) {
+        console.println(job.className + ": " + e.getMessage());
+      }
+    }
+    if (job.admitted) {
+      seatsUsed--;
+      memoryReserved -= job.memory;
+    }
+  }
+
+  private static String stackTrace(Throwable t) {
+    StringWriter w = new StringWriter();
+    t.printStackTrace(new PrintWriter(w));
+    return w.toString();
+  }
+
+  private static final Pattern STAGE = Pattern.compile("\"stage\":\"stage(\\d+)\"");
+  private static final Pattern SECONDS = Pattern.compile("[{,]\"seconds\":([0-9.eE+-]+)");
+  private static final Pattern RSS = Pattern.compile("[{,]\"rss\":(\\d+)");
+
+  /** Median seconds of {@code stage1}, {@code stage2}, ... in a {@link StageEvents} file. */
+  static List<Estimate> history(Path events) {
+    Map<Integer, List<Double>> byStage = new HashMap<>();
+    for (String line : lines(events)) {
+      Matcher stage = STAGE.matcher(line);
+      Matcher seconds = SECONDS.matcher(line);
+      if (stage.find() && seconds.find() && !line.contains("\"ok\":false")) {
+        byStage.computeIfAbsent(Integer.parseInt(stage.group(1)), k -> new ArrayList<>())
+            .add(Double.parseDouble(seconds.group(1)));
+      }
+    }
+    List<Estimate> estimates = new ArrayList<>();
+    for (int s = 1; byStage.containsKey(s); s++) {
+      List<Double> times = byStage.get(s);
+      Collections.sort(times);
+      estimates.add(new Estimate(times.get(times.size() / 2), true));
+    }
+    return estimates;
+  }
+
+  /**
+   * Peak resident memory over the events of runs in their own process;
+   * events this scheduler wrote share one process with other jobs.
+   */
+  static long peakMemory(Path events) {
+    long peak = 0;
+    for (String line : lines(events)) {
+      Matcher rss = RSS.matcher(line);
+      if (!line.contains("\"scheduled\":true") && rss.find()) {
+        peak = Math.max(peak, Long.parseLong(rss.group(1)));
+      }
+    }
+    return peak;
+  }
+
+  private static List<String> lines(Path file) {
+    try {
+      return Files.readAllLines(file, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      return Collections.emptyList();
+    }
+  }
+
+  /** MemAvailable from /proc/meminfo in bytes, or {@code Long.MAX_VALUE} where that does not exist. */
+  static long availableMemory() {
+    try {
+      for (String line : Files.readAllLines(Paths.get("/proc/meminfo"), StandardCharsets.US_ASCII)) {
+        if (line.startsWith("MemAvailable:")) {
+          String kb = line.substring(13).trim();
+          return Long.parseLong(kb.substring(0, kb.indexOf(' '))) * 1024;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      // Not Linux
+    }
+    return Long.MAX_VALUE;
+  }
+
+  /** {@code 512m}, {@code 4g}, or plain bytes. */
+  static long bytes(String value) {
+    String v = value.trim().toLowerCase(Locale.ROOT);
+    int shift = v.endsWith("k") ? 10 : v.endsWith("m") ? 20 : v.endsWith("g") ? 30 : 0;
+    if (shift > 0) {
+      v = v.substring(0, v.length() - 1);
+    }
+    return (long) (Double.parseDouble(v) * (1L << shift));
+  }
+
+  /** Queue the jobs in {@code file}; see the class comment for the format. */
+  public void addQueue(Path file) throws IOException {
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      List<String> fields = new ArrayList<>(Arrays.asList(line.split("\\s+")));
+      double[] seconds = null;
+      long memory = 0;
+      while (!fields.isEmpty() && fields.get(0).contains("=")) {
+        String[] kv = fields.remove(0).split("=", 2);
+        if (kv[0].equals("seconds")) {
+          seconds = Arrays.stream(kv[1].split(",")).mapToDouble(Double::parseDouble).toArray();
+        } else if (kv[0].equals("memory")) {
+          memory = bytes(kv[1]);
+        } else {
+          throw new IllegalArgumentException("Unknown job option in " + file + ": " + kv[0]);
+        }
+      }
+      if (fields.size() < 2) {
+        throw new IllegalArgumentException("Expected: [seconds=..] [memory=..] class classpath [args...]: " + line);
+      }
+      add(fields.get(0), fields.get(1), fields.subList(2, fields.size()).toArray(new String[0]), seconds, memory);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int available = Runtime.getRuntime().availableProcessors();
+    int seats = 1;
+    int cores = available;
+    int stageCores = 0;
+    long memory = 0;
+    String executorName = "comsol";
+    double timeScale = 1;
+    String comsolHost = "localhost";
+    int comsolPort = ModelServer.DEFAULT_COMSOL_PORT;
+    List<Path> queues = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      String value = i + 1 < args.length ? args[i + 1] : null;
+      switch (args[i]) {
+        case "--seats":
+          seats = Integer.parseInt(value);
+          i++;
+          break;
+        case "--cores":
+          cores = Integer.parseInt(value);
+          i++;
+          break;
+        case "--stage-cores":
+          stageCores = Integer.parseInt(value);
+          i++;
+          break;
+        case "--memory":
+          memory = bytes(value);
+          i++;
+          break;
+        case "--executor":
+          executorName = value;
+          i++;
+          break;
+        case "--time-scale":
+          timeScale = Double.parseDouble(value);
+          i++;
+          break;
+        case "--comsol-host":
+          comsolHost = value;
+          i++;
+          break;
+        case "--comsol-port":
+          comsolPort = Integer.parseInt(value);
+          i++;
+          break;
+        default:
+          if (args[i].startsWith("--")) {
+            queues.clear();
+            i = args.length;
+          } else {
+            queues.add(Paths.get(args[i]));
+          }
+      }
+    }
+    if (queues.isEmpty()) {
+      System.err.println("usage: JobScheduler [--seats N] [--cores N] [--stage-cores N] [--memory 64g]"
+          + " [--executor comsol|local] [--time-scale X] [--comsol-host H] [--comsol-port N] queue.txt ...");
+      System.exit(2);
+    }
+    if (memory <= 0) {
+      long machine = availableMemory();
+      memory = machine == Long.MAX_VALUE ? Runtime.getRuntime().maxMemory() : machine;
+    }
+    StageExecutor executor;
+    ModelRuntime runtime;
+    if ("local".equals(executorName)) {
+      executor = StageExecutor.local(timeScale);
+      runtime = ModelRuntime.local();
+    } else if ("comsol".equals(executorName)) {
+      runtime = ModelRuntime.comsol(comsolHost, comsolPort);
+      executor = StageExecutor.models(runtime);
+    } else {
+      throw new IllegalArgumentException("Unknown executor: " + executorName);
+    }
+    // Left at 0, a stage may take every core the budget has
+    JobScheduler scheduler = new JobScheduler(executor, seats, cores, memory, stageCores > 0 ? stageCores : cores);
+    for (Path queue : queues) {
+      scheduler.addQueue(queue);
+    }
+    System.out.println(String.format(Locale.ROOT, "%d jobs, %d seats, %d cores, %.1f GiB (%s)",
+        scheduler.jobs.size(), seats, cores, memory / (double) (1L << 30), runtime));
+
+    runtime.open();
+    long start = System.nanoTime();
+    List<Job> done;
+    try {
+      done = scheduler.run();
+    } finally {
+      runtime.close();
+    }
+    double wall = (System.nanoTime() - start) / 1e9;
+    double coreSeconds = 0;
+    int failed = 0;
+    for (Job job : done) {
+      for (StageResult r : job.results()) {
+        coreSeconds += r.cores * r.seconds;
+      }
+      failed += job.failed() ? 1 : 0;
+    }
+    System.out.println(String.format(Locale.ROOT, "%d jobs, %d failed in %.1f s; %.0f%% of %d cores allocated",
+        done.size(), failed, wall, 100 * coreSeconds / (cores * Math.max(wall, 1e-9)), cores));
+    System.exit(failed == 0 ? 0 : 1);
+  }
+}
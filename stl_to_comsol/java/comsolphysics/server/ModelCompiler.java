@@ -0,0 +1,540 @@
+/*
+ * ModelCompiler.java
+ * In-process javac for generated model sources, with an on-disk bytecode cache.
+ */
+
+package comsolphysics.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles generated model classes with the JDK's own {@link JavaCompiler}
+ * instead of one {@code comsol compile} process per file. Class files are
+ * written to memory, and all sources that miss the cache go through a
+ * single compiler invocation, so a nightly batch of rooms pays for javac
+ * start-up and the COMSOL API symbol tables once.
+ *
+ * <p>The bytecode of each source is stored under a SHA-256 of the source
+ * text, its file name, the compiler options and the classpath: jars by
+ * path, size and modification time, directories by the contents of each
+ * file. {@code comsol_executor.py} rebuilds the helper library in
+ * {@code build/classes} in every process, which changes the times but
+ * not the bytes.
+ * Identical sources, common among near-identical rooms, hit the same
+ * entry. Entries are evicted least recently used first once the directory
+ * grows past its byte budget, as in
+ * {@link comsolphysics.mesh.MeshCache}.
+ *
+ * <pre>
+ *   ModelCompiler compiler = ModelCompiler.openDefault(classpath);
+ *   for (ModelCompiler.Result r : compiler.compile(sources).values()) {
+ *     r.writeClasses(r.source.getParent());
+ *   }
+ * </pre>
+ *
+ * <p>{@code java comsolphysics.server.ModelCompiler [--cache DIR]
+ * [--classpath CP] A.java B.java ...} does the same from the command line.
+ * It needs a JDK; a JRE has no system compiler.
+ */
+public final class ModelCompiler {
+
+  /**
+   * {@code class_cache} beside the directory or jar this class was loaded
+   * from: {@code java/build/class_cache}, where {@code comsol_executor.py}
+   * points {@code --cache}, so the model server and batch compiles share
+   * one cache. {@code class_cache} in the working directory if the
+   * location is unknown.
+   */
+  public static final Path DEFAULT_DIR = defaultDir();
+  public static final long DEFAULT_MAX_BYTES = 256L << 20;
+  public static final int MAGIC = 0x4D434331; // "MCC1"
+
+  /** Same target as the helper library build in comsol_executor.py. */
+  private static final List<String> OPTIONS = Arrays.asList(
+      "-encoding", "UTF-8", "--release", "11", "-g", "-nowarn", "-proc:none", "-implicit:none");
+  /** Bumped when the key recipe or entry layout changes so old entries stop matching. */
+  private static final String KEY_VERSION = "modelcompiler-2";
+  private static final String EXTENSION = ".classes";
+
+  private final Path dir;
+  private final long maxBytes;
+  private final List<String> classpath;
+
+  /** Outcome for one source: its class files, or the compiler's errors. */
+  public static final class Result {
+
+    public final Path source;
+    /** Whether the bytecode came from the cache. */
+    public final boolean cached;
+    /** Binary class name to class file bytes; empty on failure. */
+    public final Map<String, byte[]> classes;
+    /** Compiler errors, one per line; empty on success. */
+    public final String errors;
+
+    Result(Path source, boolean cached, Map<String, byte[]> classes, String errors) {
+      this.source = source;
+      this.cached = cached;
+      this.classes = Collections.unmodifiableMap(classes);
+      this.errors = errors;
+    }
+
+    public boolean ok() {
+      return errors.isEmpty() && !classes.isEmpty();
+    }
+
+    /** Write {@code Name.class} (and {@code Name$Inner.class}, ...) under {@code outDir} by package. */
+    public void writeClasses(Path outDir) throws IOException {
+      for (Map.Entry<String, byte[]> c : classes.entrySet()) {
+        Path file = outDir.resolve(c.getKey().replace('.', File.separatorChar) + ".class");
+        if (file.getParent() != null) {
+          Files.createDirectories(file.getParent());
+        }
+        Files.write(file, c.getValue());
+      }
+    }
+  }
+
+  /**
+   * @param classpath entries as given to javac; an entry ending in
+   *     {@code *} stands for every jar in that directory
+   */
+  public ModelCompiler(Path dir, long maxBytes, List<String> classpath) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+    }
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    this.classpath = expand(classpath);
+  }
+
+  public static ModelCompiler openDefault(List<String> classpath) {
+    return new ModelCompiler(DEFAULT_DIR, DEFAULT_MAX_BYTES, classpath);
+  }
+
+  private static Path defaultDir() {
+    try {
+      CodeSource code = ModelCompiler.class.getProtectionDomain().getCodeSource();
+      if (code != null) {
+        Path parent = Paths.get(code.getLocation().toURI()).getParent();
+        if (parent != null) {
+          return parent.resolve("class_cache");
+        }
+      }
+    } catch (URISyntaxException | RuntimeException e) {
+      // Not loaded from a file
+    }
+    return Paths.get("class_cache");
+  }
+
+  /**
+   * Compile {@code sources}, from the cache where possible and otherwise in
+   * one javac run. Results are in the order of {@code sources}. Cache I/O
+   * errors are reported and only cost a recompile.
+   */
+  public Map<Path, Result> compile(List<Path> sources) throws IOException {
+    String fingerprint = fingerprint();
+    Map<Path, Result> results = new LinkedHashMap<>();
+    Map<Path, String> keys = new HashMap<>();
+    // One source per key: identical files compile once
+    Map<String, Path> misses = new LinkedHashMap<>();
+    for (Path source : sources) {
+      String key = key(source, fingerprint);
+      keys.put(source, key);
+      Result hit = misses.containsKey(key) ? null : load(source, dir.resolve(key + EXTENSION));
+      if (hit != null) {
+        results.put(source, hit);
+      } else {
+        misses.putIfAbsent(key, source);
+        results.put(source, null);
+      }
+    }
+    if (!misses.isEmpty()) {
+      Map<Path, Result> built = new HashMap<>();
+      for (List<Path> round : rounds(misses.values())) {
+        built.putAll(compileAll(round));
+      }
+      for (Map.Entry<String, Path> m : misses.entrySet()) {
+        Result r = built.get(m.getValue());
+        if (r.ok()) {
+          try {
+            store(dir.resolve(m.getKey() + EXTENSION), r.classes);
+          } catch (IOException e) {
+            System.out.println("Class cache: cannot store " + m.getValue().getFileName() + " (" + e.getMessage() + ")");
+          }
+        }
+      }
+      for (Path source : sources) {
+        if (results.get(source) == null) {
+          Result r = built.get(misses.get(keys.get(source)));
+          results.put(source, new Result(source, false, r.classes, r.errors));
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Split {@code sources} so no javac run sees two files of the same name,
+   * which would define the same class twice (room2.java from two rooms).
+   */
+  private static List<List<Path>> rounds(Iterable<Path> sources) {
+    List<List<Path>> rounds = new ArrayList<>();
+    Map<String, Integer> seen = new HashMap<>();
+    for (Path source : sources) {
+      int round = seen.merge(source.getFileName().toString(), 1, Integer::sum) - 1;
+      if (round == rounds.size()) {
+        rounds.add(new ArrayList<>());
+      }
+      rounds.get(round).add(source);
+    }
+    return rounds;
+  }
+
+  /**
+   * One javac run over {@code sources}. javac writes nothing if any file has
+   * errors, so the files that compiled cleanly go through a second run.
+   */
+  private Map<Path, Result> compileAll(List<Path> sources) throws IOException {
+    Map<Path, Result> results = run(sources);
+    List<Path> clean = new ArrayList<>();
+    boolean anyFailed = false;
+    for (Result r : results.values()) {
+      if (!r.errors.isEmpty()) {
+        anyFailed = true;
+      } else if (r.classes.isEmpty()) {
+        clean.add(r.source);
+      }
+    }
+    if (anyFailed && !clean.isEmpty()) {
+      results.putAll(run(clean));
+    }
+    return results;
+  }
+
+  private Map<Path, Result> run(List<Path> sources) throws IOException {
+    JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+    if (javac == null) {
+      throw new IllegalStateException("No Java compiler in this runtime; run on a JDK");
+    }
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    List<String> options = new ArrayList<>(OPTIONS);
+    options.add("-classpath");
+    options.add(String.join(File.pathSeparator, classpath));
+    Map<URI, Path> byUri = new HashMap<>();
+    try (StandardJavaFileManager files = javac.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8);
+         MemoryFileManager memory = new MemoryFileManager(files)) {
+      List<JavaFileObject> units = new ArrayList<>();
+      for (Path source : sources) {
+        for (JavaFileObject unit : files.getJavaFileObjectsFromPaths(Collections.singletonList(source))) {
+          units.add(unit);
+          byUri.put(unit.toUri(), source);
+        }
+      }
+      javac.getTask(null, memory, diagnostics, options, null, units).call();
+
+      Map<Path, StringBuilder> errors = new HashMap<>();
+      for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+        if (d.getKind() != Diagnostic.Kind.ERROR) {
+          continue;
+        }
+        Path source = d.getSource() == null ? null : byUri.get(d.getSource().toUri());
+        String line = (d.getSource() == null ? "" : Paths.get(d.getSource().toUri()).getFileName() + ":"
+            + d.getLineNumber() + ": ") + "error: " + d.getMessage(Locale.ROOT);
+        // Errors with no file (a bad option, say) belong to every source
+        for (Path s : source == null ? sources : Collections.singletonList(source)) {
+          errors.computeIfAbsent(s, k -> new StringBuilder()).append(line).append('\n');
+        }
+      }
+      Map<Path, Result> results = new LinkedHashMap<>();
+      for (Path source : sources) {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (Map.Entry<String, MemoryFileManager.Output> c : memory.classes.entrySet()) {
+          if (source.equals(byUri.get(c.getValue().source))) {
+            classes.put(c.getKey(), c.getValue().bytes.toByteArray());
+          }
+        }
+        StringBuilder e = errors.get(source);
+        results.put(source, new Result(source, false, classes, e == null ? "" : e.toString().trim()));
+      }
+      return results;
+    }
+  }
+
+  /** Collects class files in memory, each tagged with the source it came from. */
+  private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    static final class Output {
+      final URI source;
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+      Output(URI source) {
+        this.source = source;
+      }
+    }
+
+    final Map<String, Output> classes = new LinkedHashMap<>();
+
+    MemoryFileManager(StandardJavaFileManager files) {
+      super(files);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location, String className,
+        JavaFileObject.Kind kind, FileObject sibling) {
+      Output out = new Output(sibling == null ? null : sibling.toUri());
+      classes.put(className, out);
+      return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+        @Override
+        public OutputStream openOutputStream() {
+          return out.bytes;
+        }
+      };
+    }
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // Cache entries: magic, class count, then per class its name and bytes (little-endian)
+
+  private static Result load(Path source, Path entry) {
+    if (!Files.isRegularFile(entry)) {
+      return null;
+    }
+    try (FileChannel ch = FileChannel.open(entry, StandardOpenOption.READ)) {
+      ByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).order(ByteOrder.LITTLE_ENDIAN);
+      if (map.getInt() != MAGIC) {
+        return null;
+      }
+      Map<String, byte[]> classes = new LinkedHashMap<>();
+      for (int n = map.getInt(); n > 0; n--) {
+        byte[] name = new byte[map.getInt()];
+        map.get(name);
+        byte[] bytes = new byte[map.getInt()];
+        map.get(bytes);
+        classes.put(new String(name, StandardCharsets.UTF_8), bytes);
+      }
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+      return new Result(source, true, classes, "");
+    } catch (IOException | RuntimeException e) {
+      System.out.println("Class cache: cannot read " + entry.getFileName() + " (" + e.getMessage() + ")");
+      return null;
+    }
+  }
+
+  /** Write to a temporary name and move into place, so readers never see a partial entry. */
+  private void store(Path entry, Map<String, byte[]> classes) throws IOException {
+    Files.createDirectories(dir);
+    int bytes = 8;
+    for (Map.Entry<String, byte[]> c : classes.entrySet()) {
+      bytes += 8 + c.getKey().getBytes(StandardCharsets.UTF_8).length + c.getValue().length;
+    }
+    ByteBuffer buf = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    buf.putInt(MAGIC).putInt(classes.size());
+    for (Map.Entry<String, byte[]> c : classes.entrySet()) {
+      byte[] name = c.getKey().getBytes(StandardCharsets.UTF_8);
+      buf.putInt(name.length).put(name).putInt(c.getValue().length).put(c.getValue());
+    }
+    Path tmp = dir.resolve(entry.getFileName() + ".tmp");
+    Files.write(tmp, buf.array());
+    Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    evict(entry);
+  }
+
+  /** Delete least recently used entries until the cache fits its budget, keeping {@code keep}. */
+  void evict(Path keep) throws IOException {
+    List<Path> entries = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + EXTENSION)) {
+      for (Path p : files) {
+        entries.add(p);
+      }
+    }
+    int n = entries.size();
+    long[] size = new long[n];
+    long[] used = new long[n];
+    Integer[] order = new Integer[n];
+    long total = 0;
+    for (int i = 0; i < n; i++) {
+      size[i] = Files.size(entries.get(i));
+      used[i] = Files.getLastModifiedTime(entries.get(i)).toMillis();
+      order[i] = i;
+      total += size[i];
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(used[a], used[b]));
+    for (int k = 0; k < n && total > maxBytes; k++) {
+      Path p = entries.get(order[k]);
+      if (!p.equals(keep) && Files.deleteIfExists(p)) {
+        total -= size[order[k]];
+      }
+    }
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // Keys
+
+  /** Hex SHA-256 of the source text, its file name, the options and the classpath fingerprint. */
+  private static String key(Path source, String fingerprint) throws IOException {
+    MessageDigest md = sha256();
+    update(md, KEY_VERSION);
+    update(md, String.join(" ", OPTIONS));
+    update(md, fingerprint);
+    // The public class has to match the file name
+    update(md, source.getFileName().toString());
+    md.update(Files.readAllBytes(source));
+    return hex(md.digest());
+  }
+
+  /** Path, size and modification time of each jar; name and contents of each file in a directory entry. */
+  private String fingerprint() throws IOException {
+    MessageDigest md = sha256();
+    update(md, System.getProperty("java.version"));
+    for (String entry : classpath) {
+      Path p = Paths.get(entry).toAbsolutePath();
+      update(md, p.toString());
+      if (Files.isDirectory(p)) {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(p)) {
+          files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path f : files) {
+          update(md, p.relativize(f).toString());
+          md.update(Files.readAllBytes(f));
+        }
+      } else if (Files.exists(p)) {
+        // Jars (the COMSOL API is hundreds of MB) are trusted to change size or time when they change
+        BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+        update(md, a.size() + ":" + a.lastModifiedTime().toMillis());
+      }
+    }
+    return hex(md.digest());
+  }
+
+  /** Classpath entries with {@code dir/*} replaced by the jars in {@code dir}, in name order. */
+  private static List<String> expand(List<String> classpath) {
+    List<String> out = new ArrayList<>();
+    for (String entry : classpath) {
+      if (entry.isEmpty()) {
+        continue;
+      }
+      if (!entry.equals("*") && !entry.endsWith(File.separator + "*") && !entry.endsWith("/*")) {
+        out.add(entry);
+        continue;
+      }
+      Path jars = Paths.get(entry.substring(0, entry.length() - 1));
+      List<String> found = new ArrayList<>();
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(jars.toString().isEmpty() ? Paths.get(".") : jars,
+          "*.{jar,JAR}")) {
+        for (Path jar : files) {
+          found.add(jar.toString());
+        }
+      } catch (IOException e) {
+        // A missing directory contributes nothing, as with javac
+      }
+      Collections.sort(found);
+      out.addAll(found);
+    }
+    return out;
+  }
+
+  private static void update(MessageDigest md, String s) {
+    byte[] bytes = String.valueOf(s).getBytes(StandardCharsets.UTF_8);
+    md.update((byte) (bytes.length >>> 24));
+    md.update((byte) (bytes.length >>> 16));
+    md.update((byte) (bytes.length >>> 8));
+    md.update((byte) bytes.length);
+    md.update(bytes);
+  }
+
+  private static String hex(byte[] digest) {
+    StringBuilder hex = new StringBuilder(64);
+    for (byte b : digest) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Compile the given sources in one batch and write each one's class files beside it. */
+  public static void main(String[] args) throws IOException {
+    Path cache = DEFAULT_DIR;
+    String cp = System.getProperty("java.class.path");
+    List<Path> sources = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--cache") && i + 1 < args.length) {
+        cache = Paths.get(args[++i]);
+      } else if (args[i].equals("--classpath") && i + 1 < args.length) {
+        cp = args[++i];
+      } else {
+        sources.add(Paths.get(args[i]));
+      }
+    }
+    if (sources.isEmpty()) {
+      System.err.println("usage: ModelCompiler [--cache DIR] [--classpath CP] A.java [B.java ...]");
+      System.exit(2);
+    }
+    long start = System.nanoTime();
+    ModelCompiler compiler = new ModelCompiler(cache, DEFAULT_MAX_BYTES, Arrays.asList(cp.split(File.pathSeparator)));
+    int failed = 0;
+    int cached = 0;
+    for (Result r : compiler.compile(sources).values()) {
+      if (r.ok()) {
+        Path out = r.source.toAbsolutePath().getParent();
+        r.writeClasses(out);
+        cached += r.cached ? 1 : 0;
+        System.out.println((r.cached ? "cached   " : "compiled ") + r.source);
+      } else {
+        failed++;
+        System.out.println("FAILED   " + r.source);
+        System.out.println(r.errors);
+      }
+    }
+    System.out.printf("%d sources, %d from cache, %d failed in %.1f s%n",
+        sources.size(), cached, failed, (System.nanoTime() - start) / 1e9);
+    System.exit(failed == 0 ? 0 : 1);
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * ModelJob.java
+ * One request to a ModelServer: a model class run in its own classloader.
+ */
+
+package comsolphysics.server;
+
+import com.comsol.model.Model;
+import comsolphysics.pipeline.ModelTags;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Loads a generated model class from its own classpath in a fresh
+ * {@link URLClassLoader}, so a recompiled class is picked up on the next
+ * job while the COMSOL API and {@code comsolphysics} classes, loaded once by
+ * the server, stay warm. {@link Mode#MAIN} calls {@code main(args)};
+ * {@link Mode#STAGES} calls {@code run()}, then {@code run2(model)},
+ * {@code run3(model)}, ... for as long as the class has them, reporting
+ * each. Tags the job takes from {@link ModelTags#unique} are kept in
+ * {@link #models} so the server can free just its models.
+ */
+final class ModelJob {
+
+  enum Mode {
+    MAIN,
+    STAGES
+  }
+
+  /** Where a job reports progress: one protocol line per call. */
+  interface Events {
+    void send(String type, Object... fields);
+  }
+
+  final long id;
+  final Mode mode;
+  final URL[] classpath;
+  final String className;
+  final String[] args;
+  private final List<String> models = Collections.synchronizedList(new ArrayList<>());
+
+  private ModelJob(long id, Mode mode, URL[] classpath, String className, String[] args) {
+    this.id = id;
+    this.mode = mode;
+    this.classpath = classpath;
+    this.className = className;
+    this.args = args;
+  }
+
+  /** From request fields {@code run, main|stages, classpath, class, args...}. */
+  static ModelJob parse(long id, String[] fields) {
+    if (fields.length < 4) {
+      throw new IllegalArgumentException("Expected: run <main|stages> <classpath> <class> [args...]");
+    }
+    Mode mode;
+    try {
+      mode = Mode.valueOf(fields[1].toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown mode: " + fields[1]);
+    }
+    return new ModelJob(id, mode, urls(fields[2]), fields[3],
+        Arrays.copyOfRange(fields, 4, fields.length));
+  }
+
+  /** The entries of a {@link File#pathSeparator}-separated classpath as URLs. */
+  static URL[] urls(String classpath) {
+    List<URL> urls = new ArrayList<>();
+    for (String entry : classpath.split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        try {
+          urls.add(Paths.get(entry).toAbsolutePath().toUri().toURL());
+        } catch (MalformedURLException e) {
+          throw new IllegalArgumentException("Bad classpath entry: " + entry, e);
+        }
+      }
+    }
+    return urls.toArray(new URL[0]);
+  }
+
+  /** Run the job on this thread; what it prints and each stage go to {@code events}. */
+  void run(Events events) throws Throwable {
+    Thread thread = Thread.currentThread();
+    ClassLoader previous = thread.getContextClassLoader();
+    ThreadOutput.Redirect out = ThreadOutput.redirect((stream, text) -> events.send(stream, id, text));
+    ModelTags.track(models);
+    try (URLClassLoader loader = new URLClassLoader(classpath, ModelJob.class.getClassLoader())) {
+      thread.setContextClassLoader(loader);
+      Class<?> c = Class.forName(className, true, loader);
+      if (mode == Mode.MAIN) {
+        invoke(c.getMethod("main", String[].class), (Object) args);
+      } else {
+        runStages(c, events);
+      }
+    } finally {
+      ModelTags.untrack();
+      out.close();
+      thread.setContextClassLoader(previous);
+    }
+  }
+
+  /** Tags of the models this job has created so far. */
+  List<String> models() {
+    synchronized (models) {
+      return new ArrayList<>(models);
+    }
+  }
+
+  private void runStages(Class<?> c, Events events) throws Throwable {
+    long start = System.nanoTime();
+    Model model = (Model) invoke(c.getMethod("run"));
+    events.send("stage", id, "run", seconds(start));
+    for (int k = 2; ; k++) {
+      Method stage;
+      try {
+        stage = c.getMethod("run" + k, Model.class);
+      } catch (NoSuchMethodException e) {
+        return;
+      }
+      start = System.nanoTime();
+      model = (Model) invoke(stage, model);
+      events.send("stage", id, "run" + k, seconds(start));
+    }
+  }
+
+  private static Object invoke(Method method, Object... args) throws Throwable {
+    try {
+      return method.invoke(null, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  static String seconds(long start) {
+    return String.format(Locale.ROOT, "%.3f", (System.nanoTime() - start) / 1e9);
+  }
+}
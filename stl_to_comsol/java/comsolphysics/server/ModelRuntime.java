@@ -0,0 +1,85 @@
+/*
+ * ModelRuntime.java
+ * The COMSOL side of a ModelServer: connect once, remove each job's models after it.
+ */
+
+package comsolphysics.server;
+
+import com.comsol.model.util.ModelUtil;
+import java.util.List;
+
+/**
+ * What a {@link ModelServer} does to the COMSOL API around the jobs it
+ * runs. {@link #comsol} keeps one connection to a running
+ * {@code comsol mphserver}, so the kernel is started once rather than per
+ * model. {@link #local} connects to nothing: jobs call whichever
+ * {@code com.comsol.model} classes are on the server's classpath, which
+ * offline means a stand-in API.
+ */
+public interface ModelRuntime {
+
+  /** Called once before the server accepts jobs. */
+  void open();
+
+  /**
+   * Called after each job with the tags of the models it created (see
+   * {@link comsolphysics.pipeline.ModelTags}), to free them. Jobs still
+   * running keep theirs.
+   */
+  void release(List<String> models);
+
+  void close();
+
+  /** Connects to {@code comsol mphserver} at {@code host:port}; a job's models are removed when it ends. */
+  static ModelRuntime comsol(String host, int port) {
+    return new ModelRuntime() {
+      @Override
+      public void open() {
+        ModelUtil.connect(host, port);
+      }
+
+      @Override
+      public void release(List<String> models) {
+        for (String tag : models) {
+          try {
+            ModelUtil.remove(tag);
+          } catch (RuntimeException e) {
+            System.err.println("ModelServer: could not remove model " + tag + ": " + e.getMessage());
+          }
+        }
+      }
+
+      @Override
+      public void close() {
+        ModelUtil.disconnect();
+      }
+
+      @Override
+      public String toString() {
+        return "COMSOL server " + host + ":" + port;
+      }
+    };
+  }
+
+  /** No COMSOL connection. */
+  static ModelRuntime local() {
+    return new ModelRuntime() {
+      @Override
+      public void open() {
+      }
+
+      @Override
+      public void release(List<String> models) {
+      }
+
+      @Override
+      public void close() {
+      }
+
+      @Override
+      public String toString() {
+        return "local";
+      }
+    };
+  }
+}
@@ -0,0 +1,379 @@
+/*
+ * ModelServer.java
+ * Long-lived process that runs generated model classes without a JVM or COMSOL start per run.
+ */
+
+package comsolphysics.server;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one JVM, and through {@link ModelRuntime} one COMSOL connection,
+ * for many model runs. Clients connect on the loopback interface and send
+ * one request per line; each job runs as a {@link ModelJob} on a fixed
+ * worker pool while its output streams back.
+ *
+ * <p>Protocol: UTF-8 lines of tab-separated fields, with backslash, tab,
+ * newline and carriage return in a field escaped as {@code \\ \t \n \r}.
+ *
+ * <pre>
+ *   &gt; run  stages|main  classpath  class  [args...]
+ *   &lt; accepted  id
+ *   &lt; out|err  id  line          (what the job prints)
+ *   &lt; stage  id  run2  seconds    (stages mode, per stage)
+ *   &lt; done  id  seconds | failed  id  message
+ *   &gt; compile  classpath  source.java  [source.java...]
+ *   &lt; accepted  id
+ *   &lt; compiled  id  source  cached|compiled | compile-error  id  source  errors
+ *   &lt; done  id  seconds | failed  id  message
+ *   &gt; ping            &lt; pong
+ *   &gt; shutdown        &lt; bye
+ * </pre>
+ *
+ * <p>{@code compile} goes through {@link ModelCompiler} in this JVM, so
+ * javac is loaded and JIT-compiled once, and writes each source's class
+ * files beside it. Its classpath is the server's own plus the one given.
+ *
+ * <p>A connection runs one job at a time; separate connections run in
+ * parallel up to the worker count. Relative paths in a model class resolve
+ * against the server's working directory, so start the server where the
+ * class expects to run.
+ *
+ * <pre>
+ *   java -cp "$COMSOL/plugins/*:build/classes" comsolphysics.server.ModelServer \
+ *       --port 0 --workers 1 --runtime comsol --comsol-port 2036
+ * </pre>
+ */
+public final class ModelServer implements Closeable {
+
+  public static final int DEFAULT_COMSOL_PORT = 2036;
+  /** First line the server prints, followed by the port; clients wait for it. */
+  public static final String READY = "ModelServer listening on port ";
+
+  private final ModelRuntime runtime;
+  private final ExecutorService workers;
+  private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+    Thread t = new Thread(r, "model-server-connection");
+    t.setDaemon(true);
+    return t;
+  });
+  private final AtomicLong jobIds = new AtomicLong();
+  private final CountDownLatch closed = new CountDownLatch(1);
+  private ServerSocket socket;
+
+  public ModelServer(ModelRuntime runtime, int workers) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("workers must be at least 1");
+    }
+    this.runtime = runtime;
+    AtomicInteger n = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(workers, r -> new Thread(r, "model-worker-" + n.incrementAndGet()));
+  }
+
+  /** Open the runtime and listen on {@code port} (0 for any free port). Returns the port. */
+  public synchronized int start(int port) throws IOException {
+    if (socket != null) {
+      throw new IllegalStateException("Already started");
+    }
+    runtime.open();
+    ThreadOutput.install();
+    socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    connections.execute(this::accept);
+    return socket.getLocalPort();
+  }
+
+  /** Block until {@link #close} (or a client's {@code shutdown}). */
+  public void await() throws InterruptedException {
+    closed.await();
+  }
+
+  @Override
+  public synchronized void close() {
+    if (closed.getCount() == 0) {
+      return;
+    }
+    try {
+      if (socket != null) {
+        socket.close();
+      }
+    } catch (IOException e) {
+      System.err.println("ModelServer: " + e.getMessage());
+    }
+    workers.shutdown();
+    connections.shutdownNow();
+    runtime.close();
+    closed.countDown();
+  }
+
+  private void accept() {
+    while (!socket.isClosed()) {
+      try {
+        Socket client = socket.accept();
+        connections.execute(() -> serve(client));
+      } catch (SocketException e) {
+        // Closed
+        return;
+      } catch (IOException e) {
+        System.err.println("ModelServer: " + e.getMessage());
+      }
+    }
+  }
+
+  private void serve(Socket client) {
+    try (Socket s = client;
+         BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+         PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+      ModelJob.Events events = (type, fields) -> send(out, type, fields);
+      for (String line; (line = in.readLine()) != null; ) {
+        String[] request = split(line);
+        switch (request[0]) {
+          case "run":
+            run(request, events);
+            break;
+          case "compile":
+            compile(request, events);
+            break;
+          case "ping":
+            events.send("pong");
+            break;
+          case "shutdown":
+            events.send("bye");
+            close();
+            return;
+          default:
+            events.send("error", "Unknown request: " + request[0]);
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("ModelServer: client dropped: " + e.getMessage());
+    }
+  }
+
+  private void run(String[] request, ModelJob.Events events) {
+    long id = jobIds.incrementAndGet();
+    ModelJob job;
+    try {
+      job = ModelJob.parse(id, request);
+    } catch (IllegalArgumentException e) {
+      events.send("failed", id, e.getMessage());
+      return;
+    }
+    events.send("accepted", id);
+    Future<?> result;
+    try {
+      result = workers.submit(() -> {
+        long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+          job.run(events);
+        } catch (Throwable t) {
+          failure = t;
+        } finally {
+          // Before done/failed, so a client that sees either can count on the models being gone
+          release(job);
+        }
+        if (failure == null) {
+          events.send("done", id, ModelJob.seconds(start));
+        } else {
+          for (String line : stackTrace(failure)) {
+            events.send("err", id, line);
+          }
+          events.send("failed", id, String.valueOf(failure));
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      events.send("failed", id, "Server is shutting down");
+      return;
+    }
+    try {
+      result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // The job reports its own failure
+    }
+  }
+
+  private void compile(String[] request, ModelJob.Events events) {
+    long id = jobIds.incrementAndGet();
+    if (request.length < 3) {
+      events.send("failed", id, "Expected: compile <classpath> <source.java> [source.java...]");
+      return;
+    }
+    events.send("accepted", id);
+    long start = System.nanoTime();
+    List<String> classpath = new ArrayList<>(Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator)));
+    classpath.addAll(Arrays.asList(request[1].split(File.pathSeparator)));
+    List<Path> sources = new ArrayList<>();
+    for (int i = 2; i < request.length; i++) {
+      sources.add(Paths.get(request[i]));
+    }
+    try {
+      boolean ok = true;
+      for (ModelCompiler.Result r : ModelCompiler.openDefault(classpath).compile(sources).values()) {
+        if (r.ok()) {
+          r.writeClasses(r.source.toAbsolutePath().getParent());
+          events.send("compiled", id, r.source, r.cached ? "cached" : "compiled");
+        } else {
+          ok = false;
+          events.send("compile-error", id, r.source, r.errors);
+        }
+      }
+      if (ok) {
+        events.send("done", id, ModelJob.seconds(start));
+      } else {
+        events.send("failed", id, "Compilation failed");
+      }
+    } catch (IOException | RuntimeException e) {
+      events.send("failed", id, String.valueOf(e));
+    }
+  }
+
+  /** Free the models {@code job} created; other jobs' models stay. */
+  private void release(ModelJob job) {
+    try {
+      runtime.release(job.models());
+    } catch (RuntimeException e) {
+      System.err.println("ModelServer: could not release models of job " + job.id + ": " + e);
+    }
+  }
+
+  private static List<String> stackTrace(Throwable t) {
+    StringWriter w = new StringWriter();
+    t.printStackTrace(new PrintWriter(w));
+    List<String> lines = new ArrayList<>();
+    for (String line : w.toString().split("\r?\n")) {
+      lines.add(line);
+    }
+    return lines;
+  }
+
+  private static void send(PrintWriter out, String type, Object... fields) {
+    StringBuilder line = new StringBuilder(type);
+    for (Object f : fields) {
+      line.append('\t');
+      escape(line, String.valueOf(f));
+    }
+    synchronized (out) {
+      out.print(line.append('\n'));
+      out.flush();
+    }
+  }
+
+  private static void escape(StringBuilder out, String s) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        default:
+          out.append(c);
+      }
+    }
+  }
+
+  /** Split a request line into unescaped fields. */
+  static String[] split(String line) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder f = new StringBuilder();
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '\t') {
+        fields.add(f.toString());
+        f.setLength(0);
+      } else if (c == '\\' && i + 1 < line.length()) {
+        char e = line.charAt(++i);
+        f.append(e == 't' ? '\t' : e == 'n' ? '\n' : e == 'r' ? '\r' : e);
+      } else {
+        f.append(c);
+      }
+    }
+    fields.add(f.toString());
+    return fields.toArray(new String[0]);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int port = 0;
+    int workers = 1;
+    String runtimeName = "comsol";
+    String comsolHost = "localhost";
+    int comsolPort = DEFAULT_COMSOL_PORT;
+    for (int i = 0; i < args.length; i++) {
+      String value = i + 1 < args.length ? args[i + 1] : null;
+      switch (args[i]) {
+        case "--port":
+          port = Integer.parseInt(value);
+          i++;
+          break;
+        case "--workers":
+          workers = Integer.parseInt(value);
+          i++;
+          break;
+        case "--runtime":
+          runtimeName = value;
+          i++;
+          break;
+        case "--comsol-host":
+          comsolHost = value;
+          i++;
+          break;
+        case "--comsol-port":
+          comsolPort = Integer.parseInt(value);
+          i++;
+          break;
+        default:
+          System.err.println("usage: ModelServer [--port N] [--workers N] [--runtime comsol|local]"
+              + " [--comsol-host H] [--comsol-port N]");
+          System.exit(2);
+      }
+    }
+    ModelRuntime runtime;
+    if ("local".equals(runtimeName)) {
+      runtime = ModelRuntime.local();
+    } else if ("comsol".equals(runtimeName)) {
+      runtime = ModelRuntime.comsol(comsolHost, comsolPort);
+    } else {
+      throw new IllegalArgumentException("Unknown runtime: " + runtimeName);
+    }
+    ModelServer server = new ModelServer(runtime, workers);
+    int bound = server.start(port);
+    System.out.println(READY + bound + " (" + runtime + ", " + workers + " workers)");
+    Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    server.await();
+  }
+}
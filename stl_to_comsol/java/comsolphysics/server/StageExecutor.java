@@ -0,0 +1,212 @@
+/*
+ * StageExecutor.java
+ * How a JobScheduler runs the stages of one model job.
+ */
+
+package comsolphysics.server;
+
+import com.comsol.model.Model;
+import comsolphysics.pipeline.ModelTags;
+import comsolphysics.pipeline.StageEvents;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs the stages of {@link JobScheduler.Job}s. A job is opened into a
+ * {@link Session} that lists its stages and keeps whatever they hand to
+ * one another (for generated models, the {@link Model}); the scheduler
+ * then calls {@link Session#run} once per stage, in order, each time on a
+ * fork/join pool sized to the stage's core share.
+ *
+ * <p>{@link #models} runs generated classes in this JVM; {@link #local}
+ * only burns the estimated CPU time, for trying out budgets and queue
+ * orders without COMSOL.
+ */
+public interface StageExecutor {
+
+  Session open(JobScheduler.Job job) throws Exception;
+
+  /** One open job. */
+  interface Session extends AutoCloseable {
+
+    /** Stage names, in the order they run. */
+    List<String> stages();
+
+    /**
+     * Run stage {@code index}. Called on a worker of {@code pool}, so
+     * parallel streams and fork/join work inside the stage use its
+     * {@code pool.getParallelism()} cores.
+     */
+    void run(int index, ForkJoinPool pool) throws Exception;
+
+    /** End {@code span} with whatever model the stages have built so far. */
+    default void record(StageEvents.Span span) {
+      span.end(null);
+    }
+
+    @Override
+    void close();
+  }
+
+  /**
+   * Generated model classes: {@code run()}, then {@code run2(model)},
+   * {@code run3(model)}, ... as long as the class has them, loaded in a
+   * fresh class loader per job as in {@link ModelJob}. COMSOL's own
+   * threads are set for the whole process ({@code -np}); the core share
+   * applies to the {@code comsolphysics} engines the stages call, which
+   * run on the pool of the thread that calls them.
+   *
+   * <p>The tags a job's stages take from {@link ModelTags#unique} are
+   * handed to {@code runtime} to release when the job ends, so seats that
+   * share a COMSOL connection free only their own models.
+   */
+  static StageExecutor models(ModelRuntime runtime) {
+    return job -> {
+      URLClassLoader loader = new URLClassLoader(ModelJob.urls(job.classpath), ModelJob.class.getClassLoader());
+      try {
+        Class<?> c = Class.forName(job.className, true, loader);
+        List<Method> methods = new ArrayList<>();
+        methods.add(c.getMethod("run"));
+        for (int k = 2; ; k++) {
+          try {
+            methods.add(c.getMethod("run" + k, Model.class));
+          } catch (NoSuchMethodException e) {
+            break;
+          }
+        }
+        return new ModelSession(loader, methods, runtime);
+      } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+        loader.close();
+        throw e;
+      }
+    };
+  }
+
+  /**
+   * Stand-in that runs no model: each stage spins its pool's workers until
+   * the stage's estimated core-seconds (estimated seconds at its full core
+   * share), times {@code timeScale}, are used up, so a narrower share takes
+   * longer. Stages are named {@code run},
+   * {@code run2}, ... up to the job's estimated stage count.
+   */
+  static StageExecutor local(double timeScale) {
+    return job -> new Session() {
+      @Override
+      public List<String> stages() {
+        List<String> names = new ArrayList<>();
+        for (int k = 1; k <= job.stageCount(); k++) {
+          names.add(k == 1 ? "run" : "run" + k);
+        }
+        return names;
+      }
+
+      @Override
+      public void run(int index, ForkJoinPool pool) {
+        int cores = pool.getParallelism();
+        long nanos = (long) (job.estimate(index).seconds * job.maxCores(index) * timeScale * 1e9);
+        List<ForkJoinTask<?>> spins = new ArrayList<>();
+        for (int i = 0; i < cores; i++) {
+          spins.add(ForkJoinTask.adapt(() -> spin(nanos / cores)).fork());
+        }
+        for (ForkJoinTask<?> spin : spins) {
+          spin.join();
+        }
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  /** Busy-wait on this thread for {@code nanos}. */
+  static void spin(long nanos) {
+    long end = System.nanoTime() + nanos;
+    double x = 0;
+    while (System.nanoTime() < end) {
+      for (int i = 0; i < 1000; i++) {
+        x += Math.sqrt(i + x);
+      }
+    }
+    if (x < 0) {
+      throw new AssertionError();
+    }
+  }
+
+  /** The {@link #models} session: a class loader and the model its stages pass along. */
+  final class ModelSession implements Session {
+
+    private final URLClassLoader loader;
+    private final List<Method> methods;
+    private final ModelRuntime runtime;
+    private final List<String> names = new ArrayList<>();
+    private final List<String> models = Collections.synchronizedList(new ArrayList<>());
+    private volatile Model model;
+
+    ModelSession(URLClassLoader loader, List<Method> methods, ModelRuntime runtime) {
+      this.loader = loader;
+      this.methods = methods;
+      this.runtime = runtime;
+      for (Method m : methods) {
+        names.add(m.getName());
+      }
+    }
+
+    @Override
+    public List<String> stages() {
+      return Collections.unmodifiableList(names);
+    }
+
+    @Override
+    public void run(int index, ForkJoinPool pool) throws Exception {
+      Thread thread = Thread.currentThread();
+      ClassLoader previous = thread.getContextClassLoader();
+      thread.setContextClassLoader(loader);
+      ModelTags.track(models);
+      try {
+        Method m = methods.get(index);
+        model = (Model) (index == 0 ? m.invoke(null) : m.invoke(null, model));
+      } catch (InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Exception) {
+          throw (Exception) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw e;
+      } finally {
+        ModelTags.untrack();
+        thread.setContextClassLoader(previous);
+      }
+    }
+
+    @Override
+    public void record(StageEvents.Span span) {
+      span.end(model);
+    }
+
+    @Override
+    public void close() {
+      // Free this job's models on the COMSOL side now; other seats' models stay
+      model = null;
+      try {
+        runtime.release(new ArrayList<>(models));
+      } catch (RuntimeException e) {
+        System.err.println("JobScheduler: could not release models: " + e.getMessage());
+      }
+      try {
+        loader.close();
+      } catch (IOException e) {
+        System.err.println("JobScheduler: " + e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * ThreadOutput.java
+ * Routes System.out and System.err lines to the job running on each thread.
+ */
+
+package comsolphysics.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Replaces {@code System.out}/{@code System.err} so that what a model class
+ * prints reaches the client that ran it. The target is inherited by threads
+ * a job starts; once the job has finished, output from threads it left
+ * behind (a pool worker, say) goes to the server's own console.
+ */
+final class ThreadOutput extends OutputStream {
+
+  /** Receives complete lines; {@code stream} is "out" or "err". */
+  interface Sink {
+    void line(String stream, String text);
+  }
+
+  /** A job's output target, open from {@link #redirect} until {@link #close}. */
+  static final class Redirect implements AutoCloseable {
+
+    private final Sink sink;
+    private volatile boolean open = true;
+
+    private Redirect(Sink sink) {
+      this.sink = sink;
+    }
+
+    @Override
+    public void close() {
+      // A last line without a newline still belongs to the job
+      for (PrintStream s : new PrintStream[] {System.out, System.err}) {
+        if (s instanceof Routed) {
+          s.flush();
+          ((Routed) s).router.endLine(this);
+        }
+      }
+      TARGET.remove();
+      open = false;
+    }
+  }
+
+  private static final InheritableThreadLocal<Redirect> TARGET = new InheritableThreadLocal<>();
+
+  private final String stream;
+  private final PrintStream console;
+  private final ThreadLocal<ByteArrayOutputStream> pending = ThreadLocal.withInitial(ByteArrayOutputStream::new);
+
+  private ThreadOutput(String stream, PrintStream console) {
+    this.stream = stream;
+    this.console = console;
+  }
+
+  /** Install the routing streams; safe to call more than once. */
+  static synchronized void install() {
+    if (!(System.out instanceof Routed)) {
+      System.setOut(new Routed(new ThreadOutput("out", System.out)));
+    }
+    if (!(System.err instanceof Routed)) {
+      System.setErr(new Routed(new ThreadOutput("err", System.err)));
+    }
+  }
+
+  /** Whether {@link #install} has replaced both streams. */
+  static boolean installed() {
+    return System.out instanceof Routed && System.err instanceof Routed;
+  }
+
+  /** Send what this thread, and threads it starts, print to {@code sink}. */
+  static Redirect redirect(Sink sink) {
+    Redirect r = new Redirect(sink);
+    TARGET.set(r);
+    return r;
+  }
+
+  private Redirect target() {
+    Redirect r = TARGET.get();
+    return r != null && r.open ? r : null;
+  }
+
+  @Override
+  public void write(int b) {
+    Redirect r = target();
+    if (r == null) {
+      console.write(b);
+      return;
+    }
+    if (b == '\n') {
+      emit(r);
+    } else {
+      pending.get().write(b);
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    Redirect r = target();
+    if (r == null) {
+      console.write(b, off, len);
+      return;
+    }
+    int start = off;
+    for (int i = off; i < off + len; i++) {
+      if (b[i] == '\n') {
+        pending.get().write(b, start, i - start);
+        emit(r);
+        start = i + 1;
+      }
+    }
+    pending.get().write(b, start, off + len - start);
+  }
+
+  @Override
+  public void flush() {
+    // Lines go out when complete; only the console needs flushing
+    if (target() == null) {
+      console.flush();
+    }
+  }
+
+  private void endLine(Redirect r) {
+    if (pending.get().size() > 0) {
+      emit(r);
+    }
+  }
+
+  private void emit(Redirect r) {
+    ByteArrayOutputStream line = pending.get();
+    String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+    line.reset();
+    r.sink.line(stream, text.endsWith("\r") ? text.substring(0, text.length() - 1) : text);
+  }
+
+  /** Marks a stream as installed, and flushes on every println. */
+  private static final class Routed extends PrintStream {
+
+    final ThreadOutput router;
+
+    Routed(ThreadOutput router) {
+      super(router, true);
+      this.router = router;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * CsrMatrix.java
+ * Square sparse matrix in compressed sparse row form.
+ */
+
+package comsolphysics.solve;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Square sparse matrix on primitive arrays: {@code rowStart[n + 1]},
+ * {@code columns[nnz]} (ascending within a row) and {@code values[nnz]}.
+ * The arrays are shared, not copied, so a caller can update values in place
+ * between solves when only coefficients change.
+ */
+public final class CsrMatrix implements SparseMatrix {
+
+  /** Below this many non-zeros a product stays on the calling thread. */
+  private static final int PARALLEL_NON_ZEROS = 1 << 16;
+  private static final int ROWS_PER_TASK = 2048;
+
+  private final int n;
+  private final int[] rowStart;
+  private final int[] columns;
+  private final double[] values;
+
+  public CsrMatrix(int n, int[] rowStart, int[] columns, double[] values) {
+    if (rowStart.length != n + 1) {
+      throw new IllegalArgumentException("rowStart must have n + 1 entries");
+    }
+    this.n = n;
+    this.rowStart = rowStart;
+    this.columns = columns;
+    this.values = values;
+  }
+
+  @Override
+  public int size() {
+    return n;
+  }
+
+  public int nonZeros() {
+    return rowStart[n];
+  }
+
+  public int[] rowStart() {
+    return rowStart;
+  }
+
+  public int[] columns() {
+    return columns;
+  }
+
+  public double[] values() {
+    return values;
+  }
+
+  /** Position of (i, j) in {@link #values()}, or a negative number if not stored. */
+  public int indexOf(int i, int j) {
+    return Arrays.binarySearch(columns, rowStart[i], rowStart[i + 1], j);
+  }
+
+  public double get(int i, int j) {
+    int k = indexOf(i, j);
+    return k >= 0 ? values[k] : 0.0;
+  }
+
+  /** {@code y = A x}; rows are split over the fork/join pool once the matrix is large. */
+  @Override
+  public void multiply(double[] x, double[] y) {
+    if (rowStart[n] < PARALLEL_NON_ZEROS) {
+      multiplyRows(x, y, 0, n);
+    } else {
+      IntStream.range(0, (n + ROWS_PER_TASK - 1) / ROWS_PER_TASK).parallel()
+          .forEach(b -> multiplyRows(x, y, b * ROWS_PER_TASK, Math.min(n, (b + 1) * ROWS_PER_TASK)));
+    }
+  }
+
+  private void multiplyRows(double[] x, double[] y, int from, int to) {
+    for (int i = from; i < to; i++) {
+      double sum = 0;
+      for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+        sum += values[k] * x[columns[k]];
+      }
+      y[i] = sum;
+    }
+  }
+
+  @Override
+  public double sweep(double[] b, double[] x, double omega) {
+    double r2 = 0;
+    for (int i = 0; i < n; i++) {
+      double sum = b[i];
+      double diagonal = 0;
+      for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+        int j = columns[k];
+        sum -= values[k] * x[j];
+        if (j == i) {
+          diagonal = values[k];
+        }
+      }
+      r2 += sum * sum;
+      x[i] += omega * sum / diagonal;
+    }
+    return r2;
+  }
+
+  @Override
+  public double[] diagonal() {
+    double[] d = new double[n];
+    for (int i = 0; i < n; i++) {
+      d[i] = get(i, i);
+    }
+    return d;
+  }
+
+  @Override
+  public void setRow(int i, double[] rowValues) {
+    System.arraycopy(rowValues, 0, values, rowStart[i], rowStart[i + 1] - rowStart[i]);
+  }
+
+  @Override
+  public String toString() {
+    return "CsrMatrix[" + n + " x " + n + ", " + nonZeros() + " non-zeros]";
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * IterativeSolver.java
+ * Gauss-Seidel and preconditioned conjugate gradients on a SparseMatrix.
+ */
+
+package comsolphysics.solve;
+
+import java.util.Arrays;
+
+/**
+ * Iterative solvers for {@code A x = b} on a {@link SparseMatrix}. Both start
+ * from the values already in {@code x}, so a previous solution is a warm
+ * start, and stop when {@code ||b - A x|| <= tolerance * ||b||}.
+ */
+public final class IterativeSolver {
+
+  private IterativeSolver() {
+  }
+
+  /** Outcome of a solve. */
+  public static final class Result {
+    private final int iterations;
+    private final double residual;
+    private final boolean converged;
+
+    public Result(int iterations, double residual, boolean converged) {
+      this.iterations = iterations;
+      this.residual = residual;
+      this.converged = converged;
+    }
+
+    public int iterations() {
+      return iterations;
+    }
+
+    /** Relative residual {@code ||b - A x|| / ||b||} at exit. */
+    public double residual() {
+      return residual;
+    }
+
+    public boolean converged() {
+      return converged;
+    }
+
+    @Override
+    public String toString() {
+      return (converged ? "converged" : "not converged") + " after " + iterations
+          + " iterations, residual " + residual;
+    }
+  }
+
+  /**
+   * Forward Gauss-Seidel with over-relaxation {@code omega} (1 = plain
+   * Gauss-Seidel). Converges for diagonally dominant systems such as the
+   * radiosity equations; needs no symmetry.
+   */
+  public static Result gaussSeidel(SparseMatrix a, double[] b, double[] x, double omega,
+                                   double tolerance, int maxIterations) {
+    int n = a.size();
+    double bnorm = norm(b);
+    if (bnorm == 0) {
+      Arrays.fill(x, 0, n, 0.0);
+      return new Result(0, 0, true);
+    }
+    double residual = Double.POSITIVE_INFINITY;
+    int it = 0;
+    while (it < maxIterations) {
+      it++;
+      // Residual taken from the row sums of the sweep itself (rows above i already updated),
+      // which saves a separate multiply per iteration
+      residual = Math.sqrt(a.sweep(b, x, omega)) / bnorm;
+      if (residual <= tolerance) {
+        break;
+      }
+    }
+    return new Result(it, residual, residual <= tolerance);
+  }
+
+  /** Conjugate gradients with a Jacobi (diagonal) preconditioner; {@code a} must be SPD. */
+  public static Result pcg(SparseMatrix a, double[] b, double[] x, double tolerance, int maxIterations) {
+    int n = a.size();
+    double[] invDiag = a.diagonal();
+    for (int i = 0; i < n; i++) {
+      invDiag[i] = 1.0 / invDiag[i];
+    }
+    double[] r = new double[n];
+    double[] z = new double[n];
+    double[] p = new double[n];
+    double[] q = new double[n];
+    a.multiply(x, q);
+    for (int i = 0; i < n; i++) {
+      r[i] = b[i] - q[i];
+      z[i] = invDiag[i] * r[i];
+      p[i] = z[i];
+    }
+    double bnorm = norm(b);
+    if (bnorm == 0) {
+      Arrays.fill(x, 0, n, 0.0);
+      return new Result(0, 0, true);
+    }
+    double rz = dot(r, z, n);
+    double residual = norm(r) / bnorm;
+    int it = 0;
+    while (residual > tolerance && it < maxIterations) {
+      it++;
+      a.multiply(p, q);
+      double alpha = rz / dot(p, q, n);
+      double r2 = 0;
+      for (int i = 0; i < n; i++) {
+        x[i] += alpha * p[i];
+        r[i] -= alpha * q[i];
+        z[i] = invDiag[i] * r[i];
+        r2 += r[i] * r[i];
+      }
+      residual = Math.sqrt(r2) / bnorm;
+      double rzNext = dot(r, z, n);
+      double beta = rzNext / rz;
+      rz = rzNext;
+      for (int i = 0; i < n; i++) {
+        p[i] = z[i] + beta * p[i];
+      }
+    }
+    return new Result(it, residual, residual <= tolerance);
+  }
+
+  static double dot(double[] a, double[] b, int n) {
+    double s = 0;
+    for (int i = 0; i < n; i++) {
+      s += a[i] * b[i];
+    }
+    return s;
+  }
+
+  static double norm(double[] a) {
+    return Math.sqrt(dot(a, a, a.length));
+  }
+}
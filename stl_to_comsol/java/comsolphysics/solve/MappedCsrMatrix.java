@@ -0,0 +1,468 @@
+/*
+ * MappedCsrMatrix.java
+ * Sparse matrix kept in a memory-mapped file and streamed in tiles.
+ */
+
+package comsolphysics.solve;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A square CSR matrix whose entries live in a file instead of on the heap.
+ * The little-endian layout is
+ * {@code magic, n, valueBytes, 0, long nnz, long tag, long[n+1] rowStart,
+ * entries}; an entry is an {@code int} column followed by a {@code float}
+ * or {@code double} value, rows in order, columns ascending within a row.
+ *
+ * <p>The entries are mapped in chunks of up to 1 GiB that start on row
+ * boundaries, and each chunk is cut into tiles of about
+ * {@value #TILE_NON_ZEROS} entries, small enough to stay in a core's cache
+ * while its rows are summed. Products run tile by tile on the fork/join
+ * pool and Gauss-Seidel sweeps walk the tiles in order. Only
+ * {@code rowStart} and the tile table are on the heap, so the matrix may be
+ * far larger than the heap; the page cache decides what stays resident.
+ *
+ * <p>A {@link Writer} appends rows one at a time, so whoever computes the
+ * matrix never holds all of it. {@link #open} maps a finished file again;
+ * with {@link #tag()} identifying what the matrix was computed for, the file
+ * doubles as a cache across runs.
+ *
+ * <pre>
+ *   try (MappedCsrMatrix.Writer w = MappedCsrMatrix.writer(path, n, 4, fingerprint)) {
+ *     for (int i = 0; i < n; i++) {
+ *       w.row(columns[i], values[i], columns[i].length);
+ *     }
+ *     matrix = w.finish(false);
+ *   }
+ * </pre>
+ */
+public final class MappedCsrMatrix implements SparseMatrix {
+
+  /** Magic number of the format, {@code "MCS1"}. */
+  public static final int MAGIC = 0x4D435331;
+  /** Entries per tile: 32768 entries of 8 or 12 bytes. */
+  public static final int TILE_NON_ZEROS = 1 << 15;
+  private static final int HEADER = 32;
+  private static final long MAX_CHUNK_BYTES = 1L << 30;
+  /** Below this many non-zeros a product stays on the calling thread. */
+  private static final long PARALLEL_NON_ZEROS = 1 << 16;
+
+  private final int n;
+  private final boolean doubles;
+  private final int entryBytes;
+  private final long tag;
+  private final long[] rowStart;
+  private final ByteBuffer[] chunks;
+  // Entry index of the first entry of each chunk
+  private final long[] chunkEntry;
+  // Tile t is rows tileRow[t] .. tileRow[t + 1] in chunk tileChunk[t]
+  private final int[] tileRow;
+  private final int[] tileChunk;
+
+  private MappedCsrMatrix(FileChannel ch, boolean writable, Path path) throws IOException {
+    ByteBuffer head = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+    if (ch.size() < HEADER || ch.read(head, 0) < HEADER || head.getInt(0) != MAGIC) {
+      throw new IOException("Not a mapped CSR matrix: " + path);
+    }
+    n = head.getInt(4);
+    int valueBytes = head.getInt(8);
+    if (n < 0 || valueBytes != 4 && valueBytes != 8) {
+      throw new IOException("Corrupt mapped CSR header: " + path);
+    }
+    doubles = valueBytes == 8;
+    entryBytes = 4 + valueBytes;
+    long nnz = head.getLong(16);
+    tag = head.getLong(24);
+    long entries = HEADER + 8L * (n + 1);
+    if (ch.size() < entries + nnz * entryBytes) {
+      throw new IOException("Truncated mapped CSR matrix: " + path);
+    }
+    rowStart = new long[n + 1];
+    ch.map(FileChannel.MapMode.READ_ONLY, HEADER, 8L * (n + 1)).order(ByteOrder.LITTLE_ENDIAN)
+        .asLongBuffer().get(rowStart);
+    if (rowStart[0] != 0 || rowStart[n] != nnz) {
+      throw new IOException("Corrupt mapped CSR row offsets: " + path);
+    }
+
+    FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+    ByteBuffer[] mapped = new ByteBuffer[16];
+    long[] firstEntry = new long[16];
+    int[] tiles = new int[16];
+    int[] tilesChunk = new int[16];
+    int chunkCount = 0, tileCount = 0;
+    int row = 0;
+    while (row < n) {
+      long first = rowStart[row];
+      int end = row + 1;
+      while (end < n && (rowStart[end + 1] - first) * entryBytes <= MAX_CHUNK_BYTES) {
+        end++;
+      }
+      long bytes = (rowStart[end] - first) * entryBytes;
+      if (bytes > Integer.MAX_VALUE) {
+        throw new IOException("Row " + row + " is too long to map: " + path);
+      }
+      if (chunkCount == mapped.length) {
+        mapped = Arrays.copyOf(mapped, chunkCount * 2);
+        firstEntry = Arrays.copyOf(firstEntry, chunkCount * 2);
+      }
+      mapped[chunkCount] = ch.map(mode, entries + first * entryBytes, bytes).order(ByteOrder.LITTLE_ENDIAN);
+      firstEntry[chunkCount] = first;
+      for (int r = row; r < end; ) {
+        int t = r + 1;
+        while (t < end && rowStart[t + 1] - rowStart[r] <= TILE_NON_ZEROS) {
+          t++;
+        }
+        if (tileCount + 1 >= tiles.length) {
+          tiles = Arrays.copyOf(tiles, tiles.length * 2);
+          tilesChunk = Arrays.copyOf(tilesChunk, tilesChunk.length * 2);
+        }
+        tiles[tileCount] = r;
+        tilesChunk[tileCount++] = chunkCount;
+        r = t;
+      }
+      chunkCount++;
+      row = end;
+    }
+    tiles[tileCount] = n;
+    chunks = Arrays.copyOf(mapped, chunkCount);
+    chunkEntry = Arrays.copyOf(firstEntry, chunkCount);
+    tileRow = Arrays.copyOf(tiles, tileCount + 1);
+    tileChunk = Arrays.copyOf(tilesChunk, tileCount);
+  }
+
+  /** Map a file written by a {@link Writer}, read-only. */
+  public static MappedCsrMatrix open(Path path) throws IOException {
+    return open(path, false);
+  }
+
+  /** Map a file written by a {@link Writer}; {@code writable} allows {@link #setRow}. */
+  public static MappedCsrMatrix open(Path path, boolean writable) throws IOException {
+    StandardOpenOption[] options = writable
+        ? new StandardOpenOption[] {StandardOpenOption.READ, StandardOpenOption.WRITE}
+        : new StandardOpenOption[] {StandardOpenOption.READ};
+    try (FileChannel ch = FileChannel.open(path, options)) {
+      return new MappedCsrMatrix(ch, writable, path);
+    }
+  }
+
+  /**
+   * Start a file of {@code n} rows with {@code valueBytes} 4 ({@code float})
+   * or 8 ({@code double}) per value. Rows go to a temporary file next to
+   * {@code path}, which {@link Writer#finish} moves into place.
+   */
+  public static Writer writer(Path path, int n, int valueBytes, long tag) throws IOException {
+    if (valueBytes != 4 && valueBytes != 8) {
+      throw new IllegalArgumentException("Values must be 4 or 8 bytes: " + valueBytes);
+    }
+    return new Writer(path, n, valueBytes, tag);
+  }
+
+  @Override
+  public int size() {
+    return n;
+  }
+
+  public long nonZeros() {
+    return rowStart[n];
+  }
+
+  /** Caller-defined identity of the matrix, such as the fingerprint of the geometry it was computed for. */
+  public long tag() {
+    return tag;
+  }
+
+  /** Bytes per stored value, 4 or 8. */
+  public int valueBytes() {
+    return entryBytes - 4;
+  }
+
+  public int tileCount() {
+    return tileChunk.length;
+  }
+
+  /** Heap held by the matrix: the row offsets and the tile table. */
+  public long heapBytes() {
+    return 8L * rowStart.length + 8L * chunkEntry.length + 4L * tileRow.length + 4L * tileChunk.length;
+  }
+
+  private double value(ByteBuffer b, int pos) {
+    return doubles ? b.getDouble(pos + 4) : b.getFloat(pos + 4);
+  }
+
+  /** Chunk holding row {@code i}; rows are never split across chunks. */
+  private int chunkOf(int i) {
+    int c = Arrays.binarySearch(chunkEntry, rowStart[i]);
+    if (c < 0) {
+      c = -c - 2;
+    }
+    // Empty rows share their entry index with the next row's chunk
+    while (c + 1 < chunkEntry.length && chunkEntry[c + 1] == rowStart[i]) {
+      c++;
+    }
+    return c;
+  }
+
+  public double get(int i, int j) {
+    int c = chunkOf(i);
+    ByteBuffer b = chunks[c];
+    for (int pos = offset(c, rowStart[i]), end = offset(c, rowStart[i + 1]); pos < end; pos += entryBytes) {
+      int col = b.getInt(pos);
+      if (col >= j) {
+        return col == j ? value(b, pos) : 0.0;
+      }
+    }
+    return 0.0;
+  }
+
+  /** Sum of row {@code i}. */
+  public double rowSum(int i) {
+    int c = chunkOf(i);
+    ByteBuffer b = chunks[c];
+    double sum = 0;
+    for (int pos = offset(c, rowStart[i]), end = offset(c, rowStart[i + 1]); pos < end; pos += entryBytes) {
+      sum += value(b, pos);
+    }
+    return sum;
+  }
+
+  private int offset(int chunk, long entry) {
+    return (int) ((entry - chunkEntry[chunk]) * entryBytes);
+  }
+
+  /** {@code y = A x}, one tile per task once the matrix is large. */
+  @Override
+  public void multiply(double[] x, double[] y) {
+    if (rowStart[n] < PARALLEL_NON_ZEROS) {
+      for (int t = 0; t < tileChunk.length; t++) {
+        multiplyTile(t, x, y);
+      }
+    } else {
+      IntStream.range(0, tileChunk.length).parallel().forEach(t -> multiplyTile(t, x, y));
+    }
+  }
+
+  private void multiplyTile(int t, double[] x, double[] y) {
+    int c = tileChunk[t];
+    ByteBuffer b = chunks[c];
+    int pos = offset(c, rowStart[tileRow[t]]);
+    for (int i = tileRow[t]; i < tileRow[t + 1]; i++) {
+      double sum = 0;
+      for (int end = offset(c, rowStart[i + 1]); pos < end; pos += entryBytes) {
+        sum += value(b, pos) * x[b.getInt(pos)];
+      }
+      y[i] = sum;
+    }
+  }
+
+  @Override
+  public double sweep(double[] b, double[] x, double omega) {
+    double r2 = 0;
+    for (int t = 0; t < tileChunk.length; t++) {
+      int c = tileChunk[t];
+      ByteBuffer m = chunks[c];
+      int pos = offset(c, rowStart[tileRow[t]]);
+      for (int i = tileRow[t]; i < tileRow[t + 1]; i++) {
+        double sum = b[i];
+        double diagonal = 0;
+        for (int end = offset(c, rowStart[i + 1]); pos < end; pos += entryBytes) {
+          int j = m.getInt(pos);
+          double v = value(m, pos);
+          sum -= v * x[j];
+          if (j == i) {
+            diagonal = v;
+          }
+        }
+        r2 += sum * sum;
+        x[i] += omega * sum / diagonal;
+      }
+    }
+    return r2;
+  }
+
+  @Override
+  public double[] diagonal() {
+    double[] d = new double[n];
+    IntStream.range(0, tileChunk.length).parallel().forEach(t -> {
+      int c = tileChunk[t];
+      ByteBuffer b = chunks[c];
+      for (int i = tileRow[t]; i < tileRow[t + 1]; i++) {
+        for (int pos = offset(c, rowStart[i]), end = offset(c, rowStart[i + 1]); pos < end; pos += entryBytes) {
+          if (b.getInt(pos) == i) {
+            d[i] = value(b, pos);
+            break;
+          }
+        }
+      }
+    });
+    return d;
+  }
+
+  /** Columns of row {@code i} into {@code out}; returns how many. */
+  public int rowColumns(int i, int[] out) {
+    int c = chunkOf(i);
+    ByteBuffer b = chunks[c];
+    int k = 0;
+    for (int pos = offset(c, rowStart[i]), end = offset(c, rowStart[i + 1]); pos < end; pos += entryBytes) {
+      out[k++] = b.getInt(pos);
+    }
+    return k;
+  }
+
+  /** Only for a matrix mapped writable; rows on different threads may be set concurrently. */
+  @Override
+  public void setRow(int i, double[] values) {
+    int c = chunkOf(i);
+    ByteBuffer b = chunks[c];
+    int k = 0;
+    for (int pos = offset(c, rowStart[i]), end = offset(c, rowStart[i + 1]); pos < end; pos += entryBytes) {
+      if (doubles) {
+        b.putDouble(pos + 4, values[k++]);
+      } else {
+        b.putFloat(pos + 4, (float) values[k++]);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MappedCsrMatrix[" + n + " x " + n + ", " + nonZeros() + " non-zeros, " + tileCount() + " tiles]";
+  }
+
+  /** Appends rows in order and writes the header and row offsets at the end. */
+  public static final class Writer implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final Path path;
+    private final Path tmp;
+    private final int n;
+    private final int valueBytes;
+    private final long tag;
+    private final FileChannel ch;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final long[] rowStart;
+    private int rows;
+    private boolean finished;
+
+    private Writer(Path path, int n, int valueBytes, long tag) throws IOException {
+      this.path = path;
+      this.tmp = path.resolveSibling(path.getFileName() + ".tmp");
+      this.n = n;
+      this.valueBytes = valueBytes;
+      this.tag = tag;
+      this.rowStart = new long[n + 1];
+      this.ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      ch.position(HEADER + 8L * (n + 1));
+    }
+
+    /** Append the next row: {@code columns[0 .. length)} ascending, with their values. */
+    public void row(int[] columns, float[] values, int length) throws IOException {
+      begin(columns, length);
+      for (int k = 0; k < length; k++) {
+        room(4 + valueBytes);
+        buffer.putInt(columns[k]);
+        if (valueBytes == 8) {
+          buffer.putDouble(values[k]);
+        } else {
+          buffer.putFloat(values[k]);
+        }
+      }
+    }
+
+    /** Append the next row: {@code columns[0 .. length)} ascending, with their values. */
+    public void row(int[] columns, double[] values, int length) throws IOException {
+      begin(columns, length);
+      for (int k = 0; k < length; k++) {
+        room(4 + valueBytes);
+        buffer.putInt(columns[k]);
+        if (valueBytes == 8) {
+          buffer.putDouble(values[k]);
+        } else {
+          buffer.putFloat((float) values[k]);
+        }
+      }
+    }
+
+    private void begin(int[] columns, int length) {
+      if (finished || rows == n) {
+        throw new IllegalStateException("All " + n + " rows were already written");
+      }
+      for (int k = 0; k < length; k++) {
+        if (columns[k] < 0 || columns[k] >= n || k > 0 && columns[k] <= columns[k - 1]) {
+          throw new IllegalArgumentException("Row " + rows + ": columns must be ascending and in [0, " + n + ")");
+        }
+      }
+      rowStart[rows + 1] = rowStart[rows] + length;
+      rows++;
+    }
+
+    private void room(int bytes) throws IOException {
+      if (buffer.remaining() < bytes) {
+        drain();
+      }
+    }
+
+    private void drain() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        ch.write(buffer);
+      }
+      buffer.clear();
+    }
+
+    /**
+     * Write the header and row offsets, move the file into place and map
+     * it; {@code writable} as for {@link MappedCsrMatrix#open(Path, boolean)}.
+     */
+    public MappedCsrMatrix finish(boolean writable) throws IOException {
+      if (rows != n) {
+        throw new IllegalStateException("Only " + rows + " of " + n + " rows were written");
+      }
+      drain();
+      buffer.putInt(MAGIC).putInt(n).putInt(valueBytes).putInt(0).putLong(rowStart[n]).putLong(tag);
+      long position = 0;
+      for (long offset : rowStart) {
+        if (buffer.remaining() < 8) {
+          position += flushAt(position);
+        }
+        buffer.putLong(offset);
+      }
+      flushAt(position);
+      ch.force(true);
+      ch.close();
+      finished = true;
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return open(path, writable);
+    }
+
+    private int flushAt(long position) throws IOException {
+      buffer.flip();
+      int bytes = buffer.remaining();
+      while (buffer.hasRemaining()) {
+        position += ch.write(buffer, position);
+      }
+      buffer.clear();
+      return bytes;
+    }
+
+    /** Abandons the file unless {@link #finish} was called. */
+    @Override
+    public void close() throws IOException {
+      if (!finished) {
+        finished = true;
+        ch.close();
+        Files.deleteIfExists(tmp);
+      }
+    }
+  }
+}
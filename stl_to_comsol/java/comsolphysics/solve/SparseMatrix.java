@@ -0,0 +1,33 @@
+/*
+ * SparseMatrix.java
+ * Square sparse matrix as the iterative solvers use it.
+ */
+
+package comsolphysics.solve;
+
+/**
+ * What {@link IterativeSolver} needs of a matrix: products, Gauss-Seidel
+ * sweeps and the diagonal, plus row-wise value updates for assembly.
+ * {@link CsrMatrix} keeps its arrays on the heap; {@link MappedCsrMatrix}
+ * keeps them in a memory-mapped file and streams them in tiles.
+ */
+public interface SparseMatrix {
+
+  int size();
+
+  /** {@code y = A x}. */
+  void multiply(double[] x, double[] y);
+
+  /**
+   * One forward Gauss-Seidel sweep on {@code A x = b} with over-relaxation
+   * {@code omega}, updating {@code x} in place; returns the squared norm of
+   * the residuals seen during the sweep (rows above i already updated).
+   */
+  double sweep(double[] b, double[] x, double omega);
+
+  /** Diagonal entries; zero where none is stored. */
+  double[] diagonal();
+
+  /** Overwrite the stored values of row {@code i} with {@code values[0 .. row length)}, in column order. */
+  void setRow(int i, double[] values);
+}
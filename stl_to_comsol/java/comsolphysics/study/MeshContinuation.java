@@ -0,0 +1,183 @@
+/*
+ * MeshContinuation.java
+ * Coarse-to-fine solves, each seeded with the solution on the mesh before.
+ */
+
+package comsolphysics.study;
+
+import com.comsol.model.Model;
+import comsolphysics.mesh.MeshCache;
+import comsolphysics.mesh.MeshQuality;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Refines a solved stationary model level by level until a global quantity
+ * (e.g. {@code aveop1(T)}, the mean room temperature) stops changing. Each
+ * level gets its own {@code FreeTet} mesh and its own study; the study's
+ * initial values are the previous level's solution, which COMSOL
+ * interpolates onto the finer mesh, so the nonlinear solver starts close to
+ * the answer instead of from {@code Tinit}. The base level is the study the
+ * pipeline already solved, so a coarse base mesh costs one cheap cold solve.
+ *
+ * <p>Refinement stops once the quantity changes by no more than the
+ * relative tolerance from one level to the next, which doubles as a
+ * mesh-convergence check; {@link #converged} is false if the last level was
+ * reached first.
+ *
+ * <pre>
+ *   MeshContinuation c = new MeshContinuation("aveop1(T)")
+ *       .level(0.2, 0.05)
+ *       .level(0.15, 0.03)
+ *       .tolerance(1e-3);
+ *   SweepTable levels = c.run(model, "comp1", "geom1", "mesh1", "std1", "dset1");
+ *   model.result("pg1").set("data", c.dataset());
+ * </pre>
+ */
+public final class MeshContinuation {
+
+  /** Command-line flag the generated classes accept to turn continuation on. */
+  public static final String FLAG = "--converge";
+  /** Tag prefixes of the per-level meshes and studies, and tag of the evaluation. */
+  static final String MESH = "mesh_cont";
+  static final String STUDY = "std_cont";
+  static final String EVAL = "gev_cont";
+
+  private final String expression;
+  private final List<double[]> levels = new ArrayList<>();
+  private double tolerance = 1e-3;
+  private String dataset;
+  private boolean converged;
+
+  /** {@code expression} is the global quantity watched for convergence. */
+  public MeshContinuation(String expression) {
+    this.expression = expression;
+  }
+
+  /** Whether {@code args} contains {@link #FLAG}. */
+  public static boolean requested(String[] args) {
+    return Arrays.asList(args).contains(FLAG);
+  }
+
+  /** Add a finer level; levels are solved in the order added. */
+  public MeshContinuation level(double hmax, double hmin) {
+    if (hmin <= 0 || hmax < hmin) {
+      throw new IllegalArgumentException("Need 0 < hmin <= hmax: " + hmin + ", " + hmax);
+    }
+    levels.add(new double[] {hmax, hmin});
+    return this;
+  }
+
+  /** Largest relative change of the quantity between levels that counts as converged. */
+  public MeshContinuation tolerance(double relative) {
+    if (!(relative > 0)) {
+      throw new IllegalArgumentException("Tolerance must be positive: " + relative);
+    }
+    this.tolerance = relative;
+    return this;
+  }
+
+  /** Dataset of the finest level solved by the last {@link #run}. */
+  public String dataset() {
+    return dataset;
+  }
+
+  /** Whether the last {@link #run} stopped on the tolerance rather than running out of levels. */
+  public boolean converged() {
+    return converged;
+  }
+
+  /**
+   * Refine from the solved {@code study} on {@code mesh} (its result in
+   * {@code baseDataset}). Returns one row per level solved, base first:
+   * {@code hmax, hmin, elements, value, change, seconds}, with
+   * {@code change} relative to the level before (NaN for the base).
+   */
+  public SweepTable run(Model model, String comp, String geom, String mesh, String study, String baseDataset) {
+    SweepTable table = new SweepTable("hmax", "hmin", "elements", "value", "change", "seconds");
+    double previous = evaluate(model, baseDataset);
+    table.add(Double.parseDouble(model.component(comp).mesh(mesh).feature("size").getString("hmax")),
+        Double.parseDouble(model.component(comp).mesh(mesh).feature("size").getString("hmin")),
+        model.component(comp).mesh(mesh).getNumElem(), previous, Double.NaN, 0);
+    System.out.println(String.format("Continuation: base %s = %.6g", expression, previous));
+    dataset = baseDataset;
+    converged = false;
+    String previousStudy = study;
+    for (int k = 0; k < levels.size() && !converged; k++) {
+      long start = System.nanoTime();
+      double hmax = levels.get(k)[0];
+      double hmin = levels.get(k)[1];
+      String meshTag = MESH + (k + 1);
+      String studyTag = STUDY + (k + 1);
+      buildMesh(model, comp, geom, meshTag, hmax, hmin);
+
+      if (Arrays.asList(model.study().tags()).contains(studyTag)) {
+        model.study().remove(studyTag);
+      }
+      model.study().create(studyTag);
+      model.study(studyTag).create("stat", "Stationary");
+      model.study(studyTag).feature("stat").set("mesh", new String[] {geom, meshTag});
+      // Start from the coarser solution, interpolated onto this mesh
+      model.study(studyTag).feature("stat").set("useinitsol", "on");
+      model.study(studyTag).feature("stat").set("initmethod", "sol");
+      model.study(studyTag).feature("stat").set("initstudy", previousStudy);
+      model.study(studyTag).feature("stat").set("solnum", "auto");
+
+      Set<String> before = new HashSet<>(Arrays.asList(model.result().dataset().tags()));
+      model.study(studyTag).run();
+      String solved = null;
+      for (String tag : model.result().dataset().tags()) {
+        if (!before.contains(tag)) {
+          solved = tag;
+        }
+      }
+      if (solved == null) {
+        throw new IllegalStateException("Continuation level " + (k + 1) + " produced no dataset");
+      }
+
+      double value = evaluate(model, solved);
+      double change = Math.abs(value - previous) / Math.max(Math.abs(value), Double.MIN_NORMAL);
+      double seconds = (System.nanoTime() - start) / 1e9;
+      table.add(hmax, hmin, model.component(comp).mesh(meshTag).getNumElem(), value, change, seconds);
+      System.out.println(String.format("Continuation: hmax %s, %s = %.6g (change %.2e, %.1f s)",
+          hmax, expression, value, change, seconds));
+      dataset = solved;
+      previous = value;
+      previousStudy = studyTag;
+      converged = change <= tolerance;
+    }
+    if (!converged) {
+      System.out.println("Continuation: " + expression + " still changing by more than " + tolerance
+          + " at the finest level");
+    }
+    return table;
+  }
+
+  /** A {@code FreeTet} mesh at the given sizes, through the cache and the quality check. */
+  private static void buildMesh(Model model, String comp, String geom, String mesh, double hmax, double hmin) {
+    if (Arrays.asList(model.component(comp).mesh().tags()).contains(mesh)) {
+      model.component(comp).mesh().remove(mesh);
+    }
+    model.component(comp).mesh().create(mesh, geom);
+    model.component(comp).mesh(mesh).create("ftet1", "FreeTet");
+    model.component(comp).mesh(mesh).feature("size").set("custom", "on");
+    model.component(comp).mesh(mesh).feature("size").set("hmax", hmax);
+    model.component(comp).mesh(mesh).feature("size").set("hmin", hmin);
+    MeshCache.openDefault().run(model, comp, geom, mesh);
+    MeshQuality.of(model, comp, mesh).check(MeshQuality.Limits.DEFAULT);
+  }
+
+  private double evaluate(Model model, String data) {
+    if (!Arrays.asList(model.result().numerical().tags()).contains(EVAL)) {
+      model.result().numerical().create(EVAL, "EvalGlobal");
+    }
+    model.result().numerical(EVAL).set("data", data);
+    model.result().numerical(EVAL).set("expr", new String[] {expression});
+    double[][] values = model.result().numerical(EVAL).getReal();
+    // A stationary solution has one column; take the last in case of continuation
+    return values[0][values[0].length - 1];
+  }
+}
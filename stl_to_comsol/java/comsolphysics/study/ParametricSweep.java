@@ -0,0 +1,197 @@
+/*
+ * ParametricSweep.java
+ * Runs many parameter sets against one built geometry and mesh.
+ */
+
+package comsolphysics.study;
+
+import com.comsol.model.Model;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Evaluates a model at a list of parameter points without rebuilding its
+ * geometry or mesh, and collects one row per point: the parameter values
+ * followed by global metrics (e.g. {@code aveop1(T)}).
+ *
+ * <p>{@link #run} first tries a COMSOL {@code Parametric} study step with
+ * the points as specified combinations, which COMSOL solves as one job. If
+ * that step cannot be set up (older version, missing product), it falls back
+ * to setting the parameters and re-running the existing solver sequence
+ * in-process, point by point, each solve starting from the mesh already in
+ * memory. Errors while solving or evaluating are not masked by the fallback.
+ * Either way the model is left with its own parameters and base solution,
+ * so what is saved or plotted afterwards is the base case.
+ *
+ * <pre>
+ *   SweepTable points = SweepTable.readCsv(Paths.get("sweep.csv")); // T_heat1,eps_rad
+ *   SweepTable results = new ParametricSweep(points)
+ *       .metric("T_mean", "aveop1(T)")
+ *       .run(model, "sol1", "dset1");
+ * </pre>
+ */
+public final class ParametricSweep {
+
+  /** Tags of the sweep study and of the global evaluation results are read through. */
+  static final String STUDY = "std_sweep";
+  static final String EVAL = "gev_sweep";
+
+  private final SweepTable points;
+  private final List<String> metricNames = new ArrayList<>();
+  private final List<String> metricExpressions = new ArrayList<>();
+  private boolean usedParametricStudy;
+
+  /** One column per model parameter (as in {@code model.param()}), one row per point. */
+  public ParametricSweep(SweepTable points) {
+    this.points = points;
+  }
+
+  /** Add a global expression to evaluate at every point. */
+  public ParametricSweep metric(String name, String expression) {
+    metricNames.add(name);
+    metricExpressions.add(expression);
+    return this;
+  }
+
+  /** Whether the last {@link #run} used a COMSOL Parametric step rather than the in-process loop. */
+  public boolean usedParametricStudy() {
+    return usedParametricStudy;
+  }
+
+  /**
+   * Run every point. {@code sol} and {@code dataset} name the existing
+   * solver sequence and its dataset, used by the in-process fallback.
+   */
+  public SweepTable run(Model model, String sol, String dataset) {
+    try {
+      createParametricStudy(model);
+    } catch (RuntimeException e) {
+      System.out.println("Parametric study unavailable (" + e.getMessage() + "); sweeping in-process");
+      usedParametricStudy = false;
+      return runInProcess(model, sol, dataset);
+    }
+    usedParametricStudy = true;
+    return solveParametric(model);
+  }
+
+  /** Solve all points as one COMSOL Parametric sweep over "specified combinations". */
+  public SweepTable runParametric(Model model) {
+    createParametricStudy(model);
+    return solveParametric(model);
+  }
+
+  /** Create {@value #STUDY}; throws if this COMSOL has no Parametric step. */
+  private void createParametricStudy(Model model) {
+    String[] names = points.columns();
+    String[] lists = new String[names.length];
+    for (int c = 0; c < names.length; c++) {
+      StringBuilder list = new StringBuilder();
+      for (int r = 0; r < points.rowCount(); r++) {
+        list.append(r > 0 ? " " : "").append(points.get(r, c));
+      }
+      lists[c] = list.toString();
+    }
+    if (Arrays.asList(model.study().tags()).contains(STUDY)) {
+      model.study().remove(STUDY);
+    }
+    model.study().create(STUDY);
+    try {
+      model.study(STUDY).create("stat", "Stationary");
+      model.study(STUDY).create("param", "Parametric");
+      model.study(STUDY).feature("param").set("sweeptype", "sparse");
+      model.study(STUDY).feature("param").set("pname", names);
+      model.study(STUDY).feature("param").set("plistarr", lists);
+    } catch (RuntimeException e) {
+      // Leave no half-built study behind for the in-process fallback
+      model.study().remove(STUDY);
+      throw e;
+    }
+  }
+
+  /** Run {@value #STUDY}, which has its own solution; the base solution is untouched. */
+  private SweepTable solveParametric(Model model) {
+    String[] names = points.columns();
+    Set<String> before = new HashSet<>(Arrays.asList(model.result().dataset().tags()));
+    model.study(STUDY).run();
+    String dataset = null;
+    for (String tag : model.result().dataset().tags()) {
+      if (!before.contains(tag)) {
+        dataset = tag;
+      }
+    }
+    if (dataset == null) {
+      throw new IllegalStateException("Parametric study produced no dataset");
+    }
+
+    // One column per point for every metric
+    double[][] values = evaluate(model, dataset);
+    SweepTable table = resultTable();
+    for (int r = 0; r < points.rowCount(); r++) {
+      double[] row = rowWithParameters(r);
+      for (int m = 0; m < metricNames.size(); m++) {
+        row[names.length + m] = values[m][r];
+      }
+      table.add(row);
+    }
+    return table;
+  }
+
+  /**
+   * Set the parameters and re-run {@code sol} once per point, then restore
+   * the parameters and solve the base case again, since {@code sol} holds
+   * the last point's solution until then.
+   */
+  public SweepTable runInProcess(Model model, String sol, String dataset) {
+    String[] names = points.columns();
+    String[] base = new String[names.length];
+    for (int c = 0; c < names.length; c++) {
+      base[c] = model.param().get(names[c]);
+    }
+    SweepTable table = resultTable();
+    try {
+      for (int r = 0; r < points.rowCount(); r++) {
+        for (int c = 0; c < names.length; c++) {
+          model.param().set(names[c], Double.toString(points.get(r, c)));
+        }
+        model.sol(sol).runAll();
+        double[][] values = evaluate(model, dataset);
+        double[] row = rowWithParameters(r);
+        for (int m = 0; m < metricNames.size(); m++) {
+          // A stationary solution has one column; take the last in case of continuation
+          row[names.length + m] = values[m][values[m].length - 1];
+        }
+        table.add(row);
+      }
+    } finally {
+      for (int c = 0; c < names.length; c++) {
+        model.param().set(names[c], base[c]);
+      }
+    }
+    model.sol(sol).runAll();
+    return table;
+  }
+
+  private double[][] evaluate(Model model, String dataset) {
+    if (!Arrays.asList(model.result().numerical().tags()).contains(EVAL)) {
+      model.result().numerical().create(EVAL, "EvalGlobal");
+    }
+    model.result().numerical(EVAL).set("data", dataset);
+    model.result().numerical(EVAL).set("expr", metricExpressions.toArray(new String[0]));
+    return model.result().numerical(EVAL).getReal();
+  }
+
+  private SweepTable resultTable() {
+    List<String> columns = new ArrayList<>(Arrays.asList(points.columns()));
+    columns.addAll(metricNames);
+    return new SweepTable(columns.toArray(new String[0]));
+  }
+
+  private double[] rowWithParameters(int r) {
+    double[] row = new double[points.columnCount() + metricNames.size()];
+    System.arraycopy(points.row(r), 0, row, 0, points.columnCount());
+    return row;
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * SurfaceStudy.java
+ * Boundary-only meshing for studies whose physics live on surfaces alone.
+ */
+
+package comsolphysics.study;
+
+import com.comsol.model.Model;
+import comsolphysics.mesh.MeshCache;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A study step that solves only surface physics (surface-to-surface
+ * radiation) needs triangles on the boundaries it couples and nothing else.
+ * {@link #surfaceOnly} tells from the step's {@code activate} list whether
+ * that is the case, and {@link #meshBoundaries} then builds a {@code FreeTri}
+ * mesh on one boundary selection, with its own sizes, in place of the
+ * {@code FreeTet} volume mesh. The tetrahedra, their memory and their
+ * meshing time are skipped entirely.
+ *
+ * <pre>
+ *   if (SurfaceStudy.surfaceOnly(model, "comp1", "std1", "stat")) {
+ *     SurfaceStudy.meshBoundaries(model, "comp1", "geom1", "mesh1", "dif1", 0.2, 0.1);
+ *   } else {
+ *     ... FreeTet as before ...
+ *   }
+ * </pre>
+ */
+public final class SurfaceStudy {
+
+  /** Physics interface types defined on boundaries only. */
+  static final Set<String> SURFACE_TYPES = new HashSet<>(Arrays.asList("SurfaceToSurfaceRadiation"));
+  /** Tag of the boundary mesh feature. */
+  static final String FEATURE = "ftri_surf";
+
+  private SurfaceStudy() {
+  }
+
+  /**
+   * Physics interfaces of {@code comp} the study step solves for. The
+   * step's {@code activate} property alternates tags and {@code "on"} or
+   * {@code "off"}, and also lists frames and multiphysics couplings, which
+   * are left out here.
+   */
+  public static List<String> activePhysics(Model model, String comp, String study, String step) {
+    Set<String> physics = new HashSet<>(Arrays.asList(model.component(comp).physics().tags()));
+    String[] activate = model.study(study).feature(step).getStringArray("activate");
+    List<String> active = new ArrayList<>();
+    for (int i = 0; i + 1 < activate.length; i += 2) {
+      if (physics.contains(activate[i]) && activate[i + 1].equals("on")) {
+        active.add(activate[i]);
+      }
+    }
+    return active;
+  }
+
+  /** Whether the study step solves at least one interface and all of them are surface physics. */
+  public static boolean surfaceOnly(Model model, String comp, String study, String step) {
+    List<String> active = activePhysics(model, comp, study, step);
+    for (String tag : active) {
+      if (!SURFACE_TYPES.contains(model.component(comp).physics(tag).getType())) {
+        return false;
+      }
+    }
+    return !active.isEmpty();
+  }
+
+  /**
+   * Mesh only the boundaries in the named selection {@code selection} with
+   * triangles no larger than {@code hmax} and no smaller than {@code hmin},
+   * through {@link MeshCache}. Domains are left unmeshed. Returns whether
+   * the mesh came from the cache.
+   */
+  public static boolean meshBoundaries(Model model, String comp, String geom, String mesh, String selection,
+      double hmax, double hmin) {
+    if (hmin <= 0 || hmax < hmin) {
+      throw new IllegalArgumentException("Need 0 < hmin <= hmax: " + hmin + ", " + hmax);
+    }
+    if (!Arrays.asList(model.component(comp).mesh().tags()).contains(mesh)) {
+      model.component(comp).mesh().create(mesh, geom);
+    }
+    model.component(comp).mesh(mesh).create(FEATURE, "FreeTri");
+    model.component(comp).mesh(mesh).feature(FEATURE).selection().named(selection);
+    model.component(comp).mesh(mesh).feature("size").set("custom", "on");
+    model.component(comp).mesh(mesh).feature("size").set("hmax", hmax);
+    model.component(comp).mesh(mesh).feature("size").set("hmin", hmin);
+    boolean cached = MeshCache.openDefault().run(model, comp, geom, mesh);
+    int triangles = model.component(comp).mesh(mesh).getNumElem("tri");
+    if (triangles == 0) {
+      throw new IllegalStateException("Boundary mesh of selection " + selection + " is empty");
+    }
+    System.out.println("Boundary mesh: " + triangles + " triangles on " + selection + ", no volume elements");
+    return cached;
+  }
+}
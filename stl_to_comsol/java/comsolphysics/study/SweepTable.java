@@ -0,0 +1,141 @@
+/*
+ * SweepTable.java
+ * Rows of named numeric columns, read from and written to CSV.
+ */
+
+package comsolphysics.study;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A small numeric table: a fixed list of column names and any number of rows.
+ * Used both for sweep inputs (one column per parameter) and sweep results
+ * (parameters followed by metrics).
+ */
+public final class SweepTable {
+
+  private final String[] columns;
+  private final List<double[]> rows = new ArrayList<>();
+
+  public SweepTable(String... columns) {
+    this.columns = columns.clone();
+  }
+
+  public String[] columns() {
+    return columns.clone();
+  }
+
+  public int columnCount() {
+    return columns.length;
+  }
+
+  public int rowCount() {
+    return rows.size();
+  }
+
+  public int column(String name) {
+    for (int c = 0; c < columns.length; c++) {
+      if (columns[c].equals(name)) {
+        return c;
+      }
+    }
+    throw new IllegalArgumentException("No column " + name);
+  }
+
+  public SweepTable add(double... row) {
+    if (row.length != columns.length) {
+      throw new IllegalArgumentException("Expected " + columns.length + " values, got " + row.length);
+    }
+    rows.add(row.clone());
+    return this;
+  }
+
+  public double get(int row, int column) {
+    return rows.get(row)[column];
+  }
+
+  public double[] row(int row) {
+    return rows.get(row).clone();
+  }
+
+  /** Read a CSV whose first line holds the column names. Blank lines and {@code #} comments are skipped. */
+  public static SweepTable readCsv(Path path) throws IOException {
+    try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      SweepTable table = null;
+      String line;
+      int lineNo = 0;
+      while ((line = in.readLine()) != null) {
+        lineNo++;
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] cells = line.split(",");
+        for (int i = 0; i < cells.length; i++) {
+          cells[i] = cells[i].trim();
+        }
+        if (table == null) {
+          table = new SweepTable(cells);
+          continue;
+        }
+        double[] row = new double[cells.length];
+        try {
+          for (int i = 0; i < cells.length; i++) {
+            row[i] = Double.parseDouble(cells[i]);
+          }
+          table.add(row);
+        } catch (IllegalArgumentException e) {
+          throw new IOException(path + ":" + lineNo + ": " + e.getMessage());
+        }
+      }
+      if (table == null) {
+        throw new IOException("Empty sweep table: " + path);
+      }
+      return table;
+    }
+  }
+
+  public void writeCsv(Path path) throws IOException {
+    try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      out.write(String.join(",", columns));
+      out.newLine();
+      for (double[] row : rows) {
+        StringBuilder line = new StringBuilder();
+        for (int c = 0; c < row.length; c++) {
+          line.append(c > 0 ? "," : "").append(row[c]);
+        }
+        out.write(line.toString());
+        out.newLine();
+      }
+    }
+  }
+
+  public void print(PrintStream out) {
+    StringBuilder header = new StringBuilder();
+    for (String c : columns) {
+      header.append(String.format("%14s", c));
+    }
+    out.println(header);
+    for (double[] row : rows) {
+      StringBuilder line = new StringBuilder();
+      for (double v : row) {
+        line.append(String.format("%14.6g", v));
+      }
+      out.println(line);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SweepTable" + Arrays.toString(columns) + "[" + rows.size() + " rows]";
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * SurfaceSetTest.java
+ * Offline checks of which way SurfaceSet.fromBoundaries orients and which boundaries it makes transparent.
+ */
+
+package comsolphysics.rad;
+
+import comsolphysics.select.BoundaryMesh;
+
+/**
+ * Builds one triangle per boundary, all in the plane z = 0 with their mesh
+ * normal along +z (into the "up" domain), and checks the side each one
+ * radiates to. Needs no COMSOL classes. Exits non-zero on the first
+ * failure.
+ */
+public final class SurfaceSetTest {
+
+  /** Up and down domain of boundaries 1..6; domain 1 is opaque, 2 and 3 are air, 0 is the exterior. */
+  private static final int[] UP = {0, 2, 2, 1, 1, 2};
+  private static final int[] DOWN = {2, 0, 3, 2, 0, 1};
+
+  private SurfaceSetTest() {
+  }
+
+  public static void main(String[] args) {
+    exteriorCountsAsOpaque();
+    noOpaqueDomainsKeepsOrientation();
+    System.out.println("SurfaceSetTest: ok");
+  }
+
+  /** Opaque domain 1: each boundary radiates into its air side, and only air-to-air boundaries are transparent. */
+  static void exteriorCountsAsOpaque() {
+    SurfaceSet s = SurfaceSet.fromBoundaries(mesh(), new int[] {1, 2, 3, 4, 5, 6}, 1);
+    checkSide(s, 0, -1, "exterior above, air below");
+    checkSide(s, 1, 1, "air above, exterior below");
+    checkSide(s, 3, -1, "opaque above, air below");
+    checkSide(s, 4, 1, "opaque above, exterior below");
+    checkSide(s, 5, 1, "air above, opaque below");
+    for (int p = 0; p < 6; p++) {
+      check(s.opaque(p) == (p != 2), "boundary " + s.ids()[p] + (s.opaque(p) ? " is" : " is not") + " opaque");
+    }
+  }
+
+  /** Without opaque domains nothing is flipped, the exterior included, and nothing is transparent. */
+  static void noOpaqueDomainsKeepsOrientation() {
+    SurfaceSet s = SurfaceSet.fromBoundaries(mesh(), new int[] {1, 2, 3});
+    for (int p = 0; p < 3; p++) {
+      checkSide(s, p, 1, "no opaque domains");
+      check(s.opaque(p), "boundary " + s.ids()[p] + " is transparent without opaque domains");
+    }
+  }
+
+  /** One unit right triangle per boundary, side by side along x. */
+  private static BoundaryMesh mesh() {
+    int n = UP.length;
+    double[] xyz = new double[n * 9];
+    int[] triangles = new int[n * 3];
+    int[] entity = new int[n];
+    for (int b = 0; b < n; b++) {
+      double x = 2.0 * b;
+      double[] corners = {x, 0, 0, x + 1, 0, 0, x, 1, 0};
+      System.arraycopy(corners, 0, xyz, b * 9, 9);
+      for (int k = 0; k < 3; k++) {
+        triangles[b * 3 + k] = b * 3 + k;
+      }
+      entity[b] = b + 1;
+    }
+    return new BoundaryMesh(xyz, triangles, entity, new int[][] {UP, DOWN}, n);
+  }
+
+  private static void checkSide(SurfaceSet s, int p, int side, String what) {
+    float nz = s.nz[s.first(p)];
+    check(Math.signum(nz) == side, "boundary " + s.ids()[p] + " (" + what + ") radiates along z " + nz
+        + ", expected " + side);
+  }
+
+  static void check(boolean ok, String message) {
+    if (!ok) {
+      System.err.println("SurfaceSetTest: " + message);
+      System.exit(1);
+    }
+  }
+}
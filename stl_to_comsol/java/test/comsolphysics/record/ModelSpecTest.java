@@ -0,0 +1,302 @@
+/*
+ * ModelSpecTest.java
+ * Diffs a model spec, printed as Java, against the source it was recorded from.
+ */
+
+package comsolphysics.record;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that a spec holds exactly the calls of the class it replaced.
+ *
+ * <pre>
+ *   java comsolphysics.record.ModelSpecTest model.spec Original.java [Current.java]
+ * </pre>
+ *
+ * <p>Section {@code run2}, or {@code run5.geometry} and
+ * {@code run5.settings} together, must print as the {@code model.}
+ * statements of {@code run2()} or {@code run5()} in {@code Original.java},
+ * in order. Statements {@code Current.java} still makes itself in the same
+ * method (calls that read the built model, or take constants) are left out
+ * of the comparison. Literals are compared by value, so {@code 0} matches
+ * {@code 0.0} and {@code new double[]{...}} matches {@code {...}}.
+ *
+ * <p>Reads the spec unbound, so needs no COMSOL classes. Prints a diff
+ * and exits non-zero on any difference.
+ */
+public final class ModelSpecTest {
+
+  private ModelSpecTest() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("usage: ModelSpecTest <file.spec> <original.java> [current.java]");
+      System.exit(2);
+    }
+    ModelSpec spec = ModelSpec.readUnbound(Paths.get(args[0]));
+    String original = new String(Files.readAllBytes(Paths.get(args[1])), StandardCharsets.UTF_8);
+    String current = args.length > 2
+        ? new String(Files.readAllBytes(Paths.get(args[2])), StandardCharsets.UTF_8) : null;
+
+    int differences = 0;
+    int calls = 0;
+    List<String> methods = new ArrayList<>();
+    for (String section : spec.sections()) {
+      String method = section.contains(".") ? section.substring(0, section.indexOf('.')) : section;
+      if (!methods.contains(method)) {
+        methods.add(method);
+      }
+    }
+    for (String method : methods) {
+      List<String> actual = new ArrayList<>();
+      for (String section : spec.sections()) {
+        if (section.equals(method) || section.startsWith(method + ".")) {
+          for (String line : spec.toJava(section)) {
+            actual.add(normalize(line.substring(0, line.length() - 1)));
+          }
+        }
+      }
+      Set<String> kept = new HashSet<>(current == null ? new ArrayList<>() : statements(current, method));
+      List<String> expected = new ArrayList<>();
+      for (String s : statements(original, method)) {
+        if (s.startsWith("model .") && !kept.contains(s)) {
+          expected.add(s);
+        }
+      }
+      differences += diff(method, expected, actual);
+      calls += actual.size();
+    }
+    if (differences > 0) {
+      System.err.println("ModelSpecTest: " + differences + " differences");
+      System.exit(1);
+    }
+    System.out.println("ModelSpecTest: ok (" + calls + " calls in " + methods.size() + " methods)");
+  }
+
+  /** Print the lines only in {@code expected} (-) or only in {@code actual} (+); returns their count. */
+  static int diff(String method, List<String> expected, List<String> actual) {
+    int n = expected.size();
+    int m = actual.size();
+    int[][] common = new int[n + 1][m + 1];
+    for (int i = n - 1; i >= 0; i--) {
+      for (int j = m - 1; j >= 0; j--) {
+        common[i][j] = expected.get(i).equals(actual.get(j))
+            ? common[i + 1][j + 1] + 1 : Math.max(common[i + 1][j], common[i][j + 1]);
+      }
+    }
+    int count = 0;
+    int i = 0;
+    int j = 0;
+    while (i < n || j < m) {
+      if (i < n && j < m && expected.get(i).equals(actual.get(j))) {
+        i++;
+        j++;
+      } else if (j < m && (i == n || common[i][j + 1] >= common[i + 1][j])) {
+        System.err.println(method + " + " + actual.get(j++));
+        count++;
+      } else {
+        System.err.println(method + " - " + expected.get(i++));
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** The normalized statements in the body of {@code Model method(...)}, or none if it is not there. */
+  static List<String> statements(String source, String method) {
+    List<String> out = new ArrayList<>();
+    String code = stripComments(source);
+    Matcher signature = Pattern.compile("\\bModel\\s+" + Pattern.quote(method) + "\\s*\\(").matcher(code);
+    if (!signature.find()) {
+      return out;
+    }
+    int open = code.indexOf('{', signature.end());
+    // Block braces, and array initializer braces inside a statement
+    int depth = 0;
+    int array = 0;
+    int start = open + 1;
+    char previous = ' ';
+    for (int i = open; i < code.length(); i++) {
+      char c = code.charAt(i);
+      if (c == '"') {
+        i = endOfString(code, i);
+      } else if (c == '{') {
+        if (array > 0 || "]=,(".indexOf(previous) >= 0) {
+          array++;
+        } else {
+          // The method body or a nested block (try, if): its statements count too
+          depth++;
+          start = i + 1;
+        }
+      } else if (c == '}') {
+        if (array > 0) {
+          array--;
+        } else if (--depth == 0) {
+          break;
+        } else {
+          start = i + 1;
+        }
+      } else if (c == ';' && array == 0) {
+        String statement = normalize(code.substring(start, i));
+        if (!statement.isEmpty()) {
+          out.add(statement);
+        }
+        start = i + 1;
+      }
+      if (!Character.isWhitespace(c)) {
+        previous = c;
+      }
+    }
+    return out;
+  }
+
+  private static String stripComments(String s) {
+    StringBuilder out = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"') {
+        int end = endOfString(s, i);
+        out.append(s, i, end + 1);
+        i = end;
+      } else if (s.startsWith("//", i)) {
+        i = s.indexOf('\n', i) - 1;
+        if (i < 0) {
+          break;
+        }
+      } else if (s.startsWith("/*", i)) {
+        i = s.indexOf("*/", i + 2) + 1;
+        out.append(' ');
+      } else {
+        out.append(c);
+      }
+    }
+    return out.toString();
+  }
+
+  private static int endOfString(String s, int open) {
+    for (int i = open + 1; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '"') {
+        return i;
+      }
+    }
+    return s.length() - 1;
+  }
+
+  /**
+   * One statement as space-separated tokens: strings re-escaped, numbers
+   * by value, {@code new T[]} dropped.
+   */
+  static String normalize(String statement) {
+    List<String> tokens = new ArrayList<>();
+    String s = statement;
+    int i = 0;
+    while (i < s.length()) {
+      char c = s.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '"') {
+        int end = endOfString(s, i);
+        tokens.add(quote(unescape(s.substring(i + 1, end))));
+        i = end + 1;
+      } else if (Character.isDigit(c) || (c == '-' || c == '.') && i + 1 < s.length()
+          && Character.isDigit(s.charAt(i + 1)) && numberMayStart(tokens)) {
+        int end = i + 1;
+        while (end < s.length() && (Character.isLetterOrDigit(s.charAt(end)) || s.charAt(end) == '.'
+            || (s.charAt(end) == '-' || s.charAt(end) == '+') && "eE".indexOf(s.charAt(end - 1)) >= 0)) {
+          end++;
+        }
+        tokens.add(number(s.substring(i, end)));
+        i = end;
+      } else if (Character.isJavaIdentifierStart(c)) {
+        int end = i + 1;
+        while (end < s.length() && Character.isJavaIdentifierPart(s.charAt(end))) {
+          end++;
+        }
+        tokens.add(s.substring(i, end));
+        i = end;
+      } else {
+        tokens.add(String.valueOf(c));
+        i++;
+      }
+    }
+    List<String> out = new ArrayList<>(tokens.size());
+    for (int k = 0; k < tokens.size(); k++) {
+      if (tokens.get(k).equals("new") && k + 1 < tokens.size()) {
+        // new double[][] {...} prints as {...}
+        k += 1;
+        while (k + 2 < tokens.size() && tokens.get(k + 1).equals("[") && tokens.get(k + 2).equals("]")) {
+          k += 2;
+        }
+        continue;
+      }
+      out.add(tokens.get(k));
+    }
+    return String.join(" ", out);
+  }
+
+  private static boolean numberMayStart(List<String> tokens) {
+    if (tokens.isEmpty()) {
+      return true;
+    }
+    String last = tokens.get(tokens.size() - 1);
+    return last.equals("(") || last.equals(",") || last.equals("{");
+  }
+
+  private static String number(String literal) {
+    String s = literal.replace("_", "");
+    char last = s.charAt(s.length() - 1);
+    if ("dDfFlL".indexOf(last) >= 0 && !s.startsWith("0x")) {
+      s = s.substring(0, s.length() - 1);
+    }
+    double v = Double.parseDouble(s);
+    if (v == Math.rint(v) && Math.abs(v) < 1e15) {
+      return Long.toString((long) v);
+    }
+    return Double.toString(v);
+  }
+
+  private static String unescape(String s) {
+    StringBuilder out = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\\' && i + 1 < s.length()) {
+        char e = s.charAt(++i);
+        switch (e) {
+          case 'n':
+            out.append('\n');
+            break;
+          case 't':
+            out.append('\t');
+            break;
+          case 'u':
+            out.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+            i += 4;
+            break;
+          default:
+            out.append(e);
+        }
+      } else {
+        out.append(c);
+      }
+    }
+    return out.toString();
+  }
+
+  private static String quote(String s) {
+    return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\t", "\\t") + '"';
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * RecordingModelTest.java
+ * Offline checks of what a RecordingModel records and sends.
+ */
+
+package comsolphysics.record;
+
+import com.comsol.model.Model;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs against {@link RecordingModel#local()}, so needs the COMSOL API
+ * classes but no license or server. Exits non-zero on the first failure.
+ */
+public final class RecordingModelTest {
+
+  private RecordingModelTest() {
+  }
+
+  public static void main(String[] args) {
+    selectionSettersAreSent();
+    overwrittenSetsCollapse();
+    System.out.println("RecordingModelTest: ok");
+  }
+
+  /** Nothing to optimize away: every recorded call goes out as made, geom(tag, dim) included. */
+  static void selectionSettersAreSent() {
+    Model model = RecordingModel.local();
+    model.component().create("comp1", true);
+    model.component("comp1").material().create("mat3", "Common");
+    model.component("comp1").material("mat3").selection().geom("geom1", 2);
+    model.component("comp1").material("mat3").selection().set(126);
+    model.component("comp1").material("mat3").label("Glass");
+    model.component("comp1").selection().create("sel2", "Explicit");
+    model.component("comp1").selection("sel2").geom("geom1", 2);
+    model.component("comp1").selection("sel2").set(27, 28, 29, 35, 55);
+
+    String[] tags = model.component("comp1").material().tags();
+
+    RecordingModel r = RecordingModel.of(model);
+    List<String> expected = Arrays.asList(
+        "model.component().create(\"comp1\", true)",
+        "model.component(\"comp1\").material().create(\"mat3\", \"Common\")",
+        "model.component(\"comp1\").material(\"mat3\").selection().geom(\"geom1\", 2)",
+        "model.component(\"comp1\").material(\"mat3\").selection().set(126)",
+        "model.component(\"comp1\").material(\"mat3\").label(\"Glass\")",
+        "model.component(\"comp1\").selection().create(\"sel2\", \"Explicit\")",
+        "model.component(\"comp1\").selection(\"sel2\").geom(\"geom1\", 2)",
+        "model.component(\"comp1\").selection(\"sel2\").set(27, 28, 29, 35, 55)");
+    check(r.sent().equals(expected), "sent calls differ from recorded:\n  " + String.join("\n  ", r.sent()));
+    check(r.recordedCount() == expected.size() && r.sentCount() == expected.size(),
+        "recorded " + r.recordedCount() + ", sent " + r.sentCount() + ", expected " + expected.size());
+    check(Arrays.equals(tags, new String[] {"mat3"}), "tags() read " + Arrays.toString(tags));
+  }
+
+  /** A later write to the same slot drops the earlier one, selection dimension included. */
+  static void overwrittenSetsCollapse() {
+    Model model = RecordingModel.local();
+    model.component().create("comp1", true);
+    model.component("comp1").material().create("mat5", "Common");
+    model.component("comp1").material("mat5").selection().geom("geom1", 3);
+    model.component("comp1").material("mat5").selection().geom("geom1", 2);
+    model.component("comp1").material("mat5").selection().set(37, 38, 39);
+    model.component("comp1").material("mat5").label("Brick");
+    model.component("comp1").material("mat5").label("Fire brick");
+    RecordingModel r = RecordingModel.of(model);
+    r.flush();
+
+    List<String> expected = Arrays.asList(
+        "model.component().create(\"comp1\", true)",
+        "model.component(\"comp1\").material().create(\"mat5\", \"Common\")",
+        "model.component(\"comp1\").material(\"mat5\").selection().geom(\"geom1\", 2)",
+        "model.component(\"comp1\").material(\"mat5\").selection().set(37, 38, 39)",
+        "model.component(\"comp1\").material(\"mat5\").label(\"Fire brick\")");
+    check(r.sent().equals(expected), "optimized calls:\n  " + String.join("\n  ", r.sent()));
+    check(r.recordedCount() == 7, "recorded " + r.recordedCount() + " calls, expected 7");
+  }
+
+  static void check(boolean ok, String message) {
+    if (!ok) {
+      System.err.println("RecordingModelTest: " + message);
+      System.exit(1);
+    }
+  }
+}
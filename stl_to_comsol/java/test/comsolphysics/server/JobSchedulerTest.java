@@ -0,0 +1,194 @@
+/*
+ * JobSchedulerTest.java
+ * Offline checks of JobScheduler core shares, model release and failure events.
+ */
+
+package comsolphysics.server;
+
+import com.comsol.model.Model;
+import comsolphysics.mesh.DelaunayMesher;
+import comsolphysics.pipeline.ModelTags;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs small queues on {@link StageExecutor#local} and on
+ * {@link StageExecutor#models} with the {@code local} model runtime. Exits
+ * non-zero on the first failure. Writes and deletes
+ * {@code JobSchedulerTest.Failing_events.jsonl} in the working directory.
+ */
+public final class JobSchedulerTest {
+
+  /** Both rooms wait here in {@code run()}, so their tags are taken while both hold a seat. */
+  static final CyclicBarrier BOTH_RUNNING = new CyclicBarrier(2);
+
+  private JobSchedulerTest() {
+  }
+
+  /** A generated class as {@link StageExecutor#models} runs it: two stages, one model. */
+  public static final class Room {
+
+    private Room() {
+    }
+
+    public static Model run() throws Exception {
+      BOTH_RUNNING.await(30, TimeUnit.SECONDS);
+      ModelTags.unique("Model");
+      return null;
+    }
+
+    public static Model run2(Model model) {
+      return model;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    stagesRunOnTheirShare();
+    seatsReleaseOnlyTheirModels();
+    failuresGoToTheEventLog();
+    System.out.println("JobSchedulerTest: ok");
+  }
+
+  /** Work a stage starts, mesher partitions included, sees the stage's core share and nothing wider. */
+  static void stagesRunOnTheirShare() throws InterruptedException {
+    List<String> seen = Collections.synchronizedList(new ArrayList<>());
+    StageExecutor local = StageExecutor.local(0.001);
+    StageExecutor probe = job -> {
+      StageExecutor.Session session = local.open(job);
+      return new StageExecutor.Session() {
+        @Override
+        public List<String> stages() {
+          return session.stages();
+        }
+
+        @Override
+        public void run(int index, ForkJoinPool pool) throws Exception {
+          ForkJoinPool current = ForkJoinTask.getPool();
+          int inner = current.submit(() -> ForkJoinTask.getPool().getParallelism()).get();
+          seen.add(job.className + " " + index + " " + pool.getParallelism() + " "
+              + (current == pool) + " " + inner + " " + DelaunayMesher.defaultPartitions());
+          session.run(index, pool);
+        }
+
+        @Override
+        public void close() {
+          session.close();
+        }
+      };
+    };
+    JobScheduler scheduler = new JobScheduler(probe, 2, 4, 1L << 40, 4).events(false);
+    scheduler.add("a", "", new String[0], new double[] {10, 1}, 1);
+    scheduler.add("b", "", new String[0], new double[] {10, 1}, 1);
+    scheduler.run();
+
+    check(seen.size() == 4, "ran " + seen.size() + " stages, expected 4: " + seen);
+    for (JobScheduler.Job job : scheduler.jobs()) {
+      check(!job.failed(), job.className + " failed: " + job.error());
+      List<JobScheduler.StageResult> results = job.results();
+      check(results.get(1).cores == 1, job.className + " light stage got " + results.get(1).cores + " cores");
+      for (int s = 0; s < results.size(); s++) {
+        int cores = results.get(s).cores;
+        String expected = job.className + " " + s + " " + cores + " true " + cores + " " + cores;
+        check(seen.contains(expected), "no stage saw its share of " + cores + ": expected \"" + expected
+            + "\" in " + seen);
+      }
+    }
+  }
+
+  /** Two seats on one runtime: distinct model tags, each released once by its own job. */
+  static void seatsReleaseOnlyTheirModels() throws InterruptedException {
+    List<List<String>> released = Collections.synchronizedList(new ArrayList<>());
+    ModelRuntime local = ModelRuntime.local();
+    ModelRuntime runtime = new ModelRuntime() {
+      @Override
+      public void open() {
+        local.open();
+      }
+
+      @Override
+      public void release(List<String> models) {
+        released.add(models);
+        local.release(models);
+      }
+
+      @Override
+      public void close() {
+        local.close();
+      }
+    };
+    String classpath = System.getProperty("java.class.path");
+    JobScheduler scheduler = new JobScheduler(StageExecutor.models(runtime), 2, 2, 1L << 40, 1).events(false);
+    scheduler.add(Room.class.getName(), classpath, new String[0], new double[] {1, 1}, 1);
+    scheduler.add(Room.class.getName(), classpath, new String[0], new double[] {1, 1}, 1);
+    scheduler.run();
+
+    for (JobScheduler.Job job : scheduler.jobs()) {
+      check(!job.failed(), "room failed: " + job.error());
+    }
+    check(released.size() == 2, "released " + released + ", expected one list per job");
+    check(released.get(0).size() == 1 && released.get(1).size() == 1,
+        "released " + released + ", expected one model per job");
+    check(!released.get(0).equals(released.get(1)), "both jobs released " + released.get(0));
+    check(released.get(0).get(0).startsWith("Model_") && released.get(1).get(0).startsWith("Model_"),
+        "released " + released + ", expected the tags of ModelTags.unique(\"Model\")");
+  }
+
+  /** A failed stage is logged with its error and stack trace; the job stops there. */
+  static void failuresGoToTheEventLog() throws Exception {
+    String name = JobSchedulerTest.class.getSimpleName() + ".Failing";
+    Path events = Paths.get(name + "_events.jsonl");
+    Files.deleteIfExists(events);
+    StageExecutor failing = job -> new StageExecutor.Session() {
+      @Override
+      public List<String> stages() {
+        List<String> names = new ArrayList<>();
+        names.add("run");
+        names.add("run2");
+        return names;
+      }
+
+      @Override
+      public void run(int index, ForkJoinPool pool) {
+        throw new IllegalStateException("Mesh failed in domain 1");
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    try {
+      JobScheduler scheduler = new JobScheduler(failing, 1, 1, 1L << 40, 1);
+      JobScheduler.Job job = scheduler.add(name, "", new String[0], new double[] {1, 1}, 1);
+      scheduler.run();
+
+      check(job.failed() && job.results().size() == 1, "failed " + job.failed() + " after "
+          + job.results().size() + " stages, expected to fail in the first");
+      List<String> lines = Files.readAllLines(events, StandardCharsets.UTF_8);
+      check(lines.size() == 1, "wrote " + lines.size() + " events, expected 1");
+      String line = lines.get(0);
+      check(line.contains("\"ok\":false"), "event not marked failed: " + line);
+      check(line.contains("\"error\":\"java.lang.IllegalStateException: Mesh failed in domain 1\""),
+          "event has no error: " + line);
+      check(line.contains("\"trace\":\"java.lang.IllegalStateException: Mesh failed in domain 1\\u000a\\u0009at "),
+          "event has no stack trace: " + line);
+    } finally {
+      Files.deleteIfExists(events);
+    }
+  }
+
+  static void check(boolean ok, String message) {
+    if (!ok) {
+      System.err.println("JobSchedulerTest: " + message);
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * ModelCompilerTest.java
+ * Checks that rebuilding a classpath directory with the same bytes keeps the class cache.
+ */
+
+package comsolphysics.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Compiles one source against a classpath directory three times: first
+ * cold, then after the directory's file is rewritten with the same bytes
+ * and a later time (what every library rebuild does), then after its
+ * bytes change. Only the middle compile may come from the cache. Needs a
+ * JDK; exits non-zero on failure.
+ */
+public final class ModelCompilerTest {
+
+  private ModelCompilerTest() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    Path tmp = Files.createTempDirectory("modelcompiler");
+    try {
+      Path lib = Files.createDirectories(tmp.resolve("classes"));
+      Path helper = lib.resolve("Helper.class");
+      Files.write(helper, "v1".getBytes(StandardCharsets.UTF_8));
+      Path source = tmp.resolve("Room.java");
+      Files.write(source, "public class Room {}\n".getBytes(StandardCharsets.UTF_8));
+      List<Path> sources = Collections.singletonList(source);
+      ModelCompiler compiler = new ModelCompiler(tmp.resolve("cache"), ModelCompiler.DEFAULT_MAX_BYTES,
+          Collections.singletonList(lib.toString()));
+
+      ModelCompiler.Result cold = compiler.compile(sources).get(source);
+      check(cold.ok() && !cold.cached, "first compile: ok=" + cold.ok() + " cached=" + cold.cached + " " + cold.errors);
+
+      Files.write(helper, "v1".getBytes(StandardCharsets.UTF_8));
+      Files.setLastModifiedTime(helper, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+      ModelCompiler.Result rebuilt = compiler.compile(sources).get(source);
+      check(rebuilt.ok() && rebuilt.cached, "same library bytes, new time: not taken from the cache");
+
+      Files.write(helper, "v2".getBytes(StandardCharsets.UTF_8));
+      ModelCompiler.Result changed = compiler.compile(sources).get(source);
+      check(changed.ok() && !changed.cached, "changed library: stale bytecode taken from the cache");
+    } finally {
+      try (Stream<Path> walk = Files.walk(tmp)) {
+        walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+      }
+    }
+    System.out.println("ModelCompilerTest: ok");
+  }
+
+  static void check(boolean ok, String message) {
+    if (!ok) {
+      System.err.println("ModelCompilerTest: " + message);
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * ModelServerTest.java
+ * Offline check that concurrent ModelServer jobs get and free only their own models.
+ */
+
+package comsolphysics.server;
+
+import comsolphysics.pipeline.ModelTags;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs two jobs at once on a two-worker server with the {@code local}
+ * runtime. Each job takes a model tag while the other is running; the
+ * tags must differ, and each job's release must name only its own. Exits
+ * non-zero on failure.
+ */
+public final class ModelServerTest {
+
+  /** Both jobs wait here, so their tags are taken while both run. */
+  static final CyclicBarrier BOTH_RUNNING = new CyclicBarrier(2);
+
+  private ModelServerTest() {
+  }
+
+  /** The job: prints the tag it creates its model under. */
+  public static final class Job {
+
+    private Job() {
+    }
+
+    public static void main(String[] args) throws Exception {
+      BOTH_RUNNING.await(30, TimeUnit.SECONDS);
+      System.out.println(ModelTags.unique("Model"));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<List<String>> released = Collections.synchronizedList(new ArrayList<>());
+    ModelRuntime local = ModelRuntime.local();
+    ModelRuntime runtime = new ModelRuntime() {
+      @Override
+      public void open() {
+        local.open();
+      }
+
+      @Override
+      public void release(List<String> models) {
+        released.add(models);
+        local.release(models);
+      }
+
+      @Override
+      public void close() {
+        local.close();
+      }
+    };
+
+    ModelServer server = new ModelServer(runtime, 2);
+    int port = server.start(0);
+    ExecutorService clients = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> a = clients.submit(() -> runJob(port));
+      Future<String> b = clients.submit(() -> runJob(port));
+      String tagA = a.get(60, TimeUnit.SECONDS);
+      String tagB = b.get(60, TimeUnit.SECONDS);
+
+      check(!tagA.equals(tagB), "both jobs got model tag " + tagA);
+      Set<List<String>> expected = new HashSet<>();
+      expected.add(Collections.singletonList(tagA));
+      expected.add(Collections.singletonList(tagB));
+      check(released.size() == 2 && new HashSet<>(released).equals(expected),
+          "released " + released + ", expected [" + tagA + "] and [" + tagB + "] once each");
+    } finally {
+      clients.shutdownNow();
+      server.close();
+    }
+    System.out.println("ModelServerTest: ok");
+  }
+
+  /** Run {@link Job} over one connection; returns the tag it printed. */
+  private static String runJob(int port) throws IOException {
+    try (Socket s = new Socket(InetAddress.getLoopbackAddress(), port);
+         BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+         PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+      out.print("run\tmain\t" + System.getProperty("java.class.path") + "\t" + Job.class.getName() + "\n");
+      out.flush();
+      String tag = null;
+      for (String line; (line = in.readLine()) != null; ) {
+        String[] f = ModelServer.split(line);
+        if (f[0].equals("out") && !f[2].trim().isEmpty()) {
+          tag = f[2].trim();
+        } else if (f[0].equals("failed")) {
+          throw new IllegalStateException("Job failed: " + f[2]);
+        } else if (f[0].equals("done")) {
+          return tag;
+        }
+      }
+      throw new IllegalStateException("Server closed the connection");
+    }
+  }
+
+  static void check(boolean ok, String message) {
+    if (!ok) {
+      System.err.println("ModelServerTest: " + message);
+      System.exit(1);
+    }
+  }
+}
@@ -6,12 +6,16 @@
 
 import com.comsol.model.*;
 import com.comsol.model.util.*;
+import comsolphysics.mesh.MeshQuality;
+import comsolphysics.pipeline.ModelTags;
+import comsolphysics.pipeline.StageEvents;
+import comsolphysics.pipeline.StagePipeline;
 import java.io.IOException;
 
 public class living_room_with_stove {
 
   public static Model run() throws IOException {
-    Model model = ModelUtil.create("Model");
+    Model model = ModelUtil.create(ModelTags.unique("Model"));
 
     model.modelPath(".");
     model.label("living_room_with_stove.mph");
@@ -114,6 +118,10 @@ public class living_room_with_stove {
     System.out.println("Mesh statistics:");
     System.out.println("  Elements: " + model.component("comp1").mesh("mesh1").getNumElem());
 
+    MeshQuality quality = MeshQuality.of(model, "comp1", "mesh1");
+    quality.printSummary(System.out);
+    quality.check(MeshQuality.Limits.DEFAULT);
+
     return model;
   }
 
@@ -164,22 +172,25 @@ public class living_room_with_stove {
     System.out.println("Room dimensions: 6.50m x 7.13m x 2.70m");
     System.out.println();
 
-    Model model = run();
-    System.out.println("Geometry imported successfully");
-
-    model = run2(model);
-    System.out.println("Materials assigned");
-
-    model = run3(model);
-    System.out.println("Physics configured");
-
-    model = run4(model);
-    System.out.println("Mesh generated");
-
-    model = run5(model);
-    System.out.println("Solution computed");
-
+    // Per-stage timing and memory go to living_room_with_stove_events.jsonl
+    StageEvents events = StageEvents.open("living_room_with_stove");
+
+    // Checkpointed after every stage; --resume skips the stages already saved
+    Model model = new StagePipeline("living_room_with_stove", "living_room_with_stove.stl",
+        StagePipeline.resumeRequested(args))
+        .model(living_room_with_stove.class)
+        .stage("Geometry imported successfully", m -> run())
+        .stage("Materials assigned", living_room_with_stove::run2)
+        .stage("Physics configured", living_room_with_stove::run3)
+        .stage("Mesh generated", living_room_with_stove::run4)
+        .stage("Solution computed", living_room_with_stove::run5)
+        .events(events)
+        .run();
+
+    StageEvents.Span resultsSpan = events.start("results");
     run6(model);
+    resultsSpan.end(model);
+    events.close();
     System.out.println("Results saved");
 
     System.out.println("\nSimulation complete!");
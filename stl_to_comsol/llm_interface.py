@@ -318,7 +318,7 @@ Requirements:
 9. Follow the same code structure as the reference
 
 Important notes:
-- Use ModelUtil.create() to create the model
+- Create the model with ModelUtil.create(ModelTags.unique("Model")) (import comsolphysics.pipeline.ModelTags), never a fixed tag
 - Import STL using: model.component("comp1").geom("geom1").create("imp1", "Import")
 - Set STL path: .set("filename", "{stl_path}")
 - Assign materials using model.component("comp1").material().create()
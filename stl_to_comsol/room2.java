@@ -4,19 +4,12 @@
  *
  * Source STL: room2.stl
  *
- * Geometry analysis (from stl_to_comsol/stl_analyzer.py):
- *   - Bounding box: 4.68m (width) x 4.37m (depth) x 4.52m (height)
- *   - Volume: 92.46 m^3
- *   - Mesh: 1746 triangles, 5238 vertices, surface area 228.85 m^2
+ * Bounding box, triangle count and surface area are read from the STL at
+ * startup by comsolphysics.mesh.StlMesh (see main()).
  *
- * Identified component groups in the STL:
- *   - Floor: 96 surface patches, total area 41.93 m^2
- *   - Walls: 120 surface patches, total area 142.85 m^2
- *   - Ceiling: 28 surface patches, total area 3.45 m^2
- *   - Doors: 417 surface patches, total area 12.58 m^2
- *   - Windows: 20 surface patches, total area 0.32 m^2
- *   - Furniture (tables, chairs, cabinets, etc.): 385 patches, total area 25.53 m^2
- *   - Other interior object: 680 patches, total area 2.20 m^2
+ * Component groups (floor, walls, ceiling, doors, windows, furniture, other)
+ * are segmented from the scan at startup by
+ * comsolphysics.mesh.SurfaceSegmenter and printed by main().
  *
  * Potential categories (not all present in this STL):
  *   - wall, floor, ceiling, window, door, furniture (tables, chairs, etc.)
@@ -27,12 +20,54 @@
 
 import com.comsol.model.*;
 import com.comsol.model.util.*;
+import comsolphysics.heat.ComsolConduction;
+import comsolphysics.heat.ConductionSolution;
+import comsolphysics.heat.ConductionSolver;
+import comsolphysics.mesh.IndexedMesh;
+import comsolphysics.mesh.MeshCache;
+import comsolphysics.mesh.MeshQuality;
+import comsolphysics.mesh.Segmentation;
+import comsolphysics.mesh.StlMesh;
+import comsolphysics.mesh.SurfaceSegmenter;
+import comsolphysics.mesh.VertexWelder;
+import comsolphysics.pipeline.ModelTags;
+import comsolphysics.pipeline.StageEvents;
+import comsolphysics.pipeline.StagePipeline;
+import comsolphysics.study.MeshContinuation;
+import comsolphysics.study.ParametricSweep;
+import comsolphysics.study.SweepTable;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class room2 {
 
+  // Source scan; overridable with the first command-line argument
+  private static String stlFile = "../assets/room2.stl";
+
+  // Import tolerance; also used to weld the scan before import
+  private static final double IMPORT_TOL = 1.0E-6;
+
+  // Dataset the plots show; the finest level solved when --converge is given
+  private static String resultData = "dset1";
+
+  private static IndexedMesh scan;
+  private static Path weldedStl;
+
+  /** Read and weld the scan once, writing the shared-vertex STL that run() imports. */
+  static IndexedMesh loadScan() throws IOException {
+    if (scan == null) {
+      scan = VertexWelder.weld(StlMesh.read(Paths.get(stlFile)), IMPORT_TOL);
+      weldedStl = Paths.get("room2_welded.stl").toAbsolutePath();
+      scan.writeStl(weldedStl);
+    }
+    return scan;
+  }
+
   public static Model run() throws IOException {
-    Model model = ModelUtil.create("Model");
+    loadScan();
+
+    Model model = ModelUtil.create(ModelTags.unique("Model"));
 
     model.modelPath(".");
     model.label("room2.mph");
@@ -41,14 +76,14 @@ public class room2 {
     model.component().create("comp1", true);
     model.component("comp1").geom().create("geom1", 3);
 
-    // Import STL geometry
+    // Import the welded STL; shared vertices let import and repair finish in one build
     model.component("comp1").geom("geom1").create("imp1", "Import");
     model.component("comp1").geom("geom1").feature("imp1")
          .set("type", "mesh");
     model.component("comp1").geom("geom1").feature("imp1")
-         .set("filename", "/Users/anesu/Documents/comsol-physics/assets/room2.stl");
+         .set("filename", weldedStl.toString());
     model.component("comp1").geom("geom1").feature("imp1")
-         .set("importtol", 1.0E-6);
+         .set("importtol", IMPORT_TOL);
 
     // Build geometry
     model.component("comp1").geom("geom1").run();
@@ -99,6 +134,10 @@ public class room2 {
   }
 
   public static Model run3(Model model) {
+    // Sweepable parameters (see sweep())
+    model.param().set("T_heat1", "323.15");
+    model.param().set("eps_rad", "0.9");
+
     // Heat transfer physics
     model.component("comp1").physics().create("ht", "HeatTransfer", "geom1");
     model.component("comp1").physics("ht").feature("init1")
@@ -107,19 +146,25 @@ public class room2 {
     // Heat source 1
     model.component("comp1").physics("ht").create("temp1", "TemperatureBoundary", 2);
     model.component("comp1").physics("ht").feature("temp1")
-         .set("T0", "323.15");
+         .set("T0", "T_heat1");
 
     // Surface-to-surface radiation
     model.component("comp1").physics().create("rad", "SurfaceToSurfaceRadiation", "geom1");
     model.component("comp1").physics("rad").create("dsurf1", "DiffuseSurface", 2);
     model.component("comp1").physics("rad").feature("dsurf1").selection().all();
     model.component("comp1").physics("rad").feature("dsurf1")
-         .set("epsilon_rad", "0.9");
+         .set("epsilon_rad", "eps_rad");
 
     // Multiphysics coupling
     model.component("comp1").multiphysics().create("rhtcpl1", "RadiativeHeating", -1);
     model.component("comp1").multiphysics("rhtcpl1").selection().all();
 
+    // Operators for sweep metrics
+    model.component("comp1").cpl().create("aveop1", "Average");
+    model.component("comp1").cpl("aveop1").selection().all();
+    model.component("comp1").cpl().create("maxop1", "Maximum");
+    model.component("comp1").cpl("maxop1").selection().all();
+
     return model;
   }
 
@@ -130,14 +175,38 @@ public class room2 {
     model.component("comp1").mesh("mesh1").feature("size").set("custom", "on");
     model.component("comp1").mesh("mesh1").feature("size").set("hmax", 0.3);
     model.component("comp1").mesh("mesh1").feature("size").set("hmin", 0.1);
-    model.component("comp1").mesh("mesh1").run();
+    // Reuses the stored mesh when the scan and these settings are unchanged
+    MeshCache.openDefault().run(model, "comp1", "geom1", "mesh1");
 
     System.out.println("Mesh statistics:");
     System.out.println("  Elements: " + model.component("comp1").mesh("mesh1").getNumElem());
 
+    MeshQuality quality = MeshQuality.of(model, "comp1", "mesh1");
+    quality.printSummary(System.out);
+    quality.check(MeshQuality.Limits.DEFAULT);
+
+    prescreen(model);
+
     return model;
   }
 
+  /**
+   * Steady conduction with the model's conductivities and temperature
+   * boundaries, solved locally on mesh1 before paying for the COMSOL solve.
+   */
+  static void prescreen(Model model) {
+    long start = System.nanoTime();
+    try {
+      ConductionSolver solver = ComsolConduction.solver(model, "comp1", "ht", "mesh1");
+      ConductionSolution t = solver.solve(ComsolConduction.initialTemperature(model, "comp1", "ht"));
+      System.out.println(String.format("Conduction pre-screen (local solver, %.0f ms, %d iterations):",
+          (System.nanoTime() - start) / 1e6, solver.lastResult().iterations()));
+      t.printSummary(System.out);
+    } catch (IllegalStateException e) {
+      System.out.println("Conduction pre-screen skipped: " + e.getMessage());
+    }
+  }
+
   public static Model run5(Model model) {
     // Create study
     model.study().create("std1");
@@ -161,12 +230,14 @@ public class room2 {
     // Create result plots
     model.result().create("pg1", "PlotGroup3D");
     model.result("pg1").label("Temperature Distribution");
+    model.result("pg1").set("data", resultData);
     model.result("pg1").create("surf1", "Surface");
     model.result("pg1").feature("surf1").set("expr", "T");
     model.result("pg1").run();
 
     model.result().create("pg2", "PlotGroup3D");
     model.result("pg2").label("Heat Flux");
+    model.result("pg2").set("data", resultData);
     model.result("pg2").create("surf1", "Surface");
     model.result("pg2").feature("surf1").set("expr", "ht.ntflux");
     model.result("pg2").run();
@@ -196,42 +267,109 @@ public class room2 {
     return model;
   }
 
+  /**
+   * Refine past mesh1 until the mean temperature changes by less than 1e-4
+   * (about 0.03 K) between levels, each level starting from the solution
+   * on the one before, and write the levels to room2_converge.csv.
+   */
+  public static SweepTable converge(Model model) throws IOException {
+    System.out.println("\nRefining the mesh until the mean temperature settles...");
+    MeshContinuation continuation = new MeshContinuation("aveop1(T)")
+        .level(0.2, 0.05)
+        .level(0.15, 0.03)
+        .level(0.1, 0.02)
+        .tolerance(1e-4);
+    SweepTable levels = continuation.run(model, "comp1", "geom1", "mesh1", "std1", "dset1");
+    levels.print(System.out);
+    levels.writeCsv(Paths.get("room2_converge.csv"));
+    System.out.println("Continuation levels: room2_converge.csv");
+    resultData = continuation.dataset();
+    return levels;
+  }
+
+  /**
+   * Solve every row of {@code points} (columns named after model parameters,
+   * e.g. T_heat1, eps_rad) on the geometry and mesh already built, and write
+   * one result row per point to room2_sweep.csv.
+   */
+  public static SweepTable sweep(Model model, SweepTable points) throws IOException {
+    System.out.println("\nSweeping " + points.rowCount() + " parameter sets...");
+    long start = System.nanoTime();
+    SweepTable results = new ParametricSweep(points)
+        .metric("T_mean", "aveop1(T)")
+        .metric("T_max", "maxop1(T)")
+        .run(model, "sol1", "dset1");
+    System.out.println(String.format("Sweep time: %.1f seconds", (System.nanoTime() - start) / 1e9));
+    results.print(System.out);
+    results.writeCsv(Paths.get("room2_sweep.csv"));
+    System.out.println("Sweep results: room2_sweep.csv");
+    return results;
+  }
+
   public static void main(String[] args) throws IOException {
+    boolean resume = StagePipeline.resumeRequested(args);
+    boolean converge = MeshContinuation.requested(args);
+    args = StagePipeline.positional(args);
+    if (args.length > 0) {
+      stlFile = args[0];
+    }
+    // Optional second argument: CSV of parameter sets to sweep after the base solve
+    SweepTable sweepPoints = args.length > 1 ? SweepTable.readCsv(Paths.get(args[1])) : null;
     System.out.println("Starting COMSOL heat transfer simulation...");
-    System.out.println("STL file: room2.stl");
+    System.out.println("STL file: " + stlFile);
     System.out.println("Room: room2");
     System.out.println();
 
-    // Static summary of objects identified in assets/room2.stl
-    System.out.println("Geometry analysis (from STL preprocessing):");
-    System.out.println("  Bounding box: 4.68m x 4.37m x 4.52m");
-    System.out.println("  Triangles: 1746, vertices: 5238, surface area: 228.85 m^2");
-    System.out.println("  Detected component groups:");
-    System.out.println("    Floor: 96 patches, total area 41.93 m^2");
-    System.out.println("    Walls: 120 patches, total area 142.85 m^2");
-    System.out.println("    Ceiling: 28 patches, total area 3.45 m^2");
-    System.out.println("    Doors: 417 patches, total area 12.58 m^2");
-    System.out.println("    Windows: 20 patches, total area 0.32 m^2");
-    System.out.println("    Furniture (tables, chairs, cabinets, etc.): 385 patches, total area 25.53 m^2");
-    System.out.println("    Other interior object: 680 patches, total area 2.20 m^2");
+    // Per-stage timing and memory go to room2_events.jsonl
+    StageEvents events = StageEvents.open("room2");
+    StageEvents.Span scanSpan = events.start("scan");
+    IndexedMesh stl = loadScan();
+    float[] bbox = stl.bounds();
+    System.out.println("Geometry analysis (from STL):");
+    System.out.println(String.format("  Bounding box: %.2fm x %.2fm x %.2fm",
+        bbox[3] - bbox[0], bbox[4] - bbox[1], bbox[5] - bbox[2]));
+    System.out.println(String.format("  Triangles: %d, welded vertices: %d, surface area: %.2f m^2",
+        stl.triangleCount(), stl.vertexCount(), stl.surfaceArea()));
+    if (stl.triangleCount() < stl.sourceTriangleCount()) {
+      System.out.println("  Dropped " + (stl.sourceTriangleCount() - stl.triangleCount())
+          + " degenerate triangles while welding");
+    }
+    long segStart = System.nanoTime();
+    Segmentation groups = SurfaceSegmenter.segment(stl);
+    groups.printSummary(System.out);
+    System.out.println(String.format("  (%d patches segmented in %.1f ms)",
+        groups.patchCount(), (System.nanoTime() - segStart) / 1e6));
     System.out.println();
 
-    Model model = run();
-    System.out.println("Geometry imported successfully");
-
-    model = run2(model);
-    System.out.println("Materials assigned");
-
-    model = run3(model);
-    System.out.println("Physics configured");
-
-    model = run4(model);
-    System.out.println("Mesh generated");
+    scanSpan.put("triangles", stl.triangleCount()).put("patches", groups.patchCount()).end(null);
+
+    // Checkpointed after every stage; --resume skips the stages already saved
+    Model model = new StagePipeline("room2", stlFile, resume)
+        .model(room2.class)
+        .stage("Geometry imported successfully", m -> run())
+        .stage("Materials assigned", room2::run2)
+        .stage("Physics configured", room2::run3)
+        .stage("Mesh generated", room2::run4)
+        .stage("Solution computed", room2::run5)
+        .events(events)
+        .run();
+
+    if (converge) {
+      StageEvents.Span convergeSpan = events.start("converge");
+      SweepTable levels = converge(model);
+      convergeSpan.put("levels", levels.rowCount()).end(model);
+    }
 
-    model = run5(model);
-    System.out.println("Solution computed");
+    if (sweepPoints != null) {
+      StageEvents.Span sweepSpan = events.start("sweep");
+      sweep(model, sweepPoints);
+      sweepSpan.put("points", sweepPoints.rowCount()).end(model);
+    }
 
+    StageEvents.Span resultsSpan = events.start("results");
     run6(model);
+    resultsSpan.end(model);
+    events.close();
     System.out.println("Results saved");
 
     System.out.println("\nSimulation complete!");
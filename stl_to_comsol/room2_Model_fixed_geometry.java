@@ -4,12 +4,22 @@
 
 import com.comsol.model.*;
 import com.comsol.model.util.*;
+import comsolphysics.mesh.StlMesh;
+import comsolphysics.mesh.VertexWelder;
+import comsolphysics.pipeline.ModelTags;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /** Model exported on Nov 16 2025, 06:13 by COMSOL 6.3.0.420. */
 public class room2_Model_fixed_geometry {
 
-  public static Model run() {
-    Model model = ModelUtil.create("Model");
+  public static Model run() throws IOException {
+    // Weld the scan up front so COMSOL's import and repair converge in a single build
+    Path welded = Paths.get("room2_welded.stl").toAbsolutePath();
+    VertexWelder.weld(StlMesh.read(Paths.get("../assets/room2.stl")), 1.0E-6).writeStl(welded);
+
+    Model model = ModelUtil.create(ModelTags.unique("Model"));
 
     model.modelPath(".");
 
@@ -21,18 +31,13 @@ public class room2_Model_fixed_geometry {
     model.component("comp1").geom("geom1").create("imp1", "Import");
     model.component("comp1").geom("geom1").feature("imp1").set("type", "mesh");
     model.component("comp1").geom("geom1").feature("imp1")
-         .set("filename", "/Users/anesu/Documents/comsol-physics/assets/room2.stl");
+         .set("filename", welded.toString());
     model.component("comp1").geom("geom1").feature("imp1").set("importtol", 1.0E-6);
+    model.component("comp1").geom("geom1").feature("fin").set("repairtoltype", "relative");
     model.component("comp1").geom("geom1").run("imp1");
 
     model.label("room2_Model.mph");
 
-    model.component("comp1").geom("geom1").run("imp1");
-    model.component("comp1").geom("geom1").run("imp1");
-    model.component("comp1").geom("geom1").run("imp1");
-    model.component("comp1").geom("geom1").feature("fin").set("repairtoltype", "relative");
-    model.component("comp1").geom("geom1").run("imp1");
-
     model.component("comp1").mesh("mesh1").feature().clear();
     model.component("comp1").mesh("mesh1").geometricModel("");
 
@@ -61,7 +66,7 @@ public class room2_Model_fixed_geometry {
     return model;
   }
 
-  public static void main(String[] args) {
+  public static void main(String[] args) throws IOException {
     run();
   }
 
@@ -33,7 +33,8 @@ class STLToCOMSOL:
                  llm_model: Optional[str] = None,
                  auto_accept: bool = False,
                  auto_run: bool = False,
-                 comsol_root: Optional[str] = None):
+                 comsol_root: Optional[str] = None,
+                 use_model_server: bool = False):
         """
         Initialize the converter.
 
@@ -46,11 +47,13 @@ class STLToCOMSOL:
             auto_accept: Automatically accept all AI suggestions
             auto_run: Automatically compile and run after generation
             comsol_root: Path to COMSOL installation
+            use_model_server: Run the model on a warm, reusable model server
         """
         self.stl_path = Path(stl_path)
         self.output_dir = Path(output_dir)
         self.auto_accept = auto_accept
         self.auto_run = auto_run
+        self.use_model_server = use_model_server
 
         # Validate STL file exists
         if not self.stl_path.exists():
@@ -68,7 +71,7 @@ class STLToCOMSOL:
         # COMSOL executor (initialized only if needed)
         self.comsol_executor = None
         if auto_run:
-            self.comsol_executor = COMSOLExecutor(comsol_root=comsol_root)
+            self.comsol_executor = COMSOLExecutor(comsol_root=comsol_root, use_server=use_model_server)
 
     def run(self):
         """Execute the complete workflow."""
@@ -252,7 +255,7 @@ class STLToCOMSOL:
     def _compile_and_execute(self, java_file):
         """Compile and execute the Java file."""
         if not self.comsol_executor:
-            self.comsol_executor = COMSOLExecutor()
+            self.comsol_executor = COMSOLExecutor(use_server=self.use_model_server)
 
         # Define error fix callback
         def fix_error(code, error):
@@ -331,6 +334,8 @@ Examples:
     parser.add_argument('--auto-run', action='store_true',
                        help='Automatically compile and run the simulation')
     parser.add_argument('--comsol-root', help='Path to COMSOL installation directory')
+    parser.add_argument('--model-server', action='store_true',
+                       help='Run on a warm model server that stays up for later runs')
 
     args = parser.parse_args()
 
@@ -343,7 +348,8 @@ Examples:
         llm_model=args.model,
         auto_accept=args.auto_accept,
         auto_run=args.auto_run,
-        comsol_root=args.comsol_root
+        comsol_root=args.comsol_root,
+        use_model_server=args.model_server
     )
 
     converter.run()